@@ -19,7 +19,9 @@ import com.psa.rxlightstreamer.sample.helpers.ServiceMediator;
 
 import javax.inject.Inject;
 
+import rx.Subscription;
 import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
 
 /**
  * <p>This is the service that will handle LightStreamer.</p>
@@ -35,6 +37,7 @@ public class LightStreamerService extends Service
     RxNonUnifiedLSClient mRxNonUnifiedLSClient;
     @Inject
     ServiceMediator mServiceMediator;
+    private Subscription mClientStatusSubscription = Subscriptions.empty();
 
     @Nullable
     @Override
@@ -61,17 +64,21 @@ public class LightStreamerService extends Service
                     switch (serviceEvent.getEventType())
                     {
                         case CONNECT:
+                            //The status observables are long lived, so the previous bridge is
+                            //released before listening to the client in use. The client is
+                            //listened to before connecting so that errors connecting are not missed.
+                            mClientStatusSubscription.unsubscribe();
                             if (unifiedEnabled)
                             {
-                                mLightStreamerClient.connect(serviceEvent.getLSHost(), serviceEvent.getAdapterSet());
-                                mLightStreamerClient.getClientStatusObservable()
+                                mClientStatusSubscription = mLightStreamerClient.getClientStatusObservable()
                                         .subscribe(mServiceMediator.getClientStatusSubject());
+                                mLightStreamerClient.connect(serviceEvent.getLSHost(), serviceEvent.getAdapterSet());
                             }
                             else
                             {
-                                mRxNonUnifiedLSClient.connect(serviceEvent.getLSHost(), serviceEvent.getAdapterSet());
-                                mRxNonUnifiedLSClient.getClientStatusObservable()
+                                mClientStatusSubscription = mRxNonUnifiedLSClient.getClientStatusObservable()
                                         .subscribe(mServiceMediator.getClientStatusSubject());
+                                mRxNonUnifiedLSClient.connect(serviceEvent.getLSHost(), serviceEvent.getAdapterSet());
                             }
                             break;
                         case DISCONNECT:
@@ -1,30 +1,22 @@
 package com.psa.rxlightstreamer.sample.subscriptions;
 
-import com.lightstreamer.client.ItemUpdate;
-import com.psa.rxlightstreamer.core.RxSubscription;
+import com.psa.rxlightstreamer.annotations.Field;
+import com.psa.rxlightstreamer.annotations.ItemName;
+import com.psa.rxlightstreamer.annotations.LightstreamerItem;
+import com.psa.rxlightstreamer.core.RxDecoderSubscription;
 import com.psa.rxlightstreamer.helpers.SubscriptionType;
 
-import java.math.BigDecimal;
-import java.text.DecimalFormat;
-import java.text.ParseException;
-
-import rx.Observable;
-
 /**
- * <p>Test subscription.</p>
+ * <p>Test subscription. Quotes are decoded by the decoder generated for {@link Quote}.</p>
  * @author Pablo Sanchez Alonso.
  * @version 1.0
  */
-public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
+public class QuoteSubscription extends RxDecoderSubscription<QuoteSubscription.Quote>{
     /**
      * <p>Instantiates a RxSubscription.</p>
      */
     public QuoteSubscription() {
         super(SubscriptionType.MERGE, "QUOTE_ADAPTER",
-                new String[]{
-                        "stock_name", "last_price", "time", "pct_change", "bid_quantity",
-                        "bid", "ask", "ask_quantity", "min", "max", "ref_price", "open_price"
-                },
                 new String[]{
                         "item1", "item2",
                         "item3", "item4",
@@ -32,58 +24,46 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
                         "item7", "item8",
                         "item9", "item10"
                 },
-                true);
-    }
-
-    @Override
-    public Observable<SubscriptionEvent<Quote>> getSubscriptionObservable() {
-        return mRawObservable
-                .map(i -> {
-                    Quote quote = null;
-                    ItemUpdate itemUpdate = i.getUpdatedItem();
-                    try {
-                        DecimalFormat decimalFormat = (DecimalFormat) DecimalFormat.getInstance();
-                        decimalFormat.setParseBigDecimal(true);
-                        if (itemUpdate != null)
-                            quote = new Quote(itemUpdate.getItemName(), itemUpdate.getValue("stock_name"),
-                                    (BigDecimal) decimalFormat.parse(itemUpdate.getValue("last_price")),
-                                    itemUpdate.getValue("time"),
-                                    (BigDecimal) decimalFormat.parse(itemUpdate.getValue("pct_change")),
-                                    Integer.parseInt(itemUpdate.getValue("bid_quantity")),
-                                    (BigDecimal) decimalFormat.parse(itemUpdate.getValue("bid")),
-                                    (BigDecimal) decimalFormat.parse(itemUpdate.getValue("ask")),
-                                    Integer.parseInt(itemUpdate.getValue("ask_quantity")),
-                                    (BigDecimal) decimalFormat.parse(itemUpdate.getValue("min")),
-                                    (BigDecimal) decimalFormat.parse(itemUpdate.getValue("max")),
-                                    (BigDecimal) decimalFormat.parse(itemUpdate.getValue("ref_price")),
-                                    (BigDecimal) decimalFormat.parse(itemUpdate.getValue("open_price"))
-                            );
-                    } catch (ParseException e) {
-                        e.printStackTrace();
-                    }
-                    return new SubscriptionEvent<>(i.isSubscribed(), quote);
-                });
+                true, new QuoteSubscription_Quote_Decoder());
     }
 
     /**
-     * <p>Represents a stock market.</p>
+     * <p>Represents a stock market. Prices are fixed point values with {@link #PRICE_SCALE}
+     * decimals, so decoding them does not allocate.</p>
      */
+    @LightstreamerItem
     public static class Quote
     {
-        private String mId;
-        private String mStockName;
-        private BigDecimal mLastPrice;
-        private String mTime;
-        private BigDecimal mChange;
-        private int mBidSize;
-        private BigDecimal mBid;
-        private BigDecimal mAsk;
-        private int mAskSize;
-        private BigDecimal mMin;
-        private BigDecimal mMax;
-        private BigDecimal mRef;
-        private BigDecimal mOpen;
+        /**
+         * <p>Number of decimals of the prices, which are fixed point values.</p>
+         */
+        public static final int PRICE_SCALE = 4;
+
+        @ItemName String mId;
+        @Field("stock_name") String mStockName;
+        @Field(value = "last_price", scale = PRICE_SCALE) long mLastPrice;
+        @Field("time") String mTime;
+        @Field(value = "pct_change", scale = PRICE_SCALE) long mChange;
+        @Field("bid_quantity") int mBidSize;
+        @Field(value = "bid", scale = PRICE_SCALE) long mBid;
+        @Field(value = "ask", scale = PRICE_SCALE) long mAsk;
+        @Field("ask_quantity") int mAskSize;
+        @Field(value = "min", scale = PRICE_SCALE) long mMin;
+        @Field(value = "max", scale = PRICE_SCALE) long mMax;
+        @Field(value = "ref_price", scale = PRICE_SCALE) long mRef;
+        @Field(value = "open_price", scale = PRICE_SCALE) long mOpen;
+        /**
+         * <p>True when the quote comes from the decoder, so its prices are known.</p>
+         */
+        private boolean mDecoded;
 
+        /**
+         * <p>Instantiates an empty quote. It is used by the generated decoder, so the quote is
+         * marked as decoded.</p>
+         */
+        Quote() {
+            mDecoded = true;
+        }
 
         /**
          * <p>Instantiates a quote.</p>
@@ -109,10 +89,10 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * @param ref is the reference price.
          * @param open is the open price.
          */
-        public Quote(String id, String stockName, BigDecimal lastPrice, String time,
-                     BigDecimal change, int bidSize, BigDecimal bid, BigDecimal ask,
-                     int askSize, BigDecimal min, BigDecimal max, BigDecimal ref,
-                     BigDecimal open)
+        public Quote(String id, String stockName, long lastPrice, String time,
+                     long change, int bidSize, long bid, long ask,
+                     int askSize, long min, long max, long ref,
+                     long open)
         {
             this(id);
             mStockName = stockName;
@@ -127,6 +107,28 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
             mMax = max;
             mRef = ref;
             mOpen = open;
+            mDecoded = true;
+        }
+
+        /**
+         * <p>Returns a copy of the quote. The generated decoder keeps updating the same quote on
+         * the LightStreamer thread, so quotes must be copied before moving to another thread.</p>
+         * @return the copy.
+         */
+        public Quote copy() {
+            Quote copy = new Quote(mId, mStockName, mLastPrice, mTime, mChange, mBidSize, mBid, mAsk, mAskSize, mMin,
+                    mMax, mRef, mOpen);
+            copy.mDecoded = mDecoded;
+            return copy;
+        }
+
+        /**
+         * <p>Returns whether the quote has been decoded from LightStreamer. Quotes that were only
+         * instantiated with their identifier have no prices yet.</p>
+         * @return true when the quote has been decoded.
+         */
+        public boolean isDecoded() {
+            return mDecoded;
         }
 
         /**
@@ -149,7 +151,7 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * <p>Returns the last price.</p>
          * @return the last price.
          */
-        public BigDecimal getLastPrice() {
+        public long getLastPrice() {
             return mLastPrice;
         }
 
@@ -165,7 +167,7 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * <p>Returns the change.</p>
          * @return the change.
          */
-        public BigDecimal getChange() {
+        public long getChange() {
             return mChange;
         }
 
@@ -181,7 +183,7 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * <p>Gets the bid.</p>
          * @return the bid.
          */
-        public BigDecimal getBid() {
+        public long getBid() {
             return mBid;
         }
 
@@ -189,7 +191,7 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * <p>Returns the ask.</p>
          * @return the ask.
          */
-        public BigDecimal getAsk() {
+        public long getAsk() {
             return mAsk;
         }
 
@@ -205,7 +207,7 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * <p>Returns the minimum price.</p>
          * @return the minimum price.
          */
-        public BigDecimal getMin() {
+        public long getMin() {
             return mMin;
         }
 
@@ -213,7 +215,7 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * <p>Returns the maximum price.</p>
          * @return the maximum price.
          */
-        public BigDecimal getMax() {
+        public long getMax() {
             return mMax;
         }
 
@@ -221,7 +223,7 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * <p>Returns the reference price.</p>
          * @return the reference price.
          */
-        public BigDecimal getRef() {
+        public long getRef() {
             return mRef;
         }
 
@@ -229,7 +231,7 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * <p>Returns the opening price.</p>
          * @return the opening price.
          */
-        public BigDecimal getOpen() {
+        public long getOpen() {
             return mOpen;
         }
 
@@ -245,7 +247,7 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * <p>Sets the last price.</p>
          * @param lastPrice last price to set.
          */
-        public void setLastPrice(BigDecimal lastPrice) {
+        public void setLastPrice(long lastPrice) {
             mLastPrice = lastPrice;
         }
 
@@ -261,7 +263,7 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * <p>Sets the change.</p>
          * @param change is the change to set.
          */
-        public void setChange(BigDecimal change) {
+        public void setChange(long change) {
             mChange = change;
         }
 
@@ -277,7 +279,7 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * <p>Sets the bid.</p>
          * @param bid bid to set.
          */
-        public void setBid(BigDecimal bid) {
+        public void setBid(long bid) {
             mBid = bid;
         }
 
@@ -285,7 +287,7 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * <p>Sets the ask.</p>
          * @param ask ask to set.
          */
-        public void setAsk(BigDecimal ask) {
+        public void setAsk(long ask) {
             mAsk = ask;
         }
 
@@ -301,7 +303,7 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * <p>Sets the minimum price.</p>
          * @param min minimum price.
          */
-        public void setMin(BigDecimal min) {
+        public void setMin(long min) {
             mMin = min;
         }
 
@@ -309,7 +311,7 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * <p>Sets the maximum price.</p>
          * @param max maximum price.
          */
-        public void setMax(BigDecimal max) {
+        public void setMax(long max) {
             mMax = max;
         }
 
@@ -317,7 +319,7 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * <p>Sets the reference price.</p>
          * @param ref reference price to set.
          */
-        public void setRef(BigDecimal ref) {
+        public void setRef(long ref) {
             mRef = ref;
         }
 
@@ -325,7 +327,7 @@ public class QuoteSubscription extends RxSubscription<QuoteSubscription.Quote>{
          * <p>Sets the open price.</p>
          * @param open open price to set.
          */
-        public void setOpen(BigDecimal open) {
+        public void setOpen(long open) {
             mOpen = open;
         }
     }
@@ -133,6 +133,8 @@ public class MainActivity extends AppCompatActivity {
                         }
                         mRxQuoteSubscription = observable
                                 .subscribeOn(Schedulers.io())
+                                .map(sb -> sb.getUpdatedItem() == null ? sb :
+                                        sb.copy(sb.getUpdatedItem().copy()))
                                 .observeOn(AndroidSchedulers.mainThread())
                                 .subscribe(sb -> {
                                     if (sb.getUpdatedItem() == null) {
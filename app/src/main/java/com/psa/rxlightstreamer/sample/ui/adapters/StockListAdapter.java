@@ -7,6 +7,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
+import com.psa.rxlightstreamer.core.NumericCodec;
 import com.psa.rxlightstreamer.core.RxSubscription;
 import com.psa.rxlightstreamer.sample.R;
 import com.psa.rxlightstreamer.sample.application.SampleApplication;
@@ -189,26 +190,27 @@ public class StockListAdapter extends RecyclerView.Adapter<StockListAdapter.Stoc
             {
                 Observable<RxSubscription.SubscriptionEvent<QuoteSubscription.Quote>> observable;
                 if (PreferenceManager.getDefaultSharedPreferences(sampleApplication).getBoolean("unified", false))
-                    observable = mQuoteUnifiedSubscription.getSubscriptionObservable();
+                    observable = mQuoteUnifiedSubscription.getItemObservable(mQuote.getId());
                 else
-                    observable = mQuoteNonUnifiedSubscription.getSubscriptionObservable();
+                    observable = mQuoteNonUnifiedSubscription.getItemObservable(mQuote.getId());
                 mSubscription = observable
                         .subscribeOn(Schedulers.io())
+                        .filter(i -> i.getUpdatedItem() != null)
+                        .map(i -> i.getUpdatedItem().copy())
                         .observeOn(AndroidSchedulers.mainThread())
-                        .subscribe(i -> {
-                            QuoteSubscription.Quote quote1 = i.getUpdatedItem();
-                            if (quote1 != null && quote1.getId().equals(mQuote.getId()))
-                                bind(quote1, sampleApplication);
-                        },
+                        .subscribe(quote1 -> bind(quote1, sampleApplication),
                                 Throwable::printStackTrace
                         );
             }
             mStockNameTextView.setText(quote.getStockName());
-            if (quote.getLastPrice() != null)
-                mLastPriceTextView.setText(NumberFormat.getInstance().format(quote.getLastPrice()));
             mTimeTextView.setText(quote.getTime());
-            if (quote.getChange() != null)
-                mChangeTextView.setText(NumberFormat.getInstance().format(quote.getChange()));
+            if (quote.isDecoded())
+            {
+                mLastPriceTextView.setText(NumberFormat.getInstance().format(
+                        NumericCodec.toBigDecimal(quote.getLastPrice(), QuoteSubscription.Quote.PRICE_SCALE)));
+                mChangeTextView.setText(NumberFormat.getInstance().format(
+                        NumericCodec.toBigDecimal(quote.getChange(), QuoteSubscription.Quote.PRICE_SCALE)));
+            }
         }
 
         /**
@@ -1,24 +1,16 @@
 package com.psa.rxlightstreamer.sample.subscriptions;
 
 import com.lightstreamer.client.ItemUpdate;
-import com.psa.rxlightstreamer.core.RxSubscription.SubscriptionEvent;
 import com.psa.rxlightstreamer.sample.BaseTest;
-import com.psa.rxlightstreamer.sample.test.subscriptions.QuoteTestSubscription;
 
 import org.junit.Test;
 import org.mockito.Mock;
 
-import java.math.BigDecimal;
-import java.util.List;
-
-import rx.observers.TestSubscriber;
-
 import static junit.framework.Assert.fail;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
-import static rx.Observable.just;
 
 /**
  * <p>Feature: The quote subscription returns the prices as expected.</p>
@@ -30,18 +22,16 @@ public class QuoteSubscriptionTest extends BaseTest {
     @Mock
     private ItemUpdate mItemUpdate;
 
-    private QuoteTestSubscription mQuoteTestSubscription;
-    private TestSubscriber<SubscriptionEvent<QuoteSubscription.Quote>> mSubscriptionEventTestSubscriber;
+    private QuoteSubscription_Quote_Decoder mQuoteDecoder;
 
     @Override
     public void setUp() {
         super.setUp();
-        mQuoteTestSubscription = new QuoteTestSubscription();
-        mSubscriptionEventTestSubscriber = new TestSubscriber<>();
+        mQuoteDecoder = new QuoteSubscription_Quote_Decoder();
     }
 
     /**
-     * <p>Scenario: Map operator successfully converts the item update into a quote object.</p>
+     * <p>Scenario: Decoder successfully converts the item update into a quote object.</p>
      * <p>Given I am subscribed to a quote subscription
      * When the listener receives a new item update
      * Then I get the quote object associated with it.</p>
@@ -51,54 +41,50 @@ public class QuoteSubscriptionTest extends BaseTest {
     {
         try {
             when(mItemUpdate.getItemName()).thenReturn("item1");
-            when(mItemUpdate.getValue("stock_name")).thenReturn("Test stock");
-            when(mItemUpdate.getValue("last_price")).thenReturn("0.05");
-            when(mItemUpdate.getValue("time")).thenReturn("17:15:51");
-            when(mItemUpdate.getValue("pct_change")).thenReturn("1");
-            when(mItemUpdate.getValue("bid_quantity")).thenReturn("2");
-            when(mItemUpdate.getValue("bid")).thenReturn("0.025");
-            when(mItemUpdate.getValue("ask")).thenReturn("0.75");
-            when(mItemUpdate.getValue("ask_quantity")).thenReturn("1");
-            when(mItemUpdate.getValue("min")).thenReturn("0.05");
-            when(mItemUpdate.getValue("max")).thenReturn("0.75");
-            when(mItemUpdate.getValue("ref_price")).thenReturn("0.15");
-            when(mItemUpdate.getValue("open_price")).thenReturn("0.16");
+            when(mItemUpdate.getValue(1)).thenReturn("Test stock");
+            when(mItemUpdate.getValue(2)).thenReturn("0.05");
+            when(mItemUpdate.getValue(3)).thenReturn("17:15:51");
+            when(mItemUpdate.getValue(4)).thenReturn("1");
+            when(mItemUpdate.getValue(5)).thenReturn("2");
+            when(mItemUpdate.getValue(6)).thenReturn("0.025");
+            when(mItemUpdate.getValue(7)).thenReturn("0.75");
+            when(mItemUpdate.getValue(8)).thenReturn("1");
+            when(mItemUpdate.getValue(9)).thenReturn("0.05");
+            when(mItemUpdate.getValue(10)).thenReturn("0.75");
+            when(mItemUpdate.getValue(11)).thenReturn("0.15");
+            when(mItemUpdate.getValue(12)).thenReturn("0.16");
 
-            mQuoteTestSubscription.setRawObservable(just(new SubscriptionEvent<>(true, mItemUpdate)));
-            mQuoteTestSubscription.getSubscriptionObservable().subscribe(mSubscriptionEventTestSubscriber);
-            List<SubscriptionEvent<QuoteSubscription.Quote>> events = mSubscriptionEventTestSubscriber.getOnNextEvents();
-            assertThat(events).hasSize(1);
-
-            SubscriptionEvent<QuoteSubscription.Quote> event = events.get(0);
-            assertThat(event.isSubscribed()).isTrue();
-            QuoteSubscription.Quote quote = event.getUpdatedItem();
+            QuoteSubscription.Quote quote = mQuoteDecoder.decode(mItemUpdate);
+            assertThat(quote.isDecoded()).isTrue();
+            assertThat(quote.copy().isDecoded()).isTrue();
+            assertThat(new QuoteSubscription.Quote("item1").isDecoded()).isFalse();
             assertThat(quote.getId()).isEqualTo("item1");
             assertThat(quote.getStockName()).isEqualTo("Test stock");
-            assertThat(quote.getLastPrice()).isEqualTo(BigDecimal.valueOf(0.05));
+            assertThat(quote.getLastPrice()).isEqualTo(500);
             assertThat(quote.getTime()).isEqualTo("17:15:51");
-            assertThat(quote.getChange()).isEqualTo(BigDecimal.valueOf(1));
+            assertThat(quote.getChange()).isEqualTo(10000);
             assertThat(quote.getBidSize()).isEqualTo(2);
-            assertThat(quote.getBid()).isEqualTo(BigDecimal.valueOf(0.025));
-            assertThat(quote.getAsk()).isEqualTo(BigDecimal.valueOf(0.75));
+            assertThat(quote.getBid()).isEqualTo(250);
+            assertThat(quote.getAsk()).isEqualTo(7500);
             assertThat(quote.getAskSize()).isEqualTo(1);
-            assertThat(quote.getMin()).isEqualTo(BigDecimal.valueOf(0.05));
-            assertThat(quote.getMax()).isEqualTo(BigDecimal.valueOf(0.75));
-            assertThat(quote.getRef()).isEqualTo(BigDecimal.valueOf(0.15));
-            assertThat(quote.getOpen()).isEqualTo(BigDecimal.valueOf(0.16));
+            assertThat(quote.getMin()).isEqualTo(500);
+            assertThat(quote.getMax()).isEqualTo(7500);
+            assertThat(quote.getRef()).isEqualTo(1500);
+            assertThat(quote.getOpen()).isEqualTo(1600);
 
             verify(mItemUpdate).getItemName();
-            verify(mItemUpdate).getValue("stock_name");
-            verify(mItemUpdate).getValue("last_price");
-            verify(mItemUpdate).getValue("time");
-            verify(mItemUpdate).getValue("pct_change");
-            verify(mItemUpdate).getValue("bid_quantity");
-            verify(mItemUpdate).getValue("bid");
-            verify(mItemUpdate).getValue("ask");
-            verify(mItemUpdate).getValue("ask_quantity");
-            verify(mItemUpdate).getValue("min");
-            verify(mItemUpdate).getValue("max");
-            verify(mItemUpdate).getValue("ref_price");
-            verify(mItemUpdate).getValue("open_price");
+            verify(mItemUpdate).getValue(1);
+            verify(mItemUpdate).getValue(2);
+            verify(mItemUpdate).getValue(3);
+            verify(mItemUpdate).getValue(4);
+            verify(mItemUpdate).getValue(5);
+            verify(mItemUpdate).getValue(6);
+            verify(mItemUpdate).getValue(7);
+            verify(mItemUpdate).getValue(8);
+            verify(mItemUpdate).getValue(9);
+            verify(mItemUpdate).getValue(10);
+            verify(mItemUpdate).getValue(11);
+            verify(mItemUpdate).getValue(12);
             verifyNoMoreInteractions(mItemUpdate);
         }
         catch(Exception ex)
@@ -107,6 +93,32 @@ public class QuoteSubscriptionTest extends BaseTest {
             fail("Unexpected exception thrown!");
         }
     }
+    /**
+     * <p>Scenario: Fields that become null are reset.</p>
+     * <p>Given a quote with a stock name and a last price
+     * When both fields are updated to null
+     * Then the quote does not keep the previous values.</p>
+     */
+    @Test
+    public void testFieldsThatBecomeNullAreReset()
+    {
+        try {
+            QuoteSubscription.Quote quote = mQuoteDecoder.createItem("item1");
+            mQuoteDecoder.decodeField(quote, 1, "Test stock", null);
+            mQuoteDecoder.decodeField(quote, 2, "0.05", null);
+            assertThat(quote.getLastPrice()).isEqualTo(500);
+            mQuoteDecoder.decodeField(quote, 1, null, null);
+            mQuoteDecoder.decodeField(quote, 2, null, null);
+            assertThat(quote.getStockName()).isNull();
+            assertThat(quote.getLastPrice()).isEqualTo(0);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
     /**
     * <p>Scenario: The application doesn't crash due to a null item update.</p>
     * <p>Given I am connected to LightStreamer
@@ -118,13 +130,7 @@ public class QuoteSubscriptionTest extends BaseTest {
     {
         try
         {
-            mQuoteTestSubscription.setRawObservable(just(new SubscriptionEvent<>(true, null)));
-            mQuoteTestSubscription.getSubscriptionObservable().subscribe(mSubscriptionEventTestSubscriber);
-            assertThat(mSubscriptionEventTestSubscriber.getOnNextEvents().size()).isEqualTo(1);
-            SubscriptionEvent<QuoteSubscription.Quote> subscriptionEvent =
-                    mSubscriptionEventTestSubscriber.getOnNextEvents().get(0);
-            assertThat(subscriptionEvent.isSubscribed()).isTrue();
-            assertThat(subscriptionEvent.getUpdatedItem()).isNull();
+            assertThat(mQuoteDecoder.decode((ItemUpdate) null)).isNull();
         }
         catch (Exception ex)
         {
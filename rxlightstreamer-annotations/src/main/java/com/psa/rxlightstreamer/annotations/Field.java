@@ -0,0 +1,35 @@
+package com.psa.rxlightstreamer.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Binds a member of a {@link LightstreamerItem} class to a LightStreamer field. Fields are
+ * subscribed in the order they are declared, and the generated decoder reads them by position.</p>
+ * <p>The member cannot be private or final. Supported types are {@code String}, {@code int},
+ * {@code long}, {@code double}, {@code float}, {@code boolean}, their boxed types and
+ * {@code BigDecimal}. Null values leave the member untouched.</p>
+ * <p>Primitive numeric members are parsed without allocating, and values that cannot be parsed
+ * leave the member untouched too. A {@code long} member with a scale holds a fixed point value,
+ * that is, the value multiplied by ten to the power of the scale.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface Field {
+    /**
+     * <p>Returns the name of the LightStreamer field.</p>
+     * @return the name of the field.
+     */
+    String value();
+
+    /**
+     * <p>Returns the number of decimals of a fixed point {@code long} member. Other types cannot
+     * have a scale.</p>
+     * @return the scale.
+     */
+    int scale() default 0;
+}
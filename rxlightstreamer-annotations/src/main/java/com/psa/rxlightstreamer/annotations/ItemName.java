@@ -0,0 +1,17 @@
+package com.psa.rxlightstreamer.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Marks the {@code String} member of a {@link LightstreamerItem} class that gets the name of the
+ * updated item. The member cannot be private or final.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface ItemName {
+}
@@ -0,0 +1,21 @@
+package com.psa.rxlightstreamer.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Marks a class as the decoded item of a subscription. A decoder named after the class followed
+ * by {@code _Decoder} is generated at compile time in the same package. Nested classes are named
+ * after their enclosing classes too, so the decoder of {@code QuoteSubscription.Quote} is
+ * {@code QuoteSubscription_Quote_Decoder}.</p>
+ * <p>The class needs a constructor without arguments that is not private, and its fields are
+ * given with {@link Field} and {@link ItemName}.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface LightstreamerItem {
+}
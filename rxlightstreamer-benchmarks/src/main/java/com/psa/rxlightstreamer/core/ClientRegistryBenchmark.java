@@ -0,0 +1,167 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.client.LightstreamerClient;
+import com.lightstreamer.client.Subscription;
+import com.lightstreamer.ls_client.ExtendedTableInfo;
+import com.lightstreamer.ls_client.HandyTableListener;
+import com.lightstreamer.ls_client.LSClient;
+import com.lightstreamer.ls_client.PushConnException;
+import com.lightstreamer.ls_client.PushServerException;
+import com.lightstreamer.ls_client.PushUserException;
+import com.lightstreamer.ls_client.SubscrException;
+import com.lightstreamer.ls_client.SubscribedTableKey;
+import com.psa.rxlightstreamer.injection.CoreModule;
+import com.psa.rxlightstreamer.injection.DaggerRxLightStreamerComponent;
+import com.psa.rxlightstreamer.injection.RxLightStreamerInjector;
+import com.psa.rxlightstreamer.sample.subscriptions.QuoteNonUnifiedSubscription;
+import com.psa.rxlightstreamer.sample.subscriptions.QuoteSubscription;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the registries of subscriptions of both clients, which already hold a number of
+ * subscriptions: subscribing and unsubscribing the newest subscription, and unsubscribing and
+ * subscribing again the oldest one.</p>
+ * <p>The clients get LightStreamer clients that do not connect and ignore the subscriptions, so
+ * only the work of the library is measured.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ClientRegistryBenchmark {
+    @Param({"10", "100", "1000"})
+    public int subscriptions;
+
+    private RxLightStreamerClient mRxLightStreamerClient;
+    private RxNonUnifiedLSClient mRxNonUnifiedLSClient;
+    private QuoteSubscription mNewestSubscription;
+    private QuoteNonUnifiedSubscription mNewestNonUnifiedSubscription;
+
+    @Setup
+    public void setUp() throws SubscrException, PushConnException, PushUserException, PushServerException
+    {
+        RxLightStreamerInjector.setRxLightStreamerComponent(DaggerRxLightStreamerComponent.builder()
+                .coreModule(new OfflineCoreModule())
+                .build());
+        mRxLightStreamerClient = new RxLightStreamerClient();
+        mRxNonUnifiedLSClient = new RxNonUnifiedLSClient();
+        for (int i = 0; i < subscriptions; i++)
+        {
+            mRxLightStreamerClient.subscribe(new QuoteSubscription());
+            mRxNonUnifiedLSClient.subscribe(new QuoteNonUnifiedSubscription());
+        }
+        mNewestSubscription = new QuoteSubscription();
+        mNewestNonUnifiedSubscription = new QuoteNonUnifiedSubscription();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        RxLightStreamerInjector.setRxLightStreamerComponent(null);
+    }
+
+    /**
+     * <p>Subscribes and unsubscribes a subscription of the unified client.</p>
+     * @return the number of subscriptions.
+     */
+    @Benchmark
+    public int subscribeAndUnsubscribeNewest()
+    {
+        mRxLightStreamerClient.subscribe(mNewestSubscription);
+        mRxLightStreamerClient.unsubscribe(mNewestSubscription);
+        return mRxLightStreamerClient.getSubscriptionsCount();
+    }
+
+    /**
+     * <p>Unsubscribes the oldest subscription of the unified client and subscribes it again, so
+     * that it becomes the newest.</p>
+     * @return the number of subscriptions.
+     */
+    @Benchmark
+    public int unsubscribeAndSubscribeOldest()
+    {
+        RxSubscription oldestSubscription = mRxLightStreamerClient.getSubscription(0);
+        mRxLightStreamerClient.unsubscribe(oldestSubscription);
+        mRxLightStreamerClient.subscribe(oldestSubscription);
+        return mRxLightStreamerClient.getSubscriptionsCount();
+    }
+
+    /**
+     * <p>Subscribes and unsubscribes a subscription of the non unified client.</p>
+     * @return the number of subscriptions.
+     */
+    @Benchmark
+    public int subscribeAndUnsubscribeNewestNonUnified()
+            throws SubscrException, PushConnException, PushUserException, PushServerException
+    {
+        mRxNonUnifiedLSClient.subscribe(mNewestNonUnifiedSubscription);
+        mRxNonUnifiedLSClient.unsubscribe(mNewestNonUnifiedSubscription);
+        return mRxNonUnifiedLSClient.getSubscriptionsCount();
+    }
+
+    /**
+     * <p>Unsubscribes the oldest subscription of the non unified client and subscribes it again,
+     * so that it becomes the newest.</p>
+     * @return the number of subscriptions.
+     */
+    @Benchmark
+    public int unsubscribeAndSubscribeOldestNonUnified()
+            throws SubscrException, PushConnException, PushUserException, PushServerException
+    {
+        RxNonUnifiedSubscription oldestSubscription = mRxNonUnifiedLSClient.getSubscription(0);
+        mRxNonUnifiedLSClient.unsubscribe(oldestSubscription);
+        mRxNonUnifiedLSClient.subscribe(oldestSubscription);
+        return mRxNonUnifiedLSClient.getSubscriptionsCount();
+    }
+
+    /**
+     * <p>Provides LightStreamer clients that never connect and ignore the subscriptions.</p>
+     */
+    static class OfflineCoreModule extends CoreModule {
+        @Override
+        public LightstreamerClient provideLightStreamerClient() {
+            return new LightstreamerClient(null, null) {
+                @Override
+                public void subscribe(Subscription subscription) {
+                }
+
+                @Override
+                public void unsubscribe(Subscription subscription) {
+                }
+            };
+        }
+
+        @Override
+        public LSClient provideNonUnifiedRawClient() {
+            return new LSClient() {
+                @Override
+                public SubscribedTableKey subscribeTable(ExtendedTableInfo table, HandyTableListener listener,
+                                                         boolean commandLogic) {
+                    return null;
+                }
+
+                @Override
+                public void unsubscribeTable(SubscribedTableKey tableKey) {
+                }
+            };
+        }
+    }
+}
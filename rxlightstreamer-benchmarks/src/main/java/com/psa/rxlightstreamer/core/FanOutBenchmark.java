@@ -0,0 +1,124 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.client.ItemUpdate;
+import com.lightstreamer.client.SubscriptionListener;
+import com.lightstreamer.ls_client.HandyTableListener;
+import com.lightstreamer.ls_client.UpdateInfo;
+import com.psa.rxlightstreamer.sample.subscriptions.QuoteNonUnifiedSubscription;
+import com.psa.rxlightstreamer.sample.subscriptions.QuoteSubscription;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import rx.subscriptions.CompositeSubscription;
+
+/**
+ * <p>Measures the delivery of an update, from the listener LightStreamer calls to every observer
+ * of the subscription observable, for the quote subscriptions of the sample application of both
+ * APIs. An operation decodes the changed fields of the update, creates or recycles its event and
+ * sends it to every observer.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class FanOutBenchmark {
+    private static final int UPDATES = 1000;
+
+    @Param({"1", "10", "100"})
+    public int subscribers;
+
+    @Param({"false", "true"})
+    public boolean eventRecycling;
+
+    private SubscriptionListener mSubscriptionListener;
+    private HandyTableListener mHandyTableListener;
+    private CompositeSubscription mObservers;
+    private RecordedUpdate[] mUpdates;
+    private int mNext;
+    private long mDelivered;
+
+    @Setup
+    public void setUp()
+    {
+        RxSubscription<QuoteSubscription.Quote> quoteSubscription = new QuoteSubscription();
+        QuoteNonUnifiedSubscription quoteNonUnifiedSubscription = new QuoteNonUnifiedSubscription();
+        quoteSubscription.setEventRecycling(eventRecycling);
+        quoteNonUnifiedSubscription.setEventRecycling(eventRecycling);
+        mObservers = new CompositeSubscription();
+        for (int i = 0; i < subscribers; i++)
+        {
+            mObservers.add(quoteSubscription.getSubscriptionObservable()
+                    .subscribe(event -> mDelivered += event.getItemPosition()));
+            mObservers.add(quoteNonUnifiedSubscription.getSubscriptionObservable()
+                    .subscribe(event -> mDelivered += event.getItemPosition()));
+        }
+        mSubscriptionListener = quoteSubscription.getSubscriptionListener();
+        mHandyTableListener = quoteNonUnifiedSubscription.getHandyTableListener();
+        mSubscriptionListener.onSubscription();
+
+        QuoteFeed quoteFeed = new QuoteFeed(quoteSubscription.getFields(), UPDATES);
+        for (RecordedUpdate update : quoteFeed.getSnapshot())
+        {
+            mSubscriptionListener.onItemUpdate(update);
+            mHandyTableListener.onUpdate(update.getItemPos(), update.getItemName(), update);
+        }
+        mUpdates = quoteFeed.getUpdates();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        mObservers.unsubscribe();
+    }
+
+    /**
+     * <p>Returns the next update, starting over after the last one.</p>
+     * @return the update.
+     */
+    private RecordedUpdate next()
+    {
+        RecordedUpdate update = mUpdates[mNext];
+        mNext = mNext + 1 == mUpdates.length ? 0 : mNext + 1;
+        return update;
+    }
+
+    /**
+     * <p>Delivers an update of the unified API.</p>
+     * @return the sum of the positions of the delivered items.
+     */
+    @Benchmark
+    public long fanOutUpdate()
+    {
+        mSubscriptionListener.onItemUpdate((ItemUpdate) next());
+        return mDelivered;
+    }
+
+    /**
+     * <p>Delivers an update of the non unified API.</p>
+     * @return the sum of the positions of the delivered items.
+     */
+    @Benchmark
+    public long fanOutNonUnifiedUpdate()
+    {
+        RecordedUpdate update = next();
+        mHandyTableListener.onUpdate(update.getItemPos(), update.getItemName(), (UpdateInfo) update);
+        return mDelivered;
+    }
+}
@@ -0,0 +1,461 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.client.SubscriptionListener;
+import com.lightstreamer.ls_client.HandyTableListener;
+import com.psa.rxlightstreamer.annotations.Field;
+import com.psa.rxlightstreamer.annotations.ItemName;
+import com.psa.rxlightstreamer.annotations.LightstreamerItem;
+import com.psa.rxlightstreamer.helpers.SubscriptionEventType;
+import com.psa.rxlightstreamer.helpers.SubscriptionType;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.schedulers.Schedulers;
+
+/**
+ * <p>This class is a load harness that measures how many updates per second a subscription can
+ * take and how long they take to reach its observers. It runs headless on the JVM, without
+ * LightStreamer: it calls the {@link SubscriptionListener} of a {@link RxSubscription}, or the
+ * {@link HandyTableListener} of a {@link RxNonUnifiedSubscription}, at a given rate over a given
+ * number of items, as the LightStreamer thread would, and every update goes through the whole
+ * chain of the library: decoding with a generated decoder, the subscription observable,
+ * {@code observeOn} and the observers.</p>
+ * <p>Every update carries the time it was due, so the latency of an update is measured from when
+ * it should have been received. When the listener cannot keep up with the rate, the time the
+ * updates wait to be received counts as latency too, instead of being hidden by a slower
+ * rate.</p>
+ * <p>Latencies are recorded in {@link LatencyHistogram HDR-style histograms}, one per observer,
+ * during a measurement window that follows a warm up. The result is written as JSON, with the
+ * offered and delivered rates, the percentiles of the latency and the non empty buckets of the
+ * histogram.</p>
+ * <p>Usage: {@code LoadHarness [--api unified|non-unified] [--rate updates/s] [--items count]
+ * [--subscribers count] [--observe-on computation|none] [--backpressure buffer|drop]
+ * [--warmup seconds] [--duration seconds] [--report file]}</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class LoadHarness {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p99_9", "p99_99"};
+    private static final String[] FIELDS = LoadHarness_Tick_Decoder.FIELDS;
+    private static final boolean[] CHANGED_FIELDS = {true, true, false};
+
+    private boolean mUnified = true;
+    private double mRate = 100000;
+    private int mItems = 1000;
+    private int mSubscribers = 1;
+    private boolean mObserveOn = true;
+    private boolean mDropOnBackpressure;
+    private double mWarmupSeconds = 5;
+    private double mDurationSeconds = 10;
+    private String mReport;
+
+    private volatile long mMeasureFrom = Long.MAX_VALUE;
+    private volatile long mMeasureUntil = Long.MAX_VALUE;
+
+    /**
+     * <p>Represents an update of the harness.</p>
+     */
+    @LightstreamerItem
+    public static class Tick
+    {
+        @ItemName String mItem;
+        @Field("timestamp") long mTimestamp;
+        @Field(value = "last_price", scale = 2) long mLastPrice;
+        @Field("quantity") int mQuantity;
+    }
+
+    /**
+     * <p>Runs the harness with the options given in the arguments.</p>
+     * @param args is the options.
+     * @throws IOException when the report cannot be written.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        LoadHarness loadHarness = new LoadHarness();
+        try {
+            loadHarness.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+        }
+        loadHarness.run();
+        System.exit(0);
+    }
+
+    /**
+     * <p>Reads the options.</p>
+     * @param args is the options.
+     * @throws IllegalArgumentException when an option is unknown or its value is not valid.
+     */
+    void parse(String[] args)
+    {
+        for (int i = 0; i < args.length; i += 2)
+        {
+            if (i + 1 == args.length)
+                throw new IllegalArgumentException("Missing value of " + args[i]);
+            String value = args[i + 1];
+            switch (args[i])
+            {
+                case "--api":
+                    mUnified = choose(args[i], value, "unified", "non-unified");
+                    break;
+                case "--rate":
+                    mRate = Double.parseDouble(value);
+                    break;
+                case "--items":
+                    mItems = Integer.parseInt(value);
+                    break;
+                case "--subscribers":
+                    mSubscribers = Integer.parseInt(value);
+                    break;
+                case "--observe-on":
+                    mObserveOn = choose(args[i], value, "computation", "none");
+                    break;
+                case "--backpressure":
+                    mDropOnBackpressure = !choose(args[i], value, "buffer", "drop");
+                    break;
+                case "--warmup":
+                    mWarmupSeconds = Double.parseDouble(value);
+                    break;
+                case "--duration":
+                    mDurationSeconds = Double.parseDouble(value);
+                    break;
+                case "--report":
+                    mReport = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (mRate <= 0 || mItems <= 0 || mSubscribers <= 0 || mWarmupSeconds < 0 || mDurationSeconds <= 0)
+            throw new IllegalArgumentException("The rate, the items, the subscribers and the duration must be positive");
+    }
+
+    /**
+     * <p>Runs the harness and writes its report.</p>
+     * @throws IOException when the report cannot be written.
+     */
+    void run() throws IOException
+    {
+        String[] items = new String[mItems];
+        for (int i = 0; i < mItems; i++)
+            items[i] = "item" + (i + 1);
+        SubscriptionListener subscriptionListener = null;
+        HandyTableListener handyTableListener = null;
+        Observable<RxSubscription.SubscriptionEvent<Tick>> observable;
+        if (mUnified)
+        {
+            RxSubscription<Tick> subscription = new RxDecoderSubscription<>(SubscriptionType.MERGE, "LOAD", items,
+                    false, new LoadHarness_Tick_Decoder());
+            subscriptionListener = subscription.getSubscriptionListener();
+            observable = subscription.getSubscriptionObservable();
+        }
+        else
+        {
+            RxNonUnifiedSubscription<Tick> subscription = new RxNonUnifiedDecoderSubscription<>(SubscriptionType.MERGE,
+                    "LOAD", items, false, new LoadHarness_Tick_Decoder());
+            handyTableListener = subscription.getHandyTableListener();
+            observable = subscription.getSubscriptionObservable();
+        }
+
+        List<Probe> probes = new ArrayList<>();
+        for (int i = 0; i < mSubscribers; i++)
+        {
+            Probe probe = new Probe();
+            // The decoded ticks are reused for the next update of their item, so their timestamp
+            // is copied on the LightStreamer thread.
+            Observable<Long> timestamps = observable
+                    .filter(event -> event.getEventType() == SubscriptionEventType.UPDATE)
+                    .map(event -> event.getUpdatedItem().mTimestamp);
+            if (mObserveOn)
+                timestamps = (mDropOnBackpressure ? timestamps.onBackpressureDrop(probe::drop) :
+                        timestamps.onBackpressureBuffer()).observeOn(Schedulers.computation());
+            timestamps.subscribe(probe);
+            probes.add(probe);
+        }
+        if (subscriptionListener != null)
+            subscriptionListener.onSubscription();
+
+        long offered = drive(items, subscriptionListener, handyTableListener);
+        boolean drained = drain(probes, offered);
+        for (Probe probe : probes)
+            probe.unsubscribe();
+        report(offered, probes, drained);
+    }
+
+    /**
+     * <p>Calls the listener at the rate of the harness until the end of the measurement window.
+     * The items are updated in turn, and every update changes the timestamp and the last price of
+     * its item.</p>
+     * @param items is the items.
+     * @param subscriptionListener is the listener of the unified subscription, if any.
+     * @param handyTableListener is the listener of the non unified subscription, if any.
+     * @return the number of updates due in the measurement window.
+     */
+    private long drive(String[] items, SubscriptionListener subscriptionListener,
+                       HandyTableListener handyTableListener)
+    {
+        Map<String, Integer> fieldPositions = new HashMap<>();
+        for (int i = 0; i < FIELDS.length; i++)
+            fieldPositions.put(FIELDS[i], i + 1);
+        String[][] values = new String[items.length][];
+        long[] lastPrices = new long[items.length];
+        for (int i = 0; i < items.length; i++)
+        {
+            lastPrices[i] = 10000 + i % 9000;
+            values[i] = new String[] {"0", NumericCodec.toBigDecimal(lastPrices[i], 2).toPlainString(), "100"};
+        }
+
+        double interval = TimeUnit.SECONDS.toNanos(1) / mRate;
+        long start = System.nanoTime();
+        long measureFrom = start + (long) (mWarmupSeconds * TimeUnit.SECONDS.toNanos(1));
+        long measureUntil = measureFrom + (long) (mDurationSeconds * TimeUnit.SECONDS.toNanos(1));
+        mMeasureFrom = measureFrom;
+        mMeasureUntil = measureUntil;
+        long offered = 0;
+        for (long sequence = 0; ; sequence++)
+        {
+            long due = start + (long) (sequence * interval);
+            if (due >= measureUntil)
+                break;
+            long now;
+            while ((now = System.nanoTime()) < due)
+            {
+                if (due - now > 100000)
+                    LockSupport.parkNanos(due - now - 50000);
+            }
+            int item = (int) (sequence % items.length);
+            lastPrices[item] += (sequence / items.length & 1) == 0 ? 1 : -1;
+            String[] oldValues = values[item];
+            values[item] = new String[] {Long.toString(due),
+                    NumericCodec.toBigDecimal(lastPrices[item], 2).toPlainString(), oldValues[2]};
+            RecordedUpdate update = new RecordedUpdate(items[item], item + 1, false, FIELDS, fieldPositions,
+                    values[item], oldValues, CHANGED_FIELDS);
+            if (subscriptionListener != null)
+                subscriptionListener.onItemUpdate(update);
+            else
+                handyTableListener.onUpdate(item + 1, items[item], update);
+            if (due >= measureFrom)
+                offered++;
+        }
+        return offered;
+    }
+
+    /**
+     * <p>Waits until every observer got or dropped every update.</p>
+     * @param probes is the observers.
+     * @param offered is the number of updates due in the measurement window.
+     * @return true when every update arrived before the timeout.
+     */
+    private boolean drain(List<Probe> probes, long offered)
+    {
+        long deadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+        for (Probe probe : probes)
+        {
+            while (probe.getSettled() < offered)
+            {
+                if (System.nanoTime() > deadline)
+                    return false;
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <p>Writes the report to the report file, or to the standard output, and a summary to the
+     * standard error.</p>
+     * @param offered is the number of updates due in the measurement window.
+     * @param probes is the observers.
+     * @param drained true when every update arrived.
+     * @throws IOException when the report cannot be written.
+     */
+    private void report(long offered, List<Probe> probes, boolean drained) throws IOException
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long delivered = 0, dropped = 0;
+        for (Probe probe : probes)
+        {
+            histogram.add(probe.getHistogram());
+            delivered += probe.getDelivered();
+            dropped += probe.getDropped();
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"api\": \"").append(mUnified ? "unified" : "non-unified").append("\",\n");
+        json.append("  \"rate\": ").append(format(mRate)).append(",\n");
+        json.append("  \"items\": ").append(mItems).append(",\n");
+        json.append("  \"subscribers\": ").append(mSubscribers).append(",\n");
+        json.append("  \"observeOn\": \"").append(mObserveOn ? "computation" : "none").append("\",\n");
+        json.append("  \"backpressure\": \"").append(mDropOnBackpressure ? "drop" : "buffer").append("\",\n");
+        json.append("  \"warmupSeconds\": ").append(format(mWarmupSeconds)).append(",\n");
+        json.append("  \"durationSeconds\": ").append(format(mDurationSeconds)).append(",\n");
+        json.append("  \"offeredRate\": ").append(format(offered / mDurationSeconds)).append(",\n");
+        json.append("  \"deliveredRate\": ").append(format(delivered / mDurationSeconds / mSubscribers)).append(",\n");
+        json.append("  \"dropped\": ").append(dropped).append(",\n");
+        json.append("  \"drained\": ").append(drained).append(",\n");
+        json.append("  \"latencyNanos\": {\n");
+        json.append("    \"count\": ").append(histogram.getCount()).append(",\n");
+        json.append("    \"min\": ").append(histogram.getMin()).append(",\n");
+        json.append("    \"mean\": ").append(format(histogram.getMean())).append(",\n");
+        for (int i = 0; i < PERCENTILES.length; i++)
+            json.append("    \"").append(PERCENTILE_NAMES[i]).append("\": ")
+                    .append(histogram.getValueAtPercentile(PERCENTILES[i])).append(",\n");
+        json.append("    \"max\": ").append(histogram.getMax()).append("\n");
+        json.append("  },\n");
+        json.append("  \"histogram\": [");
+        boolean first = true;
+        for (int i = 0; i < histogram.getBucketCount(); i++)
+        {
+            if (histogram.getCountAt(i) == 0)
+                continue;
+            json.append(first ? "\n" : ",\n").append("    [").append(histogram.getHighestValueAt(i)).append(", ")
+                    .append(histogram.getCountAt(i)).append("]");
+            first = false;
+        }
+        json.append(first ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+
+        if (mReport != null)
+        {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(mReport), UTF_8)) {
+                writer.write(json.toString());
+            }
+        }
+        else
+            System.out.print(json);
+
+        PrintStream summary = System.err;
+        summary.printf(Locale.ROOT, "offered %.0f/s, delivered %.0f/s per subscriber, %d dropped%s%n",
+                offered / mDurationSeconds, delivered / mDurationSeconds / mSubscribers, dropped,
+                drained ? "" : ", not drained");
+        summary.printf(Locale.ROOT, "latency us: p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMax() / 1000.0);
+    }
+
+    /**
+     * <p>Reads an option with two values.</p>
+     * @param option is the option.
+     * @param value is the value.
+     * @param first is the first value.
+     * @param second is the second value.
+     * @return true for the first value, false for the second.
+     * @throws IllegalArgumentException when the value is neither.
+     */
+    private static boolean choose(String option, String value, String first, String second)
+    {
+        if (!first.equals(value) && !second.equals(value))
+            throw new IllegalArgumentException(option + " must be " + first + " or " + second);
+        return first.equals(value);
+    }
+
+    /**
+     * <p>Formats a number for the report.</p>
+     * @param number is the number.
+     * @return the number, without decimals when it has none.
+     */
+    private static String format(double number)
+    {
+        return number == Math.rint(number) ? String.valueOf((long) number) :
+                String.format(Locale.ROOT, "%.3f", number);
+    }
+
+    /**
+     * <p>Observes the timestamps of the updates, recording the latency of the ones due in the
+     * measurement window and counting the ones delivered in it.</p>
+     */
+    private class Probe extends Subscriber<Long> {
+        private final LatencyHistogram mHistogram = new LatencyHistogram();
+        private final AtomicLong mObserved = new AtomicLong();
+        private final AtomicLong mDropped = new AtomicLong();
+        private long mDelivered;
+
+        @Override
+        public void onNext(Long timestamp) {
+            long now = System.nanoTime();
+            if (timestamp >= mMeasureFrom)
+            {
+                mHistogram.record(now - timestamp);
+                if (now < mMeasureUntil)
+                    mDelivered++;
+                mObserved.lazySet(mObserved.get() + 1);
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            e.printStackTrace();
+        }
+
+        /**
+         * <p>Counts an update dropped before it could be observed, when it is due in the
+         * measurement window. It is called on the LightStreamer thread.</p>
+         * @param timestamp is the timestamp of the update.
+         */
+        void drop(Long timestamp)
+        {
+            if (timestamp >= mMeasureFrom)
+                mDropped.lazySet(mDropped.get() + 1);
+        }
+
+        /**
+         * <p>Returns the number of updates of the measurement window observed or dropped.</p>
+         * @return the number of updates.
+         */
+        long getSettled()
+        {
+            return mObserved.get() + mDropped.get();
+        }
+
+        /**
+         * <p>Returns the histogram of the latencies. It must be read once the probe settled.</p>
+         * @return the histogram.
+         */
+        LatencyHistogram getHistogram()
+        {
+            return mHistogram;
+        }
+
+        /**
+         * <p>Returns the number of updates delivered in the measurement window.</p>
+         * @return the number of updates.
+         */
+        long getDelivered()
+        {
+            return mDelivered;
+        }
+
+        /**
+         * <p>Returns the number of dropped updates.</p>
+         * @return the number of updates.
+         */
+        long getDropped()
+        {
+            return mDropped.get();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.client.ItemUpdate;
+import com.lightstreamer.ls_client.UpdateInfo;
+import com.psa.rxlightstreamer.sample.subscriptions.QuoteSubscription;
+import com.psa.rxlightstreamer.sample.subscriptions.QuoteSubscription_Quote_Decoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures how the quotes of the sample application are decoded by the decoder generated for
+ * {@link QuoteSubscription.Quote}: whole, as plain decoders do on every update of both APIs, and
+ * field by field into the quote of the item, as {@link QuoteSubscription} does.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class QuoteDecodingBenchmark {
+    private static final int UPDATES = 1000;
+
+    private QuoteSubscription_Quote_Decoder mDecoder;
+    private IncrementalDecoding<QuoteSubscription.Quote> mIncrementalDecoding;
+    private RecordedUpdate[] mSnapshot;
+    private RecordedUpdate[] mUpdates;
+    private int mNext, mNextSnapshot;
+
+    @Setup
+    public void setUp()
+    {
+        mDecoder = new QuoteSubscription_Quote_Decoder();
+        QuoteFeed quoteFeed = new QuoteFeed(mDecoder.getFields(), UPDATES);
+        mSnapshot = quoteFeed.getSnapshot();
+        mUpdates = quoteFeed.getUpdates();
+        mIncrementalDecoding = new IncrementalDecoding<>(mDecoder, QuoteFeed.ITEMS, new ParseErrors());
+        for (RecordedUpdate update : mSnapshot)
+            mIncrementalDecoding.decode((ItemUpdate) update);
+    }
+
+    /**
+     * <p>Returns the next update, starting over after the last one.</p>
+     * @return the update.
+     */
+    private RecordedUpdate next()
+    {
+        RecordedUpdate update = mUpdates[mNext];
+        mNext = mNext + 1 == mUpdates.length ? 0 : mNext + 1;
+        return update;
+    }
+
+    /**
+     * <p>Decodes a whole quote from a snapshot of the unified API.</p>
+     * @return the quote.
+     */
+    @Benchmark
+    public QuoteSubscription.Quote decodeSnapshot()
+    {
+        RecordedUpdate update = mSnapshot[mNextSnapshot];
+        mNextSnapshot = mNextSnapshot + 1 == mSnapshot.length ? 0 : mNextSnapshot + 1;
+        return mDecoder.decode((ItemUpdate) update);
+    }
+
+    /**
+     * <p>Decodes a whole quote from an update of the unified API.</p>
+     * @return the quote.
+     */
+    @Benchmark
+    public QuoteSubscription.Quote decodeUpdate()
+    {
+        return mDecoder.decode((ItemUpdate) next());
+    }
+
+    /**
+     * <p>Decodes a whole quote from an update of the non unified API.</p>
+     * @return the quote.
+     */
+    @Benchmark
+    public QuoteSubscription.Quote decodeNonUnifiedUpdate()
+    {
+        return mDecoder.decode((UpdateInfo) next());
+    }
+
+    /**
+     * <p>Decodes the changed fields of an update of the unified API into the quote of its item.</p>
+     * @return the quote.
+     */
+    @Benchmark
+    public QuoteSubscription.Quote decodeChangedFields()
+    {
+        return mIncrementalDecoding.decode((ItemUpdate) next());
+    }
+}
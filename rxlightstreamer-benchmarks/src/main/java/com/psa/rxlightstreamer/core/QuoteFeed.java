@@ -0,0 +1,124 @@
+package com.psa.rxlightstreamer.core;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * <p>This class makes up the updates of the ten items of the quote subscription of the sample
+ * application: a snapshot with every field of every item, followed by updates of the items in
+ * turn, where the last price, the time and the change move on every update and the other fields
+ * are unchanged.</p>
+ * <p>The updates are made once, before a benchmark runs, so that benchmarks only measure what is
+ * done with them.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class QuoteFeed {
+    static final int ITEMS = 10;
+    private static final int LAST_PRICE = 1, TIME = 2, CHANGE = 3, REFERENCE_PRICE = 10;
+
+    private RecordedUpdate[] mSnapshot;
+    private RecordedUpdate[] mUpdates;
+
+    /**
+     * <p>Instantiates a feed.</p>
+     * @param fields is the fields of the subscription, as the decoder reads them.
+     * @param updateCount is the number of updates after the snapshot.
+     */
+    QuoteFeed(String[] fields, int updateCount)
+    {
+        Map<String, Integer> fieldPositions = new HashMap<>();
+        for (int i = 0; i < fields.length; i++)
+            fieldPositions.put(fields[i], i + 1);
+        boolean[] allFields = new boolean[fields.length];
+        for (int i = 0; i < fields.length; i++)
+            allFields[i] = true;
+        boolean[] changedFields = new boolean[fields.length];
+        changedFields[LAST_PRICE] = changedFields[TIME] = changedFields[CHANGE] = true;
+
+        Random random = new Random(42);
+        String[][] values = new String[ITEMS][];
+        mSnapshot = new RecordedUpdate[ITEMS];
+        for (int i = 0; i < ITEMS; i++)
+        {
+            values[i] = quote(random, i + 1);
+            mSnapshot[i] = new RecordedUpdate("item" + (i + 1), i + 1, true, fields, fieldPositions, values[i],
+                    new String[fields.length], allFields);
+        }
+        mUpdates = new RecordedUpdate[updateCount];
+        for (int i = 0; i < updateCount; i++)
+        {
+            int item = i % ITEMS;
+            String[] oldValues = values[item];
+            values[item] = oldValues.clone();
+            move(random, values[item], i);
+            mUpdates[i] = new RecordedUpdate("item" + (item + 1), item + 1, false, fields, fieldPositions,
+                    values[item], oldValues, changedFields);
+        }
+    }
+
+    /**
+     * <p>Returns the snapshot of every item.</p>
+     * @return the snapshot, by position of the item.
+     */
+    RecordedUpdate[] getSnapshot()
+    {
+        return mSnapshot;
+    }
+
+    /**
+     * <p>Returns the updates after the snapshot.</p>
+     * @return the updates.
+     */
+    RecordedUpdate[] getUpdates()
+    {
+        return mUpdates;
+    }
+
+    /**
+     * <p>Makes up the first values of a quote.</p>
+     * @param random is the source of the prices.
+     * @param item is the position of the item.
+     * @return the values.
+     */
+    private static String[] quote(Random random, int item)
+    {
+        long reference = 1000 + random.nextInt(9000);
+        return new String[] {
+                "Stock " + item, price(reference), "09:00:00", "0.00",
+                String.valueOf(100 * (1 + random.nextInt(50))), price(reference - 1), price(reference + 1),
+                String.valueOf(100 * (1 + random.nextInt(50))), price(reference - 50), price(reference + 50),
+                price(reference), price(reference)
+        };
+    }
+
+    /**
+     * <p>Moves the last price of a quote, along with its time and change.</p>
+     * @param random is the source of the prices.
+     * @param values is the values of the quote.
+     * @param sequence is the number of the update.
+     */
+    private static void move(Random random, String[] values, int sequence)
+    {
+        BigDecimal reference = new BigDecimal(values[REFERENCE_PRICE]);
+        BigDecimal lastPrice = new BigDecimal(values[LAST_PRICE]).add(BigDecimal.valueOf(random.nextInt(21) - 10, 2));
+        int seconds = sequence / ITEMS;
+        values[LAST_PRICE] = lastPrice.toPlainString();
+        values[TIME] = String.format("%02d:%02d:%02d", 9 + seconds / 3600 % 8, seconds / 60 % 60, seconds % 60);
+        values[CHANGE] = lastPrice.subtract(reference).multiply(BigDecimal.valueOf(100))
+                .divide(reference, 2, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    /**
+     * <p>Formats a price in cents.</p>
+     * @param cents is the price in cents.
+     * @return the price.
+     */
+    private static String price(long cents)
+    {
+        return BigDecimal.valueOf(cents, 2).toPlainString();
+    }
+}
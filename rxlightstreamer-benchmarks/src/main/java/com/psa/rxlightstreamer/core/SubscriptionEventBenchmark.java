@@ -0,0 +1,81 @@
+package com.psa.rxlightstreamer.core;
+
+import com.psa.rxlightstreamer.helpers.SubscriptionEventType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Measures the creation of the update events of the subscriptions, both new and
+ * {@link RxSubscription#setEventRecycling(boolean) recycled}.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SubscriptionEventBenchmark {
+    private AtomicReference<RxSubscription.SubscriptionEvent<String>> mEventPool;
+    private String[] mItemNames;
+    private int mNext;
+
+    @Setup
+    public void setUp()
+    {
+        mEventPool = new AtomicReference<>();
+        mItemNames = new String[QuoteFeed.ITEMS];
+        for (int i = 0; i < mItemNames.length; i++)
+            mItemNames[i] = "item" + (i + 1);
+    }
+
+    /**
+     * <p>Creates an update event.</p>
+     * @return the event.
+     */
+    @Benchmark
+    public RxSubscription.SubscriptionEvent<String> newUpdateEvent()
+    {
+        int position = next();
+        return new RxSubscription.SubscriptionEvent<>(SubscriptionEventType.UPDATE, true, mItemNames[position],
+                mItemNames[position], position + 1, false, 0);
+    }
+
+    /**
+     * <p>Takes the update event of the pool of a subscription and returns it once delivered.</p>
+     * @return the event.
+     */
+    @Benchmark
+    public RxSubscription.SubscriptionEvent<String> recycledUpdateEvent()
+    {
+        int position = next();
+        RxSubscription.SubscriptionEvent<String> event = RxSubscription.SubscriptionEvent.obtainUpdate(mEventPool,
+                mItemNames[position], mItemNames[position], position + 1, false, 0);
+        event.release(mEventPool);
+        return event;
+    }
+
+    /**
+     * <p>Returns the position of the next item, starting over after the last one.</p>
+     * @return the position, starting at 0.
+     */
+    private int next()
+    {
+        int position = mNext;
+        mNext = mNext + 1 == mItemNames.length ? 0 : mNext + 1;
+        return position;
+    }
+}
@@ -0,0 +1,94 @@
+package com.psa.rxlightstreamer.helpers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the translation of the statuses and the error codes of LightStreamer into the values
+ * of the library, which runs on every status change and on every error of the clients.</p>
+ * <p>Every operation translates the next of the known values, and an unknown one, in turn.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class CodeLookupBenchmark {
+    private String[] mStatuses;
+    private int[] mServerErrorCodes;
+    private int[] mSubscriptionErrorCodes;
+    private int mNextStatus, mNextServerErrorCode, mNextSubscriptionErrorCode;
+
+    @Setup
+    public void setUp()
+    {
+        ClientStatus[] clientStatuses = ClientStatus.values();
+        mStatuses = new String[clientStatuses.length + 1];
+        for (int i = 0; i < clientStatuses.length; i++)
+            mStatuses[i] = new String(clientStatuses[i].getLightStreamerStatus());
+        mStatuses[clientStatuses.length] = "UNKNOWN";
+
+        ServerError[] serverErrors = ServerError.values();
+        mServerErrorCodes = new int[serverErrors.length + 1];
+        for (int i = 0; i < serverErrors.length; i++)
+            mServerErrorCodes[i] = serverErrors[i].getCode();
+        mServerErrorCodes[serverErrors.length] = 99;
+
+        SubscriptionError[] subscriptionErrors = SubscriptionError.values();
+        mSubscriptionErrorCodes = new int[subscriptionErrors.length + 1];
+        for (int i = 0; i < subscriptionErrors.length; i++)
+            mSubscriptionErrorCodes[i] = subscriptionErrors[i].getCode();
+        mSubscriptionErrorCodes[subscriptionErrors.length] = 99;
+    }
+
+    /**
+     * <p>Translates a status of the unified client. The statuses are copies, so they are compared
+     * by value as the ones of the client are.</p>
+     * @return the status.
+     */
+    @Benchmark
+    public ClientStatus clientStatusFromLSStatus()
+    {
+        String status = mStatuses[mNextStatus];
+        mNextStatus = mNextStatus + 1 == mStatuses.length ? 0 : mNextStatus + 1;
+        return ClientStatus.fromLSStatus(status);
+    }
+
+    /**
+     * <p>Translates an error code of the server.</p>
+     * @return the error.
+     */
+    @Benchmark
+    public ServerError serverErrorFromLSCode()
+    {
+        int code = mServerErrorCodes[mNextServerErrorCode];
+        mNextServerErrorCode = mNextServerErrorCode + 1 == mServerErrorCodes.length ? 0 : mNextServerErrorCode + 1;
+        return ServerError.fromLSCode(code);
+    }
+
+    /**
+     * <p>Translates an error code of a subscription.</p>
+     * @return the error.
+     */
+    @Benchmark
+    public SubscriptionError subscriptionErrorFromLSCode()
+    {
+        int code = mSubscriptionErrorCodes[mNextSubscriptionErrorCode];
+        mNextSubscriptionErrorCode = mNextSubscriptionErrorCode + 1 == mSubscriptionErrorCodes.length ? 0 :
+                mNextSubscriptionErrorCode + 1;
+        return SubscriptionError.fromLSCode(code);
+    }
+}
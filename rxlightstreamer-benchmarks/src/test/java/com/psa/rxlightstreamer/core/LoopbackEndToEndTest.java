@@ -0,0 +1,140 @@
+package com.psa.rxlightstreamer.core;
+
+import com.psa.rxlightstreamer.helpers.SubscriptionEventType;
+import com.psa.rxlightstreamer.injection.CoreModule;
+import com.psa.rxlightstreamer.injection.DaggerRxLightStreamerComponent;
+import com.psa.rxlightstreamer.injection.RxLightStreamerInjector;
+import com.psa.rxlightstreamer.sample.subscriptions.QuoteNonUnifiedSubscription;
+import com.psa.rxlightstreamer.sample.subscriptions.QuoteSubscription;
+import com.psa.rxlightstreamer.server.LoopbackServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.observers.TestSubscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Feature: As a developer, I want the subscriptions of both APIs to work end to end, through
+ * the LightStreamer clients and their network and threading code, so that the library is tested
+ * beyond mocks.</p>
+ * <p>The clients are the real ones, and they connect to a {@link LoopbackServer}.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class LoopbackEndToEndTest {
+    private static final int UPDATES = 20;
+    private static final List<String> ITEMS = Arrays.asList("item1", "item2", "item3", "item4", "item5",
+            "item6", "item7", "item8", "item9", "item10");
+
+    private LoopbackServer mLoopbackServer;
+
+    @Before
+    public void setUp() throws IOException {
+        RxLightStreamerInjector.setRxLightStreamerComponent(DaggerRxLightStreamerComponent.builder()
+                .coreModule(new CoreModule())
+                .build());
+        mLoopbackServer = new LoopbackServer();
+        mLoopbackServer.setUpdateRate(20);
+        mLoopbackServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mLoopbackServer.close();
+        RxLightStreamerInjector.setRxLightStreamerComponent(null);
+    }
+
+    /**
+     * <p>Waits until the observer of the quotes got all of them.</p>
+     * @param subscriber is the observer of the quotes.
+     * @return the observer.
+     */
+    private static TestSubscriber<QuoteSubscription.Quote> await(TestSubscriber<QuoteSubscription.Quote> subscriber)
+    {
+        subscriber.awaitTerminalEvent(30, TimeUnit.SECONDS);
+        subscriber.assertNoErrors();
+        subscriber.assertCompleted();
+        return subscriber;
+    }
+
+    /**
+     * <p>Checks that the quotes are decoded from the values sent by the server.</p>
+     * @param quotes are the quotes.
+     */
+    private void assertQuotes(List<QuoteSubscription.Quote> quotes)
+    {
+        assertEquals(UPDATES, quotes.size());
+        for (QuoteSubscription.Quote quote : quotes)
+        {
+            assertTrue(ITEMS.contains(quote.getId()));
+            assertTrue(quote.getLastPrice() > 0);
+            assertTrue(quote.getBid() > 0);
+        }
+        assertTrue(mLoopbackServer.getUpdatesSent() >= UPDATES);
+    }
+
+    /**
+     * <p>Scenario: Updates flow through the unified client.</p>
+     * <p>Given a unified client connected to a loopback server
+     * When a quote subscription is subscribed
+     * Then its observers get quotes decoded from the values the server sent.</p>
+     */
+    @Test
+    public void testUpdatesFlowThroughTheUnifiedClient()
+    {
+        RxLightStreamerClient client = new RxLightStreamerClient();
+        QuoteSubscription subscription = new QuoteSubscription();
+        TestSubscriber<QuoteSubscription.Quote> subscriber = new TestSubscriber<>();
+        subscription.getSubscriptionObservable()
+                .filter(event -> event.getEventType() == SubscriptionEventType.UPDATE)
+                .map(event -> event.getUpdatedItem().copy())
+                .take(UPDATES)
+                .subscribe(subscriber);
+        client.subscribe(subscription);
+        client.connect(mLoopbackServer.getAddress(), "DEMO");
+        try {
+            assertQuotes(await(subscriber).getOnNextEvents());
+        }
+        finally {
+            client.unsubscribe(subscription);
+            client.disconnect();
+        }
+    }
+
+    /**
+     * <p>Scenario: Updates flow through the non unified client.</p>
+     * <p>Given a non unified client connected to a loopback server
+     * When a quote subscription is subscribed
+     * Then its observers get quotes decoded from the values the server sent.</p>
+     */
+    @Test
+    public void testUpdatesFlowThroughTheNonUnifiedClient() throws Exception
+    {
+        RxNonUnifiedLSClient client = new RxNonUnifiedLSClient();
+        QuoteNonUnifiedSubscription subscription = new QuoteNonUnifiedSubscription();
+        TestSubscriber<QuoteSubscription.Quote> subscriber = new TestSubscriber<>();
+        subscription.getSubscriptionObservable()
+                .filter(event -> event.getEventType() == SubscriptionEventType.UPDATE)
+                .map(event -> event.getUpdatedItem().copy())
+                .take(UPDATES)
+                .subscribe(subscriber);
+        client.connect(mLoopbackServer.getAddress(), "DEMO");
+        client.subscribe(subscription);
+        try {
+            assertQuotes(await(subscriber).getOnNextEvents());
+        }
+        finally {
+            client.unsubscribe(subscription);
+            client.disconnect();
+        }
+    }
+}
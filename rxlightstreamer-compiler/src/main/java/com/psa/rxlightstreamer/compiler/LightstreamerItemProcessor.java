@@ -0,0 +1,433 @@
+package com.psa.rxlightstreamer.compiler;
+
+import com.psa.rxlightstreamer.annotations.Field;
+import com.psa.rxlightstreamer.annotations.ItemName;
+import com.psa.rxlightstreamer.annotations.LightstreamerItem;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * <p>This processor generates an {@code ItemDecoder} for every class annotated with
+ * {@link LightstreamerItem}. The generated decoder holds the fields to subscribe and reads every
+ * value by its position, so decoding needs neither name lookups nor reflection. Generated decoders
+ * can also decode a single field, so subscriptions only decode the fields that changed.</p>
+ * <p>Numeric values are parsed with {@code NumericCodec}, so a value that cannot be parsed is
+ * counted in the metrics of the subscription and leaves the field with its previous value instead
+ * of throwing.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class LightstreamerItemProcessor extends AbstractProcessor {
+    private static final String DECODER_SUFFIX = "_Decoder";
+    private static final String NUMERIC_CODEC = "com.psa.rxlightstreamer.core.NumericCodec";
+    private static final int MAX_SCALE = 18;
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> annotationTypes = new HashSet<>();
+        annotationTypes.add(LightstreamerItem.class.getCanonicalName());
+        annotationTypes.add(Field.class.getCanonicalName());
+        annotationTypes.add(ItemName.class.getCanonicalName());
+        return annotationTypes;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(LightstreamerItem.class))
+        {
+            if (element.getKind() != ElementKind.CLASS)
+            {
+                error(element, "@LightstreamerItem can only be used on classes");
+                continue;
+            }
+            TypeElement typeElement = (TypeElement) element;
+            List<BoundField> boundFields = new ArrayList<>();
+            VariableElement itemNameField = null;
+            boolean valid = checkType(typeElement);
+            for (Element enclosedElement : typeElement.getEnclosedElements())
+            {
+                if (enclosedElement.getKind() != ElementKind.FIELD)
+                    continue;
+                VariableElement field = (VariableElement) enclosedElement;
+                Field fieldAnnotation = field.getAnnotation(Field.class);
+                if (fieldAnnotation != null)
+                {
+                    FieldType fieldType = FieldType.of(field.asType().toString());
+                    if (fieldType == null)
+                    {
+                        error(field, "Unsupported type " + field.asType() + " for @Field");
+                        valid = false;
+                    }
+                    else if (fieldAnnotation.scale() != 0 && fieldType != FieldType.PRIMITIVE_LONG)
+                    {
+                        error(field, "Only long fields can have a scale");
+                        valid = false;
+                    }
+                    else if (fieldAnnotation.scale() < 0 || fieldAnnotation.scale() > MAX_SCALE)
+                    {
+                        error(field, "The scale must be between 0 and " + MAX_SCALE);
+                        valid = false;
+                    }
+                    valid &= checkAccessible(field);
+                    boundFields.add(new BoundField(fieldAnnotation.value(), field.getSimpleName().toString(),
+                            fieldType, fieldAnnotation.scale()));
+                }
+                if (field.getAnnotation(ItemName.class) != null)
+                {
+                    if (!String.class.getCanonicalName().equals(field.asType().toString()))
+                    {
+                        error(field, "@ItemName can only be used on String fields");
+                        valid = false;
+                    }
+                    valid &= checkAccessible(field);
+                    itemNameField = field;
+                }
+            }
+            if (boundFields.isEmpty())
+            {
+                error(typeElement, "@LightstreamerItem classes need at least one @Field");
+                valid = false;
+            }
+            if (valid)
+                writeDecoder(typeElement, boundFields, itemNameField);
+        }
+        return true;
+    }
+
+    //region Checks
+    /**
+     * <p>Checks that the generated decoder can instantiate the annotated class.</p>
+     * @param typeElement is the annotated class.
+     * @return true when the class can be instantiated.
+     */
+    private boolean checkType(TypeElement typeElement) {
+        boolean valid = true;
+        if (typeElement.getModifiers().contains(Modifier.ABSTRACT))
+        {
+            error(typeElement, "@LightstreamerItem classes cannot be abstract");
+            valid = false;
+        }
+        if (typeElement.getNestingKind() == NestingKind.MEMBER &&
+                !typeElement.getModifiers().contains(Modifier.STATIC))
+        {
+            error(typeElement, "Nested @LightstreamerItem classes must be static");
+            valid = false;
+        }
+        boolean hasConstructor = false;
+        for (Element enclosedElement : typeElement.getEnclosedElements())
+            if (enclosedElement.getKind() == ElementKind.CONSTRUCTOR &&
+                    ((ExecutableElement) enclosedElement).getParameters().isEmpty() &&
+                    !enclosedElement.getModifiers().contains(Modifier.PRIVATE))
+                hasConstructor = true;
+        if (!hasConstructor)
+        {
+            error(typeElement, "@LightstreamerItem classes need a constructor without arguments that is not private");
+            valid = false;
+        }
+        return valid;
+    }
+
+    /**
+     * <p>Checks that the generated decoder can assign a field.</p>
+     * @param field is the field.
+     * @return true when the field can be assigned.
+     */
+    private boolean checkAccessible(VariableElement field) {
+        if (field.getModifiers().contains(Modifier.PRIVATE) || field.getModifiers().contains(Modifier.FINAL) ||
+                field.getModifiers().contains(Modifier.STATIC))
+        {
+            error(field, "Fields bound to LightStreamer cannot be private, final or static");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * <p>Reports an error on an element.</p>
+     * @param element is the element.
+     * @param message is the message.
+     */
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+    //endregion
+
+    //region Code generation
+    /**
+     * <p>Writes the decoder of a class.</p>
+     * @param typeElement is the annotated class.
+     * @param boundFields is the fields bound to LightStreamer, in declaration order.
+     * @param itemNameField is the field that gets the item name, or null.
+     */
+    private void writeDecoder(TypeElement typeElement, List<BoundField> boundFields, VariableElement itemNameField) {
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(typeElement);
+        String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String typeName = typeElement.getQualifiedName().toString();
+        String decoderName = decoderName(typeElement);
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty())
+            source.append("package ").append(packageName).append(";\n\n");
+        source.append("import com.lightstreamer.client.ItemUpdate;\n")
+                .append("import com.lightstreamer.ls_client.UpdateInfo;\n")
+                .append("import com.psa.rxlightstreamer.core.IncrementalItemDecoder;\n")
+                .append("import com.psa.rxlightstreamer.core.ParseErrors;\n\n")
+                .append("/**\n")
+                .append(" * <p>Decoder of {@link ").append(typeName).append("}.</p>\n")
+                .append(" * <p>Generated by ").append(getClass().getName()).append(". Do not edit.</p>\n")
+                .append(" */\n")
+                .append("public final class ").append(decoderName).append(" implements IncrementalItemDecoder<")
+                .append(typeName).append("> {\n")
+                .append("    public static final String[] FIELDS = {");
+        for (int i = 0; i < boundFields.size(); i++)
+        {
+            if (i > 0)
+                source.append(", ");
+            source.append(quote(boundFields.get(i).mLightStreamerField));
+        }
+        source.append("};\n\n")
+                .append("    @Override\n")
+                .append("    public String[] getFields() {\n")
+                .append("        return FIELDS.clone();\n")
+                .append("    }\n\n");
+        writeDecodeMethods(source, typeName, "ItemUpdate", "itemUpdate", boundFields, itemNameField,
+                "itemUpdate.getValue(%d)");
+        source.append("\n");
+        writeDecodeMethods(source, typeName, "UpdateInfo", "updateInfo", boundFields, itemNameField,
+                "updateInfo.getNewValue(%d)");
+        source.append("\n");
+        writeIncrementalMethods(source, typeName, boundFields, itemNameField);
+        source.append("}\n");
+        String qualifiedDecoderName = packageName.isEmpty() ? decoderName : packageName + "." + decoderName;
+        try
+        {
+            JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(qualifiedDecoderName, typeElement);
+            try (Writer writer = sourceFile.openWriter())
+            {
+                writer.write(source.toString());
+            }
+        }
+        catch (IOException e)
+        {
+            error(typeElement, "Unable to write " + qualifiedDecoderName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * <p>Writes the decode methods of an update type: one that counts the parse errors in the
+     * counter it is given, and one that does not count them.</p>
+     * @param source is where the code is written.
+     * @param typeName is the name of the decoded class.
+     * @param updateType is the type of the update.
+     * @param updateName is the name of the update parameter.
+     * @param boundFields is the fields bound to LightStreamer.
+     * @param itemNameField is the field that gets the item name, or null.
+     * @param valueFormat is the expression that reads a value, with the position as argument.
+     */
+    private void writeDecodeMethods(StringBuilder source, String typeName, String updateType, String updateName,
+                                   List<BoundField> boundFields, VariableElement itemNameField,
+                                   String valueFormat) {
+        source.append("    @Override\n")
+                .append("    public ").append(typeName).append(" decode(").append(updateType).append(" ")
+                .append(updateName).append(") {\n")
+                .append("        return decode(").append(updateName).append(", null);\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public ").append(typeName).append(" decode(").append(updateType).append(" ")
+                .append(updateName).append(", ParseErrors parseErrors) {\n")
+                .append("        if (").append(updateName).append(" == null)\n")
+                .append("            return null;\n")
+                .append("        ").append(typeName).append(" item = new ").append(typeName).append("();\n");
+        if (itemNameField != null)
+            source.append("        item.").append(itemNameField.getSimpleName()).append(" = ").append(updateName)
+                    .append(".getItemName();\n");
+        source.append("        String value;\n");
+        for (int i = 0; i < boundFields.size(); i++)
+        {
+            BoundField boundField = boundFields.get(i);
+            source.append("        value = ").append(String.format(valueFormat, i + 1)).append(";\n")
+                    .append("        if (value != null)\n")
+                    .append("            item.").append(boundField.mMemberName).append(" = ")
+                    .append(boundField.conversion("value", "parseErrors")).append(";\n");
+        }
+        source.append("        return item;\n")
+                .append("    }\n");
+    }
+
+    /**
+     * <p>Writes the methods that create the decoded object and decode a single field into it.</p>
+     * @param source is where the code is written.
+     * @param typeName is the name of the decoded class.
+     * @param boundFields is the fields bound to LightStreamer.
+     * @param itemNameField is the field that gets the item name, or null.
+     */
+    private void writeIncrementalMethods(StringBuilder source, String typeName, List<BoundField> boundFields,
+                                         VariableElement itemNameField) {
+        source.append("    @Override\n")
+                .append("    public ").append(typeName).append(" createItem(String itemName) {\n")
+                .append("        ").append(typeName).append(" item = new ").append(typeName).append("();\n");
+        if (itemNameField != null)
+            source.append("        item.").append(itemNameField.getSimpleName()).append(" = itemName;\n");
+        source.append("        return item;\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public void decodeField(").append(typeName)
+                .append(" item, int fieldPosition, String value, ParseErrors parseErrors) {\n")
+                .append("        switch (fieldPosition) {\n");
+        for (int i = 0; i < boundFields.size(); i++)
+        {
+            //A field that became null is reset, so it does not keep the value of a previous update.
+            BoundField boundField = boundFields.get(i);
+            String conversion = boundField.conversion("value", "parseErrors");
+            if (boundField.mFieldType != FieldType.STRING)
+                conversion = "value == null ? " + boundField.mFieldType.mDefaultValue + " : " + conversion;
+            source.append("            case ").append(i + 1).append(":\n")
+                    .append("                item.").append(boundField.mMemberName).append(" = ").append(conversion)
+                    .append(";\n")
+                    .append("                break;\n");
+        }
+        source.append("        }\n")
+                .append("    }\n");
+    }
+
+    /**
+     * <p>Returns the name of the decoder of a class: the names of the enclosing classes and the
+     * class joined by underscores, followed by the decoder suffix.</p>
+     * @param typeElement is the annotated class.
+     * @return the simple name of the decoder.
+     */
+    static String decoderName(TypeElement typeElement) {
+        List<String> names = new ArrayList<>();
+        Element element = typeElement;
+        while (element.getKind().isClass() || element.getKind().isInterface())
+        {
+            names.add(element.getSimpleName().toString());
+            element = element.getEnclosingElement();
+        }
+        Collections.reverse(names);
+        StringBuilder decoderName = new StringBuilder();
+        for (String name : names)
+        {
+            if (decoderName.length() > 0)
+                decoderName.append('_');
+            decoderName.append(name);
+        }
+        return decoderName.append(DECODER_SUFFIX).toString();
+    }
+
+    /**
+     * <p>Returns a string as a Java literal.</p>
+     * @param value is the string.
+     * @return the literal.
+     */
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+    //endregion
+
+    /**
+     * <p>This class is a member bound to a LightStreamer field.</p>
+     */
+    private static class BoundField {
+        private String mLightStreamerField;
+        private String mMemberName;
+        private FieldType mFieldType;
+        private int mScale;
+
+        /**
+         * <p>Instantiates a bound field.</p>
+         * @param lightStreamerField is the name of the LightStreamer field.
+         * @param memberName is the name of the member.
+         * @param fieldType is the type of the member.
+         * @param scale is the scale of fixed point members.
+         */
+        BoundField(String lightStreamerField, String memberName, FieldType fieldType, int scale) {
+            mLightStreamerField = lightStreamerField;
+            mMemberName = memberName;
+            mFieldType = fieldType;
+            mScale = scale;
+        }
+
+        /**
+         * <p>Returns the expression that converts a value into the member of {@code item}.</p>
+         * @param value is the expression of the value.
+         * @param parseErrors is the expression of the counter of parse errors.
+         * @return the conversion.
+         */
+        String conversion(String value, String parseErrors) {
+            return String.format(mFieldType.mConversion, value, "item." + mMemberName, mScale, parseErrors);
+        }
+    }
+
+    /**
+     * <p>This enumeration holds the supported types and how values are converted into them.</p>
+     */
+    private enum FieldType {
+        STRING("java.lang.String", "%1$s", "null"),
+        INT("int", NUMERIC_CODEC + ".parseInt(%1$s, %2$s, %4$s)", "0"),
+        INTEGER("java.lang.Integer", NUMERIC_CODEC + ".parseInteger(%1$s, %2$s, %4$s)", "null"),
+        PRIMITIVE_LONG("long", NUMERIC_CODEC + ".parseFixedPoint(%1$s, %3$d, %2$s, %4$s)", "0L"),
+        LONG("java.lang.Long", NUMERIC_CODEC + ".parseLong(%1$s, %2$s, %4$s)", "null"),
+        PRIMITIVE_DOUBLE("double", NUMERIC_CODEC + ".parseDouble(%1$s, %2$s, %4$s)", "0d"),
+        DOUBLE("java.lang.Double", NUMERIC_CODEC + ".parseDouble(%1$s, %2$s, %4$s)", "null"),
+        PRIMITIVE_FLOAT("float", "(float) " + NUMERIC_CODEC + ".parseDouble(%1$s, %2$s, %4$s)", "0f"),
+        FLOAT("java.lang.Float", NUMERIC_CODEC + ".parseFloat(%1$s, %2$s, %4$s)", "null"),
+        PRIMITIVE_BOOLEAN("boolean", "Boolean.parseBoolean(%1$s)", "false"),
+        BOOLEAN("java.lang.Boolean", "Boolean.valueOf(%1$s)", "null"),
+        BIG_DECIMAL("java.math.BigDecimal", NUMERIC_CODEC + ".parseBigDecimal(%1$s, %2$s, %4$s)", "null");
+
+        private String mTypeName;
+        private String mConversion;
+        private String mDefaultValue;
+
+        /**
+         * <p>Instantiates a field type.</p>
+         * @param typeName is the name of the type.
+         * @param conversion is the expression that converts a value, with the value, the current
+         *                   member, the scale and the counter of parse errors as arguments.
+         * @param defaultValue is the expression of the default value of the type, which members
+         *                     get when their value is null.
+         */
+        FieldType(String typeName, String conversion, String defaultValue) {
+            mTypeName = typeName;
+            mConversion = conversion;
+            mDefaultValue = defaultValue;
+        }
+
+        /**
+         * <p>Returns the field type of a type name.</p>
+         * @param typeName is the name of the type.
+         * @return the field type, or null when the type is not supported.
+         */
+        static FieldType of(String typeName) {
+            for (FieldType fieldType : values())
+                if (fieldType.mTypeName.equals(typeName))
+                    return fieldType;
+            return null;
+        }
+    }
+}
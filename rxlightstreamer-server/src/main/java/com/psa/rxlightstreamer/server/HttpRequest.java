@@ -0,0 +1,188 @@
+package com.psa.rxlightstreamer.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>This class is an HTTP request read from a connection. Only what the LightStreamer clients
+ * send is understood: a request line, headers and a form encoded body with one request per
+ * line.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class HttpRequest {
+    private static final String UTF_8 = "UTF-8";
+
+    private String mMethod;
+    private String mPath;
+    private Map<String, String> mHeaders;
+    private Map<String, String> mQuery;
+    private List<Map<String, String>> mBodyRequests;
+
+    /**
+     * <p>Instantiates a request.</p>
+     * @param method is the method.
+     * @param path is the path without the query.
+     * @param headers is the headers, with lower case names.
+     * @param query is the parameters of the query.
+     * @param bodyRequests is the parameters of every line of the body.
+     */
+    private HttpRequest(String method, String path, Map<String, String> headers, Map<String, String> query,
+                        List<Map<String, String>> bodyRequests)
+    {
+        mMethod = method;
+        mPath = path;
+        mHeaders = headers;
+        mQuery = query;
+        mBodyRequests = bodyRequests;
+    }
+
+    //region Getters
+    /**
+     * <p>Returns the method of the request.</p>
+     * @return the method.
+     */
+    String getMethod()
+    {
+        return mMethod;
+    }
+
+    /**
+     * <p>Returns the path of the request, without the query.</p>
+     * @return the path.
+     */
+    String getPath()
+    {
+        return mPath;
+    }
+
+    /**
+     * <p>Returns a header.</p>
+     * @param name is the name of the header.
+     * @return the value, or null when the header was not sent.
+     */
+    String getHeader(String name)
+    {
+        return mHeaders.get(name.toLowerCase(Locale.US));
+    }
+
+    /**
+     * <p>Returns the requests of the body, each one with the parameters of the query added, or a
+     * single request with the parameters of the query when the body is empty.</p>
+     * @return the requests.
+     */
+    List<Map<String, String>> getRequests()
+    {
+        List<Map<String, String>> requests = new ArrayList<>();
+        if (mBodyRequests.isEmpty())
+            requests.add(mQuery);
+        for (Map<String, String> bodyRequest : mBodyRequests)
+        {
+            Map<String, String> request = new HashMap<>(mQuery);
+            request.putAll(bodyRequest);
+            requests.add(request);
+        }
+        return requests;
+    }
+    //endregion
+
+    /**
+     * <p>Reads a request.</p>
+     * @param inputStream is the stream of the connection.
+     * @return the request, or null when the connection was closed before a request.
+     * @throws IOException when the request cannot be read.
+     */
+    static HttpRequest read(InputStream inputStream) throws IOException
+    {
+        String requestLine = readLine(inputStream);
+        while (requestLine != null && requestLine.isEmpty())
+            requestLine = readLine(inputStream);
+        if (requestLine == null)
+            return null;
+        String[] parts = requestLine.split(" ");
+        if (parts.length < 2)
+            throw new IOException("Malformed request line " + requestLine);
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(inputStream)) != null && !line.isEmpty())
+        {
+            int colon = line.indexOf(':');
+            if (colon > 0)
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+        }
+        String target = parts[1];
+        int question = target.indexOf('?');
+        String path = question < 0 ? target : target.substring(0, question);
+        Map<String, String> query = question < 0 ? new HashMap<String, String>() : parse(target.substring(question + 1));
+        List<Map<String, String>> bodyRequests = new ArrayList<>();
+        String contentLength = headers.get("content-length");
+        if (contentLength != null)
+        {
+            byte[] body = new byte[Integer.parseInt(contentLength)];
+            int read = 0;
+            while (read < body.length)
+            {
+                int count = inputStream.read(body, read, body.length - read);
+                if (count < 0)
+                    throw new IOException("Connection closed in the middle of a request");
+                read += count;
+            }
+            for (String bodyLine : new String(body, UTF_8).split("\r\n|\n"))
+                if (!bodyLine.isEmpty())
+                    bodyRequests.add(parse(bodyLine));
+        }
+        return new HttpRequest(parts[0], path, headers, query, bodyRequests);
+    }
+
+    /**
+     * <p>Parses form encoded parameters.</p>
+     * @param form is the parameters.
+     * @return the parameters by name.
+     * @throws UnsupportedEncodingException never, UTF-8 is always supported.
+     */
+    private static Map<String, String> parse(String form) throws UnsupportedEncodingException
+    {
+        Map<String, String> parameters = new HashMap<>();
+        for (String parameter : form.split("&"))
+        {
+            if (parameter.isEmpty())
+                continue;
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            String value = equals < 0 ? "" : parameter.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, UTF_8), URLDecoder.decode(value, UTF_8));
+        }
+        return parameters;
+    }
+
+    /**
+     * <p>Reads a line ended by CRLF or LF.</p>
+     * @param inputStream is the stream.
+     * @return the line without its end, or null at the end of the stream.
+     * @throws IOException when the stream cannot be read.
+     */
+    private static String readLine(InputStream inputStream) throws IOException
+    {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int value;
+        while ((value = inputStream.read()) != -1)
+        {
+            if (value == '\n')
+            {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, UTF_8);
+            }
+            line.write(value);
+        }
+        return line.size() == 0 ? null : line.toString(UTF_8);
+    }
+}
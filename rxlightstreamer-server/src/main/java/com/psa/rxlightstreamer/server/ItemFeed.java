@@ -0,0 +1,20 @@
+package com.psa.rxlightstreamer.server;
+
+/**
+ * <p>This interface gives the values that a {@link LoopbackServer} sends for the items its
+ * clients subscribe. It is called from the threads of the server, so implementations must be
+ * thread safe.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public interface ItemFeed {
+    /**
+     * <p>Returns the value of a field.</p>
+     * @param itemName is the name of the item, or the name of the item and the key of the row,
+     *                 separated by a slash, for COMMAND subscriptions.
+     * @param fieldName is the name of the field.
+     * @param sequence is the number of the update of the item, starting at 0 for the snapshot.
+     * @return the value, which can be null.
+     */
+    String getValue(String itemName, String fieldName, long sequence);
+}
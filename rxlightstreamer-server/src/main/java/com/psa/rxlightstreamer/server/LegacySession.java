@@ -0,0 +1,104 @@
+package com.psa.rxlightstreamer.server;
+
+import java.util.Map;
+
+/**
+ * <p>This class is a session of the text protocol of the non unified API clients, where every
+ * subscription is a table numbered by the client.</p>
+ * <p>Updates only carry the values that changed, leaving the unchanged ones empty.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class LegacySession extends Session {
+
+    /**
+     * <p>Instantiates a session.</p>
+     * @param id is the identifier of the session.
+     * @param server is the server.
+     */
+    LegacySession(String id, LoopbackServer server)
+    {
+        super(id, server);
+    }
+
+    @Override
+    String control(Map<String, String> request) {
+        String operation = request.get("LS_op");
+        String table = request.get("LS_table");
+        if ("add".equals(operation) || "add_silent".equals(operation))
+        {
+            String group = request.get("LS_id");
+            String schema = request.get("LS_schema");
+            if (table == null || group == null || schema == null)
+                return "ERROR\r\n15\r\nMissing table parameters";
+            try {
+                subscribe(new ServerSubscription(table, request.get("LS_mode"), group.split(" "),
+                        schema.split(" "), "true".equals(request.get("LS_snapshot")), getServer().getCommandRows()));
+            } catch (IllegalArgumentException ex) {
+                return "ERROR\r\n24\r\n" + ex.getMessage();
+            }
+        }
+        else if ("delete".equals(operation))
+        {
+            if (table != null)
+                for (String id : table.split(" "))
+                    unsubscribe(id);
+        }
+        else if ("destroy".equals(operation))
+            close();
+        return "OK";
+    }
+
+    @Override
+    void writeStart() {
+        write("OK");
+        write("SessionId:" + getId());
+        write("ControlAddress:127.0.0.1:" + getServer().getPort());
+        write("KeepaliveMillis:" + KEEPALIVE_MILLIS);
+        write("MaxBandwidth:0.0");
+        write("RequestLimit:" + REQUEST_LIMIT);
+        write("");
+    }
+
+    @Override
+    void writeSubscribed(ServerSubscription subscription) {
+    }
+
+    @Override
+    void writeUpdate(ServerSubscription subscription, int item, String[] values, boolean[] changedFields) {
+        StringBuilder message = new StringBuilder(16 + values.length * 8);
+        message.append(subscription.getId()).append(',').append(item);
+        for (int i = 0; i < values.length; i++)
+        {
+            message.append('|');
+            if (!changedFields[i])
+                continue;
+            if (values[i] == null)
+                message.append('#');
+            else if (values[i].isEmpty())
+                message.append('$');
+            else
+                message.append(values[i].replace("\\", "\\\\").replace("|", "\\|"));
+        }
+        write(message);
+    }
+
+    @Override
+    void writeEndOfSnapshot(ServerSubscription subscription, int item) {
+        write(subscription.getId() + "," + item + ",EOS");
+    }
+
+    @Override
+    void writeUnsubscribed(ServerSubscription subscription) {
+    }
+
+    @Override
+    void writeProbe() {
+        write("PROBE");
+    }
+
+    @Override
+    void writeEnd() {
+        write("END");
+    }
+}
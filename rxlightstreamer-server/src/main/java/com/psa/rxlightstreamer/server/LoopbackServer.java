@@ -0,0 +1,415 @@
+package com.psa.rxlightstreamer.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>This class is a stand-in LightStreamer server that listens on the loopback interface, so
+ * that the unified and non unified clients can be driven end to end, through their own network
+ * and threading code, in integration and load tests without an external server.</p>
+ * <p>It understands enough of the TLCP protocol of the unified clients and of the text protocol of
+ * the non unified ones over HTTP streaming: sessions are created and destroyed, and items are
+ * subscribed and unsubscribed in MERGE, DISTINCT, RAW and COMMAND mode, with snapshots and end of
+ * snapshot messages. WebSocket upgrades are refused, so clients fall back to HTTP streaming.
+ * Authentication, metadata, bandwidth and frequency limits and messages are not supported.</p>
+ * <p>Any item can be subscribed. The values come from an {@link ItemFeed}, and every subscribed
+ * item gets {@link #setUpdateRate(double) a number of updates per second}, which can be changed
+ * while the server runs.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class LoopbackServer implements Closeable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ItemFeed mFeed;
+    private final Map<String, Session> mSessions = new ConcurrentHashMap<>();
+    private final AtomicInteger mSessionIds = new AtomicInteger();
+    private final AtomicLong mUpdates = new AtomicLong();
+    private volatile double mUpdateRate = 1;
+    private volatile int mCommandRows = 10;
+    private volatile int mPort = -1;
+    private ServerSocket mServerSocket;
+    private ExecutorService mExecutor;
+
+    /**
+     * <p>Instantiates a server that sends made up prices.</p>
+     */
+    public LoopbackServer()
+    {
+        this(new SyntheticFeed());
+    }
+
+    /**
+     * <p>Instantiates a server.</p>
+     * @param feed is the feed of the values.
+     */
+    public LoopbackServer(ItemFeed feed)
+    {
+        mFeed = feed;
+    }
+
+    //region Lifecycle
+    /**
+     * <p>Starts listening on a free port of the loopback interface.</p>
+     * @throws IOException when the server cannot listen.
+     */
+    public void start() throws IOException
+    {
+        start(0);
+    }
+
+    /**
+     * <p>Starts listening on a port of the loopback interface.</p>
+     * @param port is the port, or 0 for a free one.
+     * @throws IOException when the server cannot listen.
+     * @throws IllegalStateException when the server is already started.
+     */
+    public synchronized void start(int port) throws IOException
+    {
+        if (mServerSocket != null)
+            throw new IllegalStateException("The server is already started");
+        mServerSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+        mPort = mServerSocket.getLocalPort();
+        mExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger mThreads = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "LoopbackServer-connection-" + mThreads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final ServerSocket serverSocket = mServerSocket;
+        final ExecutorService executor = mExecutor;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept(serverSocket, executor);
+            }
+        });
+    }
+
+    /**
+     * <p>Stops listening and closes every session.</p>
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (mServerSocket == null)
+            return;
+        try {
+            mServerSocket.close();
+        } catch (IOException ignored) {
+        }
+        for (Session session : new ArrayList<>(mSessions.values()))
+            session.close();
+        mExecutor.shutdownNow();
+        mServerSocket = null;
+        mExecutor = null;
+        mPort = -1;
+    }
+    //endregion
+
+    //region Getters and setters
+    /**
+     * <p>Returns the port the server listens on.</p>
+     * @return the port, or -1 when the server is not started.
+     */
+    public int getPort()
+    {
+        return mPort;
+    }
+
+    /**
+     * <p>Returns the address to connect the clients to.</p>
+     * @return the address.
+     */
+    public String getAddress()
+    {
+        return "http://127.0.0.1:" + getPort();
+    }
+
+    /**
+     * <p>Returns the feed of the values.</p>
+     * @return the feed.
+     */
+    public ItemFeed getFeed()
+    {
+        return mFeed;
+    }
+
+    /**
+     * <p>Returns the number of updates per second of every subscribed item.</p>
+     * @return the rate.
+     */
+    public double getUpdateRate()
+    {
+        return mUpdateRate;
+    }
+
+    /**
+     * <p>Sets the number of updates per second of every subscribed item. A session that falls
+     * behind by more than a second of updates drops the late ones.</p>
+     * @param updateRate is the rate, or 0 to only send snapshots.
+     * @throws IllegalArgumentException when the rate is negative.
+     */
+    public void setUpdateRate(double updateRate)
+    {
+        if (updateRate < 0)
+            throw new IllegalArgumentException("The update rate cannot be negative");
+        mUpdateRate = updateRate;
+    }
+
+    /**
+     * <p>Returns the number of rows of every item of COMMAND subscriptions.</p>
+     * @return the number of rows.
+     */
+    public int getCommandRows()
+    {
+        return mCommandRows;
+    }
+
+    /**
+     * <p>Sets the number of rows of every item of COMMAND subscriptions from the next
+     * subscription.</p>
+     * @param commandRows is the number of rows.
+     * @throws IllegalArgumentException when the number is negative.
+     */
+    public void setCommandRows(int commandRows)
+    {
+        if (commandRows < 0)
+            throw new IllegalArgumentException("The number of rows cannot be negative");
+        mCommandRows = commandRows;
+    }
+
+    /**
+     * <p>Returns the number of open sessions.</p>
+     * @return the number of sessions.
+     */
+    public int getSessionCount()
+    {
+        return mSessions.size();
+    }
+
+    /**
+     * <p>Returns the number of updates sent after the snapshots since the server started.</p>
+     * @return the number of updates.
+     */
+    public long getUpdatesSent()
+    {
+        return mUpdates.get();
+    }
+    //endregion
+
+    /**
+     * <p>Returns the names of a number of items, from {@code item1} on.</p>
+     * @param count is the number of items.
+     * @return the names.
+     */
+    public static String[] items(int count)
+    {
+        String[] items = new String[count];
+        for (int i = 0; i < count; i++)
+            items[i] = "item" + (i + 1);
+        return items;
+    }
+
+    //region Package methods
+    /**
+     * <p>Counts updates sent by a session.</p>
+     * @param updates is the number of updates.
+     */
+    void countUpdates(int updates)
+    {
+        if (updates > 0)
+            mUpdates.addAndGet(updates);
+    }
+
+    /**
+     * <p>Forgets a closed session.</p>
+     * @param session is the session.
+     */
+    void remove(Session session)
+    {
+        mSessions.remove(session.getId());
+    }
+    //endregion
+
+    //region Private methods
+    /**
+     * <p>Accepts connections until the server is closed.</p>
+     * @param serverSocket is the listening socket.
+     * @param executor runs the connections.
+     */
+    private void accept(ServerSocket serverSocket, ExecutorService executor)
+    {
+        while (!serverSocket.isClosed())
+        {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (IOException ex) {
+                if (serverSocket.isClosed())
+                    return;
+            } catch (RuntimeException ex) {
+                // The executor was shut down while accepting.
+                return;
+            }
+        }
+    }
+
+    /**
+     * <p>Serves the requests of a connection until it is closed or it becomes the stream of a
+     * session, which then owns it until the session ends.</p>
+     * @param socket is the connection.
+     */
+    private void serve(Socket socket)
+    {
+        try {
+            InputStream inputStream = new BufferedInputStream(socket.getInputStream());
+            OutputStream outputStream = new BufferedOutputStream(socket.getOutputStream());
+            HttpRequest request;
+            while ((request = HttpRequest.read(inputStream)) != null)
+            {
+                String path = request.getPath();
+                if (request.getHeader("Upgrade") != null)
+                {
+                    respond(outputStream, 501, "text/plain", "WebSocket is not supported");
+                    break;
+                }
+                else if (path.endsWith("/create_session.txt") || path.endsWith("/bind_session.txt"))
+                {
+                    stream(socket, inputStream, outputStream, request);
+                    break;
+                }
+                else if (path.endsWith("/control.txt"))
+                    control(outputStream, request);
+                else
+                    respond(outputStream, 404, "text/plain", "Not found");
+            }
+        } catch (SocketException ignored) {
+            // The client or the server closed the connection.
+        } catch (IOException ignored) {
+            // Malformed requests close the connection.
+        } finally {
+            Session.closeQuietly(socket);
+        }
+    }
+
+    /**
+     * <p>Creates or binds a session and streams it until the client closes the connection or the
+     * session ends.</p>
+     * @param socket is the connection.
+     * @param inputStream is the stream of the requests.
+     * @param outputStream is the stream of the responses.
+     * @param request is the request.
+     * @throws IOException when the connection fails.
+     */
+    private void stream(Socket socket, InputStream inputStream, OutputStream outputStream, HttpRequest request)
+            throws IOException
+    {
+        Map<String, String> parameters = request.getRequests().get(0);
+        Session session;
+        if (request.getPath().endsWith("/bind_session.txt"))
+        {
+            session = mSessions.get(String.valueOf(parameters.get("LS_session")));
+            if (session == null)
+            {
+                respond(outputStream, 200, "text/enriched", "END,41,Unknown session\r\n");
+                return;
+            }
+        }
+        else
+        {
+            String protocol = parameters.get("LS_protocol");
+            String id = "S" + Integer.toHexString(mSessionIds.incrementAndGet());
+            session = protocol != null && protocol.startsWith("TLCP") ? new TlcpSession(id, this) :
+                    new LegacySession(id, this);
+            mSessions.put(id, session);
+        }
+        outputStream.write(("HTTP/1.1 200 OK\r\n" +
+                "Content-Type: text/enriched; charset=UTF-8\r\n" +
+                "Cache-Control: no-store\r\n" +
+                "Connection: close\r\n\r\n").getBytes(UTF_8));
+        session.bind(socket, outputStream);
+        try {
+            while (inputStream.read() != -1)
+            {
+                // The client does not send anything else on the stream.
+            }
+        } finally {
+            if (session.isBoundTo(socket))
+                session.close();
+        }
+    }
+
+    /**
+     * <p>Serves the control requests of a connection.</p>
+     * @param outputStream is the stream of the responses.
+     * @param request is the request.
+     * @throws IOException when the connection fails.
+     */
+    private void control(OutputStream outputStream, HttpRequest request) throws IOException
+    {
+        List<Map<String, String>> requests = request.getRequests();
+        StringBuilder body = new StringBuilder();
+        for (Map<String, String> parameters : requests)
+        {
+            Session session = mSessions.get(String.valueOf(parameters.get("LS_session")));
+            if (session == null)
+                body.append(parameters.containsKey("LS_reqId") ?
+                        "REQERR," + parameters.get("LS_reqId") + ",20,Unknown session" : "SYNC ERROR");
+            else
+                body.append(session.control(parameters));
+            body.append("\r\n");
+        }
+        respond(outputStream, 200, "text/enriched", body.toString());
+    }
+
+    /**
+     * <p>Writes a whole response.</p>
+     * @param outputStream is the stream of the responses.
+     * @param status is the status code.
+     * @param contentType is the type of the body.
+     * @param body is the body.
+     * @throws IOException when the connection fails.
+     */
+    private static void respond(OutputStream outputStream, int status, String contentType, String body)
+            throws IOException
+    {
+        byte[] bytes = body.getBytes(UTF_8);
+        String reason = status == 200 ? "OK" : status == 404 ? "Not Found" : "Not Implemented";
+        outputStream.write(("HTTP/1.1 " + status + " " + reason + "\r\n" +
+                "Content-Type: " + contentType + "; charset=UTF-8\r\n" +
+                "Content-Length: " + bytes.length + "\r\n" +
+                "Cache-Control: no-store\r\n\r\n").getBytes(UTF_8));
+        outputStream.write(bytes);
+        outputStream.flush();
+    }
+    //endregion
+}
@@ -0,0 +1,228 @@
+package com.psa.rxlightstreamer.server;
+
+/**
+ * <p>This class is a subscription of a session of the {@link LoopbackServer}. It makes up the
+ * updates of its items with the feed of the server, at the rate of the server.</p>
+ * <p>COMMAND subscriptions add a fixed number of rows to every item, in the snapshot when the
+ * client asks for it, and then update the rows in turn.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class ServerSubscription {
+    static final String MERGE = "MERGE";
+    static final String DISTINCT = "DISTINCT";
+    static final String RAW = "RAW";
+    static final String COMMAND = "COMMAND";
+
+    private String mId;
+    private String mMode;
+    private String[] mItems, mFields;
+    private boolean mSnapshot;
+    private int mKeyPosition, mCommandPosition;
+    private int mRows;
+    private long[] mSequences;
+    private String[][] mValues;
+    /**
+     * <p>Rate the rounds are being sent at, when they started and how many rounds were sent at
+     * that time, so that a change of the rate of the server only applies from then on.</p>
+     */
+    private double mRate;
+    private long mRateStart, mRateRounds, mRounds;
+    private int mNextItem;
+
+    /**
+     * <p>Instantiates a subscription.</p>
+     * @param id is the identifier given by the client.
+     * @param mode is the mode.
+     * @param items is the items.
+     * @param fields is the fields.
+     * @param snapshot true when the client asked for the snapshot.
+     * @param rows is the number of rows of every item of COMMAND subscriptions.
+     * @throws IllegalArgumentException when the mode is unknown or a COMMAND subscription has no
+     * key or command field.
+     */
+    ServerSubscription(String id, String mode, String[] items, String[] fields, boolean snapshot, int rows)
+    {
+        if (!MERGE.equals(mode) && !DISTINCT.equals(mode) && !RAW.equals(mode) && !COMMAND.equals(mode))
+            throw new IllegalArgumentException("Unknown mode " + mode);
+        mId = id;
+        mMode = mode;
+        mItems = items;
+        mFields = fields;
+        mSnapshot = snapshot && !RAW.equals(mode);
+        mKeyPosition = indexOf(fields, "key") + 1;
+        mCommandPosition = indexOf(fields, "command") + 1;
+        if (COMMAND.equals(mode) && (mKeyPosition == 0 || mCommandPosition == 0))
+            throw new IllegalArgumentException("COMMAND subscriptions need the key and command fields");
+        mRows = rows;
+        mSequences = new long[items.length];
+        mValues = new String[items.length][];
+        for (int i = 0; i < items.length; i++)
+            mValues[i] = new String[fields.length];
+    }
+
+    //region Getters
+    /**
+     * <p>Returns the identifier given by the client.</p>
+     * @return the identifier.
+     */
+    String getId()
+    {
+        return mId;
+    }
+
+    /**
+     * <p>Returns the mode of the subscription.</p>
+     * @return the mode.
+     */
+    String getMode()
+    {
+        return mMode;
+    }
+
+    /**
+     * <p>Returns the number of items.</p>
+     * @return the number of items.
+     */
+    int getItemCount()
+    {
+        return mItems.length;
+    }
+
+    /**
+     * <p>Returns the number of fields.</p>
+     * @return the number of fields.
+     */
+    int getFieldCount()
+    {
+        return mFields.length;
+    }
+
+    /**
+     * <p>Returns the position of the key field.</p>
+     * @return the position, starting at 1, or 0 when there is no key field.
+     */
+    int getKeyPosition()
+    {
+        return mKeyPosition;
+    }
+
+    /**
+     * <p>Returns the position of the command field.</p>
+     * @return the position, starting at 1, or 0 when there is no command field.
+     */
+    int getCommandPosition()
+    {
+        return mCommandPosition;
+    }
+    //endregion
+
+    //region Publishing
+    /**
+     * <p>Sends the snapshot of every item, if the client asked for it.</p>
+     * @param session is the session of the subscription.
+     * @param feed is the feed of the values.
+     */
+    void sendSnapshot(Session session, ItemFeed feed)
+    {
+        if (!mSnapshot)
+            return;
+        for (int item = 1; item <= mItems.length; item++)
+        {
+            if (COMMAND.equals(mMode))
+                for (int row = 1; row <= mRows; row++)
+                    send(session, feed, item, row, "ADD");
+            else
+                send(session, feed, item, 0, null);
+            if (!MERGE.equals(mMode))
+                session.writeEndOfSnapshot(this, item);
+        }
+    }
+
+    /**
+     * <p>Sends the updates that are due at the given rate, one item after another. When the
+     * session falls behind by more than one second of updates, the late ones are dropped.</p>
+     * @param session is the session of the subscription.
+     * @param feed is the feed of the values.
+     * @param rate is the number of updates per second of every item.
+     * @param now is the current time, as given by {@link System#nanoTime()}.
+     * @return the number of updates sent.
+     */
+    int publish(Session session, ItemFeed feed, double rate, long now)
+    {
+        if (rate != mRate)
+        {
+            mRate = rate;
+            mRateStart = now;
+            mRateRounds = mRounds;
+        }
+        if (rate <= 0 || mItems.length == 0)
+            return 0;
+        long dueRounds = mRateRounds + (long) ((now - mRateStart) * rate / 1000000000L);
+        if (dueRounds - mRounds > Math.max(rate, 1))
+        {
+            mRateStart = now;
+            mRateRounds = mRounds;
+            dueRounds = mRounds;
+        }
+        long dueUpdates = (dueRounds - mRounds) * mItems.length;
+        int sent = 0;
+        for (long i = 0; i < dueUpdates; i++)
+        {
+            int item = mNextItem + 1;
+            long sequence = mSequences[mNextItem];
+            if (COMMAND.equals(mMode) && mRows > 0)
+                send(session, feed, item, (int) (sequence % mRows) + 1, sequence < mRows ? "ADD" : "UPDATE");
+            else
+                send(session, feed, item, 0, null);
+            sent++;
+            mNextItem = (mNextItem + 1) % mItems.length;
+        }
+        mRounds = dueRounds;
+        return sent;
+    }
+    //endregion
+
+    /**
+     * <p>Makes up an update and sends it, marking the fields whose value changed.</p>
+     * @param session is the session.
+     * @param feed is the feed.
+     * @param item is the position of the item, starting at 1.
+     * @param row is the row of COMMAND subscriptions, starting at 1, or 0.
+     * @param command is the command of COMMAND subscriptions, or null.
+     */
+    private void send(Session session, ItemFeed feed, int item, int row, String command)
+    {
+        long sequence = mSequences[item - 1]++;
+        String itemName = row > 0 ? mItems[item - 1] + "/key" + row : mItems[item - 1];
+        String[] lastValues = mValues[item - 1];
+        String[] values = new String[mFields.length];
+        boolean[] changedFields = new boolean[mFields.length];
+        for (int i = 0; i < mFields.length; i++)
+        {
+            if (i + 1 == mKeyPosition && row > 0)
+                values[i] = "key" + row;
+            else if (i + 1 == mCommandPosition && command != null)
+                values[i] = command;
+            else
+                values[i] = feed.getValue(itemName, mFields[i], sequence);
+            changedFields[i] = sequence == 0 || (values[i] == null ? lastValues[i] != null : !values[i].equals(lastValues[i]));
+            lastValues[i] = values[i];
+        }
+        session.writeUpdate(this, item, values, changedFields);
+    }
+
+    /**
+     * <p>Returns the index of a field.</p>
+     * @param fields is the fields.
+     * @param field is the field.
+     * @return the index, or -1 when it is missing.
+     */
+    private static int indexOf(String[] fields, String field)
+    {
+        for (int i = 0; i < fields.length; i++)
+            if (fields[i].equals(field))
+                return i;
+        return -1;
+    }
+}
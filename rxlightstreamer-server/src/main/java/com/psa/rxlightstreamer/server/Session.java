@@ -0,0 +1,278 @@
+package com.psa.rxlightstreamer.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>This class is a session of the {@link LoopbackServer}. It owns the stream connection of a
+ * client, where the messages of its subscriptions are written, and a thread that publishes the
+ * updates of the subscriptions at the rate of the server.</p>
+ * <p>Messages are gathered while the lock of the session is held and written to the stream in a
+ * single write every millisecond, or as soon as a request of the client is served. Subclasses
+ * encode the messages of each protocol.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+abstract class Session implements Runnable {
+    static final int KEEPALIVE_MILLIS = 5000;
+    static final int REQUEST_LIMIT = 50000;
+    private static final long TICK_NANOS = 1000000L;
+    private static final long PROBE_NANOS = KEEPALIVE_MILLIS / 2 * 1000000L;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String mId;
+    private final LoopbackServer mServer;
+    private final Map<String, ServerSubscription> mSubscriptions = new LinkedHashMap<>();
+    private final StringBuilder mPending = new StringBuilder();
+    private Socket mSocket;
+    private OutputStream mOutputStream;
+    private long mLastWrite;
+    private Thread mPublisher;
+    private volatile boolean mClosed;
+
+    /**
+     * <p>Instantiates a session.</p>
+     * @param id is the identifier of the session.
+     * @param server is the server.
+     */
+    Session(String id, LoopbackServer server)
+    {
+        mId = id;
+        mServer = server;
+    }
+
+    //region Getters
+    /**
+     * <p>Returns the identifier of the session.</p>
+     * @return the identifier.
+     */
+    String getId()
+    {
+        return mId;
+    }
+
+    /**
+     * <p>Returns the server of the session.</p>
+     * @return the server.
+     */
+    LoopbackServer getServer()
+    {
+        return mServer;
+    }
+
+    /**
+     * <p>Tells whether the session was closed.</p>
+     * @return true when the session is closed.
+     */
+    boolean isClosed()
+    {
+        return mClosed;
+    }
+    //endregion
+
+    //region Lifecycle
+    /**
+     * <p>Makes a connection the stream of the session, closing the previous one, and starts
+     * publishing.</p>
+     * @param socket is the connection.
+     * @param outputStream is the stream of the connection, where the response headers were
+     *                     already written.
+     */
+    synchronized void bind(Socket socket, OutputStream outputStream)
+    {
+        if (mSocket != null)
+            closeQuietly(mSocket);
+        mSocket = socket;
+        mOutputStream = outputStream;
+        writeStart();
+        flush();
+        if (mPublisher == null)
+        {
+            mPublisher = new Thread(this, "LoopbackServer-" + mId);
+            mPublisher.setDaemon(true);
+            mPublisher.start();
+        }
+    }
+
+    /**
+     * <p>Tells whether a connection is the stream of the session.</p>
+     * @param socket is the connection.
+     * @return true when it is the stream.
+     */
+    synchronized boolean isBoundTo(Socket socket)
+    {
+        return mSocket == socket;
+    }
+
+    /**
+     * <p>Ends the session, telling the client when the stream is still open.</p>
+     */
+    void close()
+    {
+        synchronized (this)
+        {
+            if (mClosed)
+                return;
+            mClosed = true;
+            writeEnd();
+            flush();
+            if (mSocket != null)
+                closeQuietly(mSocket);
+            mSubscriptions.clear();
+        }
+        mServer.remove(this);
+        if (mPublisher != null)
+            LockSupport.unpark(mPublisher);
+    }
+
+    @Override
+    public void run()
+    {
+        while (!mClosed)
+        {
+            synchronized (this)
+            {
+                long now = System.nanoTime();
+                double rate = mServer.getUpdateRate();
+                int sent = 0;
+                for (ServerSubscription subscription : new ArrayList<>(mSubscriptions.values()))
+                    sent += subscription.publish(this, mServer.getFeed(), rate, now);
+                mServer.countUpdates(sent);
+                if (mPending.length() == 0 && now - mLastWrite > PROBE_NANOS)
+                    writeProbe();
+                flush();
+            }
+            LockSupport.parkNanos(TICK_NANOS);
+        }
+    }
+    //endregion
+
+    //region Requests
+    /**
+     * <p>Serves a control request of the client.</p>
+     * @param request is the parameters of the request.
+     * @return the response.
+     */
+    abstract String control(Map<String, String> request);
+
+    /**
+     * <p>Adds a subscription and sends its snapshot.</p>
+     * @param subscription is the subscription.
+     */
+    synchronized void subscribe(ServerSubscription subscription)
+    {
+        if (mClosed)
+            return;
+        mSubscriptions.put(subscription.getId(), subscription);
+        writeSubscribed(subscription);
+        subscription.sendSnapshot(this, mServer.getFeed());
+        flush();
+    }
+
+    /**
+     * <p>Removes a subscription.</p>
+     * @param id is the identifier of the subscription.
+     */
+    synchronized void unsubscribe(String id)
+    {
+        ServerSubscription subscription = mSubscriptions.remove(id);
+        if (subscription == null)
+            return;
+        writeUnsubscribed(subscription);
+        flush();
+    }
+    //endregion
+
+    //region Messages
+    /**
+     * <p>Writes the first messages of a stream.</p>
+     */
+    abstract void writeStart();
+
+    /**
+     * <p>Writes that a subscription was added.</p>
+     * @param subscription is the subscription.
+     */
+    abstract void writeSubscribed(ServerSubscription subscription);
+
+    /**
+     * <p>Writes an update.</p>
+     * @param subscription is the subscription.
+     * @param item is the position of the item, starting at 1.
+     * @param values is the values of the update.
+     * @param changedFields is the fields whose value changed since the previous update of the
+     *                      item.
+     */
+    abstract void writeUpdate(ServerSubscription subscription, int item, String[] values, boolean[] changedFields);
+
+    /**
+     * <p>Writes the end of the snapshot of an item.</p>
+     * @param subscription is the subscription.
+     * @param item is the position of the item, starting at 1.
+     */
+    abstract void writeEndOfSnapshot(ServerSubscription subscription, int item);
+
+    /**
+     * <p>Writes that a subscription was removed.</p>
+     * @param subscription is the subscription.
+     */
+    abstract void writeUnsubscribed(ServerSubscription subscription);
+
+    /**
+     * <p>Writes a keepalive.</p>
+     */
+    abstract void writeProbe();
+
+    /**
+     * <p>Writes the end of the session.</p>
+     */
+    abstract void writeEnd();
+
+    /**
+     * <p>Adds a message to the stream. It must be called holding the lock of the session.</p>
+     * @param message is the message, without its line end.
+     */
+    void write(CharSequence message)
+    {
+        mPending.append(message).append("\r\n");
+    }
+    //endregion
+
+    /**
+     * <p>Writes the gathered messages to the stream, closing the session when it fails.</p>
+     */
+    private void flush()
+    {
+        if (mPending.length() == 0 || mOutputStream == null)
+            return;
+        byte[] bytes = mPending.toString().getBytes(UTF_8);
+        mPending.setLength(0);
+        try {
+            mOutputStream.write(bytes);
+            mOutputStream.flush();
+            mLastWrite = System.nanoTime();
+        } catch (IOException ex) {
+            mOutputStream = null;
+            if (!mClosed)
+                close();
+        }
+    }
+
+    /**
+     * <p>Closes a connection, ignoring errors.</p>
+     * @param socket is the connection.
+     */
+    static void closeQuietly(Socket socket)
+    {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.psa.rxlightstreamer.server;
+
+/**
+ * <p>This feed makes up prices that move on every update. Fields named {@code timestamp} get the
+ * time the update is sent, in milliseconds since the epoch, so that the latency can be measured
+ * on the client.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class SyntheticFeed implements ItemFeed {
+    public static final String TIMESTAMP_FIELD = "timestamp";
+
+    @Override
+    public String getValue(String itemName, String fieldName, long sequence) {
+        if (TIMESTAMP_FIELD.equals(fieldName))
+            return String.valueOf(System.currentTimeMillis());
+        long seed = (itemName.hashCode() * 31L + fieldName.hashCode()) & 0x7FFFFFFFL;
+        long cents = 1000 + (seed + sequence * 37) % 9000;
+        StringBuilder value = new StringBuilder(8);
+        value.append(cents / 100).append('.');
+        if (cents % 100 < 10)
+            value.append('0');
+        return value.append(cents % 100).toString();
+    }
+}
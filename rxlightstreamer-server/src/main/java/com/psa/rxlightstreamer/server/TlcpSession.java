@@ -0,0 +1,132 @@
+package com.psa.rxlightstreamer.server;
+
+import java.util.Map;
+
+/**
+ * <p>This class is a session of the TLCP protocol, the one of the unified API clients.</p>
+ * <p>Updates only carry the values that changed, leaving the unchanged ones empty, and values are
+ * percent encoded where they could be mistaken for the separators of the protocol.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class TlcpSession extends Session {
+    private static final String HEX = "0123456789ABCDEF";
+
+    /**
+     * <p>Instantiates a session.</p>
+     * @param id is the identifier of the session.
+     * @param server is the server.
+     */
+    TlcpSession(String id, LoopbackServer server)
+    {
+        super(id, server);
+    }
+
+    @Override
+    String control(Map<String, String> request) {
+        String requestId = request.get("LS_reqId");
+        String operation = request.get("LS_op");
+        if ("add".equals(operation))
+        {
+            String subscriptionId = request.get("LS_subId");
+            String group = request.get("LS_group");
+            String schema = request.get("LS_schema");
+            if (subscriptionId == null || group == null || schema == null)
+                return "REQERR," + requestId + ",15,Missing subscription parameters";
+            String snapshot = request.get("LS_snapshot");
+            try {
+                subscribe(new ServerSubscription(subscriptionId, request.get("LS_mode"), group.split(" "),
+                        schema.split(" "), snapshot != null && !"false".equals(snapshot), getServer().getCommandRows()));
+            } catch (IllegalArgumentException ex) {
+                return "REQERR," + requestId + ",24," + ex.getMessage();
+            }
+        }
+        else if ("delete".equals(operation))
+            unsubscribe(request.get("LS_subId"));
+        else if ("destroy".equals(operation))
+            close();
+        return "REQOK" + (requestId != null ? "," + requestId : "");
+    }
+
+    @Override
+    void writeStart() {
+        write("CONOK," + getId() + "," + REQUEST_LIMIT + "," + KEEPALIVE_MILLIS + ",*");
+        write("SERVNAME,Loopback");
+        write("CLIENTIP,127.0.0.1");
+        write("CONS,unlimited");
+    }
+
+    @Override
+    void writeSubscribed(ServerSubscription subscription) {
+        if (ServerSubscription.COMMAND.equals(subscription.getMode()))
+            write("SUBCMD," + subscription.getId() + "," + subscription.getItemCount() + "," +
+                    subscription.getFieldCount() + "," + subscription.getKeyPosition() + "," +
+                    subscription.getCommandPosition());
+        else
+            write("SUBOK," + subscription.getId() + "," + subscription.getItemCount() + "," +
+                    subscription.getFieldCount());
+    }
+
+    @Override
+    void writeUpdate(ServerSubscription subscription, int item, String[] values, boolean[] changedFields) {
+        StringBuilder message = new StringBuilder(16 + values.length * 8);
+        message.append("U,").append(subscription.getId()).append(',').append(item).append(',');
+        for (int i = 0; i < values.length; i++)
+        {
+            if (i > 0)
+                message.append('|');
+            if (changedFields[i])
+                encode(message, values[i]);
+        }
+        write(message);
+    }
+
+    @Override
+    void writeEndOfSnapshot(ServerSubscription subscription, int item) {
+        write("EOS," + subscription.getId() + "," + item);
+    }
+
+    @Override
+    void writeUnsubscribed(ServerSubscription subscription) {
+        write("UNSUB," + subscription.getId());
+    }
+
+    @Override
+    void writeProbe() {
+        write("PROBE");
+    }
+
+    @Override
+    void writeEnd() {
+        write("END,31,Session closed");
+    }
+
+    /**
+     * <p>Appends a value, with # for null, $ for the empty string, and percent encoding for the
+     * characters of the protocol.</p>
+     * @param message is the message.
+     * @param value is the value.
+     */
+    private static void encode(StringBuilder message, String value)
+    {
+        if (value == null)
+        {
+            message.append('#');
+            return;
+        }
+        if (value.isEmpty())
+        {
+            message.append('$');
+            return;
+        }
+        for (int i = 0; i < value.length(); i++)
+        {
+            char character = value.charAt(i);
+            if (character == '%' || character == '|' || character == '#' || character == '$' ||
+                    character == '+' || character == ',' || character < 0x20)
+                message.append('%').append(HEX.charAt(character >> 4)).append(HEX.charAt(character & 0xF));
+            else
+                message.append(character);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.psa.rxlightstreamer.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * <p>Feature: As a developer, I want a local LightStreamer server so that I can run integration
+ * and load tests of the clients without an external server.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class LoopbackServerTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private LoopbackServer mLoopbackServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mLoopbackServer = new LoopbackServer(new ItemFeed() {
+            @Override
+            public String getValue(String itemName, String fieldName, long sequence) {
+                return "ask".equals(fieldName) ? "1|0" : itemName + "-" + sequence;
+            }
+        });
+        mLoopbackServer.setUpdateRate(0);
+        mLoopbackServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mLoopbackServer.close();
+    }
+
+    /**
+     * <p>Sends a request and returns the connection.</p>
+     * @param path is the path of the request.
+     * @param body is the body of the request.
+     * @return the connection.
+     * @throws IOException when the request cannot be sent.
+     */
+    private Socket send(String path, String body) throws IOException
+    {
+        Socket socket = new Socket("127.0.0.1", mLoopbackServer.getPort());
+        socket.setSoTimeout(5000);
+        byte[] bytes = body.getBytes(UTF_8);
+        OutputStream outputStream = socket.getOutputStream();
+        outputStream.write(("POST " + path + " HTTP/1.1\r\n" +
+                "Host: 127.0.0.1\r\n" +
+                "Content-Type: application/x-www-form-urlencoded\r\n" +
+                "Content-Length: " + bytes.length + "\r\n\r\n").getBytes(UTF_8));
+        outputStream.write(bytes);
+        outputStream.flush();
+        return socket;
+    }
+
+    /**
+     * <p>Reads the lines of a response after its headers.</p>
+     * @param socket is the connection.
+     * @return the reader of the body.
+     * @throws IOException when the response cannot be read.
+     */
+    private static BufferedReader body(Socket socket) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+        assertTrue(reader.readLine().startsWith("HTTP/1.1 200"));
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty())
+        {
+            // Headers.
+        }
+        return reader;
+    }
+
+    /**
+     * <p>Scenario: Unified clients get their snapshot and updates.</p>
+     * <p>Given a session of the TLCP protocol
+     * When a DISTINCT subscription with snapshot is added and the server sends updates
+     * Then the client gets the subscription, the snapshot, its end, the updates with the
+     * unchanged values left empty and the unsubscription.</p>
+     */
+    @Test
+    public void testTlcpSessionsStreamSubscriptions()
+    {
+        try {
+            Socket stream = send("/lightstreamer/create_session.txt?LS_protocol=TLCP-2.0.0",
+                    "LS_adapter_set=DEMO&LS_cid=test");
+            BufferedReader reader = body(stream);
+            String conok = reader.readLine();
+            assertTrue(conok.startsWith("CONOK,"));
+            String session = conok.split(",")[1];
+            assertEquals(1, mLoopbackServer.getSessionCount());
+
+            Socket control = send("/lightstreamer/control.txt?LS_protocol=TLCP-2.0.0&LS_session=" + session,
+                    "LS_reqId=1&LS_op=add&LS_subId=7&LS_mode=DISTINCT&LS_group=item1+item2&LS_schema=bid+ask&LS_snapshot=true");
+            assertEquals("REQOK,1", body(control).readLine());
+            control.close();
+            String line;
+            while ((line = reader.readLine()).startsWith("SERVNAME") || line.startsWith("CLIENTIP") ||
+                    line.startsWith("CONS"))
+            {
+                // Session information.
+            }
+            assertEquals("SUBOK,7,2,2", line);
+            assertEquals("U,7,1,item1-0|1%7C0", reader.readLine());
+            assertEquals("EOS,7,1", reader.readLine());
+            assertEquals("U,7,2,item2-0|1%7C0", reader.readLine());
+            assertEquals("EOS,7,2", reader.readLine());
+
+            mLoopbackServer.setUpdateRate(1000);
+            String update = reader.readLine();
+            assertTrue(update, update.equals("U,7,1,item1-1|") || update.equals("U,7,2,item2-1|"));
+            mLoopbackServer.setUpdateRate(0);
+
+            control = send("/lightstreamer/control.txt?LS_protocol=TLCP-2.0.0&LS_session=" + session,
+                    "LS_reqId=2&LS_op=delete&LS_subId=7\r\nLS_reqId=3&LS_op=destroy");
+            BufferedReader controlReader = body(control);
+            assertEquals("REQOK,2", controlReader.readLine());
+            assertEquals("REQOK,3", controlReader.readLine());
+            control.close();
+            while (!(line = reader.readLine()).startsWith("UNSUB"))
+                assertTrue(line, line.startsWith("U,7,"));
+            assertEquals("UNSUB,7", line);
+            assertEquals("END,31,Session closed", reader.readLine());
+            stream.close();
+            assertEquals(0, mLoopbackServer.getSessionCount());
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Non unified clients get their tables.</p>
+     * <p>Given a session of the text protocol of the non unified clients
+     * When a COMMAND table with snapshot is added
+     * Then the client gets a row added for every key and the end of the snapshot.</p>
+     */
+    @Test
+    public void testLegacySessionsStreamTables()
+    {
+        try {
+            mLoopbackServer.setCommandRows(2);
+            Socket stream = send("/lightstreamer/create_session.txt", "LS_adapter_set=DEMO&LS_user=test");
+            BufferedReader reader = body(stream);
+            assertEquals("OK", reader.readLine());
+            String session = reader.readLine().substring("SessionId:".length());
+            String line;
+            while (!(line = reader.readLine()).isEmpty())
+                assertTrue(line, line.contains(":"));
+
+            Socket control = send("/lightstreamer/control.txt",
+                    "LS_session=" + session + "&LS_table=3&LS_op=add&LS_mode=COMMAND&LS_id=portfolio" +
+                    "&LS_schema=key+command+qty&LS_snapshot=true");
+            assertEquals("OK", body(control).readLine());
+            control.close();
+            assertEquals("3,1|key1|ADD|portfolio/key1-0", reader.readLine());
+            assertEquals("3,1|key2||portfolio/key2-1", reader.readLine());
+            assertEquals("3,1,EOS", reader.readLine());
+            stream.close();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Subscriptions of unknown sessions are refused.</p>
+     * <p>Given the server has no session
+     * When a subscription is added
+     * Then an error is returned.</p>
+     */
+    @Test
+    public void testUnknownSessionsAreRefused()
+    {
+        try {
+            Socket control = send("/lightstreamer/control.txt?LS_protocol=TLCP-2.0.0&LS_session=S99",
+                    "LS_reqId=1&LS_op=add&LS_subId=1&LS_mode=MERGE&LS_group=item1&LS_schema=bid");
+            assertEquals("REQERR,1,20,Unknown session", body(control).readLine());
+            control.close();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.psa.rxlightstreamer.core;
+
+/**
+ * <p>This class is a sample of the bandwidth a client uses: the bytes it has received and the rate
+ * it receives them at.</p>
+ * <p>The rate is a moving average that forgets past samples exponentially, so that short bursts do
+ * not trigger alerts. The rate of the last interval between samples is also available.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class Bandwidth {
+    private final long mTimestamp;
+    private final long mBytes;
+    private final double mBytesPerSecond;
+    private final double mLastBytesPerSecond;
+
+    /**
+     * <p>Instantiates a sample.</p>
+     * @param timestamp is the time of the sample, in milliseconds.
+     * @param bytes is the number of bytes received.
+     * @param bytesPerSecond is the moving average of the rate.
+     * @param lastBytesPerSecond is the rate since the previous sample.
+     */
+    Bandwidth(long timestamp, long bytes, double bytesPerSecond, double lastBytesPerSecond)
+    {
+        mTimestamp = timestamp;
+        mBytes = bytes;
+        mBytesPerSecond = bytesPerSecond;
+        mLastBytesPerSecond = lastBytesPerSecond;
+    }
+
+    //region Getters
+    /**
+     * <p>Returns when the sample was taken.</p>
+     * @return the time of the sample, in milliseconds.
+     */
+    public long getTimestamp()
+    {
+        return mTimestamp;
+    }
+
+    /**
+     * <p>Returns the number of bytes the client has received.</p>
+     * @return the number of bytes.
+     */
+    public long getBytes()
+    {
+        return mBytes;
+    }
+
+    /**
+     * <p>Returns the moving average of the rate.</p>
+     * @return the rate in bytes per second.
+     */
+    public double getBytesPerSecond()
+    {
+        return mBytesPerSecond;
+    }
+
+    /**
+     * <p>Returns the moving average of the rate in the unit of the bandwidth limits of
+     * LightStreamer, to compare it with the limit granted by the server or to request a new
+     * one.</p>
+     * @return the rate in kilobits per second.
+     */
+    public double getKilobitsPerSecond()
+    {
+        return mBytesPerSecond * 8 / 1000;
+    }
+
+    /**
+     * <p>Returns the rate since the previous sample.</p>
+     * @return the rate in bytes per second.
+     */
+    public double getLastBytesPerSecond()
+    {
+        return mLastBytesPerSecond;
+    }
+    //endregion
+
+    @Override
+    public String toString()
+    {
+        return "Bandwidth{bytes=" + mBytes + ", bytesPerSecond=" + mBytesPerSecond +
+                ", lastBytesPerSecond=" + mLastBytesPerSecond + "}";
+    }
+}
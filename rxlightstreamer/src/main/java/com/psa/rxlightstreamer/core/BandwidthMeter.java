@@ -0,0 +1,69 @@
+package com.psa.rxlightstreamer.core;
+
+/**
+ * <p>This class turns the bytes a client has received into {@link Bandwidth bandwidth samples}.
+ * The rate is an exponentially weighted moving average whose weights follow the time between
+ * samples, so that samples taken at irregular intervals, by observers and by direct calls, are
+ * averaged correctly.</p>
+ * <p>The rate is measured from the first sample on.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class BandwidthMeter {
+    /**
+     * <p>Time constant of the moving average of the clients, in milliseconds. Samples older than
+     * this weigh less than a third of the average.</p>
+     */
+    static final long TIME_CONSTANT = 10000;
+
+    private final long mTimeConstant;
+    private boolean mStarted;
+    private boolean mAveraging;
+    private long mLastTime;
+    private long mLastBytes;
+    private double mBytesPerSecond;
+    private double mLastBytesPerSecond;
+
+    /**
+     * <p>Instantiates a meter.</p>
+     * @param timeConstant is the time constant of the moving average, in milliseconds.
+     */
+    BandwidthMeter(long timeConstant)
+    {
+        mTimeConstant = timeConstant;
+    }
+
+    /**
+     * <p>Takes a sample.</p>
+     * @param bytes is the number of bytes received so far.
+     * @param now is the current time, in milliseconds.
+     * @return the sample.
+     */
+    synchronized Bandwidth sample(long bytes, long now)
+    {
+        if (!mStarted)
+        {
+            mStarted = true;
+            mLastTime = now;
+            mLastBytes = bytes;
+        }
+        long elapsed = now - mLastTime;
+        if (elapsed > 0)
+        {
+            mLastBytesPerSecond = (bytes - mLastBytes) * 1000.0 / elapsed;
+            if (!mAveraging)
+            {
+                //The first interval starts the average, which would otherwise take a few time
+                //constants to grow from nothing.
+                mAveraging = true;
+                mBytesPerSecond = mLastBytesPerSecond;
+            }
+            else
+                mBytesPerSecond += (1 - Math.exp(-(double) elapsed / mTimeConstant)) *
+                        (mLastBytesPerSecond - mBytesPerSecond);
+            mLastTime = now;
+            mLastBytes = bytes;
+        }
+        return new Bandwidth(now, bytes, mBytesPerSecond, mLastBytesPerSecond);
+    }
+}
@@ -0,0 +1,175 @@
+package com.psa.rxlightstreamer.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * <p>This operator gathers the item images of a time window into a single batch, conflating them
+ * per item (or per row, in COMMAND subscriptions). Batches are emitted on the given scheduler, one
+ * per window at most, and only when the observer has asked for them. Windows with no updates emit
+ * nothing.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class BatchingOperator implements Observable.Operator<ItemBatch, ItemImage> {
+    private long mWindow;
+    private TimeUnit mUnit;
+    private Scheduler mScheduler;
+    private boolean mCommand;
+    private StripedCounter mQueueDepth;
+
+    /**
+     * <p>Instantiates the operator.</p>
+     * @param window is the length of the window.
+     * @param unit is the time unit of the window.
+     * @param scheduler is the scheduler where batches are emitted.
+     * @param command true when the images belong to a COMMAND subscription, so that they are
+     *                conflated by row instead of by item.
+     * @param queueDepth is the counter of the pending images, or null.
+     */
+    BatchingOperator(long window, TimeUnit unit, Scheduler scheduler, boolean command, StripedCounter queueDepth)
+    {
+        mWindow = window;
+        mUnit = unit;
+        mScheduler = scheduler;
+        mCommand = command;
+        mQueueDepth = queueDepth;
+    }
+
+    @Override
+    public Subscriber<? super ItemImage> call(Subscriber<? super ItemBatch> child)
+    {
+        Scheduler.Worker worker = mScheduler.createWorker();
+        BatchingSubscriber parent = new BatchingSubscriber(child, worker, mCommand, mQueueDepth);
+        child.add(worker);
+        child.add(parent);
+        child.setProducer(parent::requestMore);
+        worker.schedulePeriodically(parent::flush, mWindow, mWindow, mUnit);
+        return parent;
+    }
+
+    /**
+     * <p>This subscriber keeps the pending images and sends them as a batch at the end of every
+     * window.</p>
+     */
+    private static class BatchingSubscriber extends Subscriber<ItemImage>
+    {
+        private Subscriber<? super ItemBatch> mChild;
+        private Scheduler.Worker mWorker;
+        private ConflationBuffer mConflationBuffer;
+        private AtomicLong mRequested = new AtomicLong();
+        private AtomicReference<ItemBatch> mPool = new AtomicReference<>();
+        private volatile boolean mDone;
+        private volatile Throwable mError;
+        private boolean mTerminated;
+
+        /**
+         * <p>Instantiates the subscriber.</p>
+         * @param child is the subscriber that gets the batches.
+         * @param worker is the worker where batches are emitted.
+         * @param command true when images are conflated by row.
+         * @param queueDepth is the counter of the pending images, or null.
+         */
+        BatchingSubscriber(Subscriber<? super ItemBatch> child, Scheduler.Worker worker, boolean command,
+                           StripedCounter queueDepth)
+        {
+            mChild = child;
+            mWorker = worker;
+            mConflationBuffer = new ConflationBuffer(command, queueDepth);
+            add(Subscriptions.create(mConflationBuffer::clear));
+        }
+
+        @Override
+        public void onStart()
+        {
+            request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(ItemImage itemImage)
+        {
+            mConflationBuffer.add(itemImage);
+        }
+
+        @Override
+        public void onError(Throwable e)
+        {
+            mError = e;
+            mDone = true;
+            mWorker.schedule(this::flush);
+        }
+
+        @Override
+        public void onCompleted()
+        {
+            mDone = true;
+        }
+
+        /**
+         * <p>Adds to the number of batches requested by the child.</p>
+         * @param n is the number of batches requested.
+         */
+        void requestMore(long n)
+        {
+            if (n < 0)
+                throw new IllegalArgumentException("n >= 0 required but it was " + n);
+            long requested, next;
+            do
+            {
+                requested = mRequested.get();
+                next = requested + n;
+                if (next < 0)
+                    next = Long.MAX_VALUE;
+            } while (!mRequested.compareAndSet(requested, next));
+        }
+
+        /**
+         * <p>Sends the pending images as a batch if the child asked for it. It always runs on the
+         * worker, so the child gets the batches from a single thread.</p>
+         */
+        void flush()
+        {
+            if (mTerminated || mChild.isUnsubscribed())
+                return;
+            if (mError != null)
+            {
+                terminate(mError);
+                return;
+            }
+            boolean done = mDone;
+            long requested = mRequested.get();
+            if (requested > 0 && !mConflationBuffer.isEmpty())
+            {
+                ItemBatch itemBatch = mPool.getAndSet(null);
+                if (itemBatch == null)
+                    itemBatch = new ItemBatch(mPool);
+                mConflationBuffer.drainTo(itemBatch);
+                if (requested != Long.MAX_VALUE)
+                    mRequested.decrementAndGet();
+                mChild.onNext(itemBatch);
+            }
+            if (done && mConflationBuffer.isEmpty())
+                terminate(null);
+        }
+
+        /**
+         * <p>Ends the child and stops the windows.</p>
+         * @param throwable is the error to send, or null to complete.
+         */
+        private void terminate(Throwable throwable)
+        {
+            mTerminated = true;
+            if (throwable == null)
+                mChild.onCompleted();
+            else
+                mChild.onError(throwable);
+            mWorker.unsubscribe();
+        }
+    }
+}
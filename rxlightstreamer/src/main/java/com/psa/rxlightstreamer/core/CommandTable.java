@@ -0,0 +1,172 @@
+package com.psa.rxlightstreamer.core;
+
+import com.psa.rxlightstreamer.helpers.TableChangeType;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import rx.Observable;
+import rx.subjects.PublishSubject;
+
+/**
+ * <p>This class is the materialized table of a COMMAND subscription. It keeps the rows of every
+ * item in a hash map indexed by the key field, so every command is applied in constant time no
+ * matter how big the table is, and it emits the changes of the table instead of the whole
+ * table.</p>
+ * <p>Commands are applied on the LightStreamer thread. Rows can be read from any thread; each row
+ * is an immutable image that is replaced when the row is updated.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class CommandTable {
+    //region Private fields
+    private ItemRoutingTable<?> mItemRoutingTable;
+    private Map<String, ItemImage>[] mRows;
+    private volatile PublishSubject<TableChange> mChangeSubject;
+    private Observable<TableChange> mChangeObservable;
+    //endregion
+
+    /**
+     * <p>Instantiates a table.</p>
+     * @param itemRoutingTable is the routing table of the subscription, used to find the items by
+     *                         name.
+     * @param itemCount is the number of items of the subscription.
+     */
+    @SuppressWarnings("unchecked")
+    CommandTable(ItemRoutingTable<?> itemRoutingTable, int itemCount)
+    {
+        mItemRoutingTable = itemRoutingTable;
+        mRows = new Map[itemCount];
+        for (int i = 0; i < itemCount; i++)
+            mRows[i] = new ConcurrentHashMap<>();
+        mChangeSubject = PublishSubject.create();
+        mChangeObservable = Observable.defer(() -> mChangeSubject);
+    }
+
+    //region Getters
+    /**
+     * <p>Returns an observable of the changes of the table. It completes when the subscription is
+     * unsubscribed, after the rows are removed.</p>
+     * @return the observable of the changes.
+     */
+    public Observable<TableChange> getChangeObservable()
+    {
+        return mChangeObservable;
+    }
+
+    /**
+     * <p>Returns a row.</p>
+     * @param itemPosition is the position of the item, starting at 1.
+     * @param key is the key of the row.
+     * @return the image of the row, or null when there is no such row.
+     * @throws IllegalArgumentException when the position is out of range.
+     */
+    public ItemImage getRow(int itemPosition, String key)
+    {
+        return getRows(itemPosition).get(key);
+    }
+
+    /**
+     * <p>Returns a row.</p>
+     * @param itemName is the name of the item.
+     * @param key is the key of the row.
+     * @return the image of the row, or null when there is no such row.
+     * @throws IllegalArgumentException when the item does not belong to the subscription.
+     */
+    public ItemImage getRow(String itemName, String key)
+    {
+        return getRow(mItemRoutingTable.getPosition(itemName), key);
+    }
+
+    /**
+     * <p>Returns the rows of an item.</p>
+     * @param itemPosition is the position of the item, starting at 1.
+     * @return a read only view of the rows of the item.
+     * @throws IllegalArgumentException when the position is out of range.
+     */
+    public Collection<ItemImage> getItemRows(int itemPosition)
+    {
+        return Collections.unmodifiableCollection(getRows(itemPosition).values());
+    }
+
+    /**
+     * <p>Returns the number of rows of an item.</p>
+     * @param itemPosition is the position of the item, starting at 1.
+     * @return the number of rows.
+     * @throws IllegalArgumentException when the position is out of range.
+     */
+    public int size(int itemPosition)
+    {
+        return getRows(itemPosition).size();
+    }
+    //endregion
+
+    //region Commands
+    /**
+     * <p>Applies the command of an update and emits the change. ADD and UPDATE insert the row when
+     * the key is new and update it otherwise; DELETE removes it.</p>
+     * @param itemImage is the image of the update.
+     */
+    void apply(ItemImage itemImage)
+    {
+        Map<String, ItemImage> rows = getRows(itemImage.getItemPosition());
+        String key = itemImage.getValue(ItemImage.KEY_FIELD);
+        if (ItemImage.DELETE.equals(itemImage.getValue(ItemImage.COMMAND_FIELD)))
+        {
+            ItemImage removedRow = rows.remove(key);
+            if (removedRow != null)
+                mChangeSubject.onNext(new TableChange(TableChangeType.REMOVED, itemImage.getItemPosition(), key,
+                        removedRow));
+            return;
+        }
+        ItemImage previousRow = rows.get(key);
+        ItemImage row = itemImage.diff(previousRow);
+        rows.put(key, row);
+        mChangeSubject.onNext(new TableChange(previousRow == null ? TableChangeType.INSERTED : TableChangeType.UPDATED,
+                itemImage.getItemPosition(), key, row));
+    }
+
+    /**
+     * <p>Removes every row of an item.</p>
+     * @param itemPosition is the position of the item, starting at 1.
+     */
+    void clear(int itemPosition)
+    {
+        if (itemPosition < 1 || itemPosition > mRows.length)
+            return;
+        mRows[itemPosition - 1].clear();
+        mChangeSubject.onNext(new TableChange(TableChangeType.CLEARED, itemPosition, null, null));
+    }
+
+    /**
+     * <p>Removes every row and ends the change observable. New observers will get a new one.</p>
+     * @param throwable is the error to send, or null to complete the observable.
+     */
+    void terminate(Throwable throwable)
+    {
+        for (int i = 0; i < mRows.length; i++)
+            if (!mRows[i].isEmpty())
+                clear(i + 1);
+        PublishSubject<TableChange> changeSubject = mChangeSubject;
+        mChangeSubject = PublishSubject.create();
+        if (throwable == null)
+            changeSubject.onCompleted();
+        else
+            changeSubject.onError(throwable);
+    }
+    //endregion
+
+    /**
+     * <p>Returns the rows of an item.</p>
+     * @param itemPosition is the position of the item, starting at 1.
+     * @return the rows of the item indexed by key.
+     */
+    private Map<String, ItemImage> getRows(int itemPosition)
+    {
+        if (itemPosition < 1 || itemPosition > mRows.length)
+            throw new IllegalArgumentException("Item position out of range: " + itemPosition);
+        return mRows[itemPosition - 1];
+    }
+}
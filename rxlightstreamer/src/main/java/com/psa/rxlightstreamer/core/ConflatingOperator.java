@@ -0,0 +1,167 @@
+package com.psa.rxlightstreamer.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * <p>This operator conflates item images while the observer is not asking for more. Only the
+ * latest image of every item (or of every row, in COMMAND subscriptions) is kept, so the memory
+ * it uses is bounded by the number of items instead of the update rate.</p>
+ * <p>Images are delivered in the order their items first became pending.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class ConflatingOperator implements Observable.Operator<ItemImage, ItemImage> {
+    private boolean mCommand;
+    private StripedCounter mQueueDepth;
+
+    /**
+     * <p>Instantiates the operator.</p>
+     * @param command true when the images belong to a COMMAND subscription, so that they are
+     *                conflated by row instead of by item.
+     */
+    ConflatingOperator(boolean command)
+    {
+        this(command, null);
+    }
+
+    /**
+     * <p>Instantiates the operator.</p>
+     * @param command true when the images belong to a COMMAND subscription, so that they are
+     *                conflated by row instead of by item.
+     * @param queueDepth is the counter of the pending images, or null.
+     */
+    ConflatingOperator(boolean command, StripedCounter queueDepth)
+    {
+        mCommand = command;
+        mQueueDepth = queueDepth;
+    }
+
+    @Override
+    public Subscriber<? super ItemImage> call(Subscriber<? super ItemImage> child)
+    {
+        ConflatingSubscriber parent = new ConflatingSubscriber(child, mCommand, mQueueDepth);
+        child.add(parent);
+        child.setProducer(parent::requestMore);
+        return parent;
+    }
+
+    /**
+     * <p>This subscriber keeps the pending images and sends them as the child requests them.</p>
+     */
+    private static class ConflatingSubscriber extends Subscriber<ItemImage>
+    {
+        private Subscriber<? super ItemImage> mChild;
+        private ConflationBuffer mConflationBuffer;
+        private AtomicLong mRequested = new AtomicLong();
+        private AtomicInteger mWorkInProgress = new AtomicInteger();
+        private volatile boolean mDone;
+        private Throwable mError;
+
+        /**
+         * <p>Instantiates the subscriber.</p>
+         * @param child is the subscriber that gets the conflated images.
+         * @param command true when images are conflated by row.
+         * @param queueDepth is the counter of the pending images, or null.
+         */
+        ConflatingSubscriber(Subscriber<? super ItemImage> child, boolean command, StripedCounter queueDepth)
+        {
+            mChild = child;
+            mConflationBuffer = new ConflationBuffer(command, queueDepth);
+            add(Subscriptions.create(mConflationBuffer::clear));
+        }
+
+        @Override
+        public void onStart()
+        {
+            request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(ItemImage itemImage)
+        {
+            mConflationBuffer.add(itemImage);
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable e)
+        {
+            mError = e;
+            mDone = true;
+            drain();
+        }
+
+        @Override
+        public void onCompleted()
+        {
+            mDone = true;
+            drain();
+        }
+
+        /**
+         * <p>Adds to the number of images requested by the child.</p>
+         * @param n is the number of images requested.
+         */
+        void requestMore(long n)
+        {
+            if (n < 0)
+                throw new IllegalArgumentException("n >= 0 required but it was " + n);
+            if (n == 0)
+                return;
+            long requested, next;
+            do
+            {
+                requested = mRequested.get();
+                next = requested + n;
+                if (next < 0)
+                    next = Long.MAX_VALUE;
+            } while (!mRequested.compareAndSet(requested, next));
+            drain();
+        }
+
+        /**
+         * <p>Sends the pending images while the child asks for them. Only one thread drains at
+         * a time; the others leave the work to it.</p>
+         */
+        private void drain()
+        {
+            if (mWorkInProgress.getAndIncrement() != 0)
+                return;
+            int missed = 1;
+            do
+            {
+                long requested = mRequested.get();
+                long emitted = 0;
+                while (!mChild.isUnsubscribed())
+                {
+                    boolean done = mDone;
+                    ItemImage itemImage = null;
+                    if (emitted != requested)
+                        itemImage = mConflationBuffer.poll();
+                    if (done && itemImage == null && mConflationBuffer.isEmpty())
+                    {
+                        if (mError != null)
+                            mChild.onError(mError);
+                        else
+                            mChild.onCompleted();
+                        return;
+                    }
+                    if (itemImage == null)
+                        break;
+                    mChild.onNext(itemImage);
+                    emitted++;
+                }
+                if (mChild.isUnsubscribed())
+                    return;
+                if (emitted != 0 && requested != Long.MAX_VALUE)
+                    mRequested.addAndGet(-emitted);
+                missed = mWorkInProgress.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
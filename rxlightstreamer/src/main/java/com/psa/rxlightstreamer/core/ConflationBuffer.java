@@ -0,0 +1,197 @@
+package com.psa.rxlightstreamer.core;
+
+import com.psa.rxlightstreamer.helpers.SubscriptionType;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>This class keeps the pending image of every item (or of every row, in COMMAND subscriptions),
+ * merging newer images into the pending ones. Images are taken in the order their items first
+ * became pending.</p>
+ * <p>It is thread safe, so images can be added from the LightStreamer thread while they are
+ * taken from another one.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class ConflationBuffer {
+    /**
+     * <p>This class is the key of a pending image: its item and, in COMMAND subscriptions, the key
+     * of its row.</p>
+     */
+    private static final class RowKey {
+        private int mItemPosition;
+        private String mKey;
+
+        private RowKey(int itemPosition, String key)
+        {
+            set(itemPosition, key);
+        }
+
+        private RowKey set(int itemPosition, String key)
+        {
+            mItemPosition = itemPosition;
+            mKey = key;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof RowKey))
+                return false;
+            RowKey rowKey = (RowKey) o;
+            return mItemPosition == rowKey.mItemPosition &&
+                    (mKey == null ? rowKey.mKey == null : mKey.equals(rowKey.mKey));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * mItemPosition + (mKey == null ? 0 : mKey.hashCode());
+        }
+    }
+
+    private boolean mCommand;
+    private final Map<RowKey, ItemImage> mPendingImages = new LinkedHashMap<>();
+    /**
+     * <p>Key to look pending images up, reused under the lock of the pending images so that only
+     * the images that become pending allocate a key.</p>
+     */
+    private final RowKey mProbe = new RowKey(0, null);
+    private StripedCounter mQueueDepth;
+
+    /**
+     * <p>Instantiates a buffer.</p>
+     * @param command true when the images belong to a COMMAND subscription, so that they are
+     *                conflated by row instead of by item.
+     */
+    ConflationBuffer(boolean command)
+    {
+        this(command, null);
+    }
+
+    /**
+     * <p>Instantiates a buffer that keeps the number of its pending images in a counter.</p>
+     * @param command true when the images belong to a COMMAND subscription, so that they are
+     *                conflated by row instead of by item.
+     * @param queueDepth is the counter, or null.
+     */
+    ConflationBuffer(boolean command, StripedCounter queueDepth)
+    {
+        mCommand = command;
+        mQueueDepth = queueDepth;
+    }
+
+    /**
+     * <p>Checks that a subscription can be conflated.</p>
+     * @param subscriptionType is the type of the subscription.
+     * @return true when the subscription is a COMMAND one, so that it is conflated by row.
+     * @throws UnsupportedOperationException when the subscription is not MERGE or COMMAND.
+     */
+    static boolean checkConflatable(SubscriptionType subscriptionType)
+    {
+        if (subscriptionType != SubscriptionType.MERGE && subscriptionType != SubscriptionType.COMMAND)
+            throw new UnsupportedOperationException("Only MERGE and COMMAND subscriptions can be conflated");
+        return subscriptionType == SubscriptionType.COMMAND;
+    }
+
+    /**
+     * <p>Adds an image, merging it with the pending one of the same item.</p>
+     * @param itemImage is the image to add.
+     */
+    void add(ItemImage itemImage)
+    {
+        int itemPosition = itemImage.getItemPosition();
+        String rowKey = mCommand ? itemImage.getValue(ItemImage.KEY_FIELD) : null;
+        synchronized (mPendingImages)
+        {
+            RowKey key = mProbe.set(itemPosition, rowKey);
+            ItemImage pendingImage = mPendingImages.get(key);
+            if (pendingImage == null)
+            {
+                mPendingImages.put(new RowKey(itemPosition, rowKey), itemImage);
+                countQueueDepth(1);
+            }
+            else
+            {
+                ItemImage mergedImage = pendingImage.merge(itemImage, mCommand);
+                if (mergedImage == null)
+                {
+                    mPendingImages.remove(key);
+                    countQueueDepth(-1);
+                }
+                else
+                    mPendingImages.put(key, mergedImage);
+            }
+        }
+    }
+
+    /**
+     * <p>Takes the oldest pending image.</p>
+     * @return the image, or null when there are none.
+     */
+    ItemImage poll()
+    {
+        synchronized (mPendingImages)
+        {
+            Iterator<ItemImage> iterator = mPendingImages.values().iterator();
+            if (!iterator.hasNext())
+                return null;
+            ItemImage itemImage = iterator.next();
+            iterator.remove();
+            countQueueDepth(-1);
+            return itemImage;
+        }
+    }
+
+    /**
+     * <p>Takes every pending image.</p>
+     * @param itemBatch is the batch where the images are added.
+     */
+    void drainTo(ItemBatch itemBatch)
+    {
+        synchronized (mPendingImages)
+        {
+            for (ItemImage itemImage : mPendingImages.values())
+                itemBatch.add(itemImage);
+            countQueueDepth(-mPendingImages.size());
+            mPendingImages.clear();
+        }
+    }
+
+    /**
+     * <p>Drops every pending image, once nobody is going to take them.</p>
+     */
+    void clear()
+    {
+        synchronized (mPendingImages)
+        {
+            countQueueDepth(-mPendingImages.size());
+            mPendingImages.clear();
+        }
+    }
+
+    /**
+     * <p>Returns whether there are no pending images.</p>
+     * @return true when there are no pending images.
+     */
+    boolean isEmpty()
+    {
+        synchronized (mPendingImages)
+        {
+            return mPendingImages.isEmpty();
+        }
+    }
+
+    /**
+     * <p>Adds to the counter of pending images, if there is one.</p>
+     * @param delta is the change in the number of pending images.
+     */
+    private void countQueueDepth(int delta)
+    {
+        if (mQueueDepth != null && delta != 0)
+            mQueueDepth.add(delta);
+    }
+}
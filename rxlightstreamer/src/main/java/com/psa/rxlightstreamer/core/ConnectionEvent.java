@@ -0,0 +1,94 @@
+package com.psa.rxlightstreamer.core;
+
+import com.psa.rxlightstreamer.helpers.ClientStatus;
+import com.psa.rxlightstreamer.helpers.ConnectionEventType;
+
+/**
+ * <p>This class is an entry of the connection timeline of a client: a change of its status, or
+ * the answer of the server to a subscription or unsubscription request.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class ConnectionEvent {
+    private final ConnectionEventType mEventType;
+    private final long mTimestamp;
+    private final ClientStatus mStatus;
+    private final ClientStatus mPreviousStatus;
+    private final long mDurationNanos;
+
+    /**
+     * <p>Instantiates an event.</p>
+     * @param eventType is the type of the event.
+     * @param timestamp is when the event happened, in milliseconds since the epoch.
+     * @param status is the status of the client.
+     * @param previousStatus is the previous status, for status changes.
+     * @param durationNanos is the time spent in the previous status, or the latency of the
+     *                      request.
+     */
+    ConnectionEvent(ConnectionEventType eventType, long timestamp, ClientStatus status,
+                    ClientStatus previousStatus, long durationNanos)
+    {
+        mEventType = eventType;
+        mTimestamp = timestamp;
+        mStatus = status;
+        mPreviousStatus = previousStatus;
+        mDurationNanos = durationNanos;
+    }
+
+    //region Getters
+    /**
+     * <p>Returns what the event is about.</p>
+     * @return the type of the event.
+     */
+    public ConnectionEventType getEventType()
+    {
+        return mEventType;
+    }
+
+    /**
+     * <p>Returns when the event happened.</p>
+     * @return the time in milliseconds since the epoch.
+     */
+    public long getTimestamp()
+    {
+        return mTimestamp;
+    }
+
+    /**
+     * <p>Returns the status of the client after the event.</p>
+     * @return the status, or null when no status has been received yet.
+     */
+    public ClientStatus getStatus()
+    {
+        return mStatus;
+    }
+
+    /**
+     * <p>Returns the status the client left.</p>
+     * @return the previous status, or null when the event is not a status change or it is the
+     * first one.
+     */
+    public ClientStatus getPreviousStatus()
+    {
+        return mPreviousStatus;
+    }
+
+    /**
+     * <p>Returns the time the client spent in the previous status, for status changes, or the
+     * time from the request to the answer of the server, for subscriptions and
+     * unsubscriptions.</p>
+     * @return the time in nanoseconds.
+     */
+    public long getDurationNanos()
+    {
+        return mDurationNanos;
+    }
+    //endregion
+
+    @Override
+    public String toString()
+    {
+        return "ConnectionEvent{eventType=" + mEventType + ", timestamp=" + mTimestamp + ", status=" + mStatus +
+                ", previousStatus=" + mPreviousStatus + ", durationNanos=" + mDurationNanos + "}";
+    }
+}
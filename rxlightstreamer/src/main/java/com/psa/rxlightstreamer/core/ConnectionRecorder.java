@@ -0,0 +1,227 @@
+package com.psa.rxlightstreamer.core;
+
+import com.psa.rxlightstreamer.helpers.ClientStatus;
+import com.psa.rxlightstreamer.helpers.ConnectionEventType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import rx.Observable;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
+
+/**
+ * <p>This class records the connection timeline of a client: every change of its status and the
+ * latency of every subscription and unsubscription request. It keeps the latest
+ * {@link #TIMELINE_SIZE} events and the {@link ConnectionStats statistics} derived from all of
+ * them.</p>
+ * <p>A connection is the entry into a streaming or polling status from a status where the client
+ * was not connected. Recovering from a stall or switching transports is not a connection, and a
+ * connection is a reconnection when the previous one was lost rather than closed.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class ConnectionRecorder {
+    /**
+     * <p>Number of events of the timeline that are kept.</p>
+     */
+    static final int TIMELINE_SIZE = 256;
+
+    private final Subject<ConnectionEvent, ConnectionEvent> mEventSubject =
+            PublishSubject.<ConnectionEvent>create().toSerialized();
+    private final ArrayDeque<ConnectionEvent> mTimeline = new ArrayDeque<>();
+    private final LatencyHistogram mTimeToConnect = new LatencyHistogram();
+    private final LatencyHistogram mStreamSensingTime = new LatencyHistogram();
+    private final LatencyHistogram mStallTime = new LatencyHistogram();
+    private final LatencyHistogram mSubscribeLatency = new LatencyHistogram();
+    private final LatencyHistogram mUnsubscribeLatency = new LatencyHistogram();
+    private ClientStatus mStatus;
+    private long mStatusNanos;
+    private long mStatusChanges;
+    private long mConnections;
+    private long mReconnections;
+    private long mWebSocketNanos;
+    private long mHttpNanos;
+    /**
+     * <p>Tells whether the client lost its connection and has not connected again nor been
+     * disconnected since.</p>
+     */
+    private boolean mConnectionLost;
+    private boolean mAttemptPending;
+    private long mAttemptNanos;
+
+    /**
+     * <p>Records that the user asked the client to connect, which starts the time to connect.</p>
+     */
+    synchronized void connectRequested()
+    {
+        mAttemptPending = true;
+        mAttemptNanos = System.nanoTime();
+    }
+
+    /**
+     * <p>Records a status of the client. Repeated statuses are ignored.</p>
+     * @param status is the status.
+     */
+    void statusChanged(ClientStatus status)
+    {
+        ConnectionEvent event;
+        synchronized (this)
+        {
+            if (status == null || status == mStatus)
+                return;
+            long now = System.nanoTime();
+            ClientStatus previousStatus = mStatus;
+            long duration = previousStatus == null ? 0 : now - mStatusNanos;
+            if (previousStatus != null)
+                accountStatus(previousStatus, duration);
+            if (isConnected(status) && !isConnected(previousStatus) && previousStatus != ClientStatus.STALLED)
+            {
+                mConnections++;
+                if (mConnectionLost)
+                    mReconnections++;
+                mConnectionLost = false;
+                if (mAttemptPending)
+                    mTimeToConnect.record(now - mAttemptNanos);
+                mAttemptPending = false;
+            }
+            else if (status == ClientStatus.DISCONNECTED)
+            {
+                mConnectionLost = false;
+                mAttemptPending = false;
+            }
+            else if (status == ClientStatus.WILL_RETRY || status == ClientStatus.CONNECTING)
+            {
+                if (status == ClientStatus.WILL_RETRY)
+                    mConnectionLost = true;
+                if (!mAttemptPending)
+                {
+                    //The client lost the connection and retries on its own.
+                    mAttemptPending = true;
+                    mAttemptNanos = now;
+                }
+            }
+            mStatus = status;
+            mStatusNanos = now;
+            mStatusChanges++;
+            event = add(new ConnectionEvent(ConnectionEventType.STATUS_CHANGE, System.currentTimeMillis(),
+                    status, previousStatus, duration));
+        }
+        mEventSubject.onNext(event);
+    }
+
+    /**
+     * <p>Records the latency of a subscription or unsubscription request.</p>
+     * @param eventType is either {@link ConnectionEventType#SUBSCRIPTION} or
+     *                  {@link ConnectionEventType#UNSUBSCRIPTION}.
+     * @param nanos is the time from the request to the answer of the server.
+     */
+    void requestCompleted(ConnectionEventType eventType, long nanos)
+    {
+        ConnectionEvent event;
+        synchronized (this)
+        {
+            if (eventType == ConnectionEventType.SUBSCRIPTION)
+                mSubscribeLatency.record(nanos);
+            else
+                mUnsubscribeLatency.record(nanos);
+            event = add(new ConnectionEvent(eventType, System.currentTimeMillis(), mStatus, null, nanos));
+        }
+        mEventSubject.onNext(event);
+    }
+
+    /**
+     * <p>Returns an observable of the events as they are recorded. Observers only get the events
+     * recorded after they subscribe.</p>
+     * @return the observable of the events.
+     */
+    Observable<ConnectionEvent> getEvents()
+    {
+        return mEventSubject.asObservable();
+    }
+
+    /**
+     * <p>Returns the latest events, oldest first.</p>
+     * @return a copy of the timeline.
+     */
+    synchronized List<ConnectionEvent> getTimeline()
+    {
+        return new ArrayList<>(mTimeline);
+    }
+
+    /**
+     * <p>Takes a sample of the statistics. The time in the current status is included in the
+     * transport times.</p>
+     * @return the sample.
+     */
+    synchronized ConnectionStats sample()
+    {
+        long webSocketNanos = mWebSocketNanos;
+        long httpNanos = mHttpNanos;
+        if (mStatus != null)
+        {
+            long duration = System.nanoTime() - mStatusNanos;
+            if (isWebSocket(mStatus))
+                webSocketNanos += duration;
+            else if (isConnected(mStatus))
+                httpNanos += duration;
+        }
+        return new ConnectionStats(System.currentTimeMillis(), mStatus, mStatusChanges, mConnections,
+                mReconnections, webSocketNanos, httpNanos, mTimeToConnect.copy(), mStreamSensingTime.copy(),
+                mStallTime.copy(), mSubscribeLatency.copy(), mUnsubscribeLatency.copy());
+    }
+
+    /**
+     * <p>Accounts the time spent in a status the client left. It must be called holding the lock
+     * of this recorder.</p>
+     * @param status is the status.
+     * @param nanos is the time spent in it.
+     */
+    private void accountStatus(ClientStatus status, long nanos)
+    {
+        if (status == ClientStatus.STREAM_SENSING)
+            mStreamSensingTime.record(nanos);
+        else if (status == ClientStatus.STALLED)
+            mStallTime.record(nanos);
+        else if (isWebSocket(status))
+            mWebSocketNanos += nanos;
+        else if (isConnected(status))
+            mHttpNanos += nanos;
+    }
+
+    /**
+     * <p>Adds an event to the timeline, dropping the oldest one when it is full. It must be called
+     * holding the lock of this recorder.</p>
+     * @param event is the event.
+     * @return the event.
+     */
+    private ConnectionEvent add(ConnectionEvent event)
+    {
+        if (mTimeline.size() == TIMELINE_SIZE)
+            mTimeline.removeFirst();
+        mTimeline.addLast(event);
+        return event;
+    }
+
+    /**
+     * <p>Tells whether a status is streaming or polling.</p>
+     * @param status is the status.
+     * @return true when it is.
+     */
+    private static boolean isConnected(ClientStatus status)
+    {
+        return status == ClientStatus.WS_STREAMING || status == ClientStatus.HTTP_STREAMING ||
+                status == ClientStatus.WS_POLLING || status == ClientStatus.HTTP_POLLING;
+    }
+
+    /**
+     * <p>Tells whether a status is streaming or polling over WebSocket.</p>
+     * @param status is the status.
+     * @return true when it is.
+     */
+    private static boolean isWebSocket(ClientStatus status)
+    {
+        return status == ClientStatus.WS_STREAMING || status == ClientStatus.WS_POLLING;
+    }
+}
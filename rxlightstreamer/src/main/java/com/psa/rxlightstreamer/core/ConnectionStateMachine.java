@@ -0,0 +1,130 @@
+package com.psa.rxlightstreamer.core;
+
+import com.psa.rxlightstreamer.helpers.ClientStatus;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>This class holds the status of a {@link RxNonUnifiedLSClient non unified client} and moves it
+ * only through the transitions the LightStreamer client can make, with atomic compare-and-set
+ * operations, so that callbacks from different threads cannot interleave into a status the client
+ * is not in. Transitions that are not legal from the current status are rejected.</p>
+ * <p>The status is read with a single volatile read, and the states are created upfront, so that
+ * neither reads nor transitions lock or allocate.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class ConnectionStateMachine {
+    /**
+     * <p>Statuses each status can change to. Connecting is legal from every status, since the user
+     * can open a new connection at any time.</p>
+     */
+    private static final Map<ClientStatus, Set<ClientStatus>> TRANSITIONS = new EnumMap<>(ClientStatus.class);
+
+    static {
+        for (ClientStatus status : ClientStatus.values())
+            TRANSITIONS.put(status, EnumSet.of(ClientStatus.CONNECTING, ClientStatus.DISCONNECTED,
+                    ClientStatus.WILL_RETRY));
+        TRANSITIONS.get(ClientStatus.DISCONNECTED).remove(ClientStatus.DISCONNECTED);
+        TRANSITIONS.get(ClientStatus.DISCONNECTED).remove(ClientStatus.WILL_RETRY);
+        TRANSITIONS.get(ClientStatus.WILL_RETRY).remove(ClientStatus.WILL_RETRY);
+        TRANSITIONS.get(ClientStatus.CONNECTING).addAll(EnumSet.of(ClientStatus.STREAM_SENSING,
+                ClientStatus.HTTP_STREAMING, ClientStatus.HTTP_POLLING));
+        TRANSITIONS.get(ClientStatus.STREAM_SENSING).addAll(EnumSet.of(ClientStatus.HTTP_STREAMING,
+                ClientStatus.HTTP_POLLING));
+        TRANSITIONS.get(ClientStatus.HTTP_STREAMING).add(ClientStatus.STALLED);
+        TRANSITIONS.get(ClientStatus.HTTP_POLLING).add(ClientStatus.STALLED);
+    }
+
+    /**
+     * <p>This class is a state of the machine: a status and, when it is
+     * {@link ClientStatus#STALLED}, the status to go back to when the connection recovers.</p>
+     */
+    private static final class State {
+        private final ClientStatus mStatus;
+        private final ClientStatus mResumeStatus;
+
+        private State(ClientStatus status, ClientStatus resumeStatus)
+        {
+            mStatus = status;
+            mResumeStatus = resumeStatus;
+        }
+    }
+
+    /**
+     * <p>States of every status, and of being stalled for every status that can stall.</p>
+     */
+    private static final State[] STATES = new State[ClientStatus.values().length];
+    private static final State[] STALLED_STATES = new State[ClientStatus.values().length];
+
+    static {
+        for (ClientStatus status : ClientStatus.values())
+        {
+            STATES[status.ordinal()] = new State(status, null);
+            if (TRANSITIONS.get(status).contains(ClientStatus.STALLED))
+                STALLED_STATES[status.ordinal()] = new State(ClientStatus.STALLED, status);
+        }
+    }
+
+    private final AtomicReference<State> mState;
+
+    /**
+     * <p>Instantiates a state machine.</p>
+     * @param status is the initial status.
+     */
+    ConnectionStateMachine(ClientStatus status)
+    {
+        mState = new AtomicReference<>(STATES[status.ordinal()]);
+    }
+
+    /**
+     * <p>Returns the current status. It does not lock.</p>
+     * @return the status.
+     */
+    ClientStatus getStatus()
+    {
+        return mState.get().mStatus;
+    }
+
+    /**
+     * <p>Changes the status, if the change is legal from the current one. Stalling remembers the
+     * current status so that {@link #resume()} can go back to it.</p>
+     * @param status is the new status.
+     * @return true when the status changed.
+     */
+    boolean moveTo(ClientStatus status)
+    {
+        while (true)
+        {
+            State current = mState.get();
+            if (!TRANSITIONS.get(current.mStatus).contains(status))
+                return false;
+            State next = status == ClientStatus.STALLED ? STALLED_STATES[current.mStatus.ordinal()] :
+                    STATES[status.ordinal()];
+            if (mState.compareAndSet(current, next))
+                return true;
+        }
+    }
+
+    /**
+     * <p>Goes back to the status the connection had before stalling. It does nothing unless the
+     * connection is stalled, so a late recovery cannot restore a status the client already
+     * left.</p>
+     * @return the status the connection went back to, or null when it was not stalled.
+     */
+    ClientStatus resume()
+    {
+        while (true)
+        {
+            State current = mState.get();
+            if (current.mResumeStatus == null)
+                return null;
+            if (mState.compareAndSet(current, STATES[current.mResumeStatus.ordinal()]))
+                return current.mResumeStatus;
+        }
+    }
+}
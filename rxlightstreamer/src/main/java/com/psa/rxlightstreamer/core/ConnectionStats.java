@@ -0,0 +1,200 @@
+package com.psa.rxlightstreamer.core;
+
+import com.psa.rxlightstreamer.helpers.ClientStatus;
+
+/**
+ * <p>This class is a sample of the statistics of the connection of a client, derived from its
+ * {@link ConnectionEvent connection timeline} since the client was created.</p>
+ * <p>Times are kept in {@link LatencyHistogram histograms} in nanoseconds:</p>
+ * <ul>
+ *     <li>The time to connect goes from {@link RxLightStreamerClient#connect(String, String)
+ *     connecting}, or from losing the connection, to streaming or polling.</li>
+ *     <li>The stream sensing time is every stay in {@link ClientStatus#STREAM_SENSING}.</li>
+ *     <li>The stall time is every stay in {@link ClientStatus#STALLED}.</li>
+ *     <li>The subscribe and unsubscribe latencies go from the request to the answer of the
+ *     server.</li>
+ * </ul>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class ConnectionStats {
+    private final long mTimestamp;
+    private final ClientStatus mStatus;
+    private final long mStatusChanges;
+    private final long mConnections;
+    private final long mReconnections;
+    private final long mWebSocketNanos;
+    private final long mHttpNanos;
+    private final LatencyHistogram mTimeToConnect;
+    private final LatencyHistogram mStreamSensingTime;
+    private final LatencyHistogram mStallTime;
+    private final LatencyHistogram mSubscribeLatency;
+    private final LatencyHistogram mUnsubscribeLatency;
+
+    /**
+     * <p>Instantiates a sample.</p>
+     * @param timestamp is the time of the sample, in milliseconds since the epoch.
+     * @param status is the current status.
+     * @param statusChanges is the number of status changes.
+     * @param connections is the number of times the client started streaming or polling.
+     * @param reconnections is the number of those times that followed a lost connection.
+     * @param webSocketNanos is the time spent streaming or polling over WebSocket.
+     * @param httpNanos is the time spent streaming or polling over HTTP.
+     * @param timeToConnect is the histogram of the times to connect.
+     * @param streamSensingTime is the histogram of the stream sensing times.
+     * @param stallTime is the histogram of the stall times.
+     * @param subscribeLatency is the histogram of the subscribe latencies.
+     * @param unsubscribeLatency is the histogram of the unsubscribe latencies.
+     */
+    ConnectionStats(long timestamp, ClientStatus status, long statusChanges, long connections, long reconnections,
+                    long webSocketNanos, long httpNanos, LatencyHistogram timeToConnect,
+                    LatencyHistogram streamSensingTime, LatencyHistogram stallTime,
+                    LatencyHistogram subscribeLatency, LatencyHistogram unsubscribeLatency)
+    {
+        mTimestamp = timestamp;
+        mStatus = status;
+        mStatusChanges = statusChanges;
+        mConnections = connections;
+        mReconnections = reconnections;
+        mWebSocketNanos = webSocketNanos;
+        mHttpNanos = httpNanos;
+        mTimeToConnect = timeToConnect;
+        mStreamSensingTime = streamSensingTime;
+        mStallTime = stallTime;
+        mSubscribeLatency = subscribeLatency;
+        mUnsubscribeLatency = unsubscribeLatency;
+    }
+
+    //region Getters
+    /**
+     * <p>Returns when the sample was taken.</p>
+     * @return the time of the sample, in milliseconds since the epoch.
+     */
+    public long getTimestamp()
+    {
+        return mTimestamp;
+    }
+
+    /**
+     * <p>Returns the status of the client when the sample was taken.</p>
+     * @return the status, or null when no status has been received yet.
+     */
+    public ClientStatus getStatus()
+    {
+        return mStatus;
+    }
+
+    /**
+     * <p>Returns the number of status changes.</p>
+     * @return the number of changes.
+     */
+    public long getStatusChanges()
+    {
+        return mStatusChanges;
+    }
+
+    /**
+     * <p>Returns the number of times the client started streaming or polling, leaving out the
+     * recoveries from stalls.</p>
+     * @return the number of connections.
+     */
+    public long getConnections()
+    {
+        return mConnections;
+    }
+
+    /**
+     * <p>Returns the number of connections that followed a lost connection, that is, one the
+     * client did not close with a disconnection.</p>
+     * @return the number of reconnections.
+     */
+    public long getReconnections()
+    {
+        return mReconnections;
+    }
+
+    /**
+     * <p>Returns the time spent streaming or polling over WebSocket.</p>
+     * @return the time in nanoseconds.
+     */
+    public long getWebSocketNanos()
+    {
+        return mWebSocketNanos;
+    }
+
+    /**
+     * <p>Returns the time spent streaming or polling over HTTP.</p>
+     * @return the time in nanoseconds.
+     */
+    public long getHttpNanos()
+    {
+        return mHttpNanos;
+    }
+
+    /**
+     * <p>Returns the share of the connected time spent over WebSocket.</p>
+     * @return the share, from 0 to 1, or 0 when the client has not been connected.
+     */
+    public double getWebSocketShare()
+    {
+        long connectedNanos = mWebSocketNanos + mHttpNanos;
+        return connectedNanos == 0 ? 0 : (double) mWebSocketNanos / connectedNanos;
+    }
+
+    /**
+     * <p>Returns the times to connect.</p>
+     * @return the histogram, in nanoseconds.
+     */
+    public LatencyHistogram getTimeToConnect()
+    {
+        return mTimeToConnect;
+    }
+
+    /**
+     * <p>Returns the times spent in {@link ClientStatus#STREAM_SENSING}.</p>
+     * @return the histogram, in nanoseconds.
+     */
+    public LatencyHistogram getStreamSensingTime()
+    {
+        return mStreamSensingTime;
+    }
+
+    /**
+     * <p>Returns the durations of the stalls. Their count is the number of stalls.</p>
+     * @return the histogram, in nanoseconds.
+     */
+    public LatencyHistogram getStallTime()
+    {
+        return mStallTime;
+    }
+
+    /**
+     * <p>Returns the latencies of the subscription requests.</p>
+     * @return the histogram, in nanoseconds.
+     */
+    public LatencyHistogram getSubscribeLatency()
+    {
+        return mSubscribeLatency;
+    }
+
+    /**
+     * <p>Returns the latencies of the unsubscription requests.</p>
+     * @return the histogram, in nanoseconds.
+     */
+    public LatencyHistogram getUnsubscribeLatency()
+    {
+        return mUnsubscribeLatency;
+    }
+    //endregion
+
+    @Override
+    public String toString()
+    {
+        return "ConnectionStats{status=" + mStatus + ", statusChanges=" + mStatusChanges +
+                ", connections=" + mConnections + ", reconnections=" + mReconnections +
+                ", webSocketShare=" + getWebSocketShare() +
+                ", timeToConnectP50=" + mTimeToConnect.getValueAtPercentile(50) +
+                ", stalls=" + mStallTime.getCount() +
+                ", subscribeLatencyP50=" + mSubscribeLatency.getValueAtPercentile(50) + "}";
+    }
+}
@@ -0,0 +1,154 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.client.ItemUpdate;
+import com.lightstreamer.ls_client.UpdateInfo;
+
+import java.util.Arrays;
+
+/**
+ * <p>This class keeps the decoded object of every item of a subscription and decodes only the
+ * changed fields of every update into it. The first update of an item decodes every field.</p>
+ * <p>Updates that are not decoded, because nobody observes the item, are {@link #skip(int) skipped}
+ * instead, and the next update of the item decodes every field, so that the kept object does not
+ * miss the fields that changed meanwhile.</p>
+ * <p>It is only used from the LightStreamer thread.</p>
+ * @param <T> is the decoded type.
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class IncrementalDecoding<T> {
+    private IncrementalItemDecoder<T> mItemDecoder;
+    private ParseErrors mParseErrors;
+    private int mFieldCount;
+    private Object[] mItems;
+    private boolean[] mStaleItems;
+
+    /**
+     * <p>Instantiates the incremental decoding of a subscription.</p>
+     * @param itemDecoder is the decoder.
+     * @param itemCount is the number of items of the subscription.
+     * @param parseErrors counts the values that cannot be parsed.
+     */
+    IncrementalDecoding(IncrementalItemDecoder<T> itemDecoder, int itemCount, ParseErrors parseErrors)
+    {
+        mItemDecoder = itemDecoder;
+        mParseErrors = parseErrors;
+        mFieldCount = itemDecoder.getFields().length;
+        mItems = new Object[itemCount];
+        mStaleItems = new boolean[itemCount];
+    }
+
+    /**
+     * <p>Decodes an update of the unified API.</p>
+     * @param itemUpdate is the update.
+     * @return the decoded object of the item.
+     */
+    T decode(ItemUpdate itemUpdate)
+    {
+        if (itemUpdate == null)
+            return null;
+        int index = itemUpdate.getItemPos() - 1;
+        T item = getItem(index);
+        if (item == null)
+            item = createItem(index, itemUpdate.getItemName());
+        boolean allFields = takeStale(index);
+        for (int i = 1; i <= mFieldCount; i++)
+            if (allFields || itemUpdate.isValueChanged(i))
+                mItemDecoder.decodeField(item, i, itemUpdate.getValue(i), mParseErrors);
+        return item;
+    }
+
+    /**
+     * <p>Decodes an update of the non unified API.</p>
+     * @param updateInfo is the update.
+     * @return the decoded object of the item.
+     */
+    T decode(UpdateInfo updateInfo)
+    {
+        if (updateInfo == null)
+            return null;
+        int index = updateInfo.getItemPos() - 1;
+        T item = getItem(index);
+        if (item == null)
+            item = createItem(index, updateInfo.getItemName());
+        boolean allFields = takeStale(index);
+        for (int i = 1; i <= mFieldCount; i++)
+            if (allFields || updateInfo.isValueChanged(i))
+                mItemDecoder.decodeField(item, i, updateInfo.getNewValue(i), mParseErrors);
+        return item;
+    }
+
+    /**
+     * <p>Decodes every field of an image into a new object, which is not kept.</p>
+     * @param itemDecoder is the decoder.
+     * @param itemImage is the image.
+     * @param parseErrors counts the values that cannot be parsed.
+     * @param <T> is the decoded type.
+     * @return the decoded object.
+     */
+    static <T> T decode(IncrementalItemDecoder<T> itemDecoder, ItemImage itemImage, ParseErrors parseErrors)
+    {
+        T item = itemDecoder.createItem(itemImage.getItemName());
+        for (int i = 1; i <= itemImage.getFieldCount(); i++)
+            itemDecoder.decodeField(item, i, itemImage.getValue(i), parseErrors);
+        return item;
+    }
+
+    /**
+     * <p>Records that an update of an item was not decoded, so that its next update decodes every
+     * field.</p>
+     * @param itemPosition is the position of the item, starting at 1.
+     */
+    void skip(int itemPosition)
+    {
+        mStaleItems[itemPosition - 1] = true;
+    }
+
+    /**
+     * <p>Forgets the decoded objects, so that the next update of every item decodes every field.</p>
+     */
+    void reset()
+    {
+        Arrays.fill(mItems, null);
+        Arrays.fill(mStaleItems, false);
+    }
+
+    /**
+     * <p>Tells whether the decoded object of an item is stale, because it has just been created or
+     * some updates of the item were skipped, so that every field must be decoded, and clears the
+     * mark.</p>
+     * @param index is the index of the item, starting at 0.
+     * @return true when the object is stale.
+     */
+    private boolean takeStale(int index)
+    {
+        boolean skipped = mStaleItems[index];
+        mStaleItems[index] = false;
+        return skipped;
+    }
+
+    /**
+     * <p>Returns the decoded object of an item.</p>
+     * @param index is the index of the item, starting at 0.
+     * @return the decoded object, or null when the item has not been decoded yet.
+     */
+    @SuppressWarnings("unchecked")
+    private T getItem(int index)
+    {
+        return (T) mItems[index];
+    }
+
+    /**
+     * <p>Creates and keeps the decoded object of an item.</p>
+     * @param index is the index of the item, starting at 0.
+     * @param itemName is the name of the item.
+     * @return the decoded object.
+     */
+    private T createItem(int index, String itemName)
+    {
+        T item = mItemDecoder.createItem(itemName);
+        mItems[index] = item;
+        mStaleItems[index] = true;
+        return item;
+    }
+}
@@ -0,0 +1,52 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.client.ItemUpdate;
+import com.lightstreamer.ls_client.UpdateInfo;
+
+/**
+ * <p>This interface is a decoder that can update a decoded item field by field. Subscriptions that
+ * use it keep one decoded item per item of the subscription and, on every update, only decode the
+ * fields that changed into it, so the cost of an update depends on the number of changed fields
+ * instead of the number of subscribed fields.</p>
+ * <p>The same decoded object is sent again and again for the same item. It is updated on the
+ * LightStreamer thread, so observers on other threads should copy what they need.</p>
+ * <p>Decoders generated for {@link com.psa.rxlightstreamer.annotations.LightstreamerItem} classes
+ * implement this interface.</p>
+ * @param <T> is the decoded type.
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public interface IncrementalItemDecoder<T> extends ItemDecoder<T> {
+    /**
+     * <p>Decodes every field of an update of the unified API into a new object. It is used by the
+     * subscriptions that do not decode incrementally, such as COMMAND ones.</p>
+     * @param itemUpdate is the update.
+     * @param parseErrors counts the values that cannot be parsed, or is null not to count them.
+     * @return the decoded item, or null when the update is null.
+     */
+    T decode(ItemUpdate itemUpdate, ParseErrors parseErrors);
+
+    /**
+     * <p>Decodes every field of an update of the non unified API into a new object.</p>
+     * @param updateInfo is the update.
+     * @param parseErrors counts the values that cannot be parsed, or is null not to count them.
+     * @return the decoded item, or null when the update is null.
+     */
+    T decode(UpdateInfo updateInfo, ParseErrors parseErrors);
+
+    /**
+     * <p>Creates the decoded object of an item, with no field decoded yet.</p>
+     * @param itemName is the name of the item.
+     * @return the decoded object.
+     */
+    T createItem(String itemName);
+
+    /**
+     * <p>Decodes a field into the decoded object of an item.</p>
+     * @param item is the decoded object.
+     * @param fieldPosition is the position of the field, starting at 1.
+     * @param value is the new value of the field.
+     * @param parseErrors counts the values that cannot be parsed, or is null not to count them.
+     */
+    void decodeField(T item, int fieldPosition, String value, ParseErrors parseErrors);
+}
@@ -0,0 +1,73 @@
+package com.psa.rxlightstreamer.core;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>This class is a batch of item images delivered together. A batch holds at most one image per
+ * item (one per row in COMMAND subscriptions).</p>
+ * <p>Batches are reused. Once the observer is done with a batch it may call {@link #release()} so
+ * that the next window is filled into it instead of a new one; after that the batch must not be
+ * read again. Observers that keep batches simply do not release them.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class ItemBatch {
+    private ItemImage[] mItemImages;
+    private int mSize;
+    private AtomicReference<ItemBatch> mPool;
+
+    /**
+     * <p>Instantiates a batch.</p>
+     * @param pool is where the batch goes back when it is released.
+     */
+    ItemBatch(AtomicReference<ItemBatch> pool)
+    {
+        mItemImages = new ItemImage[16];
+        mPool = pool;
+    }
+
+    /**
+     * <p>Returns the number of images of the batch.</p>
+     * @return the number of images.
+     */
+    public int size()
+    {
+        return mSize;
+    }
+
+    /**
+     * <p>Returns an image of the batch.</p>
+     * @param index is the index of the image, starting at 0.
+     * @return the image.
+     * @throws IndexOutOfBoundsException when the index is out of range.
+     */
+    public ItemImage get(int index)
+    {
+        if (index < 0 || index >= mSize)
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + mSize);
+        return mItemImages[index];
+    }
+
+    /**
+     * <p>Gives the batch back so that it can be filled again. The batch must not be read after
+     * releasing it.</p>
+     */
+    public void release()
+    {
+        Arrays.fill(mItemImages, 0, mSize, null);
+        mSize = 0;
+        mPool.compareAndSet(null, this);
+    }
+
+    /**
+     * <p>Adds an image to the batch.</p>
+     * @param itemImage is the image to add.
+     */
+    void add(ItemImage itemImage)
+    {
+        if (mSize == mItemImages.length)
+            mItemImages = Arrays.copyOf(mItemImages, mSize * 2);
+        mItemImages[mSize++] = itemImage;
+    }
+}
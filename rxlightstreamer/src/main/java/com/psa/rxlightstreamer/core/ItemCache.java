@@ -0,0 +1,222 @@
+package com.psa.rxlightstreamer.core;
+
+/**
+ * <p>This class bounds the memory used by the last value caches of every subscription of a
+ * client. Every cached image is accounted with an estimation of its size in bytes, and when the
+ * total goes beyond the budget the least recently used images of items that nobody is observing
+ * are evicted. Images of observed items are never evicted, so the budget can be exceeded while
+ * they do not fit.</p>
+ * <p>An image is used when it is cached, read or replayed.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class ItemCache {
+    private final long mBudget;
+    /**
+     * <p>Entries are kept in a doubly linked list from the most to the least recently used one,
+     * guarded by the lock of this cache.</p>
+     */
+    private Entry mHead, mTail;
+    private long mBytes;
+    private int mSize;
+    private long mHits, mMisses, mEvictions;
+
+    /**
+     * <p>Instantiates a cache.</p>
+     * @param budget is the maximum number of bytes of the cached images.
+     * @throws IllegalArgumentException when the budget is not positive.
+     */
+    public ItemCache(long budget)
+    {
+        if (budget <= 0)
+            throw new IllegalArgumentException("The budget must be positive");
+        mBudget = budget;
+    }
+
+    //region Stats
+    /**
+     * <p>Returns the maximum number of bytes of the cached images.</p>
+     * @return the budget.
+     */
+    public long getBudget()
+    {
+        return mBudget;
+    }
+
+    /**
+     * <p>Returns the estimated number of bytes of the cached images.</p>
+     * @return the bytes.
+     */
+    public synchronized long getBytes()
+    {
+        return mBytes;
+    }
+
+    /**
+     * <p>Returns the number of cached images.</p>
+     * @return the number of images.
+     */
+    public synchronized int size()
+    {
+        return mSize;
+    }
+
+    /**
+     * <p>Returns the number of times a cached image was found.</p>
+     * @return the hits.
+     */
+    public synchronized long getHits()
+    {
+        return mHits;
+    }
+
+    /**
+     * <p>Returns the number of times an image was looked for and it was not cached.</p>
+     * @return the misses.
+     */
+    public synchronized long getMisses()
+    {
+        return mMisses;
+    }
+
+    /**
+     * <p>Returns the number of images evicted to keep the cache within its budget.</p>
+     * @return the evictions.
+     */
+    public synchronized long getEvictions()
+    {
+        return mEvictions;
+    }
+    //endregion
+
+    //region Package methods
+    /**
+     * <p>Accounts the new image of an entry, marks it as the most recently used one and evicts
+     * images until the cache is within its budget.</p>
+     * @param entry is the entry.
+     * @param bytes is the size of the new image.
+     */
+    synchronized void put(Entry entry, long bytes)
+    {
+        if (entry.mLinked)
+        {
+            unlink(entry);
+            mBytes -= entry.mBytes;
+        }
+        entry.mBytes = bytes;
+        mBytes += bytes;
+        linkFirst(entry);
+        evict();
+    }
+
+    /**
+     * <p>Marks an entry as the most recently used one, if it is cached, and counts a hit.</p>
+     * @param entry is the entry, or null to count a miss.
+     */
+    synchronized void touch(Entry entry)
+    {
+        if (entry == null || !entry.mLinked)
+        {
+            mMisses++;
+            return;
+        }
+        mHits++;
+        unlink(entry);
+        linkFirst(entry);
+    }
+
+    /**
+     * <p>Stops accounting an entry.</p>
+     * @param entry is the entry.
+     */
+    synchronized void remove(Entry entry)
+    {
+        if (!entry.mLinked)
+            return;
+        unlink(entry);
+        mBytes -= entry.mBytes;
+    }
+    //endregion
+
+    //region Private methods
+    /**
+     * <p>Evicts the least recently used images of items that are not observed until the cache is
+     * within its budget.</p>
+     */
+    private void evict()
+    {
+        Entry entry = mTail;
+        while (mBytes > mBudget && entry != null)
+        {
+            Entry previous = entry.mPrevious;
+            if (!entry.mOwner.isObserved(entry.mItemPosition))
+            {
+                unlink(entry);
+                mBytes -= entry.mBytes;
+                mEvictions++;
+                entry.mOwner.evict(entry.mItemPosition);
+            }
+            entry = previous;
+        }
+    }
+
+    /**
+     * <p>Links an entry at the head of the list.</p>
+     * @param entry is the entry.
+     */
+    private void linkFirst(Entry entry)
+    {
+        entry.mPrevious = null;
+        entry.mNext = mHead;
+        if (mHead != null)
+            mHead.mPrevious = entry;
+        mHead = entry;
+        if (mTail == null)
+            mTail = entry;
+        entry.mLinked = true;
+        mSize++;
+    }
+
+    /**
+     * <p>Unlinks an entry from the list.</p>
+     * @param entry is the entry.
+     */
+    private void unlink(Entry entry)
+    {
+        if (entry.mPrevious != null)
+            entry.mPrevious.mNext = entry.mNext;
+        else
+            mHead = entry.mNext;
+        if (entry.mNext != null)
+            entry.mNext.mPrevious = entry.mPrevious;
+        else
+            mTail = entry.mPrevious;
+        entry.mPrevious = null;
+        entry.mNext = null;
+        entry.mLinked = false;
+        mSize--;
+    }
+    //endregion
+
+    /**
+     * <p>This class is the slot of an item of a last value cache in the list of the cache.</p>
+     */
+    static class Entry {
+        private LastValueCache mOwner;
+        private int mItemPosition;
+        private long mBytes;
+        private boolean mLinked;
+        private Entry mPrevious, mNext;
+
+        /**
+         * <p>Instantiates an entry.</p>
+         * @param owner is the last value cache that holds the image.
+         * @param itemPosition is the position of the item, starting at 1.
+         */
+        Entry(LastValueCache owner, int itemPosition)
+        {
+            mOwner = owner;
+            mItemPosition = itemPosition;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.client.ItemUpdate;
+import com.lightstreamer.ls_client.UpdateInfo;
+
+/**
+ * <p>This interface converts updates into the type a subscription returns. The same decoder
+ * serves both {@link RxDecoderSubscription} and {@link RxNonUnifiedDecoderSubscription}.</p>
+ * <p>Decoders for classes annotated with
+ * {@link com.psa.rxlightstreamer.annotations.LightstreamerItem} are generated at compile time and
+ * read the fields by position.</p>
+ * @param <T> is the decoded type.
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public interface ItemDecoder<T> {
+    /**
+     * <p>Returns the fields to subscribe, in the order the decoder reads them.</p>
+     * @return the fields to subscribe.
+     */
+    String[] getFields();
+
+    /**
+     * <p>Decodes an update of the unified API.</p>
+     * @param itemUpdate is the update.
+     * @return the decoded item, or null when the update is null.
+     */
+    T decode(ItemUpdate itemUpdate);
+
+    /**
+     * <p>Decodes an update of the non unified API.</p>
+     * @param updateInfo is the update.
+     * @return the decoded item, or null when the update is null.
+     */
+    T decode(UpdateInfo updateInfo);
+}
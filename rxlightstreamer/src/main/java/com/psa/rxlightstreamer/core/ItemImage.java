@@ -0,0 +1,255 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.client.ItemUpdate;
+import com.lightstreamer.ls_client.UpdateInfo;
+
+import java.util.Arrays;
+
+/**
+ * <p>This class is the image of an item: the current value of every field of the subscription
+ * together with the fields that changed since the previous image.</p>
+ * <p>Positions start at 1, as they do in LightStreamer.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class ItemImage {
+    //region Constants
+    /**
+     * <p>Name of the field that holds the key in COMMAND subscriptions.</p>
+     */
+    public static final String KEY_FIELD = "key";
+    /**
+     * <p>Name of the field that holds the command in COMMAND subscriptions.</p>
+     */
+    public static final String COMMAND_FIELD = "command";
+    public static final String ADD = "ADD";
+    public static final String UPDATE = "UPDATE";
+    public static final String DELETE = "DELETE";
+    //endregion
+
+    //region Private fields
+    private String mItemName;
+    private int mItemPosition;
+    private String[] mFields;
+    private String[] mValues;
+    private boolean[] mChangedFields;
+    private boolean mSnapshot;
+    //endregion
+
+    /**
+     * <p>Instantiates an item image.</p>
+     * @param itemName is the name of the item.
+     * @param itemPosition is the position of the item, starting at 1.
+     * @param fields is the names of the fields of the subscription.
+     * @param values is the value of every field, in the same order as the fields.
+     * @param changedFields tells which fields changed, in the same order as the fields.
+     * @param snapshot true when the image belongs to the snapshot.
+     */
+    public ItemImage(String itemName, int itemPosition, String[] fields, String[] values,
+                     boolean[] changedFields, boolean snapshot) {
+        mItemName = itemName;
+        mItemPosition = itemPosition;
+        mFields = fields;
+        mValues = values;
+        mChangedFields = changedFields;
+        mSnapshot = snapshot;
+    }
+
+    //region Getters
+    /**
+     * <p>Returns the name of the item.</p>
+     * @return the name of the item.
+     */
+    public String getItemName() {
+        return mItemName;
+    }
+
+    /**
+     * <p>Returns the position of the item.</p>
+     * @return the position of the item, starting at 1.
+     */
+    public int getItemPosition() {
+        return mItemPosition;
+    }
+
+    /**
+     * <p>Returns the number of fields of the image.</p>
+     * @return the number of fields.
+     */
+    public int getFieldCount() {
+        return mValues.length;
+    }
+
+    /**
+     * <p>Returns the name of a field.</p>
+     * @param fieldPosition is the position of the field, starting at 1.
+     * @return the name of the field.
+     */
+    public String getFieldName(int fieldPosition) {
+        return mFields[fieldPosition - 1];
+    }
+
+    /**
+     * <p>Returns the value of a field.</p>
+     * @param fieldPosition is the position of the field, starting at 1.
+     * @return the value of the field.
+     */
+    public String getValue(int fieldPosition) {
+        return mValues[fieldPosition - 1];
+    }
+
+    /**
+     * <p>Returns the value of a field.</p>
+     * @param fieldName is the name of the field.
+     * @return the value of the field.
+     * @throws IllegalArgumentException when the field does not belong to the subscription.
+     */
+    public String getValue(String fieldName) {
+        return mValues[indexOf(fieldName)];
+    }
+
+    /**
+     * <p>Returns whether a field changed.</p>
+     * @param fieldPosition is the position of the field, starting at 1.
+     * @return true when the field changed since the previous image.
+     */
+    public boolean isValueChanged(int fieldPosition) {
+        return mChangedFields[fieldPosition - 1];
+    }
+
+    /**
+     * <p>Returns whether a field changed.</p>
+     * @param fieldName is the name of the field.
+     * @return true when the field changed since the previous image.
+     * @throws IllegalArgumentException when the field does not belong to the subscription.
+     */
+    public boolean isValueChanged(String fieldName) {
+        return mChangedFields[indexOf(fieldName)];
+    }
+
+    /**
+     * <p>Returns whether the image belongs to the snapshot.</p>
+     * @return true when the image belongs to the snapshot.
+     */
+    public boolean isSnapshot() {
+        return mSnapshot;
+    }
+    //endregion
+
+    //region Factory methods
+    /**
+     * <p>Creates the image of an update of the unified API.</p>
+     * @param itemUpdate is the update.
+     * @param fields is the names of the fields of the subscription.
+     * @return the image of the update.
+     */
+    static ItemImage from(ItemUpdate itemUpdate, String[] fields) {
+        String[] values = new String[fields.length];
+        boolean[] changedFields = new boolean[fields.length];
+        for (int i = 0; i < fields.length; i++)
+        {
+            values[i] = itemUpdate.getValue(i + 1);
+            changedFields[i] = itemUpdate.isValueChanged(i + 1);
+        }
+        return new ItemImage(itemUpdate.getItemName(), itemUpdate.getItemPos(), fields, values,
+                changedFields, itemUpdate.isSnapshot());
+    }
+
+    /**
+     * <p>Creates the image of an update of the non unified API. The unchanged fields take the old
+     * values, which in COMMAND subscriptions are the ones of the row of the same key, since they are
+     * subscribed with the command logic.</p>
+     * @param updateInfo is the update.
+     * @param fields is the names of the fields of the subscription.
+     * @return the image of the update.
+     */
+    static ItemImage from(UpdateInfo updateInfo, String[] fields) {
+        String[] values = new String[fields.length];
+        boolean[] changedFields = new boolean[fields.length];
+        for (int i = 0; i < fields.length; i++)
+        {
+            changedFields[i] = updateInfo.isValueChanged(i + 1);
+            values[i] = changedFields[i] ? updateInfo.getNewValue(i + 1) : updateInfo.getOldValue(i + 1);
+        }
+        return new ItemImage(updateInfo.getItemName(), updateInfo.getItemPos(), fields, values,
+                changedFields, updateInfo.isSnapshot());
+    }
+    //endregion
+
+    //region Merging
+    /**
+     * <p>Merges a newer image of the same item (or the same row, in COMMAND subscriptions) into
+     * a new image. The values are the newer ones and the changed fields are the fields that changed
+     * in any of them.</p>
+     * <p>In COMMAND subscriptions the commands are merged too: an ADD followed by an UPDATE is an
+     * ADD, an UPDATE followed by a DELETE is a DELETE, a DELETE followed by an ADD is an UPDATE and
+     * an ADD followed by a DELETE cancels out.</p>
+     * @param newer is the newer image.
+     * @param command true when the images belong to a COMMAND subscription.
+     * @return the merged image, or null when both images cancel out.
+     */
+    ItemImage merge(ItemImage newer, boolean command) {
+        String[] values = newer.mValues.clone();
+        boolean[] changedFields = new boolean[mChangedFields.length];
+        for (int i = 0; i < changedFields.length; i++)
+            changedFields[i] = mChangedFields[i] || newer.mChangedFields[i];
+        if (command)
+        {
+            String previousCommand = getValue(COMMAND_FIELD);
+            String newerCommand = newer.getValue(COMMAND_FIELD);
+            int commandIndex = indexOf(COMMAND_FIELD);
+            if (ADD.equals(previousCommand) && DELETE.equals(newerCommand))
+                return null;
+            if (ADD.equals(previousCommand))
+                values[commandIndex] = ADD;
+            else if (DELETE.equals(previousCommand) && ADD.equals(newerCommand))
+            {
+                values[commandIndex] = UPDATE;
+                Arrays.fill(changedFields, true);
+            }
+        }
+        return new ItemImage(newer.mItemName, newer.mItemPosition, newer.mFields, values,
+                changedFields, mSnapshot && newer.mSnapshot);
+    }
+
+    /**
+     * <p>Creates an image with the same values as this one whose changed fields are the fields that
+     * differ from a previous image of the same row.</p>
+     * @param previous is the previous image, or null when there is none, in which case every
+     *                 field is changed.
+     * @return the new image.
+     */
+    ItemImage diff(ItemImage previous) {
+        boolean[] changedFields = new boolean[mValues.length];
+        for (int i = 0; i < changedFields.length; i++)
+            changedFields[i] = previous == null ||
+                    (mValues[i] == null ? previous.mValues[i] != null : !mValues[i].equals(previous.mValues[i]));
+        return new ItemImage(mItemName, mItemPosition, mFields, mValues, changedFields, mSnapshot);
+    }
+    //endregion
+
+    /**
+     * <p>Estimates the memory used by the image, counting the image, its arrays and its values but
+     * not the field names, which are shared by every image of a subscription.</p>
+     * @return the estimated number of bytes.
+     */
+    long estimateBytes() {
+        long bytes = 32 + 16 + 4L * mValues.length + 16 + mChangedFields.length;
+        for (String value : mValues)
+            if (value != null)
+                bytes += 40 + 2L * value.length();
+        return bytes;
+    }
+
+    /**
+     * <p>Returns the index of a field in the value array.</p>
+     * @param fieldName is the name of the field.
+     * @return the index of the field, starting at 0.
+     */
+    private int indexOf(String fieldName) {
+        for (int i = 0; i < mFields.length; i++)
+            if (mFields[i].equals(fieldName))
+                return i;
+        throw new IllegalArgumentException("Unknown field " + fieldName);
+    }
+}
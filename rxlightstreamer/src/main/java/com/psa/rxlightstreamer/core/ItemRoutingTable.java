@@ -0,0 +1,136 @@
+package com.psa.rxlightstreamer.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import rx.Observable;
+import rx.subjects.PublishSubject;
+
+/**
+ * <p>This class routes the events of a subscription to the observers of each item. Items are
+ * looked up by name in a hash map and by position in an array, so every update only reaches the
+ * observers of its own item without filtering.</p>
+ * <p>Positions start at 1, as they do in LightStreamer.</p>
+ * @param <T> is the type of the routed items.
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class ItemRoutingTable<T> {
+    private Map<String, Integer> mPositions;
+    private AtomicReferenceArray<PublishSubject<RxSubscription.SubscriptionEvent<T>>> mItemSubjects;
+
+    /**
+     * <p>Instantiates a routing table for the given items.</p>
+     * @param items are the items of the subscription.
+     */
+    ItemRoutingTable(String[] items)
+    {
+        int itemCount = items == null ? 0 : items.length;
+        mPositions = new HashMap<>(itemCount * 2);
+        for (int i = 0; i < itemCount; i++)
+            mPositions.put(items[i], i + 1);
+        mItemSubjects = new AtomicReferenceArray<>(itemCount);
+    }
+
+    /**
+     * <p>Returns the position of an item.</p>
+     * @param itemName is the name of the item.
+     * @return the position of the item, starting at 1.
+     * @throws IllegalArgumentException when the item does not belong to the subscription.
+     */
+    int getPosition(String itemName)
+    {
+        Integer position = mPositions.get(itemName);
+        if (position == null)
+            throw new IllegalArgumentException("Unknown item " + itemName);
+        return position;
+    }
+
+    /**
+     * <p>Returns the observable for the item at the given position.</p>
+     * @param position is the position of the item, starting at 1.
+     * @return an observable that only emits the events of that item.
+     * @throws IllegalArgumentException when the position is out of range.
+     */
+    Observable<RxSubscription.SubscriptionEvent<T>> getItemObservable(int position)
+    {
+        if (position < 1 || position > mItemSubjects.length())
+            throw new IllegalArgumentException("Item position out of range: " + position);
+        return Observable.defer(() -> getItemSubject(position));
+    }
+
+    /**
+     * <p>Returns whether the item at the given position has observers.</p>
+     * @param position is the position of the item, starting at 1.
+     * @return true when there is someone listening to the item.
+     */
+    boolean hasObservers(int position)
+    {
+        if (position < 1 || position > mItemSubjects.length())
+            return false;
+        PublishSubject<RxSubscription.SubscriptionEvent<T>> subject = mItemSubjects.get(position - 1);
+        return subject != null && subject.hasObservers();
+    }
+
+    /**
+     * <p>Sends an event to the observers of an item.</p>
+     * @param position is the position of the item, starting at 1.
+     * @param event is the event to send.
+     */
+    void onNext(int position, RxSubscription.SubscriptionEvent<T> event)
+    {
+        if (position < 1 || position > mItemSubjects.length())
+            return;
+        PublishSubject<RxSubscription.SubscriptionEvent<T>> subject = mItemSubjects.get(position - 1);
+        if (subject != null)
+            subject.onNext(event);
+    }
+
+    /**
+     * <p>Sends an event to the observers of every item. It is used for the subscription and
+     * unsubscription events.</p>
+     * @param event is the event to send.
+     */
+    void broadcast(RxSubscription.SubscriptionEvent<T> event)
+    {
+        for (int i = 0; i < mItemSubjects.length(); i++)
+        {
+            PublishSubject<RxSubscription.SubscriptionEvent<T>> subject = mItemSubjects.get(i);
+            if (subject != null)
+                subject.onNext(event);
+        }
+    }
+
+    /**
+     * <p>Ends the item observables. New observers will get new ones.</p>
+     * @param throwable is the error to send, or null to complete the observables.
+     */
+    void terminate(Throwable throwable)
+    {
+        for (int i = 0; i < mItemSubjects.length(); i++)
+        {
+            PublishSubject<RxSubscription.SubscriptionEvent<T>> subject = mItemSubjects.getAndSet(i, null);
+            if (subject != null)
+            {
+                if (throwable == null)
+                    subject.onCompleted();
+                else
+                    subject.onError(throwable);
+            }
+        }
+    }
+
+    /**
+     * <p>Returns the subject of an item, creating it if needed.</p>
+     * @param position is the position of the item, starting at 1.
+     * @return the subject of the item.
+     */
+    private PublishSubject<RxSubscription.SubscriptionEvent<T>> getItemSubject(int position)
+    {
+        PublishSubject<RxSubscription.SubscriptionEvent<T>> subject;
+        while ((subject = mItemSubjects.get(position - 1)) == null)
+            mItemSubjects.compareAndSet(position - 1, null, PublishSubject.create());
+        return subject;
+    }
+}
@@ -0,0 +1,529 @@
+package com.psa.rxlightstreamer.core;
+
+import com.psa.rxlightstreamer.helpers.SubscriptionEventType;
+import com.psa.rxlightstreamer.helpers.SubscriptionType;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.exceptions.Exceptions;
+import rx.functions.Func1;
+
+/**
+ * <p>This class keeps the latest image of every item of a subscription, so that observers that
+ * subscribe after the snapshot get the current value of every item straight away, before the
+ * live updates, without asking the server again.</p>
+ * <p>Images are written on the LightStreamer thread while holding the lock of the cache, and the
+ * update is published before the lock is released. Replays only hold the same lock to copy the
+ * cached images and the version of the cache, and emit the copy outside it, so slow observers do
+ * not stall the LightStreamer thread. Live updates that arrive meanwhile are held back and stitched
+ * to the copy by its version, so no update is lost or delivered out of order in between.</p>
+ * <p>The images are removed when the subscription is unsubscribed.</p>
+ * <p>When the subscription is subscribed through a client that has an {@link ItemCache}, the
+ * images are accounted in it, and the images of items that are not observed may be evicted to
+ * keep the memory of every subscription of the client within a budget.</p>
+ * <p>When the subscription has a {@link SnapshotStore}, the cache starts with the images stored by
+ * a previous run and every new image is written to the store.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class LastValueCache {
+    private String[] mItems;
+    private AtomicReferenceArray<ItemImage> mImages;
+    private Func1<Integer, Boolean> mObserved;
+    private ItemCache.Entry[] mEntries;
+    private volatile ItemCache mItemCache;
+    private SnapshotStore mSnapshotStore;
+    private String mAdapter;
+    /**
+     * <p>Images loaded from the snapshot store that must be dropped at the end of the snapshot if
+     * the server does not send the item, guarded by the lock of the cache.</p>
+     */
+    private ItemImage[] mStoredImages;
+    /**
+     * <p>Number of images put in the cache. It is only written holding the lock of the cache.</p>
+     */
+    private volatile long mVersion;
+
+    /**
+     * <p>Instantiates a cache.</p>
+     * @param items is the items of the subscription.
+     * @param observed tells whether an item, given its position, has observers.
+     */
+    LastValueCache(String[] items, Func1<Integer, Boolean> observed)
+    {
+        mItems = items;
+        mImages = new AtomicReferenceArray<>(items.length);
+        mObserved = observed;
+    }
+
+    //region Getters
+    /**
+     * <p>Returns the latest image of an item.</p>
+     * @param itemPosition is the position of the item, starting at 1.
+     * @return the image, or null when the item has not been updated yet.
+     * @throws IllegalArgumentException when the position is out of range.
+     */
+    public ItemImage getImage(int itemPosition)
+    {
+        checkPosition(itemPosition);
+        return read(itemPosition);
+    }
+
+    /**
+     * <p>Returns the latest image of an item.</p>
+     * @param itemName is the name of the item.
+     * @return the image, or null when the item has not been updated yet.
+     * @throws IllegalArgumentException when the item does not belong to the subscription.
+     */
+    public ItemImage getImage(String itemName)
+    {
+        for (int i = 0; i < mItems.length; i++)
+            if (mItems[i].equals(itemName))
+                return read(i + 1);
+        throw new IllegalArgumentException("Unknown item " + itemName);
+    }
+
+    /**
+     * <p>Returns the number of items that have an image.</p>
+     * @return the number of cached items.
+     */
+    public int size()
+    {
+        int size = 0;
+        for (int i = 0; i < mImages.length(); i++)
+            if (mImages.get(i) != null)
+                size++;
+        return size;
+    }
+    //endregion
+
+    //region Package methods
+    /**
+     * <p>Keeps the image of an update. It must be called holding the lock of the cache.</p>
+     * @param itemImage is the image.
+     */
+    void put(ItemImage itemImage)
+    {
+        mVersion = mVersion + 1;
+        if (mSnapshotStore != null)
+            mSnapshotStore.put(mAdapter, itemImage);
+        cache(itemImage);
+    }
+
+    /**
+     * <p>Loads the stored images of the items that are not cached yet and writes every new image to
+     * the store from now on. It must be called holding the lock of the cache.</p>
+     * @param snapshotStore is the store.
+     * @param adapter is the adapter of the items.
+     * @param fields is the fields of the images.
+     * @param reconcile true to drop the stored image of an item when the snapshot of the server
+     *                  ends without it.
+     */
+    void load(SnapshotStore snapshotStore, String adapter, String[] fields, boolean reconcile)
+    {
+        mSnapshotStore = snapshotStore;
+        mAdapter = adapter;
+        mStoredImages = reconcile ? new ItemImage[mItems.length] : null;
+        for (int i = 0; i < mItems.length; i++)
+        {
+            if (mImages.get(i) != null)
+                continue;
+            ItemImage itemImage = snapshotStore.getImage(adapter, mItems[i], i + 1, fields);
+            if (itemImage == null)
+                continue;
+            cache(itemImage);
+            if (reconcile)
+                mStoredImages[i] = itemImage;
+        }
+    }
+
+    /**
+     * <p>Drops the stored image of an item when the snapshot of the server ended without updating
+     * it. It must be called holding the lock of the cache.</p>
+     * @param itemPosition is the position of the item, starting at 1.
+     */
+    void endOfSnapshot(int itemPosition)
+    {
+        if (mStoredImages == null)
+            return;
+        ItemImage storedImage = mStoredImages[itemPosition - 1];
+        mStoredImages[itemPosition - 1] = null;
+        if (storedImage != null && mImages.get(itemPosition - 1) == storedImage)
+            remove(itemPosition);
+    }
+
+    /**
+     * <p>Removes the image of an item. It must be called holding the lock of the cache.</p>
+     * @param itemPosition is the position of the item, starting at 1.
+     */
+    void remove(int itemPosition)
+    {
+        ItemCache itemCache = mItemCache;
+        if (itemCache == null)
+        {
+            mImages.set(itemPosition - 1, null);
+            return;
+        }
+        synchronized (itemCache)
+        {
+            mImages.set(itemPosition - 1, null);
+            itemCache.remove(mEntries[itemPosition - 1]);
+        }
+    }
+
+    /**
+     * <p>Removes every image. It must be called holding the lock of the cache.</p>
+     */
+    void clear()
+    {
+        for (int i = 1; i <= mImages.length(); i++)
+            remove(i);
+    }
+
+    /**
+     * <p>Accounts the images in an item cache from now on. Images that are already cached are
+     * accounted straight away.</p>
+     * @param itemCache is the item cache.
+     */
+    synchronized void setItemCache(ItemCache itemCache)
+    {
+        if (mItemCache == itemCache)
+            return;
+        if (mItemCache != null)
+            throw new IllegalStateException("The cache is already accounted in another item cache");
+        ItemCache.Entry[] entries = new ItemCache.Entry[mImages.length()];
+        for (int i = 0; i < entries.length; i++)
+            entries[i] = new ItemCache.Entry(this, i + 1);
+        mEntries = entries;
+        synchronized (itemCache)
+        {
+            mItemCache = itemCache;
+            for (int i = 0; i < entries.length; i++)
+            {
+                ItemImage itemImage = mImages.get(i);
+                if (itemImage != null)
+                    itemCache.put(entries[i], itemImage.estimateBytes());
+            }
+        }
+    }
+
+    /**
+     * <p>Tells whether an item has observers, so that its image cannot be evicted.</p>
+     * @param itemPosition is the position of the item, starting at 1.
+     * @return true when the item has observers.
+     */
+    boolean isObserved(int itemPosition)
+    {
+        return mObserved.call(itemPosition);
+    }
+
+    /**
+     * <p>Removes the image of an item evicted by the item cache. It is called holding the lock of
+     * the item cache.</p>
+     * @param itemPosition is the position of the item, starting at 1.
+     */
+    void evict(int itemPosition)
+    {
+        mImages.set(itemPosition - 1, null);
+    }
+
+    /**
+     * <p>Returns an observable that emits the cached images of one or every item as snapshot
+     * updates and then the live updates.</p>
+     * <p>The observer is subscribed to the live updates first, and they are held back while the
+     * images are copied under the lock of the cache and emitted outside it. The held back updates
+     * are then emitted, except the ones the copied images already include, which are the updates
+     * published up to the version of the copy for items that had an image.</p>
+     * @param liveObservable is the observable of the live updates.
+     * @param itemPosition is the position of the item to replay, starting at 1, or 0 to replay
+     *                     every item.
+     * @param decoder converts the cached images.
+     * @param <T> is the decoded type.
+     * @return the observable.
+     */
+    <T> Observable<RxSubscription.SubscriptionEvent<T>> replay(
+            Observable<RxSubscription.SubscriptionEvent<T>> liveObservable, int itemPosition,
+            Func1<ItemImage, T> decoder)
+    {
+        return Observable.create(subscriber -> {
+            ReplaySubscriber<T> replaySubscriber = new ReplaySubscriber<>(subscriber, this);
+            liveObservable.unsafeSubscribe(replaySubscriber);
+            int first = itemPosition == 0 ? 1 : itemPosition;
+            int last = itemPosition == 0 ? mImages.length() : itemPosition;
+            ItemImage[] images = new ItemImage[last - first + 1];
+            long version;
+            synchronized (this)
+            {
+                for (int position = first; position <= last; position++)
+                    images[position - first] = read(position);
+                version = mVersion;
+            }
+            for (int position = first; position <= last; position++)
+            {
+                ItemImage itemImage = images[position - first];
+                if (itemImage == null)
+                    continue;
+                if (subscriber.isUnsubscribed())
+                    return;
+                T item;
+                try {
+                    item = decoder.call(itemImage);
+                } catch (Throwable throwable) {
+                    Exceptions.throwIfFatal(throwable);
+                    replaySubscriber.unsubscribe();
+                    subscriber.onError(throwable);
+                    return;
+                }
+                subscriber.onNext(new RxSubscription.SubscriptionEvent<>(SubscriptionEventType.UPDATE, true,
+                        item, itemImage.getItemName(), position, true, 0));
+            }
+            replaySubscriber.start(images, first, version);
+        });
+    }
+
+    /**
+     * <p>Checks that a subscription can have a cache.</p>
+     * @param subscriptionType is the type of the subscription.
+     * @throws UnsupportedOperationException when the subscription is COMMAND.
+     */
+    static void checkCacheable(SubscriptionType subscriptionType)
+    {
+        if (subscriptionType == SubscriptionType.COMMAND)
+            throw new UnsupportedOperationException("COMMAND subscriptions keep their rows in the command table");
+    }
+
+    /**
+     * <p>Checks that a subscription can decode the cached images, either with an incremental
+     * decoder or with its own {@code decode(ItemImage)}, so that it fails when the cache is
+     * asked for rather than when a late observer gets the first replay.</p>
+     * @param itemDecoder is the decoder of the subscription, if any.
+     * @param subscriptionClass is the class of the subscription.
+     * @param baseClass is the base class, whose {@code decode(ItemImage)} only uses the decoder.
+     * @throws UnsupportedOperationException when the subscription cannot decode the images.
+     */
+    static void checkDecodable(ItemDecoder<?> itemDecoder, Class<?> subscriptionClass, Class<?> baseClass)
+    {
+        if (itemDecoder instanceof IncrementalItemDecoder)
+            return;
+        for (Class<?> type = subscriptionClass; type != baseClass; type = type.getSuperclass())
+        {
+            try {
+                type.getDeclaredMethod("decode", ItemImage.class);
+                return;
+            } catch (NoSuchMethodException ignored) {
+            }
+        }
+        throw new UnsupportedOperationException(subscriptionClass.getName() +
+                " needs an incremental decoder or must override decode(ItemImage) to have a last value cache");
+    }
+    //endregion
+
+    /**
+     * <p>Keeps an image in memory, accounting it in the item cache, if any.</p>
+     * @param itemImage is the image.
+     */
+    private void cache(ItemImage itemImage)
+    {
+        int index = itemImage.getItemPosition() - 1;
+        ItemCache itemCache = mItemCache;
+        if (itemCache == null)
+        {
+            mImages.set(index, itemImage);
+            return;
+        }
+        synchronized (itemCache)
+        {
+            mImages.set(index, itemImage);
+            itemCache.put(mEntries[index], itemImage.estimateBytes());
+        }
+    }
+
+    /**
+     * <p>Reads the image of an item and counts the hit or the miss in the item cache, if any.</p>
+     * @param itemPosition is the position of the item, starting at 1.
+     * @return the image, or null when it is not cached.
+     */
+    private ItemImage read(int itemPosition)
+    {
+        ItemCache itemCache = mItemCache;
+        if (itemCache == null)
+            return mImages.get(itemPosition - 1);
+        synchronized (itemCache)
+        {
+            ItemImage itemImage = mImages.get(itemPosition - 1);
+            itemCache.touch(itemImage != null ? mEntries[itemPosition - 1] : null);
+            return itemImage;
+        }
+    }
+
+    /**
+     * <p>Checks that a position belongs to the subscription.</p>
+     * @param itemPosition is the position, starting at 1.
+     */
+    private void checkPosition(int itemPosition)
+    {
+        if (itemPosition < 1 || itemPosition > mImages.length())
+            throw new IllegalArgumentException("Item position out of range: " + itemPosition);
+    }
+
+    /**
+     * <p>This class is the observer of the live updates of a replay. It holds the updates back
+     * until the cached images have been emitted and then emits them, serialized with a
+     * work-in-progress counter, so that it never emits while holding a lock. Once the held back
+     * updates have been emitted, live updates go straight to the observer unless another one is
+     * being emitted.</p>
+     * @param <T> is the decoded type.
+     */
+    private static final class ReplaySubscriber<T> extends Subscriber<RxSubscription.SubscriptionEvent<T>> {
+        private static final Object COMPLETED = new Object();
+
+        private final Subscriber<? super RxSubscription.SubscriptionEvent<T>> mChild;
+        private final LastValueCache mLastValueCache;
+        private final Queue<Object> mQueue = new ConcurrentLinkedQueue<>();
+        /**
+         * <p>Starts at one, on behalf of the replay, so that nothing is emitted before the cached
+         * images.</p>
+         */
+        private final AtomicInteger mWorkInProgress = new AtomicInteger(1);
+        /**
+         * <p>The copied images, the position of the first one and the version of the copy. They
+         * are written before the replay releases the work-in-progress counter and only read by
+         * the thread that holds it.</p>
+         */
+        private ItemImage[] mImages;
+        private int mFirst;
+        private long mVersion;
+
+        /**
+         * <p>Instantiates the observer of the live updates of a replay.</p>
+         * @param child is the observer of the replay.
+         * @param lastValueCache is the replayed cache.
+         */
+        ReplaySubscriber(Subscriber<? super RxSubscription.SubscriptionEvent<T>> child,
+                         LastValueCache lastValueCache)
+        {
+            super(child);
+            mChild = child;
+            mLastValueCache = lastValueCache;
+        }
+
+        /**
+         * <p>Emits the held back updates once the copied images have been emitted.</p>
+         * @param images is the copied images.
+         * @param first is the position of the first copied image, starting at 1.
+         * @param version is the version of the cache when the images were copied.
+         */
+        void start(ItemImage[] images, int first, long version)
+        {
+            mImages = images;
+            mFirst = first;
+            mVersion = version;
+            drain();
+        }
+
+        @Override
+        public void onNext(RxSubscription.SubscriptionEvent<T> event)
+        {
+            if (mWorkInProgress.get() == 0 && mWorkInProgress.compareAndSet(0, 1))
+            {
+                mChild.onNext(event);
+                if (mWorkInProgress.decrementAndGet() == 0)
+                    return;
+            }
+            else
+            {
+                //Updates are published holding the lock of the cache, right after their image is
+                //put, so the version of the cache is the version of the update.
+                long version = event.getEventType() == SubscriptionEventType.UPDATE ?
+                        mLastValueCache.mVersion : Long.MAX_VALUE;
+                mQueue.offer(new HeldEvent<>(event.copy(), version));
+                if (mWorkInProgress.getAndIncrement() != 0)
+                    return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onCompleted()
+        {
+            mQueue.offer(COMPLETED);
+            if (mWorkInProgress.getAndIncrement() == 0)
+                drain();
+        }
+
+        @Override
+        public void onError(Throwable e)
+        {
+            mQueue.offer(e);
+            if (mWorkInProgress.getAndIncrement() == 0)
+                drain();
+        }
+
+        /**
+         * <p>Emits the held back events. It must be called holding the work-in-progress
+         * counter, which it releases.</p>
+         */
+        @SuppressWarnings("unchecked")
+        private void drain()
+        {
+            int missed = 1;
+            while (true)
+            {
+                Object held;
+                while ((held = mQueue.poll()) != null)
+                {
+                    if (mChild.isUnsubscribed())
+                        continue;
+                    if (held == COMPLETED)
+                        mChild.onCompleted();
+                    else if (held instanceof Throwable)
+                        mChild.onError((Throwable) held);
+                    else if (!isCopied((HeldEvent<T>) held))
+                        mChild.onNext(((HeldEvent<T>) held).mEvent);
+                }
+                missed = mWorkInProgress.addAndGet(-missed);
+                if (missed == 0)
+                    return;
+            }
+        }
+
+        /**
+         * <p>Tells whether an update is already included in the copied images.</p>
+         * @param heldEvent is the held back event.
+         * @return true when the image of its item was copied after the update.
+         */
+        private boolean isCopied(HeldEvent<T> heldEvent)
+        {
+            if (heldEvent.mVersion > mVersion)
+                return false;
+            int index = heldEvent.mEvent.getItemPosition() - mFirst;
+            return index >= 0 && index < mImages.length && mImages[index] != null;
+        }
+    }
+
+    /**
+     * <p>This class is a live event held back by a replay, with the version of the cache it was
+     * published at.</p>
+     * @param <T> is the decoded type.
+     */
+    private static final class HeldEvent<T> {
+        private final RxSubscription.SubscriptionEvent<T> mEvent;
+        private final long mVersion;
+
+        /**
+         * <p>Instantiates a held back event.</p>
+         * @param event is the event.
+         * @param version is the version of the cache.
+         */
+        HeldEvent(RxSubscription.SubscriptionEvent<T> event, long version)
+        {
+            mEvent = event;
+            mVersion = version;
+        }
+    }
+}
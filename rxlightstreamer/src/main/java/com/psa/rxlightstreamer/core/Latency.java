@@ -0,0 +1,106 @@
+package com.psa.rxlightstreamer.core;
+
+/**
+ * <p>This class is a sample of the latencies of a subscription, split so that network lag can be
+ * told apart from the lag of the application:</p>
+ * <ul>
+ *     <li>The wire latency goes from the server timestamp of an update to the moment the listener
+ *     of the subscription received it, corrected by the estimated offset between the clocks of the
+ *     client and the server.</li>
+ *     <li>The pipeline latency goes from the moment the listener received an update to the moment
+ *     an observer got it, which covers decoding, schedulers and any queue in between.</li>
+ * </ul>
+ * <p>The clocks of the client and the server are not synchronised, so the offset between them is
+ * estimated as the lowest difference between the receive time and the server timestamp over the
+ * last minute or so. The wire latency is therefore measured from the fastest update of that period,
+ * and it shows the lag on top of the best the network did.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class Latency {
+    private final long mTimestamp;
+    private final LatencyHistogram mWireLatency;
+    private final LatencyHistogram mPipelineLatency;
+    private final boolean mClockOffsetKnown;
+    private final long mClockOffsetMillis;
+
+    /**
+     * <p>Instantiates a sample.</p>
+     * @param timestamp is the time of the sample, in milliseconds since the epoch.
+     * @param wireLatency is the histogram of the wire latencies.
+     * @param pipelineLatency is the histogram of the pipeline latencies.
+     * @param clockOffsetKnown true when the offset of the clocks has been estimated.
+     * @param clockOffsetMillis is the offset of the clocks.
+     */
+    Latency(long timestamp, LatencyHistogram wireLatency, LatencyHistogram pipelineLatency,
+            boolean clockOffsetKnown, long clockOffsetMillis)
+    {
+        mTimestamp = timestamp;
+        mWireLatency = wireLatency;
+        mPipelineLatency = pipelineLatency;
+        mClockOffsetKnown = clockOffsetKnown;
+        mClockOffsetMillis = clockOffsetMillis;
+    }
+
+    //region Getters
+    /**
+     * <p>Returns when the sample was taken.</p>
+     * @return the time of the sample, in milliseconds since the epoch.
+     */
+    public long getTimestamp()
+    {
+        return mTimestamp;
+    }
+
+    /**
+     * <p>Returns the histogram of the latencies from the server to the listener of the
+     * subscription. It is empty unless a server timestamp field has been set.</p>
+     * @return the histogram, in nanoseconds.
+     * @see RxSubscription#setServerTimeField(String, ServerTimeParser)
+     */
+    public LatencyHistogram getWireLatency()
+    {
+        return mWireLatency;
+    }
+
+    /**
+     * <p>Returns the histogram of the latencies from the listener of the subscription to the
+     * observers. It is empty unless observers track them.</p>
+     * @return the histogram, in nanoseconds.
+     * @see RxSubscription#trackLatency()
+     */
+    public LatencyHistogram getPipelineLatency()
+    {
+        return mPipelineLatency;
+    }
+
+    /**
+     * <p>Returns whether the offset of the clocks has been estimated.</p>
+     * @return true when it has.
+     */
+    public boolean isClockOffsetKnown()
+    {
+        return mClockOffsetKnown;
+    }
+
+    /**
+     * <p>Returns the estimated offset of the clock of the client from the one of the server, which
+     * includes the fastest trip of an update from the server.</p>
+     * @return the offset in milliseconds, or 0 when it is not known.
+     */
+    public long getClockOffsetMillis()
+    {
+        return mClockOffsetMillis;
+    }
+    //endregion
+
+    @Override
+    public String toString()
+    {
+        return "Latency{wireP50=" + mWireLatency.getValueAtPercentile(50) +
+                ", wireP99=" + mWireLatency.getValueAtPercentile(99) +
+                ", pipelineP50=" + mPipelineLatency.getValueAtPercentile(50) +
+                ", pipelineP99=" + mPipelineLatency.getValueAtPercentile(99) +
+                ", clockOffsetMillis=" + (mClockOffsetKnown ? String.valueOf(mClockOffsetMillis) : "unknown") + "}";
+    }
+}
@@ -0,0 +1,185 @@
+package com.psa.rxlightstreamer.core;
+
+/**
+ * <p>This class is a histogram of latencies in nanoseconds, laid out as HDR histograms are: every
+ * power of two is split in the same number of linear buckets, so every recorded value is kept
+ * with a relative error below 1% from a nanosecond to hundreds of years, in a fixed amount of
+ * memory and with no allocation when recording.</p>
+ * <p>It is not thread safe. Every recording thread should have its own histogram, and histograms
+ * can be {@link #add(LatencyHistogram) added} together once recording has finished. The histograms
+ * that subscriptions publish in their {@link Latency latency samples} are copies, which can be read
+ * from any thread.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (64 - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT;
+
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mCount;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax;
+    private double mSum;
+
+    /**
+     * <p>Records a latency. Negative latencies are recorded as 0.</p>
+     * @param nanos is the latency in nanoseconds.
+     */
+    void record(long nanos)
+    {
+        if (nanos < 0)
+            nanos = 0;
+        mCounts[index(nanos)]++;
+        mCount++;
+        mSum += nanos;
+        if (nanos < mMin)
+            mMin = nanos;
+        if (nanos > mMax)
+            mMax = nanos;
+    }
+
+    /**
+     * <p>Adds the latencies of another histogram to this one.</p>
+     * @param histogram is the other histogram.
+     */
+    void add(LatencyHistogram histogram)
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            mCounts[i] += histogram.mCounts[i];
+        mCount += histogram.mCount;
+        mSum += histogram.mSum;
+        mMin = Math.min(mMin, histogram.mMin);
+        mMax = Math.max(mMax, histogram.mMax);
+    }
+
+    /**
+     * <p>Returns a copy of this histogram.</p>
+     * @return the copy.
+     */
+    LatencyHistogram copy()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.add(this);
+        return histogram;
+    }
+
+    //region Getters
+    /**
+     * <p>Returns the number of recorded latencies.</p>
+     * @return the number of latencies.
+     */
+    public long getCount()
+    {
+        return mCount;
+    }
+
+    /**
+     * <p>Returns the lowest recorded latency.</p>
+     * @return the latency in nanoseconds, or 0 when nothing was recorded.
+     */
+    public long getMin()
+    {
+        return mCount == 0 ? 0 : mMin;
+    }
+
+    /**
+     * <p>Returns the highest recorded latency.</p>
+     * @return the latency in nanoseconds.
+     */
+    public long getMax()
+    {
+        return mMax;
+    }
+
+    /**
+     * <p>Returns the mean of the recorded latencies.</p>
+     * @return the mean in nanoseconds, or 0 when nothing was recorded.
+     */
+    public double getMean()
+    {
+        return mCount == 0 ? 0 : mSum / mCount;
+    }
+
+    /**
+     * <p>Returns the latency that a percentage of the recorded latencies do not exceed.</p>
+     * @param percentile is the percentage, from 0 to 100.
+     * @return the highest latency of the bucket of the percentile in nanoseconds, never above the
+     * highest recorded one, or 0 when nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        if (mCount == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * mCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += mCounts[i];
+            if (seen >= rank)
+                return Math.min(highestValue(i), mMax);
+        }
+        return mMax;
+    }
+
+    /**
+     * <p>Returns the number of buckets.</p>
+     * @return the number of buckets.
+     */
+    public int getBucketCount()
+    {
+        return BUCKET_COUNT;
+    }
+
+    /**
+     * <p>Returns the number of latencies recorded in a bucket.</p>
+     * @param bucket is the bucket.
+     * @return the number of latencies.
+     */
+    public long getCountAt(int bucket)
+    {
+        return mCounts[bucket];
+    }
+
+    /**
+     * <p>Returns the highest latency that a bucket holds.</p>
+     * @param bucket is the bucket.
+     * @return the latency in nanoseconds.
+     */
+    public long getHighestValueAt(int bucket)
+    {
+        return highestValue(bucket);
+    }
+    //endregion
+
+    /**
+     * <p>Returns the bucket of a latency. Below {@link #SUB_BUCKET_COUNT} every value has its own
+     * bucket; above it, every power of two has {@link #HALF_SUB_BUCKET_COUNT} buckets.</p>
+     * @param nanos is the latency, not negative.
+     * @return the bucket.
+     */
+    private static int index(long nanos)
+    {
+        if (nanos < SUB_BUCKET_COUNT)
+            return (int) nanos;
+        int shift = 63 - Long.numberOfLeadingZeros(nanos) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT +
+                (int) (nanos >>> shift) - HALF_SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * <p>Returns the highest latency of a bucket.</p>
+     * @param bucket is the bucket.
+     * @return the latency in nanoseconds.
+     */
+    private static long highestValue(int bucket)
+    {
+        if (bucket < SUB_BUCKET_COUNT)
+            return bucket;
+        int shift = (bucket - SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT + 1;
+        long subBucket = (bucket - SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,139 @@
+package com.psa.rxlightstreamer.core;
+
+/**
+ * <p>This class records the latencies of a subscription: the wire latencies, from the server
+ * timestamp field of the updates, on the LightStreamer thread, and the pipeline latencies, from
+ * the receive time of the updates, on the threads of the observers that track them.</p>
+ * <p>The offset of the clocks is the lowest difference between the receive time and the server
+ * timestamp of the current and the previous {@link #OFFSET_WINDOW_MILLIS window}, so that it
+ * follows the drift of the clocks.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class LatencyTracker {
+    /**
+     * <p>Length of the windows of the estimate of the offset of the clocks, in milliseconds.</p>
+     */
+    static final long OFFSET_WINDOW_MILLIS = 30000;
+
+    /**
+     * <p>Guards the wire latencies, the server timestamp field and the estimate of the offset of
+     * the clocks.</p>
+     */
+    private final LatencyHistogram mWireLatency = new LatencyHistogram();
+    /**
+     * <p>Guards the pipeline latencies.</p>
+     */
+    private final LatencyHistogram mPipelineLatency = new LatencyHistogram();
+    private volatile int mServerTimePosition;
+    private ServerTimeParser mServerTimeParser;
+    private long mWindowStart;
+    private long mWindowOffset = Long.MAX_VALUE;
+    private long mPreviousWindowOffset = Long.MAX_VALUE;
+
+    /**
+     * <p>Sets the field of the server timestamp, which starts the estimate of the offset of the
+     * clocks over.</p>
+     * @param position is the position of the field, starting at 1, or 0 to stop tracking wire
+     *                 latencies.
+     * @param parser is the parser of the field.
+     */
+    void setServerTimeField(int position, ServerTimeParser parser)
+    {
+        synchronized (mWireLatency)
+        {
+            mServerTimeParser = parser;
+            mWindowStart = 0;
+            mWindowOffset = Long.MAX_VALUE;
+            mPreviousWindowOffset = Long.MAX_VALUE;
+            mServerTimePosition = position;
+        }
+    }
+
+    /**
+     * <p>Returns the position of the field of the server timestamp.</p>
+     * @return the position, starting at 1, or 0 when wire latencies are not tracked.
+     */
+    int getServerTimePosition()
+    {
+        return mServerTimePosition;
+    }
+
+    /**
+     * <p>Records the wire latency of an update.</p>
+     * @param serverTime is the value of the server timestamp field.
+     * @param receiveMillis is when the update was received, in milliseconds since the epoch.
+     */
+    void serverTimeReceived(String serverTime, long receiveMillis)
+    {
+        synchronized (mWireLatency)
+        {
+            ServerTimeParser parser = mServerTimeParser;
+            if (parser == null || serverTime == null)
+                return;
+            long serverMillis;
+            try {
+                serverMillis = parser.parse(serverTime, receiveMillis);
+            } catch (RuntimeException ex) {
+                return;
+            }
+            if (serverMillis < 0)
+                return;
+            long offset = receiveMillis - serverMillis;
+            if (receiveMillis - mWindowStart >= OFFSET_WINDOW_MILLIS)
+            {
+                mPreviousWindowOffset = mWindowStart == 0 ? Long.MAX_VALUE : mWindowOffset;
+                mWindowOffset = Long.MAX_VALUE;
+                mWindowStart = receiveMillis;
+            }
+            if (offset < mWindowOffset)
+                mWindowOffset = offset;
+            mWireLatency.record((offset - getClockOffset()) * 1000000);
+        }
+    }
+
+    /**
+     * <p>Records the pipeline latency of an update.</p>
+     * @param nanos is the time from the receive time of the update to now.
+     */
+    void updateObserved(long nanos)
+    {
+        synchronized (mPipelineLatency)
+        {
+            mPipelineLatency.record(nanos);
+        }
+    }
+
+    /**
+     * <p>Takes a sample of the latencies.</p>
+     * @return the sample.
+     */
+    Latency sample()
+    {
+        LatencyHistogram wireLatency;
+        long clockOffset;
+        synchronized (mWireLatency)
+        {
+            wireLatency = mWireLatency.copy();
+            clockOffset = getClockOffset();
+        }
+        LatencyHistogram pipelineLatency;
+        synchronized (mPipelineLatency)
+        {
+            pipelineLatency = mPipelineLatency.copy();
+        }
+        boolean clockOffsetKnown = clockOffset != Long.MAX_VALUE;
+        return new Latency(System.currentTimeMillis(), wireLatency, pipelineLatency, clockOffsetKnown,
+                clockOffsetKnown ? clockOffset : 0);
+    }
+
+    /**
+     * <p>Returns the estimate of the offset of the clocks. It must be called holding the lock of
+     * the wire latencies.</p>
+     * @return the offset in milliseconds, or {@link Long#MAX_VALUE} when it is not known.
+     */
+    private long getClockOffset()
+    {
+        return Math.min(mWindowOffset, mPreviousWindowOffset);
+    }
+}
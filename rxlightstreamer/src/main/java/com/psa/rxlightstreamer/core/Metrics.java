@@ -0,0 +1,227 @@
+package com.psa.rxlightstreamer.core;
+
+/**
+ * <p>This class is a sample of the metrics of a subscription, or of every subscription of a
+ * client. Counters grow from the moment the subscription is created, so rates are the difference
+ * between two samples divided by the time between them.</p>
+ * <p>The metrics of a client add up the counters of its subscriptions, including the ones that
+ * were unsubscribed, and its times are the longest ones of its current subscriptions.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class Metrics {
+    private final long mTimestamp;
+    private final int mSubscriptionCount;
+    private final long mUpdatesReceived;
+    private final long mUpdatesDelivered;
+    private final long mLostUpdates;
+    private final long mQueueDepth;
+    private final long mSnapshotUpdates;
+    private final long mSnapshotNanos;
+    private final long mFirstUpdateNanos;
+    private final long mDecodeSamples;
+    private final long mDecodeNanos;
+    private final long mBytes;
+    private final long mParseErrors;
+
+    /**
+     * <p>Instantiates a sample.</p>
+     * @param timestamp is the time of the sample, in milliseconds since the epoch.
+     * @param subscriptionCount is the number of subscriptions.
+     * @param updatesReceived is the number of updates received from LightStreamer.
+     * @param updatesDelivered is the number of updates delivered to observers.
+     * @param lostUpdates is the number of updates LightStreamer reported as lost.
+     * @param queueDepth is the number of images waiting in conflated and batched observables.
+     * @param snapshotUpdates is the number of snapshot updates received.
+     * @param snapshotNanos is the time from the subscription to the last end of snapshot, or -1.
+     * @param firstUpdateNanos is the time from subscribing to the first update, or -1.
+     * @param decodeSamples is the number of decodings that were timed.
+     * @param decodeNanos is the time the timed decodings took.
+     * @param bytes is the number of bytes of the stream accounted to the subscriptions.
+     * @param parseErrors is the number of field values that could not be parsed.
+     */
+    Metrics(long timestamp, int subscriptionCount, long updatesReceived, long updatesDelivered, long lostUpdates,
+            long queueDepth, long snapshotUpdates, long snapshotNanos, long firstUpdateNanos, long decodeSamples,
+            long decodeNanos, long bytes, long parseErrors)
+    {
+        mTimestamp = timestamp;
+        mSubscriptionCount = subscriptionCount;
+        mUpdatesReceived = updatesReceived;
+        mUpdatesDelivered = updatesDelivered;
+        mLostUpdates = lostUpdates;
+        mQueueDepth = queueDepth;
+        mSnapshotUpdates = snapshotUpdates;
+        mSnapshotNanos = snapshotNanos;
+        mFirstUpdateNanos = firstUpdateNanos;
+        mDecodeSamples = decodeSamples;
+        mDecodeNanos = decodeNanos;
+        mBytes = bytes;
+        mParseErrors = parseErrors;
+    }
+
+    //region Getters
+    /**
+     * <p>Returns when the sample was taken.</p>
+     * @return the time of the sample, in milliseconds since the epoch.
+     */
+    public long getTimestamp()
+    {
+        return mTimestamp;
+    }
+
+    /**
+     * <p>Returns the number of subscriptions of the sample.</p>
+     * @return 1 for a subscription, the number of current subscriptions for a client.
+     */
+    public int getSubscriptionCount()
+    {
+        return mSubscriptionCount;
+    }
+
+    /**
+     * <p>Returns the number of updates received from LightStreamer.</p>
+     * @return the number of updates.
+     */
+    public long getUpdatesReceived()
+    {
+        return mUpdatesReceived;
+    }
+
+    /**
+     * <p>Returns the number of updates delivered to observers. An update is counted once however
+     * many observers get it, and updates received while nobody observes are not counted.</p>
+     * @return the number of updates.
+     */
+    public long getUpdatesDelivered()
+    {
+        return mUpdatesDelivered;
+    }
+
+    /**
+     * <p>Returns the number of updates that LightStreamer reported as lost.</p>
+     * @return the number of updates.
+     */
+    public long getLostUpdates()
+    {
+        return mLostUpdates;
+    }
+
+    /**
+     * <p>Returns the number of images waiting to be delivered by conflated and batched
+     * observables.</p>
+     * @return the number of images.
+     */
+    public long getQueueDepth()
+    {
+        return mQueueDepth;
+    }
+
+    /**
+     * <p>Returns the number of snapshot updates received.</p>
+     * @return the number of updates.
+     */
+    public long getSnapshotUpdates()
+    {
+        return mSnapshotUpdates;
+    }
+
+    /**
+     * <p>Returns the time from the subscription being accepted to the end of the snapshot of its
+     * last item, for the latest subscription.</p>
+     * @return the time in nanoseconds, or -1 when no snapshot has ended yet.
+     */
+    public long getSnapshotNanos()
+    {
+        return mSnapshotNanos;
+    }
+
+    /**
+     * <p>Returns the time from subscribing to the first update, for the latest subscription.</p>
+     * @return the time in nanoseconds, or -1 when no update has been received yet.
+     */
+    public long getFirstUpdateNanos()
+    {
+        return mFirstUpdateNanos;
+    }
+
+    /**
+     * <p>Returns the mean time taken to decode an update. Only one update in every few is timed,
+     * so timing costs next to nothing.</p>
+     * @return the time in nanoseconds, or 0 when no decoding has been timed.
+     */
+    public double getMeanDecodeNanos()
+    {
+        return mDecodeSamples == 0 ? 0 : (double) mDecodeNanos / mDecodeSamples;
+    }
+
+    /**
+     * <p>Returns the number of bytes of the stream accounted to the subscription. The bytes a
+     * client receives are split across its subscriptions by the number of updates each one
+     * received, and the bytes of the session itself are not accounted to any of them.</p>
+     * @return the number of bytes.
+     * @see RxNonUnifiedLSClient#getBandwidth()
+     * @see RxLightStreamerClient#getBandwidth()
+     */
+    public long getBytes()
+    {
+        return mBytes;
+    }
+
+    /**
+     * <p>Returns the number of field values that could not be parsed by the decoder. Their fields
+     * kept their previous values.</p>
+     * @return the number of values.
+     */
+    public long getParseErrors()
+    {
+        return mParseErrors;
+    }
+    //endregion
+
+    /**
+     * <p>Adds the metrics of a subscription to the ones of a client.</p>
+     * @param metrics is the metrics of the subscription.
+     * @param timestamp is the time of the new sample.
+     * @return the new sample.
+     */
+    Metrics add(Metrics metrics, long timestamp)
+    {
+        return new Metrics(timestamp, mSubscriptionCount + metrics.mSubscriptionCount,
+                mUpdatesReceived + metrics.mUpdatesReceived, mUpdatesDelivered + metrics.mUpdatesDelivered,
+                mLostUpdates + metrics.mLostUpdates, mQueueDepth + metrics.mQueueDepth,
+                mSnapshotUpdates + metrics.mSnapshotUpdates, Math.max(mSnapshotNanos, metrics.mSnapshotNanos),
+                Math.max(mFirstUpdateNanos, metrics.mFirstUpdateNanos), mDecodeSamples + metrics.mDecodeSamples,
+                mDecodeNanos + metrics.mDecodeNanos, mBytes + metrics.mBytes, mParseErrors + metrics.mParseErrors);
+    }
+
+    /**
+     * <p>Returns the counters of a subscription that is no longer one of a client, so that the
+     * counters of the client keep growing after it is unsubscribed.</p>
+     * @return the counters, with no subscription, no queue and no times.
+     */
+    Metrics retire()
+    {
+        return new Metrics(mTimestamp, 0, mUpdatesReceived, mUpdatesDelivered, mLostUpdates, 0, mSnapshotUpdates,
+                -1, -1, mDecodeSamples, mDecodeNanos, mBytes, mParseErrors);
+    }
+
+    /**
+     * <p>Returns the metrics of a client with no subscription.</p>
+     * @return the empty metrics.
+     */
+    static Metrics empty()
+    {
+        return new Metrics(0, 0, 0, 0, 0, 0, 0, -1, -1, 0, 0, 0, 0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Metrics{subscriptions=" + mSubscriptionCount + ", updatesReceived=" + mUpdatesReceived +
+                ", updatesDelivered=" + mUpdatesDelivered + ", lostUpdates=" + mLostUpdates +
+                ", queueDepth=" + mQueueDepth + ", snapshotUpdates=" + mSnapshotUpdates +
+                ", snapshotNanos=" + mSnapshotNanos + ", firstUpdateNanos=" + mFirstUpdateNanos +
+                ", meanDecodeNanos=" + getMeanDecodeNanos() + ", bytes=" + mBytes +
+                ", parseErrors=" + mParseErrors + "}";
+    }
+}
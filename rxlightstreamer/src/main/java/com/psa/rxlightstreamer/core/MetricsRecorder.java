@@ -0,0 +1,188 @@
+package com.psa.rxlightstreamer.core;
+
+/**
+ * <p>This class records the metrics of a subscription. Counters are {@link StripedCounter striped},
+ * so recording on the LightStreamer thread is an uncontended atomic add, and reading them from
+ * another thread does not slow it down.</p>
+ * <p>Only one decoding in every {@link #DECODE_SAMPLE_INTERVAL} is timed, to keep the cost of
+ * reading the clock out of most updates.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class MetricsRecorder {
+    static final int DECODE_SAMPLE_INTERVAL = 16;
+
+    private final StripedCounter mUpdatesReceived = new StripedCounter();
+    private final StripedCounter mUpdatesDelivered = new StripedCounter();
+    private final StripedCounter mLostUpdates = new StripedCounter();
+    private final StripedCounter mQueueDepth = new StripedCounter();
+    private final StripedCounter mSnapshotUpdates = new StripedCounter();
+    private final StripedCounter mDecodeSamples = new StripedCounter();
+    private final StripedCounter mDecodeNanos = new StripedCounter();
+    private final StripedCounter mBytes = new StripedCounter();
+    private final ParseErrors mParseErrors = new ParseErrors();
+    /**
+     * <p>Counts decodings to pick the ones to time. It is only used on the LightStreamer thread,
+     * and a lost count only moves the sample.</p>
+     */
+    private int mDecodings;
+    private volatile long mSubscribeTime;
+    private volatile long mSubscribedTime;
+    private volatile boolean mWaitingFirstUpdate;
+    private volatile long mFirstUpdateNanos = -1;
+    private volatile long mSnapshotNanos = -1;
+    /**
+     * <p>Holds the updates received whose bytes have already been accounted. It is guarded by the
+     * client that accounts the bytes.</p>
+     */
+    private long mAccountedUpdates;
+
+    //region Recording
+    /**
+     * <p>Records that the subscription is being subscribed, which starts the times to the first
+     * update and to the end of the snapshot.</p>
+     */
+    void subscribing()
+    {
+        long now = System.nanoTime();
+        mFirstUpdateNanos = -1;
+        mSnapshotNanos = -1;
+        mSubscribeTime = now;
+        mSubscribedTime = now;
+        mWaitingFirstUpdate = true;
+    }
+
+    /**
+     * <p>Records that the server accepted the subscription, which restarts the time to the end of
+     * the snapshot.</p>
+     */
+    void subscribed()
+    {
+        mSubscribedTime = System.nanoTime();
+    }
+
+    /**
+     * <p>Records an update received from LightStreamer.</p>
+     * @param snapshot true when the update belongs to the snapshot.
+     */
+    void updateReceived(boolean snapshot)
+    {
+        mUpdatesReceived.increment();
+        if (snapshot)
+            mSnapshotUpdates.increment();
+        if (mWaitingFirstUpdate)
+        {
+            mWaitingFirstUpdate = false;
+            mFirstUpdateNanos = System.nanoTime() - mSubscribeTime;
+        }
+    }
+
+    /**
+     * <p>Records an update delivered to the observers.</p>
+     */
+    void updateDelivered()
+    {
+        mUpdatesDelivered.increment();
+    }
+
+    /**
+     * <p>Starts a decoding.</p>
+     * @return the time the decoding starts when it is timed, or 0.
+     */
+    long decodeStarted()
+    {
+        return ++mDecodings % DECODE_SAMPLE_INTERVAL == 0 ? System.nanoTime() : 0;
+    }
+
+    /**
+     * <p>Ends a decoding.</p>
+     * @param start is the value returned by {@link #decodeStarted()}.
+     */
+    void decodeEnded(long start)
+    {
+        if (start == 0)
+            return;
+        mDecodeNanos.add(System.nanoTime() - start);
+        mDecodeSamples.increment();
+    }
+
+    /**
+     * <p>Records updates that LightStreamer reported as lost.</p>
+     * @param lostUpdates is the number of updates.
+     */
+    void updatesLost(int lostUpdates)
+    {
+        mLostUpdates.add(lostUpdates);
+    }
+
+    /**
+     * <p>Records the end of the snapshot of an item.</p>
+     */
+    void endOfSnapshot()
+    {
+        long subscribedTime = mSubscribedTime;
+        if (subscribedTime != 0)
+            mSnapshotNanos = System.nanoTime() - subscribedTime;
+    }
+
+    /**
+     * <p>Records bytes of the stream that belong to this subscription.</p>
+     * @param bytes is the number of bytes.
+     */
+    void bytesReceived(long bytes)
+    {
+        mBytes.add(bytes);
+    }
+
+    /**
+     * <p>Returns the counter of the images waiting in conflated and batched observables.</p>
+     * @return the counter.
+     */
+    StripedCounter getQueueDepth()
+    {
+        return mQueueDepth;
+    }
+
+    /**
+     * <p>Returns the counter of the values that could not be parsed.</p>
+     * @return the counter.
+     */
+    ParseErrors getParseErrors()
+    {
+        return mParseErrors;
+    }
+    //endregion
+
+    //region Bandwidth accounting
+    /**
+     * <p>Returns the updates received since bytes were last accounted to this subscription.</p>
+     * @return the number of updates.
+     */
+    long getUnaccountedUpdates()
+    {
+        return mUpdatesReceived.sum() - mAccountedUpdates;
+    }
+
+    /**
+     * <p>Accounts bytes of the stream to the updates of this subscription.</p>
+     * @param bytes is the number of bytes.
+     * @param updates is the number of updates they belong to.
+     */
+    void accountBytes(long bytes, long updates)
+    {
+        mBytes.add(bytes);
+        mAccountedUpdates += updates;
+    }
+    //endregion
+
+    /**
+     * <p>Takes a sample of the metrics.</p>
+     * @return the sample.
+     */
+    Metrics sample()
+    {
+        return new Metrics(System.currentTimeMillis(), 1, mUpdatesReceived.sum(), mUpdatesDelivered.sum(),
+                mLostUpdates.sum(), mQueueDepth.sum(), mSnapshotUpdates.sum(), mSnapshotNanos, mFirstUpdateNanos,
+                mDecodeSamples.sum(), mDecodeNanos.sum(), mBytes.sum(), mParseErrors.get());
+    }
+}
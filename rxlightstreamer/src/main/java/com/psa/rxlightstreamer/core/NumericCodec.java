@@ -0,0 +1,380 @@
+package com.psa.rxlightstreamer.core;
+
+import java.math.BigDecimal;
+
+/**
+ * <p>This class parses numeric field values without allocating. Values are plain decimal strings
+ * with an optional sign and an optional dot as decimal separator, whatever the default locale
+ * is.</p>
+ * <p>Decimal values can be parsed into fixed point {@code long} values, that is, the value
+ * multiplied by ten to the power of a scale. For instance, "12.345" with scale 4 is 123450.</p>
+ * <p>Values that cannot be parsed do not throw. The default value is returned instead and the
+ * error is counted by the {@link ParseErrors} of the subscription, if one is given. Boxed values,
+ * which can be null, are parsed by the standard library, so only primitive values are parsed
+ * without allocating.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public final class NumericCodec {
+    /**
+     * <p>The highest scale supported by fixed point values.</p>
+     */
+    public static final int MAX_SCALE = 18;
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+    private static final double[] DOUBLE_POWERS_OF_TEN = new double[23];
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        DOUBLE_POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < DOUBLE_POWERS_OF_TEN.length; i++)
+            DOUBLE_POWERS_OF_TEN[i] = DOUBLE_POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private NumericCodec() {
+    }
+
+    //region Parsing
+    /**
+     * <p>Parses a decimal value into a fixed point value. Decimals beyond the scale are rounded
+     * half away from zero.</p>
+     * @param value is the value.
+     * @param scale is the number of decimals of the fixed point value, from 0 to {@link #MAX_SCALE}.
+     * @param defaultValue is the value returned when the value cannot be parsed.
+     * @param parseErrors counts the values that cannot be parsed, or is null not to count them.
+     * @return the fixed point value.
+     */
+    public static long parseFixedPoint(String value, int scale, long defaultValue, ParseErrors parseErrors)
+    {
+        if (scale < 0 || scale > MAX_SCALE)
+            throw new IllegalArgumentException("Scale must be between 0 and " + MAX_SCALE);
+        if (value == null)
+            return error(defaultValue, parseErrors);
+        int length = value.length();
+        int index = 0;
+        boolean negative = false;
+        if (length > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+'))
+        {
+            negative = value.charAt(0) == '-';
+            index++;
+        }
+        long result = 0;
+        int decimals = -1;
+        boolean roundUp = false;
+        boolean digits = false;
+        for (; index < length; index++)
+        {
+            char character = value.charAt(index);
+            if (character == '.' && decimals < 0)
+            {
+                decimals = 0;
+                continue;
+            }
+            int digit = character - '0';
+            if (digit < 0 || digit > 9)
+                return error(defaultValue, parseErrors);
+            digits = true;
+            if (decimals >= 0 && decimals++ >= scale)
+            {
+                if (decimals == scale + 1)
+                    roundUp = digit >= 5;
+                continue;
+            }
+            if (result > (Long.MAX_VALUE - digit) / 10)
+                return error(defaultValue, parseErrors);
+            result = result * 10 + digit;
+        }
+        if (!digits)
+            return error(defaultValue, parseErrors);
+        int missingDecimals = scale - Math.max(decimals, 0);
+        if (missingDecimals > 0)
+        {
+            if (result > Long.MAX_VALUE / POWERS_OF_TEN[missingDecimals])
+                return error(defaultValue, parseErrors);
+            result *= POWERS_OF_TEN[missingDecimals];
+        }
+        if (roundUp)
+        {
+            if (result == Long.MAX_VALUE)
+                return error(defaultValue, parseErrors);
+            result++;
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * <p>Parses an integer value.</p>
+     * @param value is the value.
+     * @param defaultValue is the value returned when the value cannot be parsed.
+     * @param parseErrors counts the values that cannot be parsed, or is null not to count them.
+     * @return the integer value.
+     */
+    public static int parseInt(String value, int defaultValue, ParseErrors parseErrors)
+    {
+        if (value == null)
+            return error(defaultValue, parseErrors);
+        int length = value.length();
+        int index = 0;
+        boolean negative = false;
+        if (length > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+'))
+        {
+            negative = value.charAt(0) == '-';
+            index++;
+        }
+        if (index == length)
+            return error(defaultValue, parseErrors);
+        long result = 0;
+        for (; index < length; index++)
+        {
+            int digit = value.charAt(index) - '0';
+            if (digit < 0 || digit > 9)
+                return error(defaultValue, parseErrors);
+            result = result * 10 + digit;
+            if (result > (long) Integer.MAX_VALUE + 1)
+                return error(defaultValue, parseErrors);
+        }
+        if (negative)
+            return (int) -result;
+        if (result > Integer.MAX_VALUE)
+            return error(defaultValue, parseErrors);
+        return (int) result;
+    }
+
+    /**
+     * <p>Parses a decimal value into a double. Values with up to 15 significant digits are parsed
+     * without allocating; longer values and values with exponents fall back to
+     * {@link Double#parseDouble(String)}.</p>
+     * @param value is the value.
+     * @param defaultValue is the value returned when the value cannot be parsed.
+     * @param parseErrors counts the values that cannot be parsed, or is null not to count them.
+     * @return the double value.
+     */
+    public static double parseDouble(String value, double defaultValue, ParseErrors parseErrors)
+    {
+        if (value == null)
+            return error(defaultValue, parseErrors);
+        int length = value.length();
+        int index = 0;
+        boolean negative = false;
+        if (length > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+'))
+        {
+            negative = value.charAt(0) == '-';
+            index++;
+        }
+        long mantissa = 0;
+        int decimals = -1;
+        boolean digits = false;
+        for (; index < length; index++)
+        {
+            char character = value.charAt(index);
+            if (character == '.' && decimals < 0)
+            {
+                decimals = 0;
+                continue;
+            }
+            int digit = character - '0';
+            if (digit < 0 || digit > 9 || mantissa >= MAX_EXACT_DOUBLE / 10)
+                return parseDoubleSlowly(value, defaultValue, parseErrors);
+            digits = true;
+            mantissa = mantissa * 10 + digit;
+            if (decimals >= 0)
+                decimals++;
+        }
+        if (!digits)
+            return error(defaultValue, parseErrors);
+        if (decimals >= DOUBLE_POWERS_OF_TEN.length)
+            return parseDoubleSlowly(value, defaultValue, parseErrors);
+        double result = decimals > 0 ? mantissa / DOUBLE_POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -result : result;
+    }
+
+    /**
+     * <p>Parses an integer value into a boxed integer.</p>
+     * @param value is the value.
+     * @param defaultValue is the value returned when the value cannot be parsed, which can be null.
+     * @param parseErrors counts the values that cannot be parsed, or is null not to count them.
+     * @return the integer value.
+     */
+    public static Integer parseInteger(String value, Integer defaultValue, ParseErrors parseErrors)
+    {
+        try {
+            return Integer.valueOf(value);
+        }
+        catch (NumberFormatException ex)
+        {
+            return error(defaultValue, parseErrors);
+        }
+    }
+
+    /**
+     * <p>Parses an integer value into a boxed long.</p>
+     * @param value is the value.
+     * @param defaultValue is the value returned when the value cannot be parsed, which can be null.
+     * @param parseErrors counts the values that cannot be parsed, or is null not to count them.
+     * @return the long value.
+     */
+    public static Long parseLong(String value, Long defaultValue, ParseErrors parseErrors)
+    {
+        try {
+            return Long.valueOf(value);
+        }
+        catch (NumberFormatException ex)
+        {
+            return error(defaultValue, parseErrors);
+        }
+    }
+
+    /**
+     * <p>Parses a decimal value into a boxed double.</p>
+     * @param value is the value.
+     * @param defaultValue is the value returned when the value cannot be parsed, which can be null.
+     * @param parseErrors counts the values that cannot be parsed, or is null not to count them.
+     * @return the double value.
+     */
+    public static Double parseDouble(String value, Double defaultValue, ParseErrors parseErrors)
+    {
+        try {
+            return Double.valueOf(value);
+        }
+        catch (NumberFormatException | NullPointerException ex)
+        {
+            return error(defaultValue, parseErrors);
+        }
+    }
+
+    /**
+     * <p>Parses a decimal value into a boxed float.</p>
+     * @param value is the value.
+     * @param defaultValue is the value returned when the value cannot be parsed, which can be null.
+     * @param parseErrors counts the values that cannot be parsed, or is null not to count them.
+     * @return the float value.
+     */
+    public static Float parseFloat(String value, Float defaultValue, ParseErrors parseErrors)
+    {
+        try {
+            return Float.valueOf(value);
+        }
+        catch (NumberFormatException | NullPointerException ex)
+        {
+            return error(defaultValue, parseErrors);
+        }
+    }
+
+    /**
+     * <p>Parses a decimal value into a big decimal.</p>
+     * @param value is the value.
+     * @param defaultValue is the value returned when the value cannot be parsed, which can be null.
+     * @param parseErrors counts the values that cannot be parsed, or is null not to count them.
+     * @return the big decimal value.
+     */
+    public static BigDecimal parseBigDecimal(String value, BigDecimal defaultValue, ParseErrors parseErrors)
+    {
+        try {
+            return new BigDecimal(value);
+        }
+        catch (NumberFormatException | NullPointerException ex)
+        {
+            return error(defaultValue, parseErrors);
+        }
+    }
+
+    /**
+     * <p>Parses a double with {@link Double#parseDouble(String)}.</p>
+     * @param value is the value.
+     * @param defaultValue is the value returned when the value cannot be parsed.
+     * @param parseErrors counts the values that cannot be parsed, or is null not to count them.
+     * @return the double value.
+     */
+    private static double parseDoubleSlowly(String value, double defaultValue, ParseErrors parseErrors)
+    {
+        try {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException ex)
+        {
+            return error(defaultValue, parseErrors);
+        }
+    }
+    //endregion
+
+    //region Conversion
+    /**
+     * <p>Converts a fixed point value into a double.</p>
+     * @param fixedPoint is the fixed point value.
+     * @param scale is the number of decimals of the fixed point value.
+     * @return the double value.
+     */
+    public static double toDouble(long fixedPoint, int scale)
+    {
+        return fixedPoint / (double) POWERS_OF_TEN[scale];
+    }
+
+    /**
+     * <p>Converts a fixed point value into a big decimal, for instance to display it.</p>
+     * @param fixedPoint is the fixed point value.
+     * @param scale is the number of decimals of the fixed point value.
+     * @return the big decimal value.
+     */
+    public static BigDecimal toBigDecimal(long fixedPoint, int scale)
+    {
+        return BigDecimal.valueOf(fixedPoint, scale);
+    }
+    //endregion
+
+    //region Errors
+    /**
+     * <p>Counts an error.</p>
+     * @param defaultValue is the value to return.
+     * @param parseErrors is the counter of errors, or null.
+     * @return the default value.
+     */
+    private static long error(long defaultValue, ParseErrors parseErrors)
+    {
+        if (parseErrors != null)
+            parseErrors.increment();
+        return defaultValue;
+    }
+
+    /**
+     * <p>Counts an error.</p>
+     * @param defaultValue is the value to return.
+     * @param parseErrors is the counter of errors, or null.
+     * @return the default value.
+     */
+    private static int error(int defaultValue, ParseErrors parseErrors)
+    {
+        if (parseErrors != null)
+            parseErrors.increment();
+        return defaultValue;
+    }
+
+    /**
+     * <p>Counts an error.</p>
+     * @param defaultValue is the value to return.
+     * @param parseErrors is the counter of errors, or null.
+     * @return the default value.
+     */
+    private static double error(double defaultValue, ParseErrors parseErrors)
+    {
+        if (parseErrors != null)
+            parseErrors.increment();
+        return defaultValue;
+    }
+
+    /**
+     * <p>Counts an error.</p>
+     * @param defaultValue is the value to return.
+     * @param parseErrors is the counter of errors, or null.
+     * @param <T> is the type of the value.
+     * @return the default value.
+     */
+    private static <T> T error(T defaultValue, ParseErrors parseErrors)
+    {
+        if (parseErrors != null)
+            parseErrors.increment();
+        return defaultValue;
+    }
+    //endregion
+}
@@ -0,0 +1,38 @@
+package com.psa.rxlightstreamer.core;
+
+/**
+ * <p>This class counts the field values of a subscription that could not be parsed. Every
+ * subscription has its own, held by its metrics, and hands it to its
+ * {@link IncrementalItemDecoder decoder}, which passes it on to {@link NumericCodec}.</p>
+ * <p>Counting is a single atomic add with no allocation.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public final class ParseErrors {
+    private final StripedCounter mErrors = new StripedCounter();
+
+    /**
+     * <p>Instantiates a counter. Counters are created by the subscriptions.</p>
+     */
+    ParseErrors()
+    {
+    }
+
+    /**
+     * <p>Counts a value that could not be parsed. Decoders that parse values themselves can count
+     * their errors with it.</p>
+     */
+    public void increment()
+    {
+        mErrors.increment();
+    }
+
+    /**
+     * <p>Returns the number of values that could not be parsed.</p>
+     * @return the number of errors.
+     */
+    long get()
+    {
+        return mErrors.sum();
+    }
+}
@@ -0,0 +1,171 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.client.ItemUpdate;
+import com.lightstreamer.ls_client.UpdateInfo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>This class is an update read from a log of a {@link StreamRecorder}, which is passed to the
+ * listeners of both APIs.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class RecordedUpdate implements ItemUpdate, UpdateInfo {
+    private String mItemName;
+    private int mItemPosition;
+    private boolean mSnapshot;
+    private String[] mFields;
+    private Map<String, Integer> mFieldPositions;
+    private String[] mValues, mOldValues;
+    private boolean[] mChangedFields;
+
+    /**
+     * <p>Instantiates an update.</p>
+     * @param itemName is the name of the item.
+     * @param itemPosition is the position of the item, starting at 1.
+     * @param snapshot true when the update belongs to the snapshot.
+     * @param fields is the fields of the log.
+     * @param fieldPositions is the positions of the fields, starting at 1, by name.
+     * @param values is the values of the update.
+     * @param oldValues is the values of the previous update of the item.
+     * @param changedFields is the fields flagged as changed.
+     */
+    RecordedUpdate(String itemName, int itemPosition, boolean snapshot, String[] fields,
+                   Map<String, Integer> fieldPositions, String[] values, String[] oldValues,
+                   boolean[] changedFields)
+    {
+        mItemName = itemName;
+        mItemPosition = itemPosition;
+        mSnapshot = snapshot;
+        mFields = fields;
+        mFieldPositions = fieldPositions;
+        mValues = values;
+        mOldValues = oldValues;
+        mChangedFields = changedFields;
+    }
+
+    //region Common methods
+    @Override
+    public String getItemName() {
+        return mItemName;
+    }
+
+    @Override
+    public int getItemPos() {
+        return mItemPosition;
+    }
+
+    @Override
+    public boolean isSnapshot() {
+        return mSnapshot;
+    }
+
+    @Override
+    public boolean isValueChanged(int fieldPosition) {
+        return mChangedFields[index(fieldPosition)];
+    }
+
+    @Override
+    public boolean isValueChanged(String fieldName) {
+        return mChangedFields[index(fieldName)];
+    }
+    //endregion
+
+    //region Unified API
+    @Override
+    public String getValue(int fieldPosition) {
+        return mValues[index(fieldPosition)];
+    }
+
+    @Override
+    public String getValue(String fieldName) {
+        return mValues[index(fieldName)];
+    }
+
+    public Map<String, String> getFields() {
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < mFields.length; i++)
+            fields.put(mFields[i], mValues[i]);
+        return fields;
+    }
+
+    public Map<String, String> getChangedFields() {
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < mFields.length; i++)
+            if (mChangedFields[i])
+                fields.put(mFields[i], mValues[i]);
+        return fields;
+    }
+
+    public Map<Integer, String> getFieldsByPosition() {
+        Map<Integer, String> fields = new HashMap<>();
+        for (int i = 0; i < mValues.length; i++)
+            fields.put(i + 1, mValues[i]);
+        return fields;
+    }
+
+    public Map<Integer, String> getChangedFieldsByPosition() {
+        Map<Integer, String> fields = new HashMap<>();
+        for (int i = 0; i < mValues.length; i++)
+            if (mChangedFields[i])
+                fields.put(i + 1, mValues[i]);
+        return fields;
+    }
+    //endregion
+
+    //region Non unified API
+    @Override
+    public int getNumFields() {
+        return mValues.length;
+    }
+
+    @Override
+    public String getNewValue(int fieldPosition) {
+        return mValues[index(fieldPosition)];
+    }
+
+    @Override
+    public String getNewValue(String fieldName) {
+        return mValues[index(fieldName)];
+    }
+
+    @Override
+    public String getOldValue(int fieldPosition) {
+        return mOldValues[index(fieldPosition)];
+    }
+
+    @Override
+    public String getOldValue(String fieldName) {
+        return mOldValues[index(fieldName)];
+    }
+    //endregion
+
+    /**
+     * <p>Returns the index of a field.</p>
+     * @param fieldPosition is the position of the field, starting at 1.
+     * @return the index.
+     * @throws IllegalArgumentException when the position is out of range.
+     */
+    private int index(int fieldPosition)
+    {
+        if (fieldPosition < 1 || fieldPosition > mValues.length)
+            throw new IllegalArgumentException("Field position out of range: " + fieldPosition);
+        return fieldPosition - 1;
+    }
+
+    /**
+     * <p>Returns the index of a field.</p>
+     * @param fieldName is the name of the field.
+     * @return the index.
+     * @throws IllegalArgumentException when the field is not recorded.
+     */
+    private int index(String fieldName)
+    {
+        Integer fieldPosition = mFieldPositions.get(fieldName);
+        if (fieldPosition == null)
+            throw new IllegalArgumentException("Unknown field " + fieldName);
+        return fieldPosition - 1;
+    }
+}
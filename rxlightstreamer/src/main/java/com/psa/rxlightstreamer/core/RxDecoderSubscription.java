@@ -0,0 +1,41 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.client.ItemUpdate;
+import com.psa.rxlightstreamer.helpers.SubscriptionType;
+
+/**
+ * <p>This class is a {@link RxSubscription} that decodes its updates with an {@link ItemDecoder},
+ * usually one generated for a {@link com.psa.rxlightstreamer.annotations.LightstreamerItem}
+ * class, so it does not need a decoder of its own. It can be used as is or extended.</p>
+ * <p>When the decoder is an {@link IncrementalItemDecoder} and the subscription is not COMMAND,
+ * the subscription keeps the decoded object of every item and only decodes the changed fields
+ * into it.</p>
+ * @param <T> is the decoded type.
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class RxDecoderSubscription<T> extends RxSubscription<T> {
+    /**
+     * <p>Instantiates a subscription that decodes its updates with the given decoder. The fields
+     * to subscribe are the ones of the decoder.</p>
+     * @param subscriptionType is the subscription type.
+     * @param adapter is the adapter to subscribe.
+     * @param items is the items to subscribe
+     * @param snapshot if true, snapshot is on.
+     * @param itemDecoder is the decoder.
+     */
+    public RxDecoderSubscription(SubscriptionType subscriptionType, String adapter, String[] items,
+                                 boolean snapshot, ItemDecoder<T> itemDecoder) {
+        super(subscriptionType, adapter, items, snapshot, itemDecoder);
+    }
+
+    /**
+     * <p>Decodes the update with the decoder given in the constructor.</p>
+     * @param itemUpdate is the update received from LightStreamer.
+     * @return the decoded item.
+     */
+    @Override
+    protected T decode(ItemUpdate itemUpdate) {
+        return decodeWithItemDecoder(itemUpdate);
+    }
+}
@@ -5,15 +5,20 @@ import com.lightstreamer.client.ConnectionOptions;
 import com.lightstreamer.client.LightstreamerClient;
 import com.psa.rxlightstreamer.exceptions.LightStreamerServerError;
 import com.psa.rxlightstreamer.helpers.ClientStatus;
+import com.psa.rxlightstreamer.helpers.ConnectionEventType;
 import com.psa.rxlightstreamer.helpers.ServerError;
 import com.psa.rxlightstreamer.injection.RxLightStreamerInjector;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
 import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+import rx.subjects.BehaviorSubject;
 
 /**
  * <p>This class represents a LightStreamer client. The client has the option to connect or disconnect
@@ -29,18 +34,77 @@ public class RxLightStreamerClient {
     @Inject
     LightstreamerClient mLightstreamerClient;
     /**
-     * <p>This observable will wrap the listener so that it becomes an Observable.</p>
+     * <p>This subject publishes the status changes of the client. It is shared by every observer
+     * and replays the latest status to late subscribers.</p>
+     */
+    private volatile BehaviorSubject<ClientStatus> mClientStatusSubject;
+    /**
+     * <p>This observable exposes the status subject. It is created once and it survives
+     * connections and disconnections.</p>
      */
     private Observable<ClientStatus> mClientStatusObservable;
+    /**
+     * <p>This is the only listener this client registers in the LightStreamer client.</p>
+     */
+    private ClientListener mClientListener;
 
     private List<RxSubscription> mSubscriptions;
+    private volatile ItemCache mItemCache;
+    /**
+     * <p>Holds the counters of the subscriptions that are no longer part of this client.</p>
+     */
+    private volatile Metrics mRetiredMetrics = Metrics.empty();
+    private final BandwidthMeter mBandwidthMeter = new BandwidthMeter(BandwidthMeter.TIME_CONSTANT);
+    /**
+     * <p>Tells whether the bandwidth was asked for, from when the bytes of the updates of the
+     * subscriptions are estimated.</p>
+     */
+    private volatile boolean mBandwidthMetered;
+    private final ConnectionRecorder mConnectionRecorder = new ConnectionRecorder();
 
     /**
      * <p>Upon instantiation, all dependencies are injected.</p>
      */
     public RxLightStreamerClient() {
         RxLightStreamerInjector.getRxLightStreamerComponent().inject(this);
-        mSubscriptions = new ArrayList<>();
+        mSubscriptions = new CopyOnWriteArrayList<>();
+        mClientStatusSubject = BehaviorSubject.create();
+        mClientStatusObservable = Observable.defer(() -> mClientStatusSubject);
+        mClientListener = new ClientListener() {
+            @Override
+            public void onListenEnd(LightstreamerClient lightstreamerClient) {
+
+            }
+
+            @Override
+            public void onListenStart(LightstreamerClient lightstreamerClient) {
+
+            }
+
+            @Override
+            public void onServerError(int i, String s) {
+                //A new subject is armed with the current status before the error is sent so
+                //that observers which resubscribe on error keep receiving status changes.
+                BehaviorSubject<ClientStatus> failedSubject = mClientStatusSubject;
+                ClientStatus clientStatus = getStatus();
+                mClientStatusSubject = clientStatus == null ? BehaviorSubject.create() :
+                        BehaviorSubject.create(clientStatus);
+                failedSubject.onError(new LightStreamerServerError(ServerError.fromLSCode(i), s));
+            }
+
+            @Override
+            public void onStatusChange(String s) {
+                ClientStatus clientStatus = ClientStatus.fromLSStatus(s);
+                mConnectionRecorder.statusChanged(clientStatus);
+                mClientStatusSubject.onNext(clientStatus);
+            }
+
+            @Override
+            public void onPropertyChange(String s) {
+
+            }
+        };
+        mLightstreamerClient.addListener(mClientListener);
     }
 
     /**
@@ -56,40 +120,8 @@ public class RxLightStreamerClient {
         mLightstreamerClient.connectionDetails.setAdapterSet(adapterSet);
         mLightstreamerClient.connectionDetails.setUser(user);
         mLightstreamerClient.connectionDetails.setPassword(password);
-        List<ClientListener> listeners = mLightstreamerClient.getListeners();
-        for (ClientListener listener: listeners)
-        {
-            mLightstreamerClient.removeListener(listener);
-        }
+        mConnectionRecorder.connectRequested();
         mLightstreamerClient.connect();
-        mClientStatusObservable = Observable.create(
-                subscriber -> mLightstreamerClient.addListener(new ClientListener() {
-                    @Override
-                    public void onListenEnd(LightstreamerClient lightstreamerClient) {
-
-                    }
-
-                    @Override
-                    public void onListenStart(LightstreamerClient lightstreamerClient) {
-
-                    }
-
-                    @Override
-                    public void onServerError(int i, String s) {
-                        subscriber.onError(new LightStreamerServerError(ServerError.fromLSCode(i), s));
-                    }
-
-                    @Override
-                    public void onStatusChange(String s) {
-                        subscriber.onNext(ClientStatus.fromLSStatus(s));
-                    }
-
-                    @Override
-                    public void onPropertyChange(String s) {
-
-                    }
-                })
-        );
     }
     /**
      * <p>Establish a connection with LightStreamer.</p>
@@ -107,6 +139,8 @@ public class RxLightStreamerClient {
     public void disconnect()
     {
         mLightstreamerClient.disconnect();
+        for (RxSubscription subscription : mSubscriptions)
+            retire(subscription);
         mSubscriptions.clear();
     }
 
@@ -120,13 +154,50 @@ public class RxLightStreamerClient {
     }
 
     /**
-     * <p>Returns an observable to send events to the affected class.</p>
+     * <p>Returns an observable to send events to the affected class. The observable is shared by
+     * all the observers, it replays the latest status and it remains valid after reconnecting, so
+     * there is no need to fetch it again after calling {@link #connect(String, String)}.</p>
+     * <p>Server errors are sent as {@link LightStreamerServerError}. Since the observable is
+     * re-armed after an error, observers can use operators such as <code>retry()</code> to keep
+     * listening.</p>
      * @return Observable that sends connection status changes.
      */
     public Observable<ClientStatus> getClientStatusObservable() {
         return mClientStatusObservable;
     }
 
+    /**
+     * <p>Returns an observable of the connection timeline of this client: every change of its
+     * status and the answer of the server to every subscription and unsubscription request made
+     * through it, with the time it took. Observers only get the events that happen after they
+     * subscribe.</p>
+     * @return the observable of the events.
+     */
+    public Observable<ConnectionEvent> getConnectionEventObservable()
+    {
+        return mConnectionRecorder.getEvents();
+    }
+
+    /**
+     * <p>Returns the latest events of the connection timeline of this client, oldest first.</p>
+     * @return a copy of the timeline.
+     */
+    public List<ConnectionEvent> getConnectionTimeline()
+    {
+        return mConnectionRecorder.getTimeline();
+    }
+
+    /**
+     * <p>Returns a sample of the statistics of the connection of this client: the times to
+     * connect, the time spent sensing the stream, the stalls, the reconnections, the share of
+     * WebSocket and HTTP transports and the latency of the subscription requests.</p>
+     * @return the sample.
+     */
+    public ConnectionStats getConnectionStats()
+    {
+        return mConnectionRecorder.sample();
+    }
+
     //region Subscription methods
 
     /**
@@ -135,8 +206,15 @@ public class RxLightStreamerClient {
      */
     public void subscribe(RxSubscription subscription)
     {
+        ItemCache itemCache = mItemCache;
+        if (itemCache != null)
+            subscription.setItemCache(itemCache);
+        subscription.getMetricsRecorder().subscribing();
+        subscription.requestSent(mConnectionRecorder, ConnectionEventType.SUBSCRIPTION);
         mLightstreamerClient.subscribe(subscription.getLSSubscription());
         mSubscriptions.add(subscription);
+        if (mBandwidthMetered)
+            subscription.setBytesEstimated();
     }
 
     /**
@@ -147,8 +225,10 @@ public class RxLightStreamerClient {
     {
         if (mSubscriptions.contains(subscription))
         {
+            subscription.requestSent(mConnectionRecorder, ConnectionEventType.UNSUBSCRIPTION);
             mLightstreamerClient.unsubscribe(subscription.getLSSubscription());
             mSubscriptions.remove(subscription);
+            retire(subscription);
         }
     }
 
@@ -170,6 +250,110 @@ public class RxLightStreamerClient {
     {
         return mSubscriptions.get(position);
     }
+
+    /**
+     * <p>Sets the item cache that bounds the memory of the last value caches of the subscriptions
+     * of this client. The last value caches of the subscriptions it subscribes are accounted in it,
+     * whether they were asked for before or after subscribing. Subscriptions that never ask for one
+     * are left out.</p>
+     * @param itemCache is the item cache, or null to stop accounting new subscriptions.
+     */
+    public void setItemCache(ItemCache itemCache)
+    {
+        mItemCache = itemCache;
+    }
+
+    /**
+     * <p>Returns the item cache of this client.</p>
+     * @return the item cache, or null when there is none.
+     */
+    public ItemCache getItemCache()
+    {
+        return mItemCache;
+    }
+
+    /**
+     * <p>Returns a sample of the metrics of this client: the sum of the metrics of its
+     * subscriptions, including the counters of the ones already unsubscribed, with the longest
+     * snapshot and time to the first update among the current ones.</p>
+     * @return the sample.
+     */
+    public Metrics getMetrics()
+    {
+        long timestamp = System.currentTimeMillis();
+        Metrics metrics = mRetiredMetrics.add(Metrics.empty(), timestamp);
+        for (RxSubscription subscription : mSubscriptions)
+            metrics = metrics.add(subscription.getMetrics(), timestamp);
+        return metrics;
+    }
+
+    /**
+     * <p>Returns an observable that samples the metrics of this client periodically, on the
+     * computation scheduler.</p>
+     * @param period is the time between samples.
+     * @param unit is the time unit of the period.
+     * @return the observable of the samples.
+     */
+    public Observable<Metrics> getMetricsObservable(long period, TimeUnit unit)
+    {
+        return getMetricsObservable(period, unit, Schedulers.computation());
+    }
+
+    /**
+     * <p>Returns an observable that samples the metrics of this client periodically.</p>
+     * @param period is the time between samples.
+     * @param unit is the time unit of the period.
+     * @param scheduler is the scheduler where the samples are taken and emitted.
+     * @return the observable of the samples.
+     */
+    public Observable<Metrics> getMetricsObservable(long period, TimeUnit unit, Scheduler scheduler)
+    {
+        return Observable.interval(period, period, unit, scheduler).map(tick -> getMetrics());
+    }
+
+    /**
+     * <p>Returns a sample of the bandwidth this client uses. The unified client does not count the bytes
+     * it receives, so they are estimated from the values of the updates of its subscriptions,
+     * leaving out the bytes of the session and of the transport.</p>
+     * <p>Estimating walks the values of every update, so it starts the first time the bandwidth is
+     * asked for, and the bytes received before are not counted.</p>
+     * @return the sample.
+     */
+    public Bandwidth getBandwidth()
+    {
+        meterBandwidth();
+        return sampleBandwidth(System.currentTimeMillis());
+    }
+
+    /**
+     * <p>Returns an observable that samples the bandwidth this client uses periodically, on the
+     * computation scheduler, to alert on it or to tune the bandwidth limit of the connection.</p>
+     * @param period is the time between samples.
+     * @param unit is the time unit of the period.
+     * @return the observable of the samples.
+     */
+    public Observable<Bandwidth> getBandwidthObservable(long period, TimeUnit unit)
+    {
+        return getBandwidthObservable(period, unit, Schedulers.computation());
+    }
+
+    /**
+     * <p>Returns an observable that samples the bandwidth this client uses periodically. A sample
+     * is taken on subscription, so that the first rate is measured over the first period.</p>
+     * @param period is the time between samples.
+     * @param unit is the time unit of the period.
+     * @param scheduler is the scheduler where the samples are taken and emitted.
+     * @return the observable of the samples.
+     */
+    public Observable<Bandwidth> getBandwidthObservable(long period, TimeUnit unit, Scheduler scheduler)
+    {
+        return Observable.defer(() -> {
+            meterBandwidth();
+            sampleBandwidth(scheduler.now());
+            return Observable.interval(period, period, unit, scheduler)
+                    .map(tick -> sampleBandwidth(scheduler.now()));
+        });
+    }
     //endregion
 
     /**
@@ -180,4 +364,36 @@ public class RxLightStreamerClient {
     {
         return mLightstreamerClient.connectionOptions;
     }
+
+    /**
+     * <p>Keeps the counters of a subscription that is no longer part of this client.</p>
+     * @param subscription is the subscription.
+     */
+    private synchronized void retire(RxSubscription subscription)
+    {
+        mRetiredMetrics = mRetiredMetrics.add(subscription.getMetrics().retire(), System.currentTimeMillis());
+    }
+
+    /**
+     * <p>Starts estimating the bytes of the updates of the subscriptions of this client, and of
+     * the ones it subscribes later.</p>
+     */
+    private void meterBandwidth()
+    {
+        if (mBandwidthMetered)
+            return;
+        mBandwidthMetered = true;
+        for (RxSubscription subscription : mSubscriptions)
+            subscription.setBytesEstimated();
+    }
+
+    /**
+     * <p>Takes a sample of the bandwidth from the bytes of the updates of the subscriptions.</p>
+     * @param now is the current time, in milliseconds.
+     * @return the sample.
+     */
+    private Bandwidth sampleBandwidth(long now)
+    {
+        return mBandwidthMeter.sample(getMetrics().getBytes(), now);
+    }
 }
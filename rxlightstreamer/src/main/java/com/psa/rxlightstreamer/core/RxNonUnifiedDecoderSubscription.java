@@ -0,0 +1,45 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.ls_client.UpdateInfo;
+import com.psa.rxlightstreamer.helpers.SubscriptionType;
+
+/**
+ * <p>This class is a {@link RxNonUnifiedSubscription} that decodes its updates with an
+ * {@link ItemDecoder}, usually one generated for a
+ * {@link com.psa.rxlightstreamer.annotations.LightstreamerItem} class, so it does not need a
+ * decoder of its own. It can be used as is or extended.</p>
+ * <p>When the decoder is an {@link IncrementalItemDecoder} and the subscription is not COMMAND,
+ * the subscription keeps the decoded object of every item and only decodes the changed fields
+ * into it.</p>
+ * @param <T> is the decoded type.
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ * @see RxDecoderSubscription
+ */
+public class RxNonUnifiedDecoderSubscription<T> extends RxNonUnifiedSubscription<T> {
+    /**
+     * <p>Instantiates a subscription that decodes its updates with the given decoder. The fields
+     * to subscribe are the ones of the decoder.</p>
+     * @param type is the type.
+     * @param adapter the adapter name.
+     * @param items the items.
+     * @param expectSnapshot true if snapshot is expected.
+     * @param itemDecoder is the decoder.
+     */
+    public RxNonUnifiedDecoderSubscription(SubscriptionType type, String adapter, String[] items,
+                                           boolean expectSnapshot, ItemDecoder<T> itemDecoder)
+    {
+        super(type, adapter, items, expectSnapshot, itemDecoder);
+    }
+
+    /**
+     * <p>Decodes the update with the decoder given in the constructor.</p>
+     * @param updateInfo is the update received from LightStreamer.
+     * @return the decoded item.
+     */
+    @Override
+    protected T decode(UpdateInfo updateInfo)
+    {
+        return decodeWithItemDecoder(updateInfo);
+    }
+}
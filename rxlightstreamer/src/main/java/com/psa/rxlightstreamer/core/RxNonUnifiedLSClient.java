@@ -9,16 +9,27 @@ import com.lightstreamer.ls_client.PushUserException;
 import com.lightstreamer.ls_client.SubscrException;
 import com.psa.rxlightstreamer.exceptions.LightStreamerServerError;
 import com.psa.rxlightstreamer.helpers.ClientStatus;
+import com.psa.rxlightstreamer.helpers.ConnectionEventType;
 import com.psa.rxlightstreamer.helpers.ServerError;
+import com.psa.rxlightstreamer.helpers.SubscriptionType;
 import com.psa.rxlightstreamer.injection.RxLightStreamerInjector;
 
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 
 import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+import rx.subjects.BehaviorSubject;
 
 /**
  * <p>This class provides a way to use LightStreamer service using the non unified API.</p>
@@ -35,16 +46,60 @@ public class RxNonUnifiedLSClient {
     //endregion
 
     //region Private fields
+    /**
+     * <p>This subject publishes the status changes to every observer and replays the latest
+     * status to late subscribers.</p>
+     */
+    private volatile BehaviorSubject<ClientStatus> mClientStatusSubject;
     private Observable<ClientStatus> mClientStatusObservable;
-    private ClientStatus mClientStatus, mPreviousClientStatus;
-    private ConnectionListener mConnectionListener;
+    /**
+     * <p>Holds the status, which is changed from the LightStreamer threads and read from any
+     * thread.</p>
+     */
+    private final ConnectionStateMachine mStateMachine = new ConnectionStateMachine(ClientStatus.DISCONNECTED);
+    /**
+     * <p>Held while the status changes and the change is queued, so that the changes are queued in
+     * the order they were made. Observers are never called holding it.</p>
+     */
+    private final Object mStatusLock = new Object();
+    /**
+     * <p>Holds the status changes and errors waiting to be published, in the order they were
+     * made.</p>
+     */
+    private final Queue<Object> mPendingNotifications = new ConcurrentLinkedQueue<>();
+    /**
+     * <p>Counts the requests to publish the pending notifications. Only the thread that moves it
+     * from zero publishes them, so that observers get them one at a time.</p>
+     */
+    private final AtomicInteger mPublishRequests = new AtomicInteger();
+    /**
+     * <p>Listens to the connection opened last. Every connection gets its own listener, so that
+     * the callbacks of the connections already replaced can be told apart and ignored.</p>
+     */
+    private volatile SessionListener mConnectionListener;
     private List<RxNonUnifiedSubscription> mSubscriptions;
+    private volatile ItemCache mItemCache;
+    /**
+     * <p>Holds the counters of the subscriptions that are no longer part of this client.</p>
+     */
+    private volatile Metrics mRetiredMetrics = Metrics.empty();
+    private final AtomicLong mBytesReceived = new AtomicLong();
+    /**
+     * <p>Holds the bytes received that have already been accounted to the subscriptions or to the
+     * session. It is guarded by this client.</p>
+     */
+    private long mAccountedBytes;
+    private final BandwidthMeter mBandwidthMeter = new BandwidthMeter(BandwidthMeter.TIME_CONSTANT);
+    private final ConnectionRecorder mConnectionRecorder = new ConnectionRecorder();
     //endregion
 
     //region Public methods
 
     /**
-     * <p>Establishes a connection with LightStreamer.</p>
+     * <p>Establishes a connection with LightStreamer. Only one session is opened no matter how
+     * many observers listen to the status observable.</p>
+     * <p>The underlying client opens the connection synchronously, so this method should not be
+     * called from the main thread.</p>
      * @param host is the host to connect to.
      * @param adapterSet is the adapter set to connect to.
      * @param user is the user name of use.
@@ -52,85 +107,28 @@ public class RxNonUnifiedLSClient {
      */
     public void connect(String host, String adapterSet, String user, String password)
     {
-        mClientStatusObservable = Observable.create(subscriber -> {
-            mClientStatus = ClientStatus.CONNECTING;
-            subscriber.onNext(mClientStatus);
-            mConnectionInfo.pushServerUrl = host;
-            mConnectionInfo.adapter = adapterSet;
-            if (user != null)
-                mConnectionInfo.user = user;
-            if (password != null)
-                mConnectionInfo.password = password;
-            try {
-                mConnectionListener = new ConnectionListener() {
-                    @Override
-                    public void onConnectionEstablished() {
-                        mClientStatus = ClientStatus.STREAM_SENSING;
-                        subscriber.onNext(mClientStatus);
-                    }
-
-                    @Override
-                    public void onSessionStarted(boolean b) {
-                        if (b) //Is polling
-                            mClientStatus = ClientStatus.HTTP_POLLING;
-                        else
-                            mClientStatus = ClientStatus.HTTP_STREAMING;
-                        subscriber.onNext(mClientStatus);
-                    }
-
-                    @Override
-                    public void onNewBytes(long l) {
-                        //Do nothing.
-                    }
-
-                    @Override
-                    public void onDataError(PushServerException e) {
-                        subscriber.onError(new LightStreamerServerError(ServerError.fromLSCode(e.getErrorCode()), e.getMessage()));
-                    }
-
-                    @Override
-                    public void onActivityWarning(boolean b) {
-                        if (b) //Status is stalled
-                        {
-                            mPreviousClientStatus = mClientStatus;
-                            mClientStatus = ClientStatus.STALLED;
-                        }
-                        else
-                            mClientStatus = mPreviousClientStatus;
-                        subscriber.onNext(mClientStatus);
-                    }
-
-                    @Override
-                    public void onClose() {
-                        mClientStatus = ClientStatus.DISCONNECTED;
-                        subscriber.onNext(mClientStatus);
-                    }
-
-                    @Override
-                    public void onEnd(int i) {
-                        mClientStatus = ClientStatus.WILL_RETRY;
-                        subscriber.onNext(mClientStatus);
-                    }
-
-                    @Override
-                    public void onFailure(PushServerException e) {
-                        subscriber.onError(new LightStreamerServerError(ServerError.fromLSCode(e.getErrorCode()), e.getMessage()));
-                    }
-
-                    @Override
-                    public void onFailure(PushConnException e) {
-                        subscriber.onError(e);
-                    }
-                };
-                mLSClient.openConnection(mConnectionInfo, mConnectionListener);
-            } catch (PushConnException e) {
-                subscriber.onError(e);
-            } catch (PushServerException e) {
-                subscriber.onError(new LightStreamerServerError(ServerError.fromLSCode(e.getErrorCode()), e.getMessage()));
-            } catch (PushUserException e) {
-                subscriber.onError(new LightStreamerServerError(ServerError.fromLSCode(e.getErrorCode()), e.getMessage()));
-            }
-        });
+        mConnectionInfo.pushServerUrl = host;
+        mConnectionInfo.adapter = adapterSet;
+        if (user != null)
+            mConnectionInfo.user = user;
+        if (password != null)
+            mConnectionInfo.password = password;
+        mConnectionRecorder.connectRequested();
+        SessionListener sessionListener = new SessionListener();
+        synchronized (mStatusLock)
+        {
+            mConnectionListener = sessionListener;
+        }
+        changeStatus(sessionListener, ClientStatus.CONNECTING);
+        try {
+            mLSClient.openConnection(mConnectionInfo, sessionListener);
+        } catch (PushConnException e) {
+            connectionFailed(sessionListener, e);
+        } catch (PushServerException e) {
+            connectionFailed(sessionListener, new LightStreamerServerError(ServerError.fromLSCode(e.getErrorCode()), e.getMessage()));
+        } catch (PushUserException e) {
+            connectionFailed(sessionListener, new LightStreamerServerError(ServerError.fromLSCode(e.getErrorCode()), e.getMessage()));
+        }
     }
 
     /**
@@ -149,20 +147,27 @@ public class RxNonUnifiedLSClient {
     public void disconnect()
     {
         mLSClient.closeConnection();
+        accountBytes();
+        for (RxNonUnifiedSubscription subscription : mSubscriptions)
+            retire(subscription);
         mSubscriptions.clear();
     }
 
     /**
-     * <p>Returns the connection status of LightStreamer.</p>
+     * <p>Returns the connection status of LightStreamer. It can be called from any thread, as often
+     * as needed, since it does not lock.</p>
      * @return a client status.
      */
     public ClientStatus getStatus()
     {
-        return mClientStatus;
+        return mStateMachine.getStatus();
     }
 
     /**
-     * <p>Returns the observable to listen to status events.</p>
+     * <p>Returns the observable to listen to status events. The observable is shared by all the
+     * observers, it replays the latest status and it remains valid after reconnecting.</p>
+     * <p>Errors are sent through the observable. Since it is re-armed after an error, observers
+     * can use operators such as <code>retry()</code> to keep listening.</p>
      * @return a client status observable.
      */
     public Observable<ClientStatus> getClientStatusObservable()
@@ -170,20 +175,77 @@ public class RxNonUnifiedLSClient {
         return mClientStatusObservable;
     }
 
+    /**
+     * <p>Returns an observable of the connection timeline of this client: every change of its
+     * status and the answer of the server to every subscription and unsubscription request made
+     * through it, with the time it took. The underlying client answers the requests
+     * synchronously, so their latency is the time the call takes. Observers only get the events
+     * that happen after they subscribe.</p>
+     * @return the observable of the events.
+     */
+    public Observable<ConnectionEvent> getConnectionEventObservable()
+    {
+        return mConnectionRecorder.getEvents();
+    }
+
+    /**
+     * <p>Returns the latest events of the connection timeline of this client, oldest first.</p>
+     * @return a copy of the timeline.
+     */
+    public List<ConnectionEvent> getConnectionTimeline()
+    {
+        return mConnectionRecorder.getTimeline();
+    }
+
+    /**
+     * <p>Returns a sample of the statistics of the connection of this client: the times to
+     * connect, the time spent sensing the stream, the stalls, the reconnections, the share of
+     * WebSocket and HTTP transports and the latency of the subscription requests.</p>
+     * @return the sample.
+     */
+    public ConnectionStats getConnectionStats()
+    {
+        return mConnectionRecorder.sample();
+    }
+
+    /**
+     * <p>Returns the listener of the connection opened last.</p>
+     * @return the connection listener.
+     */
     public ConnectionListener getListener()
     {
         return mConnectionListener;
     }
 
+    /**
+     * <p>Subscribes a subscription. COMMAND subscriptions are subscribed with the command logic of
+     * the underlying client, so that the old values and the changed fields of their updates are
+     * the ones of the row of the same key.</p>
+     * @param subscription is the subscription.
+     * @throws SubscrException when the subscription is not valid.
+     * @throws PushConnException when the connection fails.
+     * @throws PushUserException when the server refuses the subscription.
+     * @throws PushServerException when the server fails.
+     */
     public void subscribe(RxNonUnifiedSubscription subscription) throws SubscrException, PushConnException, PushUserException, PushServerException {
-        subscription.setSubscribedTableKey(mLSClient.subscribeTable(subscription.getExtendedTableInfo(), subscription.getHandyTableListener(), false));
+        ItemCache itemCache = mItemCache;
+        if (itemCache != null)
+            subscription.setItemCache(itemCache);
+        subscription.getMetricsRecorder().subscribing();
+        boolean commandLogic = subscription.getSubscriptionType() == SubscriptionType.COMMAND;
+        long start = System.nanoTime();
+        subscription.setSubscribedTableKey(mLSClient.subscribeTable(subscription.getExtendedTableInfo(), subscription.getHandyTableListener(), commandLogic));
+        mConnectionRecorder.requestCompleted(ConnectionEventType.SUBSCRIPTION, System.nanoTime() - start);
         mSubscriptions.add(subscription);
-
     }
 
     public void unsubscribe(RxNonUnifiedSubscription subscription) throws PushConnException, PushServerException, SubscrException {
+        long start = System.nanoTime();
         mLSClient.unsubscribeTable(subscription.getSubscribedTableKey());
-        mSubscriptions.remove(subscription);
+        mConnectionRecorder.requestCompleted(ConnectionEventType.UNSUBSCRIPTION, System.nanoTime() - start);
+        accountBytes();
+        if (mSubscriptions.remove(subscription))
+            retire(subscription);
     }
 
     public int getSubscriptionsCount()
@@ -195,6 +257,106 @@ public class RxNonUnifiedLSClient {
     {
         return mSubscriptions.get(position);
     }
+
+    /**
+     * <p>Sets the item cache that bounds the memory of the last value caches of the subscriptions
+     * of this client. The last value caches of the subscriptions it subscribes are accounted in it,
+     * whether they were asked for before or after subscribing. Subscriptions that never ask for one
+     * are left out.</p>
+     * @param itemCache is the item cache, or null to stop accounting new subscriptions.
+     */
+    public void setItemCache(ItemCache itemCache)
+    {
+        mItemCache = itemCache;
+    }
+
+    /**
+     * <p>Returns the item cache of this client.</p>
+     * @return the item cache, or null when there is none.
+     */
+    public ItemCache getItemCache()
+    {
+        return mItemCache;
+    }
+
+    /**
+     * <p>Returns a sample of the metrics of this client: the sum of the metrics of its
+     * subscriptions, including the counters of the ones already unsubscribed, with the longest
+     * snapshot and time to the first update among the current ones.</p>
+     * @return the sample.
+     */
+    public Metrics getMetrics()
+    {
+        accountBytes();
+        long timestamp = System.currentTimeMillis();
+        Metrics metrics = mRetiredMetrics.add(Metrics.empty(), timestamp);
+        for (RxNonUnifiedSubscription subscription : mSubscriptions)
+            metrics = metrics.add(subscription.getMetrics(), timestamp);
+        return metrics;
+    }
+
+    /**
+     * <p>Returns an observable that samples the metrics of this client periodically, on the
+     * computation scheduler.</p>
+     * @param period is the time between samples.
+     * @param unit is the time unit of the period.
+     * @return the observable of the samples.
+     */
+    public Observable<Metrics> getMetricsObservable(long period, TimeUnit unit)
+    {
+        return getMetricsObservable(period, unit, Schedulers.computation());
+    }
+
+    /**
+     * <p>Returns an observable that samples the metrics of this client periodically.</p>
+     * @param period is the time between samples.
+     * @param unit is the time unit of the period.
+     * @param scheduler is the scheduler where the samples are taken and emitted.
+     * @return the observable of the samples.
+     */
+    public Observable<Metrics> getMetricsObservable(long period, TimeUnit unit, Scheduler scheduler)
+    {
+        return Observable.interval(period, period, unit, scheduler).map(tick -> getMetrics());
+    }
+
+    /**
+     * <p>Returns a sample of the bandwidth this client uses. The bytes are the ones the underlying client
+     * reports, which include the session and not the transport.</p>
+     * @return the sample.
+     */
+    public Bandwidth getBandwidth()
+    {
+        return sampleBandwidth(System.currentTimeMillis());
+    }
+
+    /**
+     * <p>Returns an observable that samples the bandwidth this client uses periodically, on the
+     * computation scheduler, to alert on it or to tune the bandwidth limit of the connection.</p>
+     * @param period is the time between samples.
+     * @param unit is the time unit of the period.
+     * @return the observable of the samples.
+     */
+    public Observable<Bandwidth> getBandwidthObservable(long period, TimeUnit unit)
+    {
+        return getBandwidthObservable(period, unit, Schedulers.computation());
+    }
+
+    /**
+     * <p>Returns an observable that samples the bandwidth this client uses periodically. A sample
+     * is taken on subscription, so that the first rate is measured over the first period.</p>
+     * @param period is the time between samples.
+     * @param unit is the time unit of the period.
+     * @param scheduler is the scheduler where the samples are taken and emitted.
+     * @return the observable of the samples.
+     */
+    public Observable<Bandwidth> getBandwidthObservable(long period, TimeUnit unit, Scheduler scheduler)
+    {
+        return Observable.defer(() -> {
+            sampleBandwidth(scheduler.now());
+            return Observable.interval(period, period, unit, scheduler)
+                    .map(tick -> sampleBandwidth(scheduler.now()));
+        });
+    }
     //endregion
 
     //region Constructors
@@ -204,8 +366,219 @@ public class RxNonUnifiedLSClient {
      */
     public RxNonUnifiedLSClient() {
         RxLightStreamerInjector.getRxLightStreamerComponent().inject(this);
-        mClientStatus = ClientStatus.DISCONNECTED;
-        mSubscriptions = new ArrayList<>();
+        mSubscriptions = new CopyOnWriteArrayList<>();
+        mClientStatusSubject = BehaviorSubject.create(mStateMachine.getStatus());
+        mClientStatusObservable = Observable.defer(() -> mClientStatusSubject);
+        mConnectionListener = new SessionListener();
+    }
+
+    //endregion
+
+    //region Private helper methods
+
+    /**
+     * <p>Keeps the counters of a subscription that is no longer part of this client.</p>
+     * @param subscription is the subscription.
+     */
+    private synchronized void retire(RxNonUnifiedSubscription subscription)
+    {
+        mRetiredMetrics = mRetiredMetrics.add(subscription.getMetrics().retire(), System.currentTimeMillis());
+    }
+
+    /**
+     * <p>Splits the bytes received since the last call across the subscriptions by the number of
+     * updates each one received. The bytes received when no subscription got updates belong to
+     * the session.</p>
+     */
+    private synchronized void accountBytes()
+    {
+        long bytes = mBytesReceived.get() - mAccountedBytes;
+        if (bytes <= 0)
+            return;
+        mAccountedBytes += bytes;
+        List<RxNonUnifiedSubscription> subscriptions = new ArrayList<>(mSubscriptions);
+        long[] updates = new long[subscriptions.size()];
+        long totalUpdates = 0;
+        for (int i = 0; i < updates.length; i++)
+        {
+            updates[i] = subscriptions.get(i).getMetricsRecorder().getUnaccountedUpdates();
+            totalUpdates += updates[i];
+        }
+        if (totalUpdates == 0)
+            return;
+        long accountedUpdates = 0;
+        long accountedBytes = 0;
+        for (int i = 0; i < updates.length; i++)
+        {
+            //Bytes are split by cumulative shares so that rounding does not lose any.
+            accountedUpdates += updates[i];
+            long share = bytes * accountedUpdates / totalUpdates - accountedBytes;
+            accountedBytes += share;
+            subscriptions.get(i).getMetricsRecorder().accountBytes(share, updates[i]);
+        }
+    }
+
+    /**
+     * <p>Takes a sample of the bandwidth from the bytes the underlying client reported.</p>
+     * @param now is the current time, in milliseconds.
+     * @return the sample.
+     */
+    private Bandwidth sampleBandwidth(long now)
+    {
+        accountBytes();
+        return mBandwidthMeter.sample(mBytesReceived.get(), now);
+    }
+
+    /**
+     * <p>Updates the current status and notifies it to the observers. Changes that come from a
+     * connection already replaced, or that are not legal from the current status, such as late
+     * callbacks of a connection already closed, are dropped.</p>
+     * @param sessionListener is the listener of the connection the change comes from.
+     * @param clientStatus is the new status.
+     */
+    private void changeStatus(SessionListener sessionListener, ClientStatus clientStatus)
+    {
+        synchronized (mStatusLock)
+        {
+            if (sessionListener == mConnectionListener && mStateMachine.moveTo(clientStatus))
+                mPendingNotifications.offer(clientStatus);
+        }
+        publishNotifications();
+    }
+
+    /**
+     * <p>Publishes the pending status changes and errors in the order they were queued, outside
+     * {@link #mStatusLock}. When another thread is already publishing, it publishes them instead,
+     * so that observers are never called concurrently nor reentrantly.</p>
+     */
+    private void publishNotifications()
+    {
+        if (mPublishRequests.getAndIncrement() != 0)
+            return;
+        do {
+            Object notification;
+            while ((notification = mPendingNotifications.poll()) != null)
+            {
+                if (notification instanceof ClientStatus)
+                {
+                    mConnectionRecorder.statusChanged((ClientStatus) notification);
+                    mClientStatusSubject.onNext((ClientStatus) notification);
+                }
+                else
+                {
+                    BehaviorSubject<ClientStatus> failedSubject = mClientStatusSubject;
+                    mClientStatusSubject = BehaviorSubject.create(failedSubject.getValue());
+                    failedSubject.onError((Throwable) notification);
+                }
+            }
+        } while (mPublishRequests.decrementAndGet() != 0);
+    }
+
+    /**
+     * <p>Sends an error to the observers. A new subject is armed before the error is sent so that
+     * observers which resubscribe on error keep receiving status changes. Errors of a connection
+     * already replaced are dropped.</p>
+     * @param sessionListener is the listener of the connection the error comes from.
+     * @param throwable is the error to send.
+     */
+    private void sendError(SessionListener sessionListener, Throwable throwable)
+    {
+        synchronized (mStatusLock)
+        {
+            if (sessionListener == mConnectionListener)
+                mPendingNotifications.offer(throwable);
+        }
+        publishNotifications();
+    }
+
+    /**
+     * <p>Moves the client to {@link ClientStatus#DISCONNECTED} and then sends the error, when a
+     * connection could not be opened, so that observers which resubscribe on error do not see the
+     * client connecting.</p>
+     * @param sessionListener is the listener of the connection that could not be opened.
+     * @param throwable is the error to send.
+     */
+    private void connectionFailed(SessionListener sessionListener, Throwable throwable)
+    {
+        synchronized (mStatusLock)
+        {
+            if (sessionListener != mConnectionListener)
+                return;
+            if (mStateMachine.moveTo(ClientStatus.DISCONNECTED))
+                mPendingNotifications.offer(ClientStatus.DISCONNECTED);
+            mPendingNotifications.offer(throwable);
+        }
+        publishNotifications();
+    }
+
+    //endregion
+
+    //region Internal classes
+
+    /**
+     * <p>This class listens to one connection. The bytes it reports are always counted, but its
+     * status changes and errors are only notified while it is the listener of the connection
+     * opened last.</p>
+     */
+    private final class SessionListener implements ConnectionListener {
+        @Override
+        public void onConnectionEstablished() {
+            changeStatus(this, ClientStatus.STREAM_SENSING);
+        }
+
+        @Override
+        public void onSessionStarted(boolean b) {
+            if (b) //Is polling
+                changeStatus(this, ClientStatus.HTTP_POLLING);
+            else
+                changeStatus(this, ClientStatus.HTTP_STREAMING);
+        }
+
+        @Override
+        public void onNewBytes(long l) {
+            mBytesReceived.addAndGet(l);
+        }
+
+        @Override
+        public void onDataError(PushServerException e) {
+            sendError(this, new LightStreamerServerError(ServerError.fromLSCode(e.getErrorCode()), e.getMessage()));
+        }
+
+        @Override
+        public void onActivityWarning(boolean b) {
+            if (b) //Status is stalled
+                changeStatus(this, ClientStatus.STALLED);
+            else
+            {
+                synchronized (mStatusLock)
+                {
+                    ClientStatus resumedStatus = this == mConnectionListener ? mStateMachine.resume() : null;
+                    if (resumedStatus != null)
+                        mPendingNotifications.offer(resumedStatus);
+                }
+                publishNotifications();
+            }
+        }
+
+        @Override
+        public void onClose() {
+            changeStatus(this, ClientStatus.DISCONNECTED);
+        }
+
+        @Override
+        public void onEnd(int i) {
+            changeStatus(this, ClientStatus.WILL_RETRY);
+        }
+
+        @Override
+        public void onFailure(PushServerException e) {
+            sendError(this, new LightStreamerServerError(ServerError.fromLSCode(e.getErrorCode()), e.getMessage()));
+        }
+
+        @Override
+        public void onFailure(PushConnException e) {
+            sendError(this, e);
+        }
     }
 
     //endregion
@@ -5,13 +5,24 @@ import com.lightstreamer.ls_client.HandyTableListener;
 import com.lightstreamer.ls_client.SubscrException;
 import com.lightstreamer.ls_client.SubscribedTableKey;
 import com.lightstreamer.ls_client.UpdateInfo;
+import com.psa.rxlightstreamer.helpers.SubscriptionEventType;
 import com.psa.rxlightstreamer.helpers.SubscriptionType;
 
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 import rx.Observable;
-import rx.subjects.BehaviorSubject;
+import rx.Scheduler;
+import rx.exceptions.Exceptions;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
 
 /**
  * <p>This class represents a subscription for using with the non-unified API.</p>
+ * <p>Subclasses implement {@link #decode(UpdateInfo)} so that every update is decoded once and
+ * shared by all the observers. Subscriptions that decode with an {@link ItemDecoder}, such as a
+ * generated one, extend {@link RxNonUnifiedDecoderSubscription} instead.</p>
  * @author Pablo Sánchez Alonso
  * @version 1.0
  */
@@ -21,11 +32,39 @@ public abstract class RxNonUnifiedSubscription<T> {
     private String[] mFields, mItems;
     private String mAdapter;
     private boolean mSnapshot;
-    private BehaviorSubject<RxSubscription.SubscriptionEvent<UpdateInfo>> mRawSubject;
+    /**
+     * <p>These subjects are replaced when the subscription ends, so that it can be subscribed
+     * again.</p>
+     */
+    private volatile PublishSubject<RxSubscription.SubscriptionEvent<UpdateInfo>> mRawSubject;
     protected Observable<RxSubscription.SubscriptionEvent<UpdateInfo>> mRawObservable;
+    private volatile PublishSubject<RxSubscription.SubscriptionEvent<T>> mSubscriptionSubject;
+    private Observable<RxSubscription.SubscriptionEvent<T>> mSubscriptionObservable;
+    private volatile PublishSubject<ItemImage> mImageSubject;
+    private ItemRoutingTable<T> mItemRoutingTable;
+    private ItemDecoder<T> mItemDecoder;
+    private IncrementalDecoding<T> mIncrementalDecoding;
+    /**
+     * <p>Holds the update event to reuse, or is null when events are not recycled.</p>
+     */
+    private volatile AtomicReference<RxSubscription.SubscriptionEvent<T>> mEventPool;
+    private volatile CommandTable mCommandTable;
+    private volatile LastValueCache mLastValueCache;
+    /**
+     * <p>Item cache of the client that subscribed this subscription, which its last value cache is
+     * accounted in once it is created.</p>
+     */
+    private volatile ItemCache mItemCache;
+    private final MetricsRecorder mMetricsRecorder = new MetricsRecorder();
+    private final LatencyTracker mLatencyTracker = new LatencyTracker();
     private ExtendedTableInfo mExtendedTableInfo;
     private HandyTableListener mHandyTableListener;
-    private SubscribedTableKey mSubscribedTableKey;
+    /**
+     * <p>Listener that records the events before passing them to {@link #mHandyTableListener},
+     * or null when the subscription is not recorded.</p>
+     */
+    private volatile HandyTableListener mRecordingListener;
+    private volatile SubscribedTableKey mSubscribedTableKey;
 
     //endregion
 
@@ -46,8 +85,32 @@ public abstract class RxNonUnifiedSubscription<T> {
         mFields = fields;
         mItems = items;
         mSnapshot = expectSnapshot;
+        mItemRoutingTable = new ItemRoutingTable<>(mItems);
+        resetSubjects();
+        mRawObservable = Observable.defer(() -> mRawSubject);
+        mSubscriptionObservable = withLastValues(Observable.defer(() -> mSubscriptionSubject), 0);
         resetObservable();
     }
+
+    /**
+     * <p>Instantiates a subscription that decodes its updates with the given decoder. The fields
+     * to subscribe are the ones of the decoder. It is used by
+     * {@link RxNonUnifiedDecoderSubscription}.</p>
+     * @param type is the type.
+     * @param adapter the adapter name.
+     * @param items the items.
+     * @param expectSnapshot true if snapshot is expected.
+     * @param itemDecoder is the decoder.
+     */
+    RxNonUnifiedSubscription(SubscriptionType type, String adapter, String[] items, boolean expectSnapshot,
+                             ItemDecoder<T> itemDecoder)
+    {
+        this(type, adapter, itemDecoder.getFields(), items, expectSnapshot);
+        mItemDecoder = itemDecoder;
+        if (itemDecoder instanceof IncrementalItemDecoder && type != SubscriptionType.COMMAND)
+            mIncrementalDecoding = new IncrementalDecoding<>((IncrementalItemDecoder<T>) itemDecoder, items.length,
+                    mMetricsRecorder.getParseErrors());
+    }
     //endregion
 
     //region Getters
@@ -105,7 +168,8 @@ public abstract class RxNonUnifiedSubscription<T> {
      * @return subscription raw listener.
      */
     public HandyTableListener getHandyTableListener() {
-        return mHandyTableListener;
+        HandyTableListener recordingListener = mRecordingListener;
+        return recordingListener != null ? recordingListener : mHandyTableListener;
     }
 
     /**
@@ -117,10 +181,322 @@ public abstract class RxNonUnifiedSubscription<T> {
     }
 
     /**
-     * <p>Returns the observable that will give updates.</p>
+     * <p>Returns the observable that will give updates. Updates are decoded once with
+     * {@link #decode(UpdateInfo)} no matter how many observers are subscribed.</p>
      * @return observable of the subscription.
      */
-    public abstract Observable<RxSubscription.SubscriptionEvent<T>> getSubscriptionObservable();
+    public Observable<RxSubscription.SubscriptionEvent<T>> getSubscriptionObservable() {
+        return mSubscriptionObservable;
+    }
+
+    /**
+     * <p>Returns an observable that only emits the updates of the given item. Updates are routed
+     * by item, so observers of other items do not see them. Subscription and unsubscription events
+     * are sent to every item.</p>
+     * @param itemName is the name of the item.
+     * @return the observable for that item.
+     * @throws IllegalArgumentException when the item does not belong to this subscription.
+     */
+    public Observable<RxSubscription.SubscriptionEvent<T>> getItemObservable(String itemName) {
+        return getItemObservable(mItemRoutingTable.getPosition(itemName));
+    }
+
+    /**
+     * <p>Returns an observable that only emits the updates of the item at the given position.</p>
+     * @param itemPosition is the position of the item in {@link #getItems()}, starting at 1 as
+     *                     LightStreamer does.
+     * @return the observable for that item.
+     * @throws IllegalArgumentException when the position is out of range.
+     */
+    public Observable<RxSubscription.SubscriptionEvent<T>> getItemObservable(int itemPosition) {
+        return withLastValues(mItemRoutingTable.getItemObservable(itemPosition), itemPosition);
+    }
+
+    /**
+     * <p>Returns an observable of item images that conflates updates while the observer is not
+     * asking for more. Only the latest image of every item is kept until it is requested. In
+     * COMMAND subscriptions images are conflated by item and key.</p>
+     * @return the conflated observable.
+     * @throws UnsupportedOperationException when the subscription is not MERGE or COMMAND.
+     * @see RxSubscription#getConflatedObservable()
+     */
+    public Observable<ItemImage> getConflatedObservable() {
+        return Observable.defer(() -> mImageSubject).lift(new ConflatingOperator(ConflationBuffer.checkConflatable(mSubscriptionType),
+                mMetricsRecorder.getQueueDepth()));
+    }
+
+    /**
+     * <p>Returns an observable that emits the updates of every window as a single batch, conflated
+     * per item (per row in COMMAND subscriptions). Batches are emitted on the computation
+     * scheduler.</p>
+     * @param window is the length of the window.
+     * @param unit is the time unit of the window.
+     * @return the batched observable.
+     * @throws UnsupportedOperationException when the subscription is not MERGE or COMMAND.
+     * @see RxSubscription#getBatchedObservable(long, TimeUnit)
+     */
+    public Observable<ItemBatch> getBatchedObservable(long window, TimeUnit unit) {
+        return getBatchedObservable(window, unit, Schedulers.computation());
+    }
+
+    /**
+     * <p>Returns an observable that emits the updates of every window as a single batch.</p>
+     * @param window is the length of the window.
+     * @param unit is the time unit of the window.
+     * @param scheduler is the scheduler where batches are emitted.
+     * @return the batched observable.
+     * @throws UnsupportedOperationException when the subscription is not MERGE or COMMAND.
+     */
+    public Observable<ItemBatch> getBatchedObservable(long window, TimeUnit unit, Scheduler scheduler) {
+        return Observable.defer(() -> mImageSubject).lift(new BatchingOperator(window, unit, scheduler,
+                ConflationBuffer.checkConflatable(mSubscriptionType), mMetricsRecorder.getQueueDepth()));
+    }
+
+    /**
+     * <p>Returns the materialized table of this COMMAND subscription. The table is kept from the
+     * first time it is asked for; from then on every command is applied to it, even while nobody
+     * observes its changes.</p>
+     * <p>The rows are removed when the subscription is unsubscribed.</p>
+     * @return the table of the subscription.
+     * @throws UnsupportedOperationException when the subscription is not a COMMAND one.
+     */
+    public CommandTable getCommandTable() {
+        if (mSubscriptionType != SubscriptionType.COMMAND)
+            throw new UnsupportedOperationException("Only COMMAND subscriptions have a table");
+        CommandTable commandTable = mCommandTable;
+        if (commandTable == null)
+        {
+            synchronized (this)
+            {
+                commandTable = mCommandTable;
+                if (commandTable == null)
+                {
+                    commandTable = new CommandTable(mItemRoutingTable, mItems.length);
+                    mCommandTable = commandTable;
+                }
+            }
+        }
+        return commandTable;
+    }
+
+    /**
+     * <p>Returns the last value cache of this subscription. The cache is kept from the first time
+     * it is asked for, and the subscription observable and the item observables replay it to new
+     * observers before the live updates. Cached images are decoded with
+     * {@link #decode(ItemImage)}.</p>
+     * @return the cache of the subscription.
+     * @throws UnsupportedOperationException when the subscription is COMMAND, or it cannot decode
+     * the images.
+     * @see RxSubscription#getLastValueCache()
+     */
+    public LastValueCache getLastValueCache() {
+        LastValueCache.checkCacheable(mSubscriptionType);
+        LastValueCache.checkDecodable(mItemDecoder, getClass(), RxNonUnifiedSubscription.class);
+        LastValueCache lastValueCache = mLastValueCache;
+        if (lastValueCache == null)
+        {
+            synchronized (this)
+            {
+                lastValueCache = mLastValueCache;
+                if (lastValueCache == null)
+                {
+                    lastValueCache = new LastValueCache(mItems, itemPosition ->
+                            mSubscriptionSubject.hasObservers() || mItemRoutingTable.hasObservers(itemPosition));
+                    mLastValueCache = lastValueCache;
+                }
+            }
+            ItemCache itemCache = mItemCache;
+            if (itemCache != null)
+                lastValueCache.setItemCache(itemCache);
+        }
+        return lastValueCache;
+    }
+
+    /**
+     * <p>Accounts the last value cache of this subscription in the item cache of the client that
+     * subscribes it. Subscriptions only have a last value cache when it is asked for, so the cache
+     * is accounted when it is created if it does not exist yet.</p>
+     * @param itemCache is the item cache of the client.
+     */
+    void setItemCache(ItemCache itemCache) {
+        mItemCache = itemCache;
+        LastValueCache lastValueCache = mLastValueCache;
+        if (lastValueCache != null)
+            lastValueCache.setItemCache(itemCache);
+    }
+
+    /**
+     * <p>Records the events of this subscription. The LS client keeps the listener it was given
+     * when the table was subscribed, so it must be called before subscribing.</p>
+     * @param streamRecorder is the recorder.
+     * @throws IllegalStateException when the subscription was already subscribed.
+     */
+    void setStreamRecorder(StreamRecorder streamRecorder) {
+        checkNotSubscribed();
+        mRecordingListener = streamRecorder.wrap(mHandyTableListener);
+    }
+
+    /**
+     * <p>Checks that this subscription has not been subscribed yet.</p>
+     * @throws IllegalStateException when it was.
+     */
+    void checkNotSubscribed() {
+        if (mSubscribedTableKey != null)
+            throw new IllegalStateException("The subscription was already subscribed");
+    }
+    //endregion
+
+    //region Decoding
+
+    /**
+     * <p>Converts an update into the type this subscription returns. It is called once per update,
+     * and only while the subscription observable or the item observable has observers.</p>
+     * <p>Subscriptions that decode with an {@link ItemDecoder} extend
+     * {@link RxNonUnifiedDecoderSubscription}, which implements it.</p>
+     * @param updateInfo is the update received from LightStreamer.
+     * @return the decoded item.
+     */
+    protected abstract T decode(UpdateInfo updateInfo);
+
+    /**
+     * <p>Decodes an update with the decoder given in the constructor. An incremental decoder
+     * decodes every field of an item when updates of the item were missed while it had no
+     * observers, and every field of every update in COMMAND subscriptions, counting the values it
+     * cannot parse in the metrics of this subscription.</p>
+     * @param updateInfo is the update received from LightStreamer.
+     * @return the decoded item.
+     */
+    T decodeWithItemDecoder(UpdateInfo updateInfo) {
+        if (mIncrementalDecoding != null)
+            return mIncrementalDecoding.decode(updateInfo);
+        if (mItemDecoder instanceof IncrementalItemDecoder)
+            return ((IncrementalItemDecoder<T>) mItemDecoder).decode(updateInfo, mMetricsRecorder.getParseErrors());
+        return mItemDecoder.decode(updateInfo);
+    }
+
+    /**
+     * <p>Converts a cached image into the type this subscription returns, to replay it from the
+     * {@link #getLastValueCache() last value cache}.</p>
+     * <p>By default it uses the decoder given in the constructor, which must be an
+     * {@link IncrementalItemDecoder}, as generated decoders are. Otherwise subscriptions with a last
+     * value cache must override it, which is checked when the cache is asked for.</p>
+     * @param itemImage is the cached image.
+     * @return the decoded item.
+     */
+    protected T decode(ItemImage itemImage) {
+        if (mItemDecoder instanceof IncrementalItemDecoder)
+            return IncrementalDecoding.decode((IncrementalItemDecoder<T>) mItemDecoder, itemImage,
+                    mMetricsRecorder.getParseErrors());
+        throw new UnsupportedOperationException(getClass().getName() +
+                " must override decode(ItemImage) to replay the last value cache");
+    }
+    //endregion
+
+    //region Metrics
+    /**
+     * <p>Returns a sample of the metrics of this subscription.</p>
+     * @return the sample.
+     * @see RxSubscription#getMetrics()
+     */
+    public Metrics getMetrics() {
+        return mMetricsRecorder.sample();
+    }
+
+    /**
+     * <p>Returns an observable that samples the metrics of this subscription periodically, on the
+     * computation scheduler.</p>
+     * @param period is the time between samples.
+     * @param unit is the time unit of the period.
+     * @return the observable of the samples.
+     */
+    public Observable<Metrics> getMetricsObservable(long period, TimeUnit unit) {
+        return getMetricsObservable(period, unit, Schedulers.computation());
+    }
+
+    /**
+     * <p>Returns an observable that samples the metrics of this subscription periodically.</p>
+     * @param period is the time between samples.
+     * @param unit is the time unit of the period.
+     * @param scheduler is the scheduler where the samples are taken and emitted.
+     * @return the observable of the samples.
+     */
+    public Observable<Metrics> getMetricsObservable(long period, TimeUnit unit, Scheduler scheduler) {
+        return Observable.interval(period, period, unit, scheduler).map(tick -> getMetrics());
+    }
+
+    /**
+     * <p>Returns the recorder of the metrics of this subscription.</p>
+     * @return the recorder.
+     */
+    MetricsRecorder getMetricsRecorder() {
+        return mMetricsRecorder;
+    }
+    //endregion
+
+    //region Latency
+    /**
+     * <p>Sets the field that carries the time the server sent every update, so that the latency
+     * from the server to this subscription is measured. Snapshot updates and updates that do not
+     * change the field are left out.</p>
+     * @param field is the name of the field, or null to stop measuring it.
+     * @param parser is the parser of the field.
+     * @throws IllegalArgumentException when the field does not belong to the subscription.
+     * @see RxSubscription#setServerTimeField(String, ServerTimeParser)
+     */
+    public void setServerTimeField(String field, ServerTimeParser parser) {
+        int position = 0;
+        if (field != null)
+        {
+            position = Arrays.asList(mFields).indexOf(field) + 1;
+            if (position == 0)
+                throw new IllegalArgumentException("The subscription has no " + field + " field");
+        }
+        mLatencyTracker.setServerTimeField(position, parser);
+    }
+
+    /**
+     * <p>Returns a transformer that measures the time from the reception of every update to the
+     * point of the chain it is composed in, usually right before the observer, so that the lag of
+     * decoding, schedulers and queues is measured.</p>
+     * @return the transformer.
+     */
+    public Observable.Transformer<RxSubscription.SubscriptionEvent<T>, RxSubscription.SubscriptionEvent<T>> trackLatency() {
+        return observable -> observable.doOnNext(event -> {
+            long receiveNanos = event.getReceiveNanos();
+            if (receiveNanos != 0)
+                mLatencyTracker.updateObserved(System.nanoTime() - receiveNanos);
+        });
+    }
+
+    /**
+     * <p>Returns a sample of the latencies of this subscription.</p>
+     * @return the sample.
+     */
+    public Latency getLatency() {
+        return mLatencyTracker.sample();
+    }
+
+    /**
+     * <p>Returns an observable that samples the latencies of this subscription periodically, on
+     * the computation scheduler.</p>
+     * @param period is the time between samples.
+     * @param unit is the time unit of the period.
+     * @return the observable of the samples.
+     */
+    public Observable<Latency> getLatencyObservable(long period, TimeUnit unit) {
+        return getLatencyObservable(period, unit, Schedulers.computation());
+    }
+
+    /**
+     * <p>Returns an observable that samples the latencies of this subscription periodically.</p>
+     * @param period is the time between samples.
+     * @param unit is the time unit of the period.
+     * @param scheduler is the scheduler where the samples are taken and emitted.
+     * @return the observable of the samples.
+     */
+    public Observable<Latency> getLatencyObservable(long period, TimeUnit unit, Scheduler scheduler) {
+        return Observable.interval(period, period, unit, scheduler).map(tick -> getLatency());
+    }
     //endregion
 
     //region Setters
@@ -131,7 +507,45 @@ public abstract class RxNonUnifiedSubscription<T> {
      */
     public void setSubscribedTableKey(SubscribedTableKey subscribedTableKey) {
         mSubscribedTableKey = subscribedTableKey;
-        mRawSubject.onNext(new RxSubscription.SubscriptionEvent<>(true, null)); //An event is sent to confirm subscription
+        mMetricsRecorder.subscribed();
+        //An event is sent to confirm subscription
+        mRawSubject.onNext(RxSubscription.SubscriptionEvent.subscribed());
+        RxSubscription.SubscriptionEvent<T> event = RxSubscription.SubscriptionEvent.subscribed();
+        mSubscriptionSubject.onNext(event);
+        mItemRoutingTable.broadcast(event);
+    }
+
+    /**
+     * <p>Enables or disables the recycling of update events. Recycled update events are reused
+     * for the next update once every observer has got them, so steady streaming does not
+     * allocate one event per update.</p>
+     * <p>Only enable it when every observer of the subscription observable and of the item
+     * observables handles the events while they are delivered: observers that keep an event or
+     * hand it to another thread, for instance with {@code observeOn}, must
+     * {@link RxSubscription.SubscriptionEvent#copy() copy} it first.</p>
+     * @param eventRecycling true to recycle update events.
+     */
+    public void setEventRecycling(boolean eventRecycling) {
+        mEventPool = eventRecycling ? new AtomicReference<>() : null;
+    }
+
+    /**
+     * <p>Keeps the last value cache of this subscription in a snapshot store, so that it starts
+     * with the images of a previous run and observers get them before the subscription reaches
+     * the server. Stored images are replayed as snapshot updates and are replaced by the snapshot
+     * of the server.</p>
+     * @param snapshotStore is the store, which can be shared by several subscriptions.
+     * @param reconcile true to drop the stored image of an item when the snapshot of the server
+     *                  ends without it.
+     * @throws UnsupportedOperationException when the subscription is COMMAND.
+     * @see RxSubscription#setSnapshotStore(SnapshotStore, boolean)
+     */
+    public void setSnapshotStore(SnapshotStore snapshotStore, boolean reconcile) {
+        LastValueCache lastValueCache = getLastValueCache();
+        synchronized (lastValueCache)
+        {
+            lastValueCache.load(snapshotStore, mAdapter, mFields, reconcile);
+        }
     }
 
     //endregion
@@ -139,14 +553,157 @@ public abstract class RxNonUnifiedSubscription<T> {
     //region Private helper methods
 
     /**
-     * <p>Resets the raw observable.</p>
+     * <p>Sends a lifecycle event of an item to the raw observable, the subscription observable and
+     * the observable of the item.</p>
+     * @param eventType is the type of the event.
+     * @param itemName is the name of the item.
+     * @param itemPosition is the position of the item, starting at 1.
+     * @param lostUpdates is the number of lost updates.
+     */
+    private void sendItemEvent(SubscriptionEventType eventType, String itemName, int itemPosition, int lostUpdates)
+    {
+        mRawSubject.onNext(new RxSubscription.SubscriptionEvent<>(eventType, true, null, itemName, itemPosition,
+                false, lostUpdates));
+        RxSubscription.SubscriptionEvent<T> event = new RxSubscription.SubscriptionEvent<>(eventType, true, null,
+                itemName, itemPosition, false, lostUpdates);
+        mSubscriptionSubject.onNext(event);
+        mItemRoutingTable.onNext(itemPosition, event);
+    }
+
+    /**
+     * <p>Replays the last value cache, if there is one, before an observable of decoded
+     * events.</p>
+     * @param liveObservable is the observable of the live events.
+     * @param itemPosition is the position of the item to replay, starting at 1, or 0 to replay
+     *                     every item.
+     * @return the observable.
+     */
+    private Observable<RxSubscription.SubscriptionEvent<T>> withLastValues(
+            Observable<RxSubscription.SubscriptionEvent<T>> liveObservable, int itemPosition)
+    {
+        return Observable.defer(() -> {
+            LastValueCache lastValueCache = mLastValueCache;
+            return lastValueCache == null ? liveObservable :
+                    lastValueCache.replay(liveObservable, itemPosition, this::decode);
+        });
+    }
+
+    /**
+     * <p>Publishes an update to the raw observable, the image observables, the command table, the
+     * subscription observable and the observable of its item.</p>
+     * @param i is the position of the item, starting at 1.
+     * @param s is the name of the item.
+     * @param updateInfo is the update.
+     * @param itemImage is the image of the update, or null when it has not been created yet.
+     * @param receiveNanos is when the update was received, from {@link System#nanoTime()}.
+     */
+    private void publishUpdate(int i, String s, UpdateInfo updateInfo, ItemImage itemImage, long receiveNanos)
+    {
+        boolean delivered = mRawSubject.hasObservers();
+        if (delivered)
+            mRawSubject.onNext(new RxSubscription.SubscriptionEvent<>(SubscriptionEventType.UPDATE, true,
+                    updateInfo, s, i, updateInfo.isSnapshot(), 0).receivedAt(receiveNanos));
+        CommandTable commandTable = mCommandTable;
+        boolean imageObserved = mImageSubject.hasObservers();
+        delivered |= imageObserved;
+        if (imageObserved || commandTable != null)
+        {
+            if (itemImage == null)
+                itemImage = ItemImage.from(updateInfo, mFields);
+            if (commandTable != null)
+                commandTable.apply(itemImage);
+            mImageSubject.onNext(itemImage);
+        }
+        boolean itemObserved = mItemRoutingTable.hasObservers(i);
+        if (mSubscriptionSubject.hasObservers() || itemObserved)
+        {
+            AtomicReference<RxSubscription.SubscriptionEvent<T>> eventPool = mEventPool;
+            long decodeStart = mMetricsRecorder.decodeStarted();
+            T decodedItem;
+            try
+            {
+                decodedItem = decode(updateInfo);
+            }
+            catch (Throwable throwable)
+            {
+                Exceptions.throwIfFatal(throwable);
+                PublishSubject<RxSubscription.SubscriptionEvent<T>> failedSubject = mSubscriptionSubject;
+                mSubscriptionSubject = PublishSubject.create();
+                failedSubject.onError(throwable);
+                mItemRoutingTable.terminate(throwable);
+                return;
+            }
+            mMetricsRecorder.decodeEnded(decodeStart);
+            RxSubscription.SubscriptionEvent<T> event = RxSubscription.SubscriptionEvent.obtainUpdate(eventPool,
+                    decodedItem, s, i, updateInfo.isSnapshot(), receiveNanos);
+            mSubscriptionSubject.onNext(event);
+            if (itemObserved)
+                mItemRoutingTable.onNext(i, event);
+            event.release(eventPool);
+            delivered = true;
+        }
+        else if (mIncrementalDecoding != null)
+            mIncrementalDecoding.skip(i);
+        if (delivered)
+            mMetricsRecorder.updateDelivered();
+    }
+
+    /**
+     * <p>Arms new subjects, so that the subscription can be used again.</p>
+     */
+    private void resetSubjects()
+    {
+        mRawSubject = PublishSubject.create();
+        mSubscriptionSubject = PublishSubject.create();
+        mImageSubject = PublishSubject.create();
+    }
+
+    /**
+     * <p>Ends the current observables and arms new ones, so that the subscription can be
+     * subscribed again.</p>
+     * @param throwable is the error to send, or null to complete the observables.
+     */
+    private void terminate(Throwable throwable)
+    {
+        PublishSubject<RxSubscription.SubscriptionEvent<UpdateInfo>> rawSubject = mRawSubject;
+        PublishSubject<RxSubscription.SubscriptionEvent<T>> subscriptionSubject = mSubscriptionSubject;
+        PublishSubject<ItemImage> imageSubject = mImageSubject;
+        resetSubjects();
+        if (throwable == null)
+        {
+            rawSubject.onCompleted();
+            subscriptionSubject.onCompleted();
+            imageSubject.onCompleted();
+        }
+        else
+        {
+            rawSubject.onError(throwable);
+            subscriptionSubject.onError(throwable);
+            imageSubject.onError(throwable);
+        }
+        mItemRoutingTable.terminate(throwable);
+        if (mIncrementalDecoding != null)
+            mIncrementalDecoding.reset();
+        CommandTable commandTable = mCommandTable;
+        if (commandTable != null)
+            commandTable.terminate(throwable);
+        LastValueCache lastValueCache = mLastValueCache;
+        if (lastValueCache != null)
+        {
+            synchronized (lastValueCache)
+            {
+                lastValueCache.clear();
+            }
+        }
+    }
+
+    /**
+     * <p>Creates the table info and the listener of the subscription.</p>
      */
     private void resetObservable()
     {
         try
         {
-            mRawSubject = BehaviorSubject.create();
-            mRawObservable = mRawSubject.asObservable();
             mExtendedTableInfo = new ExtendedTableInfo(mItems, mSubscriptionType.getLSSubscriptionType(), mFields, mSnapshot);
             mExtendedTableInfo.setDataAdapter(mAdapter);
             mHandyTableListener = new HandyTableListener()
@@ -154,19 +711,47 @@ public abstract class RxNonUnifiedSubscription<T> {
                 @Override
                 public void onUpdate(int i, String s, UpdateInfo updateInfo)
                 {
-                    mRawSubject.onNext(new RxSubscription.SubscriptionEvent<>(true, updateInfo));
+                    long receiveNanos = System.nanoTime();
+                    mMetricsRecorder.updateReceived(updateInfo.isSnapshot());
+                    int serverTimePosition = mLatencyTracker.getServerTimePosition();
+                    if (serverTimePosition != 0 && !updateInfo.isSnapshot() &&
+                            updateInfo.isValueChanged(serverTimePosition))
+                        mLatencyTracker.serverTimeReceived(updateInfo.getNewValue(serverTimePosition),
+                                System.currentTimeMillis());
+                    LastValueCache lastValueCache = mLastValueCache;
+                    if (lastValueCache == null)
+                    {
+                        publishUpdate(i, s, updateInfo, null, receiveNanos);
+                        return;
+                    }
+                    synchronized (lastValueCache)
+                    {
+                        ItemImage itemImage = ItemImage.from(updateInfo, mFields);
+                        lastValueCache.put(itemImage);
+                        publishUpdate(i, s, updateInfo, itemImage, receiveNanos);
+                    }
                 }
 
                 @Override
                 public void onSnapshotEnd(int i, String s)
                 {
-
+                    LastValueCache lastValueCache = mLastValueCache;
+                    if (lastValueCache != null)
+                    {
+                        synchronized (lastValueCache)
+                        {
+                            lastValueCache.endOfSnapshot(i);
+                        }
+                    }
+                    mMetricsRecorder.endOfSnapshot();
+                    sendItemEvent(SubscriptionEventType.END_OF_SNAPSHOT, s, i, 0);
                 }
 
                 @Override
                 public void onRawUpdatesLost(int i, String s, int i1)
                 {
-
+                    mMetricsRecorder.updatesLost(i1);
+                    sendItemEvent(SubscriptionEventType.LOST_UPDATES, s, i, i1);
                 }
 
                 @Override
@@ -178,13 +763,17 @@ public abstract class RxNonUnifiedSubscription<T> {
                 @Override
                 public void onUnsubscrAll()
                 {
-                    mRawSubject.onNext(new RxSubscription.SubscriptionEvent<>(false, null));
+                    mRawSubject.onNext(RxSubscription.SubscriptionEvent.unsubscribed());
+                    RxSubscription.SubscriptionEvent<T> event = RxSubscription.SubscriptionEvent.unsubscribed();
+                    mSubscriptionSubject.onNext(event);
+                    mItemRoutingTable.broadcast(event);
+                    terminate(null);
                 }
             };
         }
         catch (SubscrException e)
         {
-            mRawSubject.onError(e);
+            terminate(e);
         }
     }
     //endregion
@@ -4,12 +4,22 @@ import com.lightstreamer.client.ItemUpdate;
 import com.lightstreamer.client.Subscription;
 import com.lightstreamer.client.SubscriptionListener;
 import com.psa.rxlightstreamer.exceptions.LightStreamerSubscriptionError;
+import com.psa.rxlightstreamer.helpers.ConnectionEventType;
 import com.psa.rxlightstreamer.helpers.SubscriptionError;
+import com.psa.rxlightstreamer.helpers.SubscriptionEventType;
 import com.psa.rxlightstreamer.helpers.SubscriptionType;
 import com.psa.rxlightstreamer.injection.RxLightStreamerComponent;
 import com.psa.rxlightstreamer.injection.RxLightStreamerInjector;
 
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 import rx.Observable;
+import rx.Scheduler;
+import rx.exceptions.Exceptions;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
 
 /**
  * <p>This class represents a subscription. A subscription can be of one of the types of
@@ -18,17 +28,74 @@ import rx.Observable;
  * <p>The class is meant to be extended in order to implement the items and the fields that
  * belong to the class as well as the conversion from {@link com.lightstreamer.client.ItemUpdate} to
  * the type that the subscription returns.</p>
- * <p>The updates from the subscription come from the subscription observable.</p>
+ * <p>The updates from the subscription come from the subscription observable. Subclasses
+ * implement {@link #decode(ItemUpdate)} so that every update is decoded once and shared by all
+ * the observers. Subscriptions that decode with an {@link ItemDecoder}, such as a generated one,
+ * extend {@link RxDecoderSubscription} instead.</p>
  * @author Pablo Sánchez Alonso
  * @version 1.0
  */
 public abstract class RxSubscription<T> {
+    /**
+     * <p>Bytes of an update message of the TLCP protocol besides its values: the message type, the
+     * subscription, the item, the separators and the end of line.</p>
+     */
+    static final int UPDATE_MESSAGE_BYTES = 12;
+
     //region Field declarations
     private Subscription mSubscription;
     private SubscriptionType mSubscriptionType;
     private String[] mFields, mItems;
     private String mAdapter;
     private boolean mSnapshot;
+    private String[] mSecondLevelFields;
+    private String mSecondLevelAdapter;
+    /**
+     * <p>First level fields followed by the second level ones, as LightStreamer numbers them.</p>
+     */
+    private String[] mImageFields;
+    private ItemDecoder<T> mItemDecoder;
+    private IncrementalDecoding<T> mIncrementalDecoding;
+    /**
+     * <p>Holds the update event to reuse, or is null when events are not recycled.</p>
+     */
+    private volatile AtomicReference<SubscriptionEvent<T>> mEventPool;
+    private SubscriptionListener mSubscriptionListener;
+    /**
+     * <p>Listener that records the events before passing them to {@link #mSubscriptionListener},
+     * or null when the subscription is not recorded.</p>
+     */
+    private SubscriptionListener mRecordingListener;
+    /**
+     * <p>These subjects publish the raw and the decoded events. Subjects keep their observers in
+     * a copy-on-write array, so publishing an event does not lock or allocate.</p>
+     */
+    private volatile PublishSubject<SubscriptionEvent<ItemUpdate>> mRawSubject;
+    private volatile PublishSubject<SubscriptionEvent<T>> mSubscriptionSubject;
+    private volatile PublishSubject<ItemImage> mImageSubject;
+    private Observable<SubscriptionEvent<T>> mSubscriptionObservable;
+    private ItemRoutingTable<T> mItemRoutingTable;
+    private volatile CommandTable mCommandTable;
+    private volatile LastValueCache mLastValueCache;
+    /**
+     * <p>Item cache of the client that subscribed this subscription, which its last value cache is
+     * accounted in once it is created.</p>
+     */
+    private volatile ItemCache mItemCache;
+    private final MetricsRecorder mMetricsRecorder = new MetricsRecorder();
+    private final LatencyTracker mLatencyTracker = new LatencyTracker();
+    /**
+     * <p>Tells whether the bytes of the updates are estimated, which walks the values of every
+     * update. It is set when the client this subscription is subscribed on meters its
+     * bandwidth.</p>
+     */
+    private volatile boolean mBytesEstimated;
+    /**
+     * <p>Recorder of the client this subscription was last requested on, and the times the
+     * pending requests were sent, or 0 when none is pending.</p>
+     */
+    private volatile ConnectionRecorder mConnectionRecorder;
+    private volatile long mSubscribeRequestNanos, mUnsubscribeRequestNanos;
     protected Observable<SubscriptionEvent<ItemUpdate>> mRawObservable;
     //endregion
 
@@ -42,11 +109,65 @@ public abstract class RxSubscription<T> {
      */
     public RxSubscription(SubscriptionType subscriptionType, String adapter, String[] fields,
                           String[] items, boolean snapshot) {
+        this(subscriptionType, adapter, fields, items, snapshot, null, null);
+    }
+
+    /**
+     * <p>Instantiates a RxSubscription that decodes its updates with the given decoder. The fields
+     * to subscribe are the ones of the decoder. It is used by {@link RxDecoderSubscription}.</p>
+     * @param subscriptionType is the subscription type.
+     * @param adapter is the adapter to subscribe.
+     * @param items is the items to subscribe
+     * @param snapshot if true, snapshot is on.
+     * @param itemDecoder is the decoder.
+     * @see RxDecoderSubscription#RxDecoderSubscription(SubscriptionType, String, String[], boolean, ItemDecoder)
+     */
+    RxSubscription(SubscriptionType subscriptionType, String adapter, String[] items,
+                   boolean snapshot, ItemDecoder<T> itemDecoder) {
+        this(subscriptionType, adapter, itemDecoder.getFields(), items, snapshot, null, null);
+        mItemDecoder = itemDecoder;
+        if (itemDecoder instanceof IncrementalItemDecoder && subscriptionType != SubscriptionType.COMMAND)
+            mIncrementalDecoding = new IncrementalDecoding<>((IncrementalItemDecoder<T>) itemDecoder, items.length,
+                    mMetricsRecorder.getParseErrors());
+    }
+
+    /**
+     * <p>Instantiates a two level COMMAND RxSubscription. Every row added by the first level
+     * subscription gets a second level subscription to the item named as its key, and its fields are
+     * merged into the row. LightStreamer subscribes and unsubscribes the second level items as rows
+     * are added and deleted.</p>
+     * <p>Second level fields follow the first level ones in the positions of the updates.</p>
+     * @param subscriptionType is the subscription type, which must be COMMAND.
+     * @param adapter is the adapter to subscribe.
+     * @param fields is the first level fields, including key and command.
+     * @param items is the items to subscribe
+     * @param snapshot if true, snapshot is on.
+     * @param secondLevelAdapter is the adapter of the second level items, or null to use the
+     *                           first level one.
+     * @param secondLevelFields is the fields of the second level items, or null for a one level
+     *                          subscription.
+     * @throws IllegalArgumentException when second level fields are given to a subscription that
+     * is not COMMAND.
+     */
+    public RxSubscription(SubscriptionType subscriptionType, String adapter, String[] fields,
+                          String[] items, boolean snapshot, String secondLevelAdapter,
+                          String[] secondLevelFields) {
+        if (secondLevelFields != null && subscriptionType != SubscriptionType.COMMAND)
+            throw new IllegalArgumentException("Only COMMAND subscriptions can have two levels");
         mSubscriptionType = subscriptionType;
         mAdapter = adapter;
         mFields = fields;
         mItems = items;
         mSnapshot = snapshot;
+        mSecondLevelAdapter = secondLevelAdapter;
+        mSecondLevelFields = secondLevelFields;
+        if (mSecondLevelFields == null)
+            mImageFields = mFields;
+        else
+        {
+            mImageFields = Arrays.copyOf(mFields, mFields.length + mSecondLevelFields.length);
+            System.arraycopy(mSecondLevelFields, 0, mImageFields, mFields.length, mSecondLevelFields.length);
+        }
         RxLightStreamerComponent lsComponent = RxLightStreamerInjector.getRxLightStreamerComponent();
         switch (mSubscriptionType)
         {
@@ -67,7 +188,125 @@ public abstract class RxSubscription<T> {
         mSubscription.setItems(mItems);
         mSubscription.setDataAdapter(mAdapter);
         mSubscription.setRequestedSnapshot(mSnapshot?"yes":"no");
+        if (mSecondLevelFields != null)
+        {
+            mSubscription.setCommandSecondLevelFields(mSecondLevelFields);
+            if (mSecondLevelAdapter != null)
+                mSubscription.setCommandSecondLevelDataAdapter(mSecondLevelAdapter);
+        }
         resetObservable();
+        mItemRoutingTable = new ItemRoutingTable<>(mItems);
+        mRawObservable = Observable.defer(() -> mRawSubject);
+        mSubscriptionObservable = withLastValues(Observable.defer(() -> mSubscriptionSubject), 0);
+        mSubscriptionListener = new SubscriptionListener() {
+            @Override
+            public void onClearSnapshot(String s, int i) {
+                CommandTable commandTable = mCommandTable;
+                if (commandTable != null)
+                    commandTable.clear(i);
+                LastValueCache lastValueCache = mLastValueCache;
+                if (lastValueCache != null)
+                {
+                    synchronized (lastValueCache)
+                    {
+                        lastValueCache.remove(i);
+                    }
+                }
+                sendItemEvent(SubscriptionEventType.CLEAR_SNAPSHOT, s, i, 0);
+            }
+
+            @Override
+            public void onCommandSecondLevelItemLostUpdates(int i, String s) {
+                sendKeyEvent(SubscriptionEventType.LOST_UPDATES, s, i, null);
+            }
+
+            @Override
+            public void onCommandSecondLevelSubscriptionError(int i, String s, String s1) {
+                sendKeyEvent(SubscriptionEventType.SECOND_LEVEL_ERROR, s1, 0,
+                        new LightStreamerSubscriptionError(SubscriptionError.fromLSCode(i), s));
+            }
+
+            @Override
+            public void onEndOfSnapshot(String s, int i) {
+                LastValueCache lastValueCache = mLastValueCache;
+                if (lastValueCache != null)
+                {
+                    synchronized (lastValueCache)
+                    {
+                        lastValueCache.endOfSnapshot(i);
+                    }
+                }
+                mMetricsRecorder.endOfSnapshot();
+                sendItemEvent(SubscriptionEventType.END_OF_SNAPSHOT, s, i, 0);
+            }
+
+            @Override
+            public void onItemLostUpdates(String s, int i, int i1) {
+                mMetricsRecorder.updatesLost(i1);
+                sendItemEvent(SubscriptionEventType.LOST_UPDATES, s, i, i1);
+            }
+
+            @Override
+            public void onItemUpdate(ItemUpdate itemUpdate) {
+                long receiveNanos = System.nanoTime();
+                mMetricsRecorder.updateReceived(itemUpdate.isSnapshot());
+                if (mBytesEstimated)
+                    mMetricsRecorder.bytesReceived(estimateBytes(itemUpdate));
+                int serverTimePosition = mLatencyTracker.getServerTimePosition();
+                if (serverTimePosition != 0 && !itemUpdate.isSnapshot() &&
+                        itemUpdate.isValueChanged(serverTimePosition))
+                    mLatencyTracker.serverTimeReceived(itemUpdate.getValue(serverTimePosition),
+                            System.currentTimeMillis());
+                LastValueCache lastValueCache = mLastValueCache;
+                if (lastValueCache == null)
+                {
+                    publishUpdate(itemUpdate, null, receiveNanos);
+                    return;
+                }
+                synchronized (lastValueCache)
+                {
+                    ItemImage itemImage = ItemImage.from(itemUpdate, mImageFields);
+                    lastValueCache.put(itemImage);
+                    publishUpdate(itemUpdate, itemImage, receiveNanos);
+                }
+            }
+
+            @Override
+            public void onListenEnd(Subscription subscription) {
+
+            }
+
+            @Override
+            public void onListenStart(Subscription subscription) {
+
+            }
+
+            @Override
+            public void onSubscription() {
+                mMetricsRecorder.subscribed();
+                requestCompleted(ConnectionEventType.SUBSCRIPTION);
+                mRawSubject.onNext(SubscriptionEvent.subscribed());
+                SubscriptionEvent<T> event = SubscriptionEvent.subscribed();
+                mSubscriptionSubject.onNext(event);
+                mItemRoutingTable.broadcast(event);
+            }
+
+            @Override
+            public void onSubscriptionError(int i, String s) {
+                terminate(new LightStreamerSubscriptionError(SubscriptionError.fromLSCode(i), s));
+            }
+
+            @Override
+            public void onUnsubscription() {
+                requestCompleted(ConnectionEventType.UNSUBSCRIPTION);
+                mRawSubject.onNext(SubscriptionEvent.unsubscribed());
+                SubscriptionEvent<T> event = SubscriptionEvent.unsubscribed();
+                mSubscriptionSubject.onNext(event);
+                mItemRoutingTable.broadcast(event);
+                terminate(null);
+            }
+        };
+        mSubscription.addListener(mSubscriptionListener);
     }
 
     //region Getters
@@ -103,6 +342,22 @@ public abstract class RxSubscription<T> {
         return mAdapter;
     }
 
+    /**
+     * <p>Returns the fields of the second level items.</p>
+     * @return the second level fields, or null for one level subscriptions.
+     */
+    public String[] getSecondLevelFields() {
+        return mSecondLevelFields;
+    }
+
+    /**
+     * <p>Returns the adapter of the second level items.</p>
+     * @return the second level adapter, or null when the first level one is used.
+     */
+    public String getSecondLevelAdapter() {
+        return mSecondLevelAdapter;
+    }
+
     /**
      * <p>Returns whether the subscription uses snapshot or not.</p>
      * @return true when snapshot is used, false otherwise.
@@ -112,81 +367,594 @@ public abstract class RxSubscription<T> {
     }
     //endregion
 
-    //region Abstract methods
+    //region Decoding
     /**
-     * <p>Returns the observable for the subscription.</p>
+     * <p>Returns the observable for the subscription. Updates are decoded once with
+     * {@link #decode(ItemUpdate)} no matter how many observers are subscribed.</p>
+     * <p>The observable completes when the subscription is unsubscribed, and it can be
+     * subscribed again afterwards.</p>
      * @return the observable that will send events for this subscription.
      */
-    public abstract Observable<SubscriptionEvent<T>> getSubscriptionObservable();
-    //endregion
+    public Observable<SubscriptionEvent<T>> getSubscriptionObservable() {
+        return mSubscriptionObservable;
+    }
 
     /**
-     * <p>Resets the observable so that the subscription can be used again.</p>
+     * <p>Returns an observable that only emits the updates of the given item. Updates are routed
+     * by item, so observers of other items do not see them. Subscription and unsubscription events
+     * are sent to every item.</p>
+     * <p>Item observables rely on {@link #decode(ItemUpdate)}.</p>
+     * @param itemName is the name of the item.
+     * @return the observable for that item.
+     * @throws IllegalArgumentException when the item does not belong to this subscription.
      */
-    private void resetObservable()
-    {
-        while (!mSubscription.getListeners().isEmpty())
-            mSubscription.removeListener(mSubscription.getListeners().get(0));
-        mRawObservable = Observable.create(subscriber -> mSubscription
-                .addListener(new SubscriptionListener() {
-            @Override
-            public void onClearSnapshot(String s, int i) {
+    public Observable<SubscriptionEvent<T>> getItemObservable(String itemName) {
+        return getItemObservable(mItemRoutingTable.getPosition(itemName));
+    }
 
-            }
+    /**
+     * <p>Returns an observable that only emits the updates of the item at the given position.</p>
+     * @param itemPosition is the position of the item in {@link #getItems()}, starting at 1 as
+     *                     LightStreamer does.
+     * @return the observable for that item.
+     * @throws IllegalArgumentException when the position is out of range.
+     */
+    public Observable<SubscriptionEvent<T>> getItemObservable(int itemPosition) {
+        return withLastValues(mItemRoutingTable.getItemObservable(itemPosition), itemPosition);
+    }
 
-            @Override
-            public void onCommandSecondLevelItemLostUpdates(int i, String s) {
+    /**
+     * <p>Returns an observable of item images that conflates updates while the observer is not
+     * asking for more. Only the latest image of every item is kept until it is requested, so a slow
+     * observer (for instance, one that observes on the main thread) does not make updates pile up.
+     * The changed fields of a delivered image are the fields that changed in any of the updates it
+     * conflates.</p>
+     * <p>In COMMAND subscriptions images are conflated by item and key, and the commands are merged,
+     * so an ADD followed by a DELETE is never delivered.</p>
+     * <p>The observable completes when the subscription is unsubscribed.</p>
+     * @return the conflated observable.
+     * @throws UnsupportedOperationException when the subscription is not MERGE or COMMAND.
+     */
+    public Observable<ItemImage> getConflatedObservable() {
+        return Observable.defer(() -> mImageSubject)
+                .lift(new ConflatingOperator(ConflationBuffer.checkConflatable(mSubscriptionType),
+                        mMetricsRecorder.getQueueDepth()));
+    }
 
-            }
+    /**
+     * <p>Returns an observable that emits the updates of every window as a single batch, so that
+     * observers that hop to another thread do it once per window instead of once per update.
+     * Images are conflated per item (per row in COMMAND subscriptions) as in
+     * {@link #getConflatedObservable()}, and windows with no updates emit nothing.</p>
+     * <p>Batches are emitted on the computation scheduler.</p>
+     * @param window is the length of the window, for instance 16 milliseconds for one batch per
+     *               frame.
+     * @param unit is the time unit of the window.
+     * @return the batched observable.
+     * @throws UnsupportedOperationException when the subscription is not MERGE or COMMAND.
+     */
+    public Observable<ItemBatch> getBatchedObservable(long window, TimeUnit unit) {
+        return getBatchedObservable(window, unit, Schedulers.computation());
+    }
 
-            @Override
-            public void onCommandSecondLevelSubscriptionError(int i, String s, String s1) {
+    /**
+     * <p>Returns an observable that emits the updates of every window as a single batch.</p>
+     * @param window is the length of the window.
+     * @param unit is the time unit of the window.
+     * @param scheduler is the scheduler where batches are emitted.
+     * @return the batched observable.
+     * @throws UnsupportedOperationException when the subscription is not MERGE or COMMAND.
+     * @see #getBatchedObservable(long, TimeUnit)
+     */
+    public Observable<ItemBatch> getBatchedObservable(long window, TimeUnit unit, Scheduler scheduler) {
+        boolean command = ConflationBuffer.checkConflatable(mSubscriptionType);
+        return Observable.defer(() -> mImageSubject)
+                .lift(new BatchingOperator(window, unit, scheduler, command, mMetricsRecorder.getQueueDepth()));
+    }
 
+    /**
+     * <p>Returns the materialized table of this COMMAND subscription. The table is kept from the
+     * first time it is asked for; from then on every command is applied to it, even while nobody
+     * observes its changes.</p>
+     * @return the table of the subscription.
+     * @throws UnsupportedOperationException when the subscription is not a COMMAND one.
+     */
+    public CommandTable getCommandTable() {
+        if (mSubscriptionType != SubscriptionType.COMMAND)
+            throw new UnsupportedOperationException("Only COMMAND subscriptions have a table");
+        CommandTable commandTable = mCommandTable;
+        if (commandTable == null)
+        {
+            synchronized (this)
+            {
+                commandTable = mCommandTable;
+                if (commandTable == null)
+                {
+                    commandTable = new CommandTable(mItemRoutingTable, mItems.length);
+                    mCommandTable = commandTable;
+                }
             }
+        }
+        return commandTable;
+    }
 
-            @Override
-            public void onEndOfSnapshot(String s, int i) {
-
+    /**
+     * <p>Returns the last value cache of this subscription. The cache is kept from the first time
+     * it is asked for; from then on it holds the latest image of every item, and the subscription
+     * observable and the item observables replay the cached images as snapshot updates to new
+     * observers before the live updates, so they do not have to wait for every item to tick
+     * again.</p>
+     * <p>Cached images are decoded with {@link #decode(ItemImage)}. The images are removed when
+     * the subscription is unsubscribed.</p>
+     * @return the cache of the subscription.
+     * @throws UnsupportedOperationException when the subscription is COMMAND, whose rows are kept
+     * by {@link #getCommandTable()}, or it cannot decode the images because it has no
+     * {@link IncrementalItemDecoder} and does not override {@link #decode(ItemImage)}.
+     */
+    public LastValueCache getLastValueCache() {
+        LastValueCache.checkCacheable(mSubscriptionType);
+        LastValueCache.checkDecodable(mItemDecoder, getClass(), RxSubscription.class);
+        LastValueCache lastValueCache = mLastValueCache;
+        if (lastValueCache == null)
+        {
+            synchronized (this)
+            {
+                lastValueCache = mLastValueCache;
+                if (lastValueCache == null)
+                {
+                    lastValueCache = new LastValueCache(mItems, itemPosition ->
+                            mSubscriptionSubject.hasObservers() || mItemRoutingTable.hasObservers(itemPosition));
+                    mLastValueCache = lastValueCache;
+                }
             }
+            ItemCache itemCache = mItemCache;
+            if (itemCache != null)
+                lastValueCache.setItemCache(itemCache);
+        }
+        return lastValueCache;
+    }
 
-            @Override
-            public void onItemLostUpdates(String s, int i, int i1) {
+    /**
+     * <p>Accounts the last value cache of this subscription in the item cache of the client that
+     * subscribes it. Subscriptions only have a last value cache when it is asked for, so the cache
+     * is accounted when it is created if it does not exist yet.</p>
+     * @param itemCache is the item cache of the client.
+     */
+    void setItemCache(ItemCache itemCache) {
+        mItemCache = itemCache;
+        LastValueCache lastValueCache = mLastValueCache;
+        if (lastValueCache != null)
+            lastValueCache.setItemCache(itemCache);
+    }
 
-            }
+    /**
+     * <p>Estimates the bytes of the updates of this subscription from now on, so that they are
+     * part of its metrics and of the bandwidth of its client.</p>
+     */
+    void setBytesEstimated() {
+        mBytesEstimated = true;
+    }
 
-            @Override
-            public void onItemUpdate(ItemUpdate itemUpdate) {
-                subscriber.onNext(new SubscriptionEvent<>(true, itemUpdate));
-            }
+    /**
+     * <p>Records the events of this subscription from now on.</p>
+     * @param streamRecorder is the recorder.
+     */
+    synchronized void setStreamRecorder(StreamRecorder streamRecorder) {
+        mSubscription.removeListener(getSubscriptionListener());
+        mRecordingListener = streamRecorder.wrap(mSubscriptionListener);
+        mSubscription.addListener(mRecordingListener);
+    }
 
-            @Override
-            public void onListenEnd(Subscription subscription) {
+    /**
+     * <p>Returns the listener that LightStreamer calls for this subscription.</p>
+     * @return the listener.
+     */
+    synchronized SubscriptionListener getSubscriptionListener() {
+        return mRecordingListener != null ? mRecordingListener : mSubscriptionListener;
+    }
 
-            }
+    /**
+     * <p>Converts an item update into the type this subscription returns. It is called once per
+     * update, and only while the subscription observable or the item observable has
+     * observers.</p>
+     * <p>Subscriptions that decode with an {@link ItemDecoder} extend
+     * {@link RxDecoderSubscription}, which implements it.</p>
+     * @param itemUpdate is the update received from LightStreamer.
+     * @return the decoded item.
+     */
+    protected abstract T decode(ItemUpdate itemUpdate);
 
-            @Override
-            public void onListenStart(Subscription subscription) {
+    /**
+     * <p>Decodes an update with the decoder given in the constructor. An incremental decoder
+     * decodes every field of an item when updates of the item were missed while it had no
+     * observers, and every field of every update in COMMAND subscriptions, counting the values it
+     * cannot parse in the metrics of this subscription.</p>
+     * @param itemUpdate is the update received from LightStreamer.
+     * @return the decoded item.
+     */
+    T decodeWithItemDecoder(ItemUpdate itemUpdate) {
+        if (mIncrementalDecoding != null)
+            return mIncrementalDecoding.decode(itemUpdate);
+        if (mItemDecoder instanceof IncrementalItemDecoder)
+            return ((IncrementalItemDecoder<T>) mItemDecoder).decode(itemUpdate, mMetricsRecorder.getParseErrors());
+        return mItemDecoder.decode(itemUpdate);
+    }
 
-            }
+    /**
+     * <p>Converts a cached image into the type this subscription returns, to replay it from the
+     * {@link #getLastValueCache() last value cache}.</p>
+     * <p>By default it uses the decoder given in the constructor, which must be an
+     * {@link IncrementalItemDecoder}, as generated decoders are. Otherwise subscriptions with a last
+     * value cache must override it, which is checked when the cache is asked for.</p>
+     * @param itemImage is the cached image.
+     * @return the decoded item.
+     */
+    protected T decode(ItemImage itemImage) {
+        if (mItemDecoder instanceof IncrementalItemDecoder)
+            return IncrementalDecoding.decode((IncrementalItemDecoder<T>) mItemDecoder, itemImage,
+                    mMetricsRecorder.getParseErrors());
+        throw new UnsupportedOperationException(getClass().getName() +
+                " must override decode(ItemImage) to replay the last value cache");
+    }
+    //endregion
 
-            @Override
-            public void onSubscription() {
-                subscriber.onNext(new SubscriptionEvent<ItemUpdate>(true, null));
+    //region Metrics
+    /**
+     * <p>Returns a sample of the metrics of this subscription: the updates received and
+     * delivered, the time taken to decode them, the images waiting in conflated and batched
+     * observables, the lost updates, the size and the duration of the snapshot and the time to the
+     * first update.</p>
+     * @return the sample.
+     */
+    public Metrics getMetrics() {
+        return mMetricsRecorder.sample();
+    }
+
+    /**
+     * <p>Returns an observable that samples the metrics of this subscription periodically, on the
+     * computation scheduler.</p>
+     * @param period is the time between samples.
+     * @param unit is the time unit of the period.
+     * @return the observable of the samples.
+     */
+    public Observable<Metrics> getMetricsObservable(long period, TimeUnit unit) {
+        return getMetricsObservable(period, unit, Schedulers.computation());
+    }
+
+    /**
+     * <p>Returns an observable that samples the metrics of this subscription periodically.</p>
+     * @param period is the time between samples.
+     * @param unit is the time unit of the period.
+     * @param scheduler is the scheduler where the samples are taken and emitted.
+     * @return the observable of the samples.
+     */
+    public Observable<Metrics> getMetricsObservable(long period, TimeUnit unit, Scheduler scheduler) {
+        return Observable.interval(period, period, unit, scheduler).map(tick -> getMetrics());
+    }
+
+    /**
+     * <p>Returns the recorder of the metrics of this subscription.</p>
+     * @return the recorder.
+     */
+    MetricsRecorder getMetricsRecorder() {
+        return mMetricsRecorder;
+    }
+
+    /**
+     * <p>Starts timing a subscription or unsubscription request until the server answers it.</p>
+     * @param connectionRecorder is the recorder of the client that sends the request.
+     * @param eventType is either {@link ConnectionEventType#SUBSCRIPTION} or
+     *                  {@link ConnectionEventType#UNSUBSCRIPTION}.
+     */
+    void requestSent(ConnectionRecorder connectionRecorder, ConnectionEventType eventType) {
+        long now = System.nanoTime();
+        if (eventType == ConnectionEventType.SUBSCRIPTION)
+            mSubscribeRequestNanos = now;
+        else
+            mUnsubscribeRequestNanos = now;
+        mConnectionRecorder = connectionRecorder;
+    }
+
+    /**
+     * <p>Records the latency of a request the server answered. Answers that were not requested,
+     * such as the subscriptions the client restores after reconnecting, are not timed.</p>
+     * @param eventType is the type of the answer.
+     */
+    private void requestCompleted(ConnectionEventType eventType) {
+        ConnectionRecorder connectionRecorder = mConnectionRecorder;
+        long sent;
+        if (eventType == ConnectionEventType.SUBSCRIPTION) {
+            sent = mSubscribeRequestNanos;
+            mSubscribeRequestNanos = 0;
+        } else {
+            sent = mUnsubscribeRequestNanos;
+            mUnsubscribeRequestNanos = 0;
+        }
+        if (connectionRecorder != null && sent != 0)
+            connectionRecorder.requestCompleted(eventType, System.nanoTime() - sent);
+    }
+    //endregion
+
+    //region Latency
+    /**
+     * <p>Sets the field that carries the time the server sent every update, so that the latency
+     * from the server to this subscription is measured. Snapshot updates and updates that do not
+     * change the field are left out.</p>
+     * @param field is the name of the field, or null to stop measuring it.
+     * @param parser is the parser of the field.
+     * @throws IllegalArgumentException when the field does not belong to the subscription.
+     */
+    public void setServerTimeField(String field, ServerTimeParser parser) {
+        int position = 0;
+        if (field != null)
+        {
+            position = Arrays.asList(mImageFields).indexOf(field) + 1;
+            if (position == 0)
+                throw new IllegalArgumentException("The subscription has no " + field + " field");
+        }
+        mLatencyTracker.setServerTimeField(position, parser);
+    }
+
+    /**
+     * <p>Returns a transformer that measures the time from the reception of every update to the
+     * point of the chain it is composed in, usually right before the observer, so that the lag of
+     * decoding, schedulers and queues is measured.</p>
+     * @return the transformer.
+     */
+    public Observable.Transformer<SubscriptionEvent<T>, SubscriptionEvent<T>> trackLatency() {
+        return observable -> observable.doOnNext(event -> {
+            long receiveNanos = event.getReceiveNanos();
+            if (receiveNanos != 0)
+                mLatencyTracker.updateObserved(System.nanoTime() - receiveNanos);
+        });
+    }
+
+    /**
+     * <p>Returns a sample of the latencies of this subscription.</p>
+     * @return the sample.
+     */
+    public Latency getLatency() {
+        return mLatencyTracker.sample();
+    }
+
+    /**
+     * <p>Returns an observable that samples the latencies of this subscription periodically, on
+     * the computation scheduler.</p>
+     * @param period is the time between samples.
+     * @param unit is the time unit of the period.
+     * @return the observable of the samples.
+     */
+    public Observable<Latency> getLatencyObservable(long period, TimeUnit unit) {
+        return getLatencyObservable(period, unit, Schedulers.computation());
+    }
+
+    /**
+     * <p>Returns an observable that samples the latencies of this subscription periodically.</p>
+     * @param period is the time between samples.
+     * @param unit is the time unit of the period.
+     * @param scheduler is the scheduler where the samples are taken and emitted.
+     * @return the observable of the samples.
+     */
+    public Observable<Latency> getLatencyObservable(long period, TimeUnit unit, Scheduler scheduler) {
+        return Observable.interval(period, period, unit, scheduler).map(tick -> getLatency());
+    }
+    //endregion
+
+    //region Setters
+    /**
+     * <p>Enables or disables the recycling of update events. Recycled update events are reused
+     * for the next update once every observer has got them, so steady streaming does not
+     * allocate one event per update.</p>
+     * <p>Only enable it when every observer of the subscription observable and of the item
+     * observables handles the events while they are delivered: observers that keep an event or
+     * hand it to another thread, for instance with {@code observeOn}, must
+     * {@link SubscriptionEvent#copy() copy} it first.</p>
+     * @param eventRecycling true to recycle update events.
+     */
+    public void setEventRecycling(boolean eventRecycling) {
+        mEventPool = eventRecycling ? new AtomicReference<>() : null;
+    }
+
+    /**
+     * <p>Keeps the last value cache of this subscription in a snapshot store, so that it starts
+     * with the images of a previous run and observers get them before the subscription reaches
+     * the server. Stored images are replayed as snapshot updates and are replaced by the snapshot
+     * of the server.</p>
+     * @param snapshotStore is the store, which can be shared by several subscriptions.
+     * @param reconcile true to drop the stored image of an item when the snapshot of the server
+     *                  ends without it.
+     * @throws UnsupportedOperationException when the subscription is COMMAND.
+     */
+    public void setSnapshotStore(SnapshotStore snapshotStore, boolean reconcile) {
+        LastValueCache lastValueCache = getLastValueCache();
+        synchronized (lastValueCache)
+        {
+            lastValueCache.load(snapshotStore, mAdapter, mImageFields, reconcile);
+        }
+    }
+    //endregion
+
+    /**
+     * <p>Resets the observable so that the subscription can be used again.</p>
+     */
+    private void resetObservable()
+    {
+        mRawSubject = PublishSubject.create();
+        mSubscriptionSubject = PublishSubject.create();
+        mImageSubject = PublishSubject.create();
+    }
+
+    /**
+     * <p>Ends the current observables and arms new ones, so that the subscription can be
+     * subscribed again.</p>
+     * @param throwable is the error to send, or null to complete the observables.
+     */
+    private void terminate(Throwable throwable)
+    {
+        PublishSubject<SubscriptionEvent<ItemUpdate>> rawSubject = mRawSubject;
+        PublishSubject<SubscriptionEvent<T>> subscriptionSubject = mSubscriptionSubject;
+        PublishSubject<ItemImage> imageSubject = mImageSubject;
+        resetObservable();
+        if (throwable == null)
+        {
+            rawSubject.onCompleted();
+            subscriptionSubject.onCompleted();
+            imageSubject.onCompleted();
+        }
+        else
+        {
+            rawSubject.onError(throwable);
+            subscriptionSubject.onError(throwable);
+            imageSubject.onError(throwable);
+        }
+        mItemRoutingTable.terminate(throwable);
+        if (mIncrementalDecoding != null)
+            mIncrementalDecoding.reset();
+        CommandTable commandTable = mCommandTable;
+        if (commandTable != null)
+            commandTable.terminate(throwable);
+        LastValueCache lastValueCache = mLastValueCache;
+        if (lastValueCache != null)
+        {
+            synchronized (lastValueCache)
+            {
+                lastValueCache.clear();
             }
+        }
+    }
 
-            @Override
-            public void onSubscriptionError(int i, String s) {
-                subscriber.onError(new LightStreamerSubscriptionError(SubscriptionError.fromLSCode(i), s));
+    /**
+     * <p>Replays the last value cache, if there is one, before an observable of decoded
+     * events.</p>
+     * @param liveObservable is the observable of the live events.
+     * @param itemPosition is the position of the item to replay, starting at 1, or 0 to replay
+     *                     every item.
+     * @return the observable.
+     */
+    private Observable<SubscriptionEvent<T>> withLastValues(Observable<SubscriptionEvent<T>> liveObservable,
+                                                            int itemPosition)
+    {
+        return Observable.defer(() -> {
+            LastValueCache lastValueCache = mLastValueCache;
+            return lastValueCache == null ? liveObservable :
+                    lastValueCache.replay(liveObservable, itemPosition, this::decode);
+        });
+    }
+
+    /**
+     * <p>Estimates the bytes an update took in the stream, since the unified client does not
+     * count them: the update message with the values that changed, which are the only ones the
+     * server sends.</p>
+     * @param itemUpdate is the update.
+     * @return the number of bytes.
+     */
+    private int estimateBytes(ItemUpdate itemUpdate)
+    {
+        int fieldCount = mImageFields.length;
+        int bytes = UPDATE_MESSAGE_BYTES + fieldCount;
+        for (int i = 1; i <= fieldCount; i++)
+        {
+            if (itemUpdate.isValueChanged(i))
+            {
+                String value = itemUpdate.getValue(i);
+                if (value != null)
+                    bytes += value.length();
             }
+        }
+        return bytes;
+    }
 
-            @Override
-            public void onUnsubscription() {
-                subscriber.onNext(new SubscriptionEvent<ItemUpdate>(false, null));
-                subscriber.onCompleted();
-                resetObservable();
+    /**
+     * <p>Publishes an update to the raw observable, the image observables, the command table, the
+     * subscription observable and the observable of its item.</p>
+     * @param itemUpdate is the update.
+     * @param itemImage is the image of the update, or null when it has not been created yet.
+     * @param receiveNanos is when the update was received, from {@link System#nanoTime()}.
+     */
+    private void publishUpdate(ItemUpdate itemUpdate, ItemImage itemImage, long receiveNanos)
+    {
+        boolean delivered = mRawSubject.hasObservers();
+        if (delivered)
+            mRawSubject.onNext(new SubscriptionEvent<>(SubscriptionEventType.UPDATE, true, itemUpdate,
+                    itemUpdate.getItemName(), itemUpdate.getItemPos(), itemUpdate.isSnapshot(), 0)
+                    .receivedAt(receiveNanos));
+        CommandTable commandTable = mCommandTable;
+        boolean imageObserved = mImageSubject.hasObservers();
+        delivered |= imageObserved;
+        if (imageObserved || commandTable != null)
+        {
+            if (itemImage == null)
+                itemImage = ItemImage.from(itemUpdate, mImageFields);
+            if (commandTable != null)
+                commandTable.apply(itemImage);
+            mImageSubject.onNext(itemImage);
+        }
+        int itemPosition = itemUpdate.getItemPos();
+        boolean itemObserved = mItemRoutingTable.hasObservers(itemPosition);
+        if (mSubscriptionSubject.hasObservers() || itemObserved)
+        {
+            AtomicReference<SubscriptionEvent<T>> eventPool = mEventPool;
+            long decodeStart = mMetricsRecorder.decodeStarted();
+            T decodedItem;
+            try {
+                decodedItem = decode(itemUpdate);
+            } catch (Throwable throwable) {
+                Exceptions.throwIfFatal(throwable);
+                PublishSubject<SubscriptionEvent<T>> failedSubject = mSubscriptionSubject;
+                mSubscriptionSubject = PublishSubject.create();
+                failedSubject.onError(throwable);
+                mItemRoutingTable.terminate(throwable);
+                return;
             }
-        }));
+            mMetricsRecorder.decodeEnded(decodeStart);
+            SubscriptionEvent<T> event = SubscriptionEvent.obtainUpdate(eventPool, decodedItem,
+                    itemUpdate.getItemName(), itemPosition, itemUpdate.isSnapshot(), receiveNanos);
+            mSubscriptionSubject.onNext(event);
+            if (itemObserved)
+                mItemRoutingTable.onNext(itemPosition, event);
+            event.release(eventPool);
+            delivered = true;
+        }
+        else if (mIncrementalDecoding != null)
+            mIncrementalDecoding.skip(itemPosition);
+        if (delivered)
+            mMetricsRecorder.updateDelivered();
+    }
 
+    /**
+     * <p>Sends a lifecycle event of an item to the raw observable, the subscription observable and
+     * the observable of the item.</p>
+     * @param eventType is the type of the event.
+     * @param itemName is the name of the item.
+     * @param itemPosition is the position of the item, starting at 1.
+     * @param lostUpdates is the number of lost updates.
+     */
+    private void sendItemEvent(SubscriptionEventType eventType, String itemName, int itemPosition, int lostUpdates)
+    {
+        mRawSubject.onNext(new SubscriptionEvent<>(eventType, true, null, itemName, itemPosition, false, lostUpdates));
+        SubscriptionEvent<T> event = new SubscriptionEvent<>(eventType, true, null, itemName, itemPosition, false,
+                lostUpdates);
+        mSubscriptionSubject.onNext(event);
+        mItemRoutingTable.onNext(itemPosition, event);
+    }
+
+    /**
+     * <p>Sends an event about a row of a two level subscription to the raw observable, the
+     * subscription observable and the observables of every item, since LightStreamer does not tell
+     * which item the row belongs to.</p>
+     * @param eventType is the type of the event.
+     * @param key is the key of the row.
+     * @param lostUpdates is the number of lost updates.
+     * @param error is the error of the second level subscription, if any.
+     */
+    private void sendKeyEvent(SubscriptionEventType eventType, String key, int lostUpdates,
+                              LightStreamerSubscriptionError error)
+    {
+        mRawSubject.onNext(new SubscriptionEvent<>(eventType, true, null, null, 0, key, false, lostUpdates, error));
+        SubscriptionEvent<T> event = new SubscriptionEvent<>(eventType, true, null, null, 0, key, false, lostUpdates,
+                error);
+        mSubscriptionSubject.onNext(event);
+        mItemRoutingTable.broadcast(event);
     }
 
     /**
@@ -202,13 +970,31 @@ public abstract class RxSubscription<T> {
      * <p>This class is a subscription event. The event will return if the object is
      * subscribed or not and an object of the given type. When that object is empty,
      * it means that the subscription has been subscribed or unsubscribed, depending on
-     * the value of the is subscribed value.</p>
+     * the value of the is subscribed value, or that it is a lifecycle event of an item
+     * (end of snapshot, clear snapshot or lost updates). {@link #getEventType()} tells them
+     * apart.</p>
+     * <p>Subscription and unsubscription events are shared constants. When event recycling is
+     * enabled, update events are reused: an update event is only valid while it is being
+     * delivered, so observers that keep it or hand it to another thread must {@link #copy()} it
+     * first.</p>
      * @param <T> is the type of the returned object.
      */
     public static class SubscriptionEvent<T>
     {
+        @SuppressWarnings("rawtypes")
+        private static final SubscriptionEvent SUBSCRIBED_EVENT = new SubscriptionEvent<>(true, null);
+        @SuppressWarnings("rawtypes")
+        private static final SubscriptionEvent UNSUBSCRIBED_EVENT = new SubscriptionEvent<>(false, null);
+        private SubscriptionEventType mEventType;
         private boolean mSubscribed;
         private T mUpdatedItem;
+        private String mItemName;
+        private int mItemPosition;
+        private boolean mSnapshot;
+        private int mLostUpdates;
+        private String mKey;
+        private LightStreamerSubscriptionError mError;
+        private long mReceiveNanos;
 
         /**
          * <p>Instantiates a new subscription event.</p>
@@ -216,8 +1002,150 @@ public abstract class RxSubscription<T> {
          * @param updatedItem is the item updated.
          */
         public SubscriptionEvent(boolean subscribed, T updatedItem) {
+            this(updatedItem != null ? SubscriptionEventType.UPDATE :
+                    subscribed ? SubscriptionEventType.SUBSCRIBED : SubscriptionEventType.UNSUBSCRIBED,
+                    subscribed, updatedItem, null, 0, false, 0);
+        }
+
+        /**
+         * <p>Instantiates a new subscription event.</p>
+         * @param eventType is the type of the event.
+         * @param subscribed true when subscribed.
+         * @param updatedItem is the item updated, if any.
+         * @param itemName is the name of the item the event is about, if any.
+         * @param itemPosition is the position of the item the event is about, starting at 1, or 0
+         *                     when the event is not about an item.
+         * @param snapshot true when the update belongs to the snapshot.
+         * @param lostUpdates is the number of lost updates.
+         */
+        public SubscriptionEvent(SubscriptionEventType eventType, boolean subscribed, T updatedItem,
+                                 String itemName, int itemPosition, boolean snapshot, int lostUpdates) {
+            this(eventType, subscribed, updatedItem, itemName, itemPosition, null, snapshot, lostUpdates, null);
+        }
+
+        /**
+         * <p>Instantiates a new subscription event about a row of a two level subscription.</p>
+         * @param eventType is the type of the event.
+         * @param subscribed true when subscribed.
+         * @param updatedItem is the item updated, if any.
+         * @param itemName is the name of the item the event is about, if any.
+         * @param itemPosition is the position of the item the event is about, starting at 1, or 0
+         *                     when it is not known.
+         * @param key is the key of the row the event is about, if any.
+         * @param snapshot true when the update belongs to the snapshot.
+         * @param lostUpdates is the number of lost updates.
+         * @param error is the error of the second level subscription of the row, if any.
+         */
+        public SubscriptionEvent(SubscriptionEventType eventType, boolean subscribed, T updatedItem,
+                                 String itemName, int itemPosition, String key, boolean snapshot,
+                                 int lostUpdates, LightStreamerSubscriptionError error) {
+            mEventType = eventType;
+            mKey = key;
+            mError = error;
             mSubscribed = subscribed;
             mUpdatedItem = updatedItem;
+            mItemName = itemName;
+            mItemPosition = itemPosition;
+            mSnapshot = snapshot;
+            mLostUpdates = lostUpdates;
+        }
+
+        /**
+         * <p>Returns the shared subscription event.</p>
+         * @param <T> is the type of the returned object.
+         * @return the event sent when the subscription becomes active.
+         */
+        @SuppressWarnings("unchecked")
+        public static <T> SubscriptionEvent<T> subscribed() {
+            return SUBSCRIBED_EVENT;
+        }
+
+        /**
+         * <p>Returns the shared unsubscription event.</p>
+         * @param <T> is the type of the returned object.
+         * @return the event sent when the subscription becomes inactive.
+         */
+        @SuppressWarnings("unchecked")
+        public static <T> SubscriptionEvent<T> unsubscribed() {
+            return UNSUBSCRIBED_EVENT;
+        }
+
+        /**
+         * <p>Returns an update event, reusing the pooled one when there is one.</p>
+         * @param pool is the pool of the subscription, or null when events are not recycled.
+         * @param updatedItem is the item updated.
+         * @param itemName is the name of the item.
+         * @param itemPosition is the position of the item, starting at 1.
+         * @param snapshot true when the update belongs to the snapshot.
+         * @param receiveNanos is when the update was received, from {@link System#nanoTime()}.
+         * @param <T> is the type of the returned object.
+         * @return the update event.
+         */
+        static <T> SubscriptionEvent<T> obtainUpdate(AtomicReference<SubscriptionEvent<T>> pool, T updatedItem,
+                                                     String itemName, int itemPosition, boolean snapshot,
+                                                     long receiveNanos) {
+            SubscriptionEvent<T> event = pool != null ? pool.getAndSet(null) : null;
+            if (event == null)
+                event = new SubscriptionEvent<>(SubscriptionEventType.UPDATE, true, updatedItem, itemName,
+                        itemPosition, snapshot, 0);
+            else
+            {
+                event.mUpdatedItem = updatedItem;
+                event.mItemName = itemName;
+                event.mItemPosition = itemPosition;
+                event.mSnapshot = snapshot;
+            }
+            event.mReceiveNanos = receiveNanos;
+            return event;
+        }
+
+        /**
+         * <p>Stamps the event with the time its update was received.</p>
+         * @param receiveNanos is when the update was received, from {@link System#nanoTime()}.
+         * @return this event.
+         */
+        SubscriptionEvent<T> receivedAt(long receiveNanos) {
+            mReceiveNanos = receiveNanos;
+            return this;
+        }
+
+        /**
+         * <p>Returns an update event to the pool once it has been delivered.</p>
+         * @param pool is the pool of the subscription, or null when events are not recycled.
+         */
+        void release(AtomicReference<SubscriptionEvent<T>> pool) {
+            if (pool == null)
+                return;
+            mUpdatedItem = null;
+            mItemName = null;
+            pool.set(this);
+        }
+
+        /**
+         * <p>Returns a copy of the event that can be kept after it has been delivered.</p>
+         * @return the copy.
+         */
+        public SubscriptionEvent<T> copy() {
+            return copy(mUpdatedItem);
+        }
+
+        /**
+         * <p>Returns a copy of the event with another item, such as a copy of the updated item when
+         * the subscription reuses it, that keeps the rest of the event.</p>
+         * @param updatedItem is the item of the copy.
+         * @return the copy.
+         */
+        public SubscriptionEvent<T> copy(T updatedItem) {
+            return new SubscriptionEvent<>(mEventType, mSubscribed, updatedItem, mItemName, mItemPosition, mKey,
+                    mSnapshot, mLostUpdates, mError).receivedAt(mReceiveNanos);
+        }
+
+        /**
+         * <p>Returns what the event is about.</p>
+         * @return the type of the event.
+         */
+        public SubscriptionEventType getEventType() {
+            return mEventType;
         }
 
         /**
@@ -231,10 +1159,73 @@ public abstract class RxSubscription<T> {
         /**
          * <p>Returns the last updated item.</p>
          * @return the last updated item or null to indicate that the subscription has become active
-         * or inactive.
+         * or inactive, or that the event is a lifecycle event.
          */
         public T getUpdatedItem() {
             return mUpdatedItem;
         }
+
+        /**
+         * <p>Returns the name of the item the event is about.</p>
+         * @return the name of the item, or null when the event is not about an item.
+         */
+        public String getItemName() {
+            return mItemName;
+        }
+
+        /**
+         * <p>Returns the position of the item the event is about.</p>
+         * @return the position of the item, starting at 1, or 0 when the event is not about an item.
+         */
+        public int getItemPosition() {
+            return mItemPosition;
+        }
+
+        /**
+         * <p>Returns whether the update belongs to the snapshot. Snapshot updates come before the
+         * {@link SubscriptionEventType#END_OF_SNAPSHOT} event of their item, so they can be applied
+         * in one go.</p>
+         * @return true when the update belongs to the snapshot.
+         */
+        public boolean isSnapshot() {
+            return mSnapshot;
+        }
+
+        /**
+         * <p>Returns when the listener of the subscription received the update, on the clock of
+         * {@link System#nanoTime()}, so that the time an observer gets it can be measured.</p>
+         * @return the time in nanoseconds, or 0 when the event is not an update from
+         * LightStreamer.
+         */
+        public long getReceiveNanos() {
+            return mReceiveNanos;
+        }
+
+        /**
+         * <p>Returns the number of updates lost by the server.</p>
+         * @return the number of lost updates for {@link SubscriptionEventType#LOST_UPDATES} events,
+         * 0 otherwise.
+         */
+        public int getLostUpdates() {
+            return mLostUpdates;
+        }
+
+        /**
+         * <p>Returns the key of the row the event is about, for the events of two level
+         * subscriptions.</p>
+         * @return the key of the row, or null when the event is not about a row.
+         */
+        public String getKey() {
+            return mKey;
+        }
+
+        /**
+         * <p>Returns the error of the second level subscription of a row.</p>
+         * @return the error for {@link SubscriptionEventType#SECOND_LEVEL_ERROR} events, null
+         * otherwise.
+         */
+        public LightStreamerSubscriptionError getError() {
+            return mError;
+        }
     }
 }
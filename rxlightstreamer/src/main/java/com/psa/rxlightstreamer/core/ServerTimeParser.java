@@ -0,0 +1,26 @@
+package com.psa.rxlightstreamer.core;
+
+/**
+ * <p>This interface parses the server timestamp field of an update, so that subscriptions can
+ * measure how long updates take to get from the server to the client.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ * @see RxSubscription#setServerTimeField(String, ServerTimeParser)
+ * @see TimeOfDayParser
+ */
+public interface ServerTimeParser {
+    /**
+     * <p>Parses timestamps sent as milliseconds since the epoch.</p>
+     */
+    ServerTimeParser EPOCH_MILLIS = (value, receiveMillis) -> Long.parseLong(value);
+
+    /**
+     * <p>Parses the value of the server timestamp field.</p>
+     * @param value is the value of the field.
+     * @param receiveMillis is when the update was received, in milliseconds since the epoch, for
+     *                      timestamps that leave out the date.
+     * @return the timestamp in milliseconds since the epoch, or a negative value when the value
+     * is not a timestamp. Runtime exceptions are taken the same way.
+     */
+    long parse(String value, long receiveMillis);
+}
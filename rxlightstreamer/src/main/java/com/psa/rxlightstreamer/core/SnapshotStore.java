@@ -0,0 +1,278 @@
+package com.psa.rxlightstreamer.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>This class keeps the last known value of every field of every item in a memory mapped file,
+ * so that the values survive the process and can be shown as soon as the application starts,
+ * before connecting to the server.</p>
+ * <p>Values are keyed by adapter, item and field. The file is an append only log of values that
+ * is written as updates arrive, only for the fields whose value changed. When the file is full the
+ * current values are compacted at its beginning, and the file grows when they still do not fit.
+ * The log is only read the first time a value is needed.</p>
+ * <p>Writes reach the file when the operating system flushes the mapped pages, even if the process
+ * dies; {@link #flush()} forces them to the storage device.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class SnapshotStore implements Closeable {
+    private static final int MAGIC = 0x52584C53;
+    private static final int HEADER_SIZE = 8;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char SEPARATOR = '\u0000';
+
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+    /**
+     * <p>Position where the next record is written.</p>
+     */
+    private int mEnd;
+    /**
+     * <p>Current values, keyed by adapter, item and field, or null until the log is read.</p>
+     */
+    private Map<String, String> mValues;
+
+    /**
+     * <p>Opens a store, creating the file when it does not exist. Files that were not written by a
+     * store are overwritten.</p>
+     * @param file is the file of the store.
+     * @throws IOException when the file cannot be opened or mapped.
+     */
+    public SnapshotStore(File file) throws IOException
+    {
+        mRandomAccessFile = new RandomAccessFile(file, "rw");
+        mChannel = mRandomAccessFile.getChannel();
+        long length = mRandomAccessFile.length();
+        map((int) Math.max(length, INITIAL_CAPACITY));
+        mEnd = length >= HEADER_SIZE && mBuffer.getInt(0) == MAGIC ? mBuffer.getInt(4) : HEADER_SIZE;
+        if (mEnd < HEADER_SIZE || mEnd > mBuffer.capacity())
+            mEnd = HEADER_SIZE;
+        mBuffer.putInt(0, MAGIC);
+        mBuffer.putInt(4, mEnd);
+    }
+
+    //region Reading
+    /**
+     * <p>Returns the last known value of a field.</p>
+     * @param adapter is the adapter of the item.
+     * @param itemName is the name of the item.
+     * @param fieldName is the name of the field.
+     * @return the value, or null when it is not known.
+     */
+    public synchronized String getValue(String adapter, String itemName, String fieldName)
+    {
+        return values().get(key(adapter, itemName, fieldName));
+    }
+
+    /**
+     * <p>Returns the last known image of an item. Every field of the image is marked as changed and
+     * the image belongs to the snapshot.</p>
+     * @param adapter is the adapter of the item.
+     * @param itemName is the name of the item.
+     * @param itemPosition is the position of the item in its subscription, starting at 1.
+     * @param fields is the fields of the subscription.
+     * @return the image, or null when no field of the item is known.
+     */
+    public synchronized ItemImage getImage(String adapter, String itemName, int itemPosition, String[] fields)
+    {
+        Map<String, String> values = values();
+        String[] imageValues = new String[fields.length];
+        boolean[] changedFields = new boolean[fields.length];
+        boolean known = false;
+        for (int i = 0; i < fields.length; i++)
+        {
+            String key = key(adapter, itemName, fields[i]);
+            imageValues[i] = values.get(key);
+            changedFields[i] = true;
+            known |= values.containsKey(key);
+        }
+        return known ? new ItemImage(itemName, itemPosition, fields, imageValues, changedFields, true) : null;
+    }
+    //endregion
+
+    //region Writing
+    /**
+     * <p>Writes the values of an image that differ from the known ones.</p>
+     * @param adapter is the adapter of the item.
+     * @param itemImage is the image.
+     * @throws IllegalStateException when the file cannot be written.
+     */
+    public synchronized void put(String adapter, ItemImage itemImage)
+    {
+        Map<String, String> values = values();
+        for (int i = 1; i <= itemImage.getFieldCount(); i++)
+        {
+            String key = key(adapter, itemImage.getItemName(), itemImage.getFieldName(i));
+            String value = itemImage.getValue(i);
+            String knownValue = values.get(key);
+            if (value == null ? knownValue != null || !values.containsKey(key) : !value.equals(knownValue))
+            {
+                values.put(key, value);
+                append(key, value);
+            }
+        }
+    }
+
+    /**
+     * <p>Forces the written values to the storage device.</p>
+     */
+    public synchronized void flush()
+    {
+        mBuffer.force();
+    }
+
+    /**
+     * <p>Flushes and closes the store.</p>
+     * @throws IOException when the file cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        mBuffer.force();
+        mChannel.close();
+        mRandomAccessFile.close();
+    }
+    //endregion
+
+    //region Private methods
+    /**
+     * <p>Returns the current values, reading the log the first time.</p>
+     * @return the values.
+     */
+    private Map<String, String> values()
+    {
+        if (mValues != null)
+            return mValues;
+        mValues = new HashMap<>();
+        int position = HEADER_SIZE;
+        while (position + 4 <= mEnd)
+        {
+            int length = mBuffer.getInt(position);
+            if (length < 8 || position + 4 + length > mEnd)
+                break;
+            int keyLength = mBuffer.getInt(position + 4);
+            if (keyLength < 0 || 8 + keyLength > length)
+                break;
+            mValues.put(readString(position + 4), readString(position + 8 + keyLength));
+            position += 4 + length;
+        }
+        if (position != mEnd)
+        {
+            mEnd = position;
+            mBuffer.putInt(4, mEnd);
+        }
+        return mValues;
+    }
+
+    /**
+     * <p>Appends a value to the log, compacting or growing the file when it is full.</p>
+     * @param key is the key of the value.
+     * @param value is the value, or null.
+     */
+    private void append(String key, String value)
+    {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        byte[] valueBytes = value != null ? value.getBytes(UTF_8) : null;
+        int length = 8 + keyBytes.length + (valueBytes != null ? valueBytes.length : 0);
+        if (mEnd + 4 + length > mBuffer.capacity())
+            compact(4 + length);
+        writeRecord(keyBytes, valueBytes, length);
+    }
+
+    /**
+     * <p>Writes a record at the end of the log and moves the end after it.</p>
+     * @param keyBytes is the encoded key.
+     * @param valueBytes is the encoded value, or null.
+     * @param length is the length of the record without its length prefix.
+     */
+    private void writeRecord(byte[] keyBytes, byte[] valueBytes, int length)
+    {
+        mBuffer.position(mEnd);
+        mBuffer.putInt(length);
+        mBuffer.putInt(keyBytes.length);
+        mBuffer.put(keyBytes);
+        mBuffer.putInt(valueBytes != null ? valueBytes.length : -1);
+        if (valueBytes != null)
+            mBuffer.put(valueBytes);
+        mEnd += 4 + length;
+        mBuffer.putInt(4, mEnd);
+    }
+
+    /**
+     * <p>Rewrites the current values at the beginning of the log, growing the file when they do not
+     * leave room for a new record.</p>
+     * @param required is the room needed by the new record.
+     */
+    private void compact(int required)
+    {
+        int size = HEADER_SIZE;
+        for (Map.Entry<String, String> entry : mValues.entrySet())
+            size += 12 + entry.getKey().length() * 3 + (entry.getValue() != null ? entry.getValue().length() * 3 : 0);
+        int capacity = mBuffer.capacity();
+        while (size + required > capacity / 2 && capacity < Integer.MAX_VALUE / 2)
+            capacity *= 2;
+        try {
+            if (capacity != mBuffer.capacity())
+                map(capacity);
+        } catch (IOException ex) {
+            throw new IllegalStateException("The snapshot store cannot grow", ex);
+        }
+        mEnd = HEADER_SIZE;
+        mBuffer.putInt(4, mEnd);
+        for (Map.Entry<String, String> entry : mValues.entrySet())
+        {
+            byte[] keyBytes = entry.getKey().getBytes(UTF_8);
+            byte[] valueBytes = entry.getValue() != null ? entry.getValue().getBytes(UTF_8) : null;
+            writeRecord(keyBytes, valueBytes, 8 + keyBytes.length + (valueBytes != null ? valueBytes.length : 0));
+        }
+    }
+
+    /**
+     * <p>Maps the file with the given size.</p>
+     * @param capacity is the size.
+     * @throws IOException when the file cannot be mapped.
+     */
+    private void map(int capacity) throws IOException
+    {
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * <p>Reads a string written with its length first.</p>
+     * @param position is the position of the length.
+     * @return the string, or null.
+     */
+    private String readString(int position)
+    {
+        int length = mBuffer.getInt(position);
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = mBuffer.get(position + 4 + i);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * <p>Returns the key of a value.</p>
+     * @param adapter is the adapter.
+     * @param itemName is the item.
+     * @param fieldName is the field.
+     * @return the key.
+     */
+    private static String key(String adapter, String itemName, String fieldName)
+    {
+        return adapter + SEPARATOR + itemName + SEPARATOR + fieldName;
+    }
+    //endregion
+}
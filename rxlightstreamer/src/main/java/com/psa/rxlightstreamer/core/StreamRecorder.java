@@ -0,0 +1,469 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.client.ItemUpdate;
+import com.lightstreamer.client.Subscription;
+import com.lightstreamer.client.SubscriptionListener;
+import com.lightstreamer.ls_client.HandyTableListener;
+import com.lightstreamer.ls_client.UpdateInfo;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * <p>This class records everything LightStreamer sends to a subscription in a compact binary log,
+ * so that it can be fed back to a subscription later by a {@link StreamReplayer} without a
+ * server.</p>
+ * <p>The log starts with the items and the fields of the subscription, followed by one record per
+ * event of the listener: updates, ends and clears of snapshots, lost updates, subscriptions,
+ * unsubscriptions and errors. Every record keeps the nanoseconds elapsed since the previous one
+ * when the event was received. Updates only keep the fields whose value differs from the previous
+ * update of the same item, and numbers are written with a variable length.</p>
+ * <p>Events are recorded before they reach the subscription. If the log cannot be written the
+ * recording stops and the error is thrown by {@link #close()}.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class StreamRecorder implements Closeable {
+    //region Format
+    static final int MAGIC = 0x52584C52;
+    static final int VERSION = 1;
+    static final int UPDATE = 0;
+    static final int END_OF_SNAPSHOT = 1;
+    static final int CLEAR_SNAPSHOT = 2;
+    static final int LOST_UPDATES = 3;
+    static final int SUBSCRIBED = 4;
+    static final int UNSUBSCRIBED = 5;
+    static final int SUBSCRIPTION_ERROR = 6;
+    static final int SECOND_LEVEL_LOST_UPDATES = 7;
+    static final int SECOND_LEVEL_ERROR = 8;
+    static final int ITEM_UNSUBSCRIBED = 9;
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    //endregion
+
+    private OutputStream mOutputStream;
+    private String[][] mValues;
+    private int mFieldCount;
+    private long mLastTime;
+    private int mRecords;
+    private IOException mError;
+    private boolean mStarted, mClosed;
+
+    /**
+     * <p>Instantiates a recorder.</p>
+     * @param outputStream is the stream where the log is written. It is closed with the recorder.
+     */
+    public StreamRecorder(OutputStream outputStream)
+    {
+        mOutputStream = new BufferedOutputStream(outputStream);
+    }
+
+    //region Recording
+    /**
+     * <p>Starts recording the events of a subscription. A recorder records a single subscription.</p>
+     * @param subscription is the subscription.
+     * @throws IllegalStateException when the recorder already records a subscription.
+     */
+    public void record(RxSubscription<?> subscription)
+    {
+        String[] fields = subscription.getFields();
+        String[] secondLevelFields = subscription.getSecondLevelFields();
+        if (secondLevelFields != null)
+        {
+            String[] imageFields = new String[fields.length + secondLevelFields.length];
+            System.arraycopy(fields, 0, imageFields, 0, fields.length);
+            System.arraycopy(secondLevelFields, 0, imageFields, fields.length, secondLevelFields.length);
+            fields = imageFields;
+        }
+        start(subscription.getItems(), fields);
+        subscription.setStreamRecorder(this);
+    }
+
+    /**
+     * <p>Starts recording the events of a subscription. It must be called before the subscription
+     * is subscribed. A recorder records a single subscription.</p>
+     * @param subscription is the subscription.
+     * @throws IllegalStateException when the recorder already records a subscription or the
+     * subscription was already subscribed.
+     */
+    public void record(RxNonUnifiedSubscription<?> subscription)
+    {
+        subscription.checkNotSubscribed();
+        start(subscription.getItems(), subscription.getFields());
+        subscription.setStreamRecorder(this);
+    }
+
+    /**
+     * <p>Returns the number of recorded events.</p>
+     * @return the number of events.
+     */
+    public synchronized int getRecords()
+    {
+        return mRecords;
+    }
+
+    /**
+     * <p>Stops recording and closes the log.</p>
+     * @throws IOException when the log could not be written.
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (mClosed)
+            return;
+        mClosed = true;
+        try {
+            mOutputStream.close();
+        } catch (IOException ex) {
+            if (mError == null)
+                mError = ex;
+        }
+        if (mError != null)
+            throw mError;
+    }
+    //endregion
+
+    //region Package methods
+    /**
+     * <p>Returns a listener that records the events before passing them to the listener of a
+     * subscription.</p>
+     * @param listener is the listener of the subscription.
+     * @return the recording listener.
+     */
+    SubscriptionListener wrap(final SubscriptionListener listener)
+    {
+        return new SubscriptionListener() {
+            @Override
+            public void onClearSnapshot(String s, int i) {
+                itemEvent(CLEAR_SNAPSHOT, i, -1);
+                listener.onClearSnapshot(s, i);
+            }
+
+            @Override
+            public void onCommandSecondLevelItemLostUpdates(int i, String s) {
+                secondLevelEvent(SECOND_LEVEL_LOST_UPDATES, i, null, s);
+                listener.onCommandSecondLevelItemLostUpdates(i, s);
+            }
+
+            @Override
+            public void onCommandSecondLevelSubscriptionError(int i, String s, String s1) {
+                secondLevelEvent(SECOND_LEVEL_ERROR, i, s, s1);
+                listener.onCommandSecondLevelSubscriptionError(i, s, s1);
+            }
+
+            @Override
+            public void onEndOfSnapshot(String s, int i) {
+                itemEvent(END_OF_SNAPSHOT, i, -1);
+                listener.onEndOfSnapshot(s, i);
+            }
+
+            @Override
+            public void onItemLostUpdates(String s, int i, int i1) {
+                itemEvent(LOST_UPDATES, i, i1);
+                listener.onItemLostUpdates(s, i, i1);
+            }
+
+            @Override
+            public void onItemUpdate(ItemUpdate itemUpdate) {
+                update(itemUpdate);
+                listener.onItemUpdate(itemUpdate);
+            }
+
+            @Override
+            public void onListenEnd(Subscription subscription) {
+                listener.onListenEnd(subscription);
+            }
+
+            @Override
+            public void onListenStart(Subscription subscription) {
+                listener.onListenStart(subscription);
+            }
+
+            @Override
+            public void onSubscription() {
+                itemEvent(SUBSCRIBED, 0, -1);
+                listener.onSubscription();
+            }
+
+            @Override
+            public void onSubscriptionError(int i, String s) {
+                secondLevelEvent(SUBSCRIPTION_ERROR, i, s, null);
+                listener.onSubscriptionError(i, s);
+            }
+
+            @Override
+            public void onUnsubscription() {
+                itemEvent(UNSUBSCRIBED, 0, -1);
+                listener.onUnsubscription();
+            }
+        };
+    }
+
+    /**
+     * <p>Returns a listener that records the events before passing them to the listener of a
+     * subscription.</p>
+     * @param listener is the listener of the subscription.
+     * @return the recording listener.
+     */
+    HandyTableListener wrap(final HandyTableListener listener)
+    {
+        return new HandyTableListener() {
+            @Override
+            public void onUpdate(int i, String s, UpdateInfo updateInfo) {
+                update(updateInfo);
+                listener.onUpdate(i, s, updateInfo);
+            }
+
+            @Override
+            public void onSnapshotEnd(int i, String s) {
+                itemEvent(END_OF_SNAPSHOT, i, -1);
+                listener.onSnapshotEnd(i, s);
+            }
+
+            @Override
+            public void onRawUpdatesLost(int i, String s, int i1) {
+                itemEvent(LOST_UPDATES, i, i1);
+                listener.onRawUpdatesLost(i, s, i1);
+            }
+
+            @Override
+            public void onUnsubscr(int i, String s) {
+                itemEvent(ITEM_UNSUBSCRIBED, i, -1);
+                listener.onUnsubscr(i, s);
+            }
+
+            @Override
+            public void onUnsubscrAll() {
+                itemEvent(UNSUBSCRIBED, 0, -1);
+                listener.onUnsubscrAll();
+            }
+        };
+    }
+    //endregion
+
+    //region Private methods
+    /**
+     * <p>Writes the header of the log.</p>
+     * @param items is the items of the subscription.
+     * @param fields is the fields of the updates.
+     */
+    private synchronized void start(String[] items, String[] fields)
+    {
+        if (mStarted)
+            throw new IllegalStateException("The recorder already records a subscription");
+        mStarted = true;
+        mFieldCount = fields.length;
+        mValues = new String[items.length][];
+        for (int i = 0; i < items.length; i++)
+            mValues[i] = new String[fields.length];
+        mLastTime = System.nanoTime();
+        try {
+            writeInt(MAGIC);
+            mOutputStream.write(VERSION);
+            writeNumber(items.length);
+            for (String item : items)
+                writeString(item);
+            writeNumber(fields.length);
+            for (String field : fields)
+                writeString(field);
+        } catch (IOException ex) {
+            mError = ex;
+        }
+    }
+
+    /**
+     * <p>Records an update of the unified API.</p>
+     * @param itemUpdate is the update.
+     */
+    private synchronized void update(ItemUpdate itemUpdate)
+    {
+        long time = System.nanoTime();
+        if (!isRecording())
+            return;
+        int fieldCount = mFieldCount;
+        String[] values = new String[fieldCount];
+        boolean[] changedFields = new boolean[fieldCount];
+        for (int i = 0; i < fieldCount; i++)
+        {
+            values[i] = itemUpdate.getValue(i + 1);
+            changedFields[i] = itemUpdate.isValueChanged(i + 1);
+        }
+        writeUpdate(time, itemUpdate.getItemPos(), itemUpdate.isSnapshot(), values, changedFields);
+    }
+
+    /**
+     * <p>Records an update of the non unified API.</p>
+     * @param updateInfo is the update.
+     */
+    private synchronized void update(UpdateInfo updateInfo)
+    {
+        long time = System.nanoTime();
+        if (!isRecording())
+            return;
+        int fieldCount = mFieldCount;
+        String[] values = new String[fieldCount];
+        boolean[] changedFields = new boolean[fieldCount];
+        for (int i = 0; i < fieldCount; i++)
+        {
+            values[i] = updateInfo.getNewValue(i + 1);
+            changedFields[i] = updateInfo.isValueChanged(i + 1);
+        }
+        writeUpdate(time, updateInfo.getItemPos(), updateInfo.isSnapshot(), values, changedFields);
+    }
+
+    /**
+     * <p>Records an event of an item or of the whole subscription.</p>
+     * @param type is the type of the record.
+     * @param itemPosition is the position of the item, or 0 for the whole subscription.
+     * @param lostUpdates is the number of lost updates, or -1 when the event has none.
+     */
+    private synchronized void itemEvent(int type, int itemPosition, int lostUpdates)
+    {
+        long time = System.nanoTime();
+        if (!isRecording())
+            return;
+        try {
+            writeHeader(type, time);
+            if (itemPosition > 0)
+                writeNumber(itemPosition);
+            if (lostUpdates >= 0)
+                writeNumber(lostUpdates);
+        } catch (IOException ex) {
+            mError = ex;
+        }
+    }
+
+    /**
+     * <p>Records an error or the lost updates of a second level item.</p>
+     * @param type is the type of the record.
+     * @param number is the error code or the number of lost updates.
+     * @param message is the message of the error, or null.
+     * @param key is the key of the second level item, or null for errors of the subscription.
+     */
+    private synchronized void secondLevelEvent(int type, int number, String message, String key)
+    {
+        long time = System.nanoTime();
+        if (!isRecording())
+            return;
+        try {
+            writeHeader(type, time);
+            writeNumber(number);
+            if (type != SECOND_LEVEL_LOST_UPDATES)
+                writeString(message);
+            if (type != SUBSCRIPTION_ERROR)
+                writeString(key);
+        } catch (IOException ex) {
+            mError = ex;
+        }
+    }
+
+    /**
+     * <p>Writes an update, keeping the values that differ from the previous update of the
+     * item.</p>
+     * @param time is the time the update was received.
+     * @param itemPosition is the position of the item, starting at 1.
+     * @param snapshot true when the update belongs to the snapshot.
+     * @param values is the values of the update.
+     * @param changedFields is the fields that LightStreamer flagged as changed.
+     */
+    private void writeUpdate(long time, int itemPosition, boolean snapshot, String[] values, boolean[] changedFields)
+    {
+        String[] lastValues = mValues[itemPosition - 1];
+        byte[] bitmaps = new byte[(values.length + 7) / 8 * 2];
+        int half = bitmaps.length / 2;
+        for (int i = 0; i < values.length; i++)
+        {
+            if (changedFields[i])
+                bitmaps[i / 8] |= 1 << (i % 8);
+            if (values[i] == null ? lastValues[i] != null : !values[i].equals(lastValues[i]))
+                bitmaps[half + i / 8] |= 1 << (i % 8);
+        }
+        try {
+            writeHeader(UPDATE, time);
+            writeNumber(itemPosition);
+            mOutputStream.write(snapshot ? 1 : 0);
+            mOutputStream.write(bitmaps);
+            for (int i = 0; i < values.length; i++)
+            {
+                if ((bitmaps[half + i / 8] & 1 << (i % 8)) != 0)
+                {
+                    writeString(values[i]);
+                    lastValues[i] = values[i];
+                }
+            }
+        } catch (IOException ex) {
+            mError = ex;
+        }
+    }
+
+    /**
+     * <p>Tells whether events must be recorded.</p>
+     * @return true while the recorder is open and the log can be written.
+     */
+    private boolean isRecording()
+    {
+        return mStarted && !mClosed && mError == null;
+    }
+
+    /**
+     * <p>Writes the type of a record and the nanoseconds elapsed since the previous one.</p>
+     * @param type is the type.
+     * @param time is the time of the event.
+     * @throws IOException when the log cannot be written.
+     */
+    private void writeHeader(int type, long time) throws IOException
+    {
+        mOutputStream.write(type);
+        writeNumber(Math.max(0, time - mLastTime));
+        mLastTime = time;
+        mRecords++;
+    }
+
+    /**
+     * <p>Writes a non negative number using seven bits per byte.</p>
+     * @param number is the number.
+     * @throws IOException when the log cannot be written.
+     */
+    private void writeNumber(long number) throws IOException
+    {
+        while ((number & ~0x7FL) != 0)
+        {
+            mOutputStream.write((int) (number & 0x7F) | 0x80);
+            number >>>= 7;
+        }
+        mOutputStream.write((int) number);
+    }
+
+    /**
+     * <p>Writes a string with its length first, where 0 stands for null.</p>
+     * @param string is the string, or null.
+     * @throws IOException when the log cannot be written.
+     */
+    private void writeString(String string) throws IOException
+    {
+        if (string == null)
+        {
+            writeNumber(0);
+            return;
+        }
+        byte[] bytes = string.getBytes(UTF_8);
+        writeNumber(bytes.length + 1L);
+        mOutputStream.write(bytes);
+    }
+
+    /**
+     * <p>Writes an int in big endian order.</p>
+     * @param number is the int.
+     * @throws IOException when the log cannot be written.
+     */
+    private void writeInt(int number) throws IOException
+    {
+        mOutputStream.write(number >>> 24);
+        mOutputStream.write(number >>> 16);
+        mOutputStream.write(number >>> 8);
+        mOutputStream.write(number);
+    }
+    //endregion
+}
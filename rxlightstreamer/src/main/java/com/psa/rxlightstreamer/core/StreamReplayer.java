@@ -0,0 +1,344 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.client.SubscriptionListener;
+import com.lightstreamer.ls_client.HandyTableListener;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>This class feeds a log written by a {@link StreamRecorder} to a subscription through the
+ * same listener LightStreamer calls, so that recorded streams can be used for load tests,
+ * benchmarks and regression tests without a server.</p>
+ * <p>Events are replayed in the calling thread, keeping the recorded time between them divided by
+ * a speed factor, or as fast as possible. Events that the listener of the other API does not have
+ * are skipped. A replayer reads its log once.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class StreamReplayer implements Closeable {
+    /**
+     * <p>Speed that replays the events without waiting between them.</p>
+     */
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    private DataInputStream mInputStream;
+    private String[] mItems, mFields;
+    private Map<String, Integer> mFieldPositions;
+    private boolean mReplayed;
+
+    /**
+     * <p>Opens a log.</p>
+     * @param inputStream is the stream of the log. It is closed with the replayer.
+     * @throws IOException when the stream cannot be read or it is not a log.
+     */
+    public StreamReplayer(InputStream inputStream) throws IOException
+    {
+        mInputStream = new DataInputStream(new BufferedInputStream(inputStream));
+        if (mInputStream.readInt() != StreamRecorder.MAGIC)
+            throw new IOException("The stream is not a recorded log");
+        int version = mInputStream.readUnsignedByte();
+        if (version != StreamRecorder.VERSION)
+            throw new IOException("Unsupported log version " + version);
+        mItems = new String[(int) readNumber()];
+        for (int i = 0; i < mItems.length; i++)
+            mItems[i] = readString();
+        mFields = new String[(int) readNumber()];
+        mFieldPositions = new HashMap<>();
+        for (int i = 0; i < mFields.length; i++)
+        {
+            mFields[i] = readString();
+            mFieldPositions.put(mFields[i], i + 1);
+        }
+    }
+
+    //region Getters
+    /**
+     * <p>Returns the items of the recorded subscription.</p>
+     * @return the items.
+     */
+    public String[] getItems()
+    {
+        return mItems;
+    }
+
+    /**
+     * <p>Returns the fields of the recorded updates.</p>
+     * @return the fields.
+     */
+    public String[] getFields()
+    {
+        return mFields;
+    }
+    //endregion
+
+    //region Replaying
+    /**
+     * <p>Replays the log to a subscription.</p>
+     * @param subscription is the subscription.
+     * @param speed is the speed factor: 1 keeps the recorded times, 2 halves them, and
+     *              {@link #AS_FAST_AS_POSSIBLE} does not wait.
+     * @return the number of replayed events.
+     * @throws IOException when the log cannot be read or the thread is interrupted.
+     * @throws IllegalArgumentException when the speed is not positive.
+     * @throws IllegalStateException when the log was already replayed.
+     */
+    public int replay(RxSubscription<?> subscription, double speed) throws IOException
+    {
+        return replay(subscription.getSubscriptionListener(), speed);
+    }
+
+    /**
+     * <p>Replays the log to a subscription.</p>
+     * @param subscription is the subscription.
+     * @param speed is the speed factor: 1 keeps the recorded times, 2 halves them, and
+     *              {@link #AS_FAST_AS_POSSIBLE} does not wait.
+     * @return the number of replayed events.
+     * @throws IOException when the log cannot be read or the thread is interrupted.
+     * @throws IllegalArgumentException when the speed is not positive.
+     * @throws IllegalStateException when the log was already replayed.
+     */
+    public int replay(RxNonUnifiedSubscription<?> subscription, double speed) throws IOException
+    {
+        return replay(subscription.getHandyTableListener(), speed);
+    }
+
+    /**
+     * <p>Replays the log to a listener of the unified API.</p>
+     * @param listener is the listener.
+     * @param speed is the speed factor.
+     * @return the number of replayed events.
+     * @throws IOException when the log cannot be read or the thread is interrupted.
+     * @throws IllegalArgumentException when the speed is not positive.
+     * @throws IllegalStateException when the log was already replayed.
+     */
+    public int replay(SubscriptionListener listener, double speed) throws IOException
+    {
+        return replay(listener, null, speed);
+    }
+
+    /**
+     * <p>Replays the log to a listener of the non unified API.</p>
+     * @param listener is the listener.
+     * @param speed is the speed factor.
+     * @return the number of replayed events.
+     * @throws IOException when the log cannot be read or the thread is interrupted.
+     * @throws IllegalArgumentException when the speed is not positive.
+     * @throws IllegalStateException when the log was already replayed.
+     */
+    public int replay(HandyTableListener listener, double speed) throws IOException
+    {
+        return replay(null, listener, speed);
+    }
+
+    /**
+     * <p>Closes the log.</p>
+     * @throws IOException when the log cannot be closed.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        mInputStream.close();
+    }
+    //endregion
+
+    //region Private methods
+    /**
+     * <p>Reads the records and passes them to the listener, waiting for their time.</p>
+     * @param listener is the listener of the unified API, or null.
+     * @param tableListener is the listener of the non unified API, or null.
+     * @param speed is the speed factor.
+     * @return the number of replayed events.
+     * @throws IOException when the log cannot be read or the thread is interrupted.
+     */
+    private synchronized int replay(SubscriptionListener listener, HandyTableListener tableListener, double speed)
+            throws IOException
+    {
+        if (!(speed > 0))
+            throw new IllegalArgumentException("The speed must be positive");
+        if (mReplayed)
+            throw new IllegalStateException("The log was already replayed");
+        mReplayed = true;
+        String[][] values = new String[mItems.length][];
+        for (int i = 0; i < values.length; i++)
+            values[i] = new String[mFields.length];
+        int bitmapLength = (mFields.length + 7) / 8;
+        byte[] bitmaps = new byte[bitmapLength * 2];
+        long start = System.nanoTime();
+        long elapsed = 0;
+        int events = 0;
+        int type;
+        while ((type = mInputStream.read()) != -1)
+        {
+            try {
+                elapsed += readNumber();
+                if (speed != AS_FAST_AS_POSSIBLE)
+                    waitUntil(start + (long) (elapsed / speed));
+                switch (type)
+                {
+                    case StreamRecorder.UPDATE:
+                    {
+                        int itemPosition = (int) readNumber();
+                        boolean snapshot = mInputStream.readUnsignedByte() != 0;
+                        mInputStream.readFully(bitmaps);
+                        String[] oldValues = values[itemPosition - 1];
+                        String[] newValues = Arrays.copyOf(oldValues, oldValues.length);
+                        boolean[] changedFields = new boolean[mFields.length];
+                        for (int i = 0; i < mFields.length; i++)
+                        {
+                            changedFields[i] = (bitmaps[i / 8] & 1 << (i % 8)) != 0;
+                            if ((bitmaps[bitmapLength + i / 8] & 1 << (i % 8)) != 0)
+                                newValues[i] = readString();
+                        }
+                        values[itemPosition - 1] = newValues;
+                        RecordedUpdate update = new RecordedUpdate(mItems[itemPosition - 1], itemPosition,
+                                snapshot, mFields, mFieldPositions, newValues, oldValues, changedFields);
+                        if (listener != null)
+                            listener.onItemUpdate(update);
+                        else
+                            tableListener.onUpdate(itemPosition, mItems[itemPosition - 1], update);
+                        break;
+                    }
+                    case StreamRecorder.END_OF_SNAPSHOT:
+                    {
+                        int itemPosition = (int) readNumber();
+                        if (listener != null)
+                            listener.onEndOfSnapshot(mItems[itemPosition - 1], itemPosition);
+                        else
+                            tableListener.onSnapshotEnd(itemPosition, mItems[itemPosition - 1]);
+                        break;
+                    }
+                    case StreamRecorder.CLEAR_SNAPSHOT:
+                    {
+                        int itemPosition = (int) readNumber();
+                        if (listener != null)
+                            listener.onClearSnapshot(mItems[itemPosition - 1], itemPosition);
+                        break;
+                    }
+                    case StreamRecorder.LOST_UPDATES:
+                    {
+                        int itemPosition = (int) readNumber();
+                        int lostUpdates = (int) readNumber();
+                        if (listener != null)
+                            listener.onItemLostUpdates(mItems[itemPosition - 1], itemPosition, lostUpdates);
+                        else
+                            tableListener.onRawUpdatesLost(itemPosition, mItems[itemPosition - 1], lostUpdates);
+                        break;
+                    }
+                    case StreamRecorder.SUBSCRIBED:
+                        if (listener != null)
+                            listener.onSubscription();
+                        break;
+                    case StreamRecorder.UNSUBSCRIBED:
+                        if (listener != null)
+                            listener.onUnsubscription();
+                        else
+                            tableListener.onUnsubscrAll();
+                        break;
+                    case StreamRecorder.SUBSCRIPTION_ERROR:
+                    {
+                        int code = (int) readNumber();
+                        String message = readString();
+                        if (listener != null)
+                            listener.onSubscriptionError(code, message);
+                        break;
+                    }
+                    case StreamRecorder.SECOND_LEVEL_LOST_UPDATES:
+                    {
+                        int lostUpdates = (int) readNumber();
+                        String key = readString();
+                        if (listener != null)
+                            listener.onCommandSecondLevelItemLostUpdates(lostUpdates, key);
+                        break;
+                    }
+                    case StreamRecorder.SECOND_LEVEL_ERROR:
+                    {
+                        int code = (int) readNumber();
+                        String message = readString();
+                        String key = readString();
+                        if (listener != null)
+                            listener.onCommandSecondLevelSubscriptionError(code, message, key);
+                        break;
+                    }
+                    case StreamRecorder.ITEM_UNSUBSCRIBED:
+                    {
+                        int itemPosition = (int) readNumber();
+                        if (tableListener != null)
+                            tableListener.onUnsubscr(itemPosition, mItems[itemPosition - 1]);
+                        break;
+                    }
+                    default:
+                        throw new IOException("Unknown record type " + type);
+                }
+            } catch (EOFException ex) {
+                // The last record was cut short, as when the recording process dies.
+                break;
+            }
+            events++;
+        }
+        return events;
+    }
+
+    /**
+     * <p>Waits until the given time.</p>
+     * @param time is the time, as given by {@link System#nanoTime()}.
+     * @throws InterruptedIOException when the thread is interrupted.
+     */
+    private static void waitUntil(long time) throws InterruptedIOException
+    {
+        long remaining;
+        while ((remaining = time - System.nanoTime()) > 0)
+        {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted())
+                throw new InterruptedIOException("Interrupted while replaying");
+        }
+    }
+
+    /**
+     * <p>Reads a number written with seven bits per byte.</p>
+     * @return the number.
+     * @throws IOException when the log cannot be read.
+     */
+    private long readNumber() throws IOException
+    {
+        long number = 0;
+        int shift = 0;
+        int value;
+        do
+        {
+            if (shift > 63)
+                throw new IOException("Malformed number");
+            value = mInputStream.readUnsignedByte();
+            number |= (long) (value & 0x7F) << shift;
+            shift += 7;
+        }
+        while ((value & 0x80) != 0);
+        return number;
+    }
+
+    /**
+     * <p>Reads a string written with its length first, where 0 stands for null.</p>
+     * @return the string, or null.
+     * @throws IOException when the log cannot be read.
+     */
+    private String readString() throws IOException
+    {
+        long length = readNumber();
+        if (length == 0)
+            return null;
+        byte[] bytes = new byte[(int) (length - 1)];
+        mInputStream.readFully(bytes);
+        return new String(bytes, StreamRecorder.UTF_8);
+    }
+    //endregion
+}
@@ -0,0 +1,64 @@
+package com.psa.rxlightstreamer.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>This class is a counter that threads can add to without contending with each other. Every
+ * thread adds to one of several cells, picked by its identifier, and the cells are a cache line
+ * apart so that threads on different cells do not share one. The value of the counter is the sum
+ * of the cells.</p>
+ * <p>Adding is a single atomic add with no allocation. It plays the part of
+ * {@code java.util.concurrent.atomic.LongAdder}, which is not available in every Android
+ * version the library supports.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+class StripedCounter {
+    private static final int STRIPES = 8;
+    /**
+     * <p>Number of longs between two cells, so that every cell has its own cache line.</p>
+     */
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray mCells = new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * <p>Adds to the counter.</p>
+     * @param value is the value to add, which can be negative.
+     */
+    void add(long value)
+    {
+        mCells.getAndAdd(cell(), value);
+    }
+
+    /**
+     * <p>Adds one to the counter.</p>
+     */
+    void increment()
+    {
+        add(1);
+    }
+
+    /**
+     * <p>Returns the value of the counter. It is exact when nobody is adding to it; otherwise it
+     * may miss the additions made while it is read.</p>
+     * @return the sum of the cells.
+     */
+    long sum()
+    {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++)
+            sum += mCells.get(i * PADDING);
+        return sum;
+    }
+
+    /**
+     * <p>Returns the cell of the current thread.</p>
+     * @return the index of the cell.
+     */
+    private static int cell()
+    {
+        long id = Thread.currentThread().getId();
+        return (int) ((id ^ id >>> 3) & (STRIPES - 1)) * PADDING;
+    }
+}
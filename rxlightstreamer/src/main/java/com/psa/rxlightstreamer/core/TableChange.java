@@ -0,0 +1,63 @@
+package com.psa.rxlightstreamer.core;
+
+import com.psa.rxlightstreamer.helpers.TableChangeType;
+
+/**
+ * <p>This class is a change of a COMMAND table. Inserted and updated rows carry their new image,
+ * whose changed fields are the ones that differ from the previous image of the row. Removed rows
+ * carry their last image. Cleared items carry no row.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class TableChange {
+    private TableChangeType mChangeType;
+    private int mItemPosition;
+    private String mKey;
+    private ItemImage mRow;
+
+    /**
+     * <p>Instantiates a table change.</p>
+     * @param changeType is the type of the change.
+     * @param itemPosition is the position of the item the row belongs to, starting at 1.
+     * @param key is the key of the row, or null when the item is cleared.
+     * @param row is the image of the row, or null when the item is cleared.
+     */
+    public TableChange(TableChangeType changeType, int itemPosition, String key, ItemImage row) {
+        mChangeType = changeType;
+        mItemPosition = itemPosition;
+        mKey = key;
+        mRow = row;
+    }
+
+    /**
+     * <p>Returns how the table changed.</p>
+     * @return the type of the change.
+     */
+    public TableChangeType getChangeType() {
+        return mChangeType;
+    }
+
+    /**
+     * <p>Returns the position of the item the row belongs to.</p>
+     * @return the position of the item, starting at 1.
+     */
+    public int getItemPosition() {
+        return mItemPosition;
+    }
+
+    /**
+     * <p>Returns the key of the row.</p>
+     * @return the key of the row, or null when the item is cleared.
+     */
+    public String getKey() {
+        return mKey;
+    }
+
+    /**
+     * <p>Returns the image of the row.</p>
+     * @return the image of the row, or null when the item is cleared.
+     */
+    public ItemImage getRow() {
+        return mRow;
+    }
+}
@@ -0,0 +1,84 @@
+package com.psa.rxlightstreamer.core;
+
+import java.util.TimeZone;
+
+/**
+ * <p>This class parses server timestamps that only carry the time of the day, as
+ * <code>HH:mm:ss</code> or <code>HH:mm:ss.SSS</code>, such as the <code>time</code> field of the
+ * demo quotes. The date is the one that puts the timestamp closest to the time the update was
+ * received, so updates sent just before midnight and received just after it are dated right.</p>
+ * <p>Parsing does not allocate, so it can run for every update.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class TimeOfDayParser implements ServerTimeParser {
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final TimeZone mTimeZone;
+
+    /**
+     * <p>Instantiates a parser of times of the day in UTC.</p>
+     */
+    public TimeOfDayParser()
+    {
+        this(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * <p>Instantiates a parser.</p>
+     * @param timeZone is the time zone of the server.
+     */
+    public TimeOfDayParser(TimeZone timeZone)
+    {
+        mTimeZone = timeZone;
+    }
+
+    @Override
+    public long parse(String value, long receiveMillis) {
+        if (value == null || value.length() < 8 || value.charAt(2) != ':' || value.charAt(5) != ':')
+            return -1;
+        long hours = digits(value, 0, 2);
+        long minutes = digits(value, 3, 2);
+        long seconds = digits(value, 6, 2);
+        long millis = 0;
+        if (value.length() > 9 && value.charAt(8) == '.')
+        {
+            int count = Math.min(3, value.length() - 9);
+            millis = digits(value, 9, count);
+            for (int i = count; i < 3 && millis >= 0; i++)
+                millis *= 10;
+        }
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59 || millis < 0)
+            return -1;
+        long millisOfDay = ((hours * 60 + minutes) * 60 + seconds) * 1000 + millis;
+        int zoneOffset = mTimeZone.getOffset(receiveMillis);
+        long localReceive = receiveMillis + zoneOffset;
+        long dayStart = localReceive - ((localReceive % DAY_MILLIS) + DAY_MILLIS) % DAY_MILLIS;
+        long timestamp = dayStart + millisOfDay - zoneOffset;
+        if (timestamp - receiveMillis > DAY_MILLIS / 2)
+            timestamp -= DAY_MILLIS;
+        else if (receiveMillis - timestamp > DAY_MILLIS / 2)
+            timestamp += DAY_MILLIS;
+        return timestamp;
+    }
+
+    /**
+     * <p>Reads a number of decimal digits.</p>
+     * @param value is the text.
+     * @param start is the position of the first digit.
+     * @param count is the number of digits.
+     * @return the number, or -1 when a character is not a digit.
+     */
+    private static long digits(String value, int start, int count)
+    {
+        long number = 0;
+        for (int i = start; i < start + count; i++)
+        {
+            char character = value.charAt(i);
+            if (character < '0' || character > '9')
+                return -1;
+            number = number * 10 + character - '0';
+        }
+        return number;
+    }
+}
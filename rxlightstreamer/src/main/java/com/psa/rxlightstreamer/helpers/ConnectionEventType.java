@@ -0,0 +1,24 @@
+package com.psa.rxlightstreamer.helpers;
+
+/**
+ * <p>This enumeration tells what a connection event is about.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public enum ConnectionEventType {
+    /**
+     * <p>The status of the client changed. The event carries the new and the previous status and
+     * the time spent in the previous one.</p>
+     */
+    STATUS_CHANGE,
+    /**
+     * <p>The server accepted a subscription. The event carries the time from the request to the
+     * answer.</p>
+     */
+    SUBSCRIPTION,
+    /**
+     * <p>The server removed a subscription. The event carries the time from the request to the
+     * answer.</p>
+     */
+    UNSUBSCRIPTION
+}
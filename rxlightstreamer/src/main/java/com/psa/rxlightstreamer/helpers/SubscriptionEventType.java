@@ -0,0 +1,42 @@
+package com.psa.rxlightstreamer.helpers;
+
+/**
+ * <p>This enumeration tells what a subscription event is about.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public enum SubscriptionEventType {
+    /**
+     * <p>The subscription has become active.</p>
+     */
+    SUBSCRIBED,
+    /**
+     * <p>The subscription is no longer active.</p>
+     */
+    UNSUBSCRIBED,
+    /**
+     * <p>An item has been updated. The event carries the updated item.</p>
+     */
+    UPDATE,
+    /**
+     * <p>The snapshot of an item has been fully received. The following updates of the item are
+     * real time updates.</p>
+     */
+    END_OF_SNAPSHOT,
+    /**
+     * <p>The server asked to clear the current image of an item, typically the rows of a COMMAND
+     * subscription.</p>
+     */
+    CLEAR_SNAPSHOT,
+    /**
+     * <p>The server dropped updates of an item, usually because the client could not keep up with
+     * them. The event carries the number of lost updates, and the key of the row when the updates
+     * belong to a second level subscription.</p>
+     */
+    LOST_UPDATES,
+    /**
+     * <p>The second level subscription of a row of a two level COMMAND subscription failed. The
+     * event carries the key of the row and the error; the rest of the subscription goes on.</p>
+     */
+    SECOND_LEVEL_ERROR
+}
@@ -0,0 +1,25 @@
+package com.psa.rxlightstreamer.helpers;
+
+/**
+ * <p>This enumeration tells how a row of a COMMAND table changed.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public enum TableChangeType {
+    /**
+     * <p>A new row has been added to the table.</p>
+     */
+    INSERTED,
+    /**
+     * <p>An existing row has been updated.</p>
+     */
+    UPDATED,
+    /**
+     * <p>A row has been removed from the table.</p>
+     */
+    REMOVED,
+    /**
+     * <p>Every row of an item has been removed at once.</p>
+     */
+    CLEARED
+}
@@ -1,10 +1,9 @@
 package com.psa.rxlightstreamer.test.helpers;
 
+import com.lightstreamer.client.ItemUpdate;
 import com.psa.rxlightstreamer.core.RxSubscription;
 import com.psa.rxlightstreamer.helpers.SubscriptionType;
 
-import rx.Observable;
-
 /**
  * <p>RxSubscription for tests.</p>
  * @author Pablo Sánchez Alonso
@@ -22,10 +21,7 @@ public class TestSubscription extends RxSubscription<String> {
     }
 
     @Override
-    public Observable<SubscriptionEvent<String>> getSubscriptionObservable() {
-        return mRawObservable
-                .map(rawEvent ->
-                        new SubscriptionEvent<>(rawEvent.isSubscribed(),
-                                rawEvent.getUpdatedItem() == null?null:rawEvent.getUpdatedItem().getValue(0)));
+    protected String decode(ItemUpdate itemUpdate) {
+        return itemUpdate.getValue(0);
     }
 }
@@ -0,0 +1,292 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.client.ItemUpdate;
+import com.lightstreamer.client.Subscription;
+import com.lightstreamer.ls_client.UpdateInfo;
+import com.psa.rxlightstreamer.BaseTest;
+import com.psa.rxlightstreamer.helpers.SubscriptionEventType;
+import com.psa.rxlightstreamer.helpers.SubscriptionType;
+import com.psa.rxlightstreamer.helpers.TableChangeType;
+import com.psa.rxlightstreamer.injection.DaggerRxLightStreamerComponent;
+import com.psa.rxlightstreamer.injection.RxLightStreamerInjector;
+import com.psa.rxlightstreamer.injection.TestCoreModule;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import rx.observers.TestSubscriber;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>Feature: As a user, I want the rows of COMMAND subscriptions to be kept for me so that I only
+ * have to handle what changed.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class CommandTableTest extends BaseTest {
+    //region Internal classes
+    public static class RowSubscription extends RxSubscription<String>
+    {
+        public RowSubscription(SubscriptionType subscriptionType, String adapter, String[] fields, String[] items,
+                               boolean snapshot) {
+            super(subscriptionType, adapter, fields, items, snapshot);
+        }
+
+        public RowSubscription(SubscriptionType subscriptionType, String adapter, String[] fields, String[] items,
+                               boolean snapshot, String secondLevelAdapter, String[] secondLevelFields) {
+            super(subscriptionType, adapter, fields, items, snapshot, secondLevelAdapter, secondLevelFields);
+        }
+
+        @Override
+        protected String decode(ItemUpdate itemUpdate) {
+            return itemUpdate.getValue(1);
+        }
+    }
+    //endregion
+
+    private Subscription mLSSubscription;
+    private RxSubscription<String> mCommandSubscription;
+
+    @Override
+    public void setUp() {
+        super.setUp();
+        mLSSubscription = new Subscription("COMMAND");
+        TestCoreModule testCoreModule = new TestCoreModule();
+        testCoreModule.setCommandSubscription(mLSSubscription);
+        RxLightStreamerInjector.setRxLightStreamerComponent(DaggerRxLightStreamerComponent.builder()
+                .coreModule(testCoreModule)
+                .build());
+        mCommandSubscription = new RowSubscription(SubscriptionType.COMMAND, "ORDERS",
+                new String[]{"key", "command", "price"}, new String[]{"BOOK"}, true);
+    }
+
+    /**
+     * <p>Creates an update of the order book.</p>
+     * @param key is the key of the row.
+     * @param command is the command.
+     * @param price is the price.
+     * @return the update.
+     */
+    private static ItemUpdate update(String key, String command, String price)
+    {
+        ItemUpdate itemUpdate = mock(ItemUpdate.class);
+        when(itemUpdate.getItemName()).thenReturn("BOOK");
+        when(itemUpdate.getItemPos()).thenReturn(1);
+        when(itemUpdate.getValue(1)).thenReturn(key);
+        when(itemUpdate.getValue(2)).thenReturn(command);
+        when(itemUpdate.getValue(3)).thenReturn(price);
+        return itemUpdate;
+    }
+
+    /**
+     * <p>Scenario: Commands are applied to the table.</p>
+     * <p>Given I am listening to the table of a COMMAND subscription
+     * When rows are added, updated and deleted
+     * Then the table keeps the current rows and I get what changed in every row.</p>
+     */
+    @Test
+    public void testCommandsAreAppliedToTheTable()
+    {
+        try {
+            CommandTable commandTable = mCommandSubscription.getCommandTable();
+            TestSubscriber<TableChange> changeSubscriber = new TestSubscriber<>();
+            commandTable.getChangeObservable().subscribe(changeSubscriber);
+            mLSSubscription.getListeners().get(0).onItemUpdate(update("A", "ADD", "10"));
+            mLSSubscription.getListeners().get(0).onItemUpdate(update("B", "ADD", "20"));
+            mLSSubscription.getListeners().get(0).onItemUpdate(update("A", "UPDATE", "11"));
+            mLSSubscription.getListeners().get(0).onItemUpdate(update("B", "DELETE", "20"));
+            mLSSubscription.getListeners().get(0).onItemUpdate(update("C", "DELETE", "30"));
+            assertThat(commandTable.size(1)).isEqualTo(1);
+            assertThat(commandTable.getRow("BOOK", "A").getValue("price")).isEqualTo("11");
+            assertThat(commandTable.getRow(1, "B")).isNull();
+            List<TableChange> changes = changeSubscriber.getOnNextEvents();
+            assertThat(changes).hasSize(4);
+            assertThat(changes.get(0).getChangeType()).isEqualTo(TableChangeType.INSERTED);
+            assertThat(changes.get(0).getKey()).isEqualTo("A");
+            assertThat(changes.get(0).getRow().isValueChanged("price")).isTrue();
+            assertThat(changes.get(2).getChangeType()).isEqualTo(TableChangeType.UPDATED);
+            assertThat(changes.get(2).getRow().isValueChanged("key")).isFalse();
+            assertThat(changes.get(2).getRow().isValueChanged("price")).isTrue();
+            assertThat(changes.get(3).getChangeType()).isEqualTo(TableChangeType.REMOVED);
+            assertThat(changes.get(3).getRow().getValue("price")).isEqualTo("20");
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: The table is emptied when the snapshot is cleared or the subscription ends.</p>
+     * <p>Given I am listening to the table of a COMMAND subscription
+     * When the server clears the snapshot and the subscription is unsubscribed later
+     * Then the rows are removed and the change observable completes.</p>
+     */
+    @Test
+    public void testTableIsClearedWithTheSnapshotAndTheSubscription()
+    {
+        try {
+            CommandTable commandTable = mCommandSubscription.getCommandTable();
+            TestSubscriber<TableChange> changeSubscriber = new TestSubscriber<>();
+            commandTable.getChangeObservable().subscribe(changeSubscriber);
+            mLSSubscription.getListeners().get(0).onItemUpdate(update("A", "ADD", "10"));
+            mLSSubscription.getListeners().get(0).onClearSnapshot("BOOK", 1);
+            assertThat(commandTable.size(1)).isEqualTo(0);
+            mLSSubscription.getListeners().get(0).onItemUpdate(update("B", "ADD", "20"));
+            mLSSubscription.getListeners().get(0).onUnsubscription();
+            assertThat(commandTable.size(1)).isEqualTo(0);
+            List<TableChange> changes = changeSubscriber.getOnNextEvents();
+            assertThat(changes).hasSize(4);
+            assertThat(changes.get(1).getChangeType()).isEqualTo(TableChangeType.CLEARED);
+            assertThat(changes.get(3).getChangeType()).isEqualTo(TableChangeType.CLEARED);
+            changeSubscriber.assertCompleted();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Two level subscriptions merge the second level fields into the rows.</p>
+     * <p>Given I have a two level COMMAND subscription
+     * When a row gets the fields of its second level item, and another row fails and loses updates
+     * Then the row has every field and I get the problems of every key.</p>
+     */
+    @Test
+    public void testSecondLevelFieldsAreMergedIntoTheRows()
+    {
+        try {
+            RxSubscription<String> portfolio = new RowSubscription(SubscriptionType.COMMAND, "PORTFOLIO",
+                    new String[]{"key", "command", "qty"}, new String[]{"portfolio1"}, true,
+                    "QUOTE_ADAPTER", new String[]{"last_price"});
+            assertThat(mLSSubscription.getCommandSecondLevelFields()).containsExactly("last_price");
+            assertThat(mLSSubscription.getCommandSecondLevelDataAdapter()).isEqualTo("QUOTE_ADAPTER");
+            CommandTable commandTable = portfolio.getCommandTable();
+            TestSubscriber<RxSubscription.SubscriptionEvent<ItemUpdate>> rawSubscriber = new TestSubscriber<>();
+            portfolio.mRawObservable.subscribe(rawSubscriber);
+            ItemUpdate itemUpdate = update("item1", "UPDATE", "100");
+            when(itemUpdate.getValue(4)).thenReturn("5.25");
+            mLSSubscription.getListeners().get(1).onItemUpdate(itemUpdate);
+            mLSSubscription.getListeners().get(1).onCommandSecondLevelItemLostUpdates(2, "item1");
+            mLSSubscription.getListeners().get(1).onCommandSecondLevelSubscriptionError(21, "Bad item", "item2");
+            assertThat(commandTable.getRow(1, "item1").getValue("qty")).isEqualTo("100");
+            assertThat(commandTable.getRow(1, "item1").getValue("last_price")).isEqualTo("5.25");
+            List<RxSubscription.SubscriptionEvent<ItemUpdate>> events = rawSubscriber.getOnNextEvents();
+            assertThat(events).hasSize(3);
+            assertThat(events.get(1).getEventType()).isEqualTo(SubscriptionEventType.LOST_UPDATES);
+            assertThat(events.get(1).getKey()).isEqualTo("item1");
+            assertThat(events.get(1).getLostUpdates()).isEqualTo(2);
+            assertThat(events.get(2).getEventType()).isEqualTo(SubscriptionEventType.SECOND_LEVEL_ERROR);
+            assertThat(events.get(2).getKey()).isEqualTo("item2");
+            assertThat(events.get(2).getError().getMessage()).isEqualTo("Bad item");
+            rawSubscriber.assertNoErrors();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Parse errors of COMMAND subscriptions are counted.</p>
+     * <p>Given I am listening to a COMMAND subscription whose decoder parses the prices
+     * When a row gets a price that is not a number
+     * Then the metrics of the subscription count the error.</p>
+     */
+    @Test
+    public void testParseErrorsOfCommandSubscriptionsAreCounted()
+    {
+        try {
+            IncrementalItemDecoder<Integer> priceDecoder = new IncrementalItemDecoder<Integer>() {
+                @Override
+                public String[] getFields() {
+                    return new String[]{"key", "command", "price"};
+                }
+
+                @Override
+                public Integer decode(ItemUpdate itemUpdate) {
+                    return decode(itemUpdate, null);
+                }
+
+                @Override
+                public Integer decode(UpdateInfo updateInfo) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public Integer decode(ItemUpdate itemUpdate, ParseErrors parseErrors) {
+                    return NumericCodec.parseInt(itemUpdate.getValue(3), 0, parseErrors);
+                }
+
+                @Override
+                public Integer decode(UpdateInfo updateInfo, ParseErrors parseErrors) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public Integer createItem(String itemName) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void decodeField(Integer item, int fieldPosition, String value, ParseErrors parseErrors) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+            RxSubscription<Integer> subscription = new RxDecoderSubscription<>(SubscriptionType.COMMAND, "ORDERS",
+                    new String[]{"BOOK"}, true, priceDecoder);
+            TestSubscriber<RxSubscription.SubscriptionEvent<Integer>> eventSubscriber = new TestSubscriber<>();
+            subscription.getSubscriptionObservable().subscribe(eventSubscriber);
+            mLSSubscription.getListeners().get(1).onItemUpdate(update("A", "ADD", "10"));
+            mLSSubscription.getListeners().get(1).onItemUpdate(update("A", "UPDATE", "abc"));
+            assertThat(eventSubscriber.getOnNextEvents()).hasSize(2);
+            assertThat(eventSubscriber.getOnNextEvents().get(0).getUpdatedItem()).isEqualTo(10);
+            assertThat(subscription.getMetrics().getParseErrors()).isEqualTo(1);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Only COMMAND subscriptions can have two levels.</p>
+     * <p>Given I want a MERGE subscription
+     * When I give it second level fields
+     * Then an exception is thrown.</p>
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testOnlyCommandSubscriptionsCanHaveTwoLevels()
+    {
+        new RowSubscription(SubscriptionType.MERGE, "DEMO", new String[]{"FIELD"},
+                new String[]{"ITEM"}, true, null, new String[]{"OTHER"});
+    }
+
+    /**
+     * <p>Scenario: Only COMMAND subscriptions have a table.</p>
+     * <p>Given I have a MERGE subscription
+     * When I ask for its table
+     * Then an exception is thrown.</p>
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testOnlyCommandSubscriptionsHaveATable()
+    {
+        TestCoreModule testCoreModule = new TestCoreModule();
+        testCoreModule.setMergeSubscription(new Subscription("MERGE"));
+        RxLightStreamerInjector.setRxLightStreamerComponent(DaggerRxLightStreamerComponent.builder()
+                .coreModule(testCoreModule)
+                .build());
+        new RowSubscription(SubscriptionType.MERGE, "DEMO", new String[]{"FIELD"},
+                new String[]{"ITEM"}, true).getCommandTable();
+    }
+}
@@ -0,0 +1,158 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.client.ItemUpdate;
+import com.lightstreamer.client.LightstreamerClient;
+import com.lightstreamer.client.Subscription;
+import com.psa.rxlightstreamer.BaseTest;
+import com.psa.rxlightstreamer.helpers.SubscriptionType;
+import com.psa.rxlightstreamer.injection.DaggerRxLightStreamerComponent;
+import com.psa.rxlightstreamer.injection.RxLightStreamerInjector;
+import com.psa.rxlightstreamer.injection.TestCoreModule;
+
+import org.junit.Test;
+
+import rx.observers.TestSubscriber;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>Feature: As a user, I want the cached items of all my subscriptions to fit in a memory budget
+ * so that large watchlists can run on small devices.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class ItemCacheTest extends BaseTest {
+    private Subscription mLSSubscription;
+    private RxLightStreamerClient mRxLightStreamerClient;
+    private RxSubscription<String> mWatchlist;
+
+    @Override
+    public void setUp() {
+        super.setUp();
+        mLSSubscription = new Subscription("MERGE");
+        TestCoreModule testCoreModule = new TestCoreModule();
+        testCoreModule.setLightstreamerClient(new LightstreamerClient(null, null));
+        testCoreModule.setMergeSubscription(mLSSubscription);
+        RxLightStreamerInjector.setRxLightStreamerComponent(DaggerRxLightStreamerComponent.builder()
+                .coreModule(testCoreModule)
+                .build());
+        mRxLightStreamerClient = new RxLightStreamerClient();
+        mWatchlist = new RxSubscription<String>(SubscriptionType.MERGE, "QUOTES", new String[]{"bid", "ask"},
+                new String[]{"item1", "item2", "item3"}, true) {
+            @Override
+            protected String decode(ItemUpdate itemUpdate) {
+                return itemUpdate.getValue(1);
+            }
+
+            @Override
+            protected String decode(ItemImage itemImage) {
+                return itemImage.getValue(1);
+            }
+        };
+    }
+
+    /**
+     * <p>Creates an update of the watchlist.</p>
+     * @param itemPosition is the position of the item.
+     * @return the update.
+     */
+    private static ItemUpdate update(int itemPosition)
+    {
+        ItemUpdate itemUpdate = mock(ItemUpdate.class);
+        when(itemUpdate.getItemName()).thenReturn("item" + itemPosition);
+        when(itemUpdate.getItemPos()).thenReturn(itemPosition);
+        when(itemUpdate.getValue(1)).thenReturn("1.5");
+        when(itemUpdate.getValue(2)).thenReturn("1.6");
+        return itemUpdate;
+    }
+
+    /**
+     * <p>Scenario: Items nobody observes are evicted when the budget is exceeded.</p>
+     * <p>Given a client with an item cache that fits two items subscribes a watchlist
+     * When three items are cached, the first one was read recently and the second one is observed
+     * Then the first one is evicted and the stats tell so.</p>
+     */
+    @Test
+    public void testLeastRecentlyUsedItemsThatAreNotObservedAreEvicted()
+    {
+        try {
+            long itemBytes = ItemImage.from(update(1), mWatchlist.getFields()).estimateBytes();
+            ItemCache itemCache = new ItemCache(itemBytes * 2);
+            mRxLightStreamerClient.setItemCache(itemCache);
+            mRxLightStreamerClient.subscribe(mWatchlist);
+            LastValueCache lastValueCache = mWatchlist.getLastValueCache();
+            mLSSubscription.getListeners().get(0).onItemUpdate(update(1));
+            mLSSubscription.getListeners().get(0).onItemUpdate(update(2));
+            assertThat(itemCache.getBytes()).isEqualTo(itemBytes * 2);
+            assertThat(lastValueCache.getImage(1)).isNotNull();
+            mWatchlist.getItemObservable(2).subscribe(new TestSubscriber<>());
+            mLSSubscription.getListeners().get(0).onItemUpdate(update(3));
+            assertThat(lastValueCache.getImage("item1")).isNull();
+            assertThat(lastValueCache.size()).isEqualTo(2);
+            assertThat(itemCache.size()).isEqualTo(2);
+            assertThat(itemCache.getBytes()).isEqualTo(itemBytes * 2);
+            assertThat(itemCache.getEvictions()).isEqualTo(1);
+            assertThat(itemCache.getHits()).isEqualTo(2);
+            assertThat(itemCache.getMisses()).isEqualTo(1);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Unsubscribed subscriptions give their memory back.</p>
+     * <p>Given a client with an item cache subscribes a watchlist that caches an item
+     * When the watchlist is unsubscribed
+     * Then the item cache is empty.</p>
+     */
+    @Test
+    public void testUnsubscribedSubscriptionsGiveTheirMemoryBack()
+    {
+        try {
+            ItemCache itemCache = new ItemCache(1024);
+            mRxLightStreamerClient.setItemCache(itemCache);
+            mRxLightStreamerClient.subscribe(mWatchlist);
+            mWatchlist.getLastValueCache();
+            mLSSubscription.getListeners().get(0).onItemUpdate(update(1));
+            assertThat(itemCache.size()).isEqualTo(1);
+            mLSSubscription.getListeners().get(0).onUnsubscription();
+            assertThat(itemCache.size()).isEqualTo(0);
+            assertThat(itemCache.getBytes()).isEqualTo(0);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Subscriptions without a last value cache are not accounted.</p>
+     * <p>Given a client with an item cache
+     * When it subscribes a watchlist that never asked for a last value cache and an item is updated
+     * Then the item cache stays empty.</p>
+     */
+    @Test
+    public void testSubscriptionsWithoutLastValueCacheAreNotAccounted()
+    {
+        try {
+            ItemCache itemCache = new ItemCache(1024);
+            mRxLightStreamerClient.setItemCache(itemCache);
+            mRxLightStreamerClient.subscribe(mWatchlist);
+            mLSSubscription.getListeners().get(0).onItemUpdate(update(1));
+            assertThat(itemCache.size()).isEqualTo(0);
+            assertThat(itemCache.getBytes()).isEqualTo(0);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+}
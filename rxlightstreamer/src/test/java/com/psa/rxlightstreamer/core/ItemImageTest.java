@@ -0,0 +1,80 @@
+package com.psa.rxlightstreamer.core;
+
+import com.psa.rxlightstreamer.BaseTest;
+
+import org.junit.Test;
+
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * <p>Feature: As a user, I want slow observers of COMMAND subscriptions to get the rows as they
+ * are now instead of every command.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class ItemImageTest extends BaseTest {
+    private static final String[] mFields = {ItemImage.KEY_FIELD, ItemImage.COMMAND_FIELD, "price"};
+
+    /**
+     * <p>Creates the image of a row.</p>
+     * @param key is the key of the row.
+     * @param command is the command.
+     * @param price is the price.
+     * @return the image.
+     */
+    private static ItemImage row(String key, String command, String price)
+    {
+        return new ItemImage("ITEM", 1, mFields, new String[]{key, command, price},
+                new boolean[]{false, false, true}, false);
+    }
+
+    /**
+     * <p>Scenario: Commands of the same row are merged.</p>
+     * <p>Given I am listening to a conflated COMMAND subscription
+     * When several commands for the same rows arrive before I ask for more
+     * Then I get one command per row that leaves the row as the server has it.</p>
+     */
+    @Test
+    public void testCommandsOfTheSameRowAreMerged()
+    {
+        try {
+            PublishSubject<ItemImage> images = PublishSubject.create();
+            TestSubscriber<ItemImage> imageSubscriber = new TestSubscriber<>(0);
+            images.lift(new ConflatingOperator(true)).subscribe(imageSubscriber);
+            images.onNext(row("A", ItemImage.ADD, "1"));
+            images.onNext(row("A", ItemImage.UPDATE, "2"));
+            images.onNext(row("B", ItemImage.UPDATE, "3"));
+            images.onNext(row("B", ItemImage.DELETE, "3"));
+            images.onNext(row("C", ItemImage.ADD, "4"));
+            images.onNext(row("C", ItemImage.DELETE, "4"));
+            images.onNext(row("D", ItemImage.DELETE, "5"));
+            images.onNext(row("D", ItemImage.ADD, "6"));
+            images.onCompleted();
+            imageSubscriber.assertNoValues();
+            imageSubscriber.requestMore(Long.MAX_VALUE);
+            assertThat(imageSubscriber.getOnNextEvents()).hasSize(3);
+            ItemImage rowA = imageSubscriber.getOnNextEvents().get(0);
+            assertThat(rowA.getValue(ItemImage.KEY_FIELD)).isEqualTo("A");
+            assertThat(rowA.getValue(ItemImage.COMMAND_FIELD)).isEqualTo(ItemImage.ADD);
+            assertThat(rowA.getValue("price")).isEqualTo("2");
+            ItemImage rowB = imageSubscriber.getOnNextEvents().get(1);
+            assertThat(rowB.getValue(ItemImage.KEY_FIELD)).isEqualTo("B");
+            assertThat(rowB.getValue(ItemImage.COMMAND_FIELD)).isEqualTo(ItemImage.DELETE);
+            ItemImage rowD = imageSubscriber.getOnNextEvents().get(2);
+            assertThat(rowD.getValue(ItemImage.KEY_FIELD)).isEqualTo("D");
+            assertThat(rowD.getValue(ItemImage.COMMAND_FIELD)).isEqualTo(ItemImage.UPDATE);
+            assertThat(rowD.getValue("price")).isEqualTo("6");
+            assertThat(rowD.isValueChanged(ItemImage.KEY_FIELD)).isTrue();
+            imageSubscriber.assertCompleted();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.psa.rxlightstreamer.core;
+
+import com.psa.rxlightstreamer.BaseTest;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * <p>Feature: As a user, I want numeric fields to be parsed without garbage so that busy
+ * subscriptions do not stall the application.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class NumericCodecTest extends BaseTest {
+    private ParseErrors mParseErrors;
+
+    @Override
+    public void setUp() {
+        super.setUp();
+        mParseErrors = new ParseErrors();
+    }
+
+    /**
+     * <p>Scenario: Prices are parsed into fixed point values.</p>
+     * <p>Given I have prices with fewer, as many and more decimals than the scale
+     * When I parse them with scale 4
+     * Then I get the prices multiplied by 10000, rounded half away from zero.</p>
+     */
+    @Test
+    public void testPricesAreParsedIntoFixedPointValues()
+    {
+        try {
+            assertThat(NumericCodec.parseFixedPoint("12.5", 4, -1, mParseErrors)).isEqualTo(125000);
+            assertThat(NumericCodec.parseFixedPoint("12.3456", 4, -1, mParseErrors)).isEqualTo(123456);
+            assertThat(NumericCodec.parseFixedPoint("0.00005", 4, -1, mParseErrors)).isEqualTo(1);
+            assertThat(NumericCodec.parseFixedPoint("-0.00015", 4, -1, mParseErrors)).isEqualTo(-2);
+            assertThat(NumericCodec.parseFixedPoint("+7", 4, -1, mParseErrors)).isEqualTo(70000);
+            assertThat(NumericCodec.parseFixedPoint(".25", 2, -1, mParseErrors)).isEqualTo(25);
+            assertThat(NumericCodec.toBigDecimal(123456, 4)).isEqualTo(new BigDecimal("12.3456"));
+            assertThat(NumericCodec.toDouble(125000, 4)).isEqualTo(12.5);
+            assertThat(mParseErrors.get()).isEqualTo(0);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Integers and doubles are parsed whatever the locale is.</p>
+     * <p>Given the default locale uses commas as decimal separator
+     * When I parse integers and doubles
+     * Then they are parsed with a dot as decimal separator.</p>
+     */
+    @Test
+    public void testValuesAreParsedWhateverTheLocaleIs()
+    {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.GERMANY);
+            assertThat(NumericCodec.parseInt("1500", -1, mParseErrors)).isEqualTo(1500);
+            assertThat(NumericCodec.parseInt("-2147483648", -1, mParseErrors)).isEqualTo(Integer.MIN_VALUE);
+            assertThat(NumericCodec.parseDouble("0.025", -1, mParseErrors)).isEqualTo(0.025);
+            assertThat(NumericCodec.parseDouble("-31.4159", -1, mParseErrors)).isEqualTo(-31.4159);
+            assertThat(NumericCodec.parseDouble("1.5e3", -1, mParseErrors)).isEqualTo(1500.0);
+            assertThat(NumericCodec.parseDouble("12345678901234567890", -1, mParseErrors))
+                    .isEqualTo(12345678901234567890.0);
+            assertThat(mParseErrors.get()).isEqualTo(0);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+        finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    /**
+     * <p>Scenario: Bad values are counted.</p>
+     * <p>Given I have values that are not numbers or do not fit
+     * When I parse them
+     * Then I get the default values and the errors are counted.</p>
+     */
+    @Test
+    public void testBadValuesAreCounted()
+    {
+        try {
+            assertThat(NumericCodec.parseFixedPoint("12,5", 2, 7, mParseErrors)).isEqualTo(7);
+            assertThat(NumericCodec.parseFixedPoint("", 2, 7, mParseErrors)).isEqualTo(7);
+            assertThat(NumericCodec.parseFixedPoint("-", 2, 7, mParseErrors)).isEqualTo(7);
+            assertThat(NumericCodec.parseFixedPoint("99999999999999999", 4, 7, mParseErrors)).isEqualTo(7);
+            assertThat(NumericCodec.parseInt("2147483648", 7, mParseErrors)).isEqualTo(7);
+            assertThat(NumericCodec.parseInt("1.5", 7, mParseErrors)).isEqualTo(7);
+            assertThat(NumericCodec.parseDouble("abc", 7, mParseErrors)).isEqualTo(7.0);
+            assertThat(mParseErrors.get()).isEqualTo(7);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Bad boxed values keep the previous value.</p>
+     * <p>Given I have boxed fields with a previous value
+     * When I parse values that are not numbers
+     * Then I get the previous values, nothing is thrown and the errors are counted.</p>
+     */
+    @Test
+    public void testBadBoxedValuesKeepThePreviousValue()
+    {
+        try {
+            assertThat(NumericCodec.parseInteger("15", null, mParseErrors)).isEqualTo(15);
+            assertThat(NumericCodec.parseBigDecimal("0.25", null, mParseErrors)).isEqualTo(new BigDecimal("0.25"));
+            assertThat(mParseErrors.get()).isEqualTo(0);
+            assertThat(NumericCodec.parseInteger("1.5", 7, mParseErrors)).isEqualTo(7);
+            assertThat(NumericCodec.parseLong("abc", 7L, mParseErrors)).isEqualTo(7L);
+            assertThat(NumericCodec.parseDouble("abc", Double.valueOf(7), mParseErrors)).isEqualTo(7.0);
+            assertThat(NumericCodec.parseFloat("", 7f, mParseErrors)).isEqualTo(7f);
+            assertThat(NumericCodec.parseBigDecimal("12,5", BigDecimal.TEN, mParseErrors)).isEqualTo(BigDecimal.TEN);
+            assertThat(NumericCodec.parseBigDecimal("12,5", null, mParseErrors)).isNull();
+            assertThat(mParseErrors.get()).isEqualTo(6);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+}
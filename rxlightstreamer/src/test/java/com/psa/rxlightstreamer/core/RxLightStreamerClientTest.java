@@ -6,6 +6,7 @@ import com.lightstreamer.client.Subscription;
 import com.psa.rxlightstreamer.BaseTest;
 import com.psa.rxlightstreamer.exceptions.LightStreamerServerError;
 import com.psa.rxlightstreamer.helpers.ClientStatus;
+import com.psa.rxlightstreamer.helpers.ConnectionEventType;
 import com.psa.rxlightstreamer.helpers.ServerError;
 import com.psa.rxlightstreamer.injection.DaggerRxLightStreamerComponent;
 import com.psa.rxlightstreamer.injection.RxLightStreamerInjector;
@@ -15,17 +16,18 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.Spy;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
 
 import static junit.framework.Assert.fail;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doNothing;
-import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -39,9 +41,6 @@ import static org.mockito.Mockito.when;
 public class RxLightStreamerClientTest extends BaseTest {
     @Spy
     private LightstreamerClient mLightstreamerClient;
-    @Mock
-    private ClientListener mClientListener;
-
     @Mock
     private RxSubscription mRxSubscription;
     @Mock
@@ -70,17 +69,13 @@ public class RxLightStreamerClientTest extends BaseTest {
     public void testLightStreamerClientIsConnectedWhenConnectMethodIsCalledOnTheRxObject()
     {
         try {
-            List<ClientListener> clientListeners = new ArrayList<>();
-            clientListeners.add(mClientListener);
             doNothing().when(mLightstreamerClient).connect();
-            doReturn(clientListeners).when(mLightstreamerClient).getListeners();
 
             mRxLightStreamerClient.connect("http://localhost:8081", "Demo", "user", "password");
 
             assertThat(mRxLightStreamerClient.getClientStatusObservable()).isNotNull();
 
-            verify(mLightstreamerClient).getListeners();
-            verify(mLightstreamerClient).removeListener(mClientListener);
+            verify(mLightstreamerClient).addListener(any());
             verify(mLightstreamerClient).connect();
             verifyNoMoreInteractions(mLightstreamerClient);
         }
@@ -102,6 +97,7 @@ public class RxLightStreamerClientTest extends BaseTest {
     {
         try {
             mRxLightStreamerClient.disconnect();
+            verify(mLightstreamerClient).addListener(any());
             verify(mLightstreamerClient).disconnect();
             verifyNoMoreInteractions(mLightstreamerClient);
         }
@@ -124,6 +120,7 @@ public class RxLightStreamerClientTest extends BaseTest {
         try {
             when(mLightstreamerClient.getStatus()).thenReturn("CONNECTED:WS-STREAMING");
             assertThat(mRxLightStreamerClient.getStatus()).isEqualTo(ClientStatus.WS_STREAMING);
+            verify(mLightstreamerClient).addListener(any());
             verify(mLightstreamerClient).getStatus();
             verifyNoMoreInteractions(mLightstreamerClient);
         }
@@ -163,7 +160,7 @@ public class RxLightStreamerClientTest extends BaseTest {
 
             verify(mLightstreamerClient).connect();
             verify(mLightstreamerClient).addListener(any());
-            verify(mLightstreamerClient, times(4)).getListeners();
+            verify(mLightstreamerClient, times(3)).getListeners();
             verifyNoMoreInteractions(mLightstreamerClient);
         }
         catch (Exception ex)
@@ -177,7 +174,8 @@ public class RxLightStreamerClientTest extends BaseTest {
      * <p>Scenario: I receive server errors from LightStreamer</p>
      * <p>Given I am connected to LightStreamer
      * When there is a server error
-     * Then I receive an on error event through the observable.</p>
+     * Then I receive an on error event through the observable, and observers that resubscribe get
+     * the current status.</p>
      */
     @Test
     public void testObserverNotifiesServerErrors()
@@ -209,10 +207,15 @@ public class RxLightStreamerClientTest extends BaseTest {
             assertThat(((LightStreamerServerError) errorEvent).getServerError())
                     .isEqualTo(ServerError.SERVER_RESPONSE_PARSING_ERROR);
 
+            TestSubscriber<ClientStatus> retrySubscriber = new TestSubscriber<>();
+            mRxLightStreamerClient.getClientStatusObservable().subscribe(retrySubscriber);
+            assertThat(retrySubscriber.getOnNextEvents()).containsExactly(mRxLightStreamerClient.getStatus());
+            retrySubscriber.assertNoErrors();
 
             verify(mLightstreamerClient).connect();
             verify(mLightstreamerClient).addListener(any());
-            verify(mLightstreamerClient, times(4)).getListeners();
+            verify(mLightstreamerClient, times(3)).getListeners();
+            verify(mLightstreamerClient, times(2)).getStatus();
             verifyNoMoreInteractions(mLightstreamerClient);
         }
         catch (Exception ex)
@@ -222,6 +225,77 @@ public class RxLightStreamerClientTest extends BaseTest {
         }
     }
 
+    /**
+     * <p>Scenario: Several observers share the status stream.</p>
+     * <p>Given I am connected to LightStreamer
+     * When several observers listen to status changes
+     * Then only one listener is registered and late observers get the latest status.</p>
+     */
+    @Test
+    public void testStatusObservableIsSharedAndReplaysTheLatestStatus()
+    {
+        try {
+            doNothing().when(mLightstreamerClient).connect();
+
+            TestSubscriber<ClientStatus> firstSubscriber = new TestSubscriber<>();
+            TestSubscriber<ClientStatus> secondSubscriber = new TestSubscriber<>();
+            mRxLightStreamerClient.getClientStatusObservable().subscribe(firstSubscriber);
+            mRxLightStreamerClient.getClientStatusObservable().subscribe(secondSubscriber);
+            mRxLightStreamerClient.connect("http://localhost:8080", "Demo");
+            ClientListener clientListener = mLightstreamerClient.getListeners().get(0);
+            clientListener.onStatusChange(ClientStatus.CONNECTING.getLightStreamerStatus());
+            clientListener.onStatusChange(ClientStatus.WS_STREAMING.getLightStreamerStatus());
+            TestSubscriber<ClientStatus> lateSubscriber = new TestSubscriber<>();
+            mRxLightStreamerClient.getClientStatusObservable().subscribe(lateSubscriber);
+
+            assertThat(mLightstreamerClient.getListeners()).hasSize(1);
+            assertThat(firstSubscriber.getOnNextEvents())
+                    .containsExactly(ClientStatus.CONNECTING, ClientStatus.WS_STREAMING);
+            assertThat(secondSubscriber.getOnNextEvents())
+                    .containsExactly(ClientStatus.CONNECTING, ClientStatus.WS_STREAMING);
+            assertThat(lateSubscriber.getOnNextEvents()).containsExactly(ClientStatus.WS_STREAMING);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: The status stream survives reconnections.</p>
+     * <p>Given I am listening to status changes
+     * When I disconnect and connect again
+     * Then I keep receiving status changes from the same observable.</p>
+     */
+    @Test
+    public void testStatusObservableSurvivesReconnections()
+    {
+        try {
+            doNothing().when(mLightstreamerClient).connect();
+            doNothing().when(mLightstreamerClient).disconnect();
+
+            TestSubscriber<ClientStatus> testSubscriber = new TestSubscriber<>();
+            mRxLightStreamerClient.getClientStatusObservable().subscribe(testSubscriber);
+            mRxLightStreamerClient.connect("http://localhost:8080", "Demo");
+            mLightstreamerClient.getListeners().get(0).onStatusChange(ClientStatus.CONNECTING.getLightStreamerStatus());
+            mRxLightStreamerClient.disconnect();
+            mLightstreamerClient.getListeners().get(0).onStatusChange(ClientStatus.DISCONNECTED.getLightStreamerStatus());
+            mRxLightStreamerClient.connect("http://localhost:8080", "Demo");
+            mLightstreamerClient.getListeners().get(0).onStatusChange(ClientStatus.CONNECTING.getLightStreamerStatus());
+
+            assertThat(mLightstreamerClient.getListeners()).hasSize(1);
+            assertThat(testSubscriber.getOnNextEvents()).containsExactly(ClientStatus.CONNECTING,
+                    ClientStatus.DISCONNECTED, ClientStatus.CONNECTING);
+            testSubscriber.assertNoTerminalEvent();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
     /**
      * <p>Scenario: Subscribe.</p>
      * <p>Given I am connected to LS
@@ -233,6 +307,7 @@ public class RxLightStreamerClientTest extends BaseTest {
     {
         try {
             when(mRxSubscription.getLSSubscription()).thenReturn(mLSSubscription);
+            when(mRxSubscription.getMetricsRecorder()).thenReturn(new MetricsRecorder());
             mRxLightStreamerClient.subscribe(mRxSubscription);
             assertThat(mRxLightStreamerClient.getSubscriptionsCount()).isEqualTo(1);
             assertThat(mRxLightStreamerClient.getSubscription(0)).isEqualTo(mRxSubscription);
@@ -257,6 +332,8 @@ public class RxLightStreamerClientTest extends BaseTest {
     {
         try {
             when(mRxSubscription.getLSSubscription()).thenReturn(mLSSubscription);
+            when(mRxSubscription.getMetricsRecorder()).thenReturn(new MetricsRecorder());
+            when(mRxSubscription.getMetrics()).thenReturn(Metrics.empty());
             mRxLightStreamerClient.subscribe(mRxSubscription);
             assertThat(mRxLightStreamerClient.getSubscriptionsCount()).isEqualTo(1);
             assertThat(mRxLightStreamerClient.getSubscription(0)).isEqualTo(mRxSubscription);
@@ -273,6 +350,134 @@ public class RxLightStreamerClientTest extends BaseTest {
         }
     }
 
+    /**
+     * <p>Scenario: The metrics of the client are sampled periodically.</p>
+     * <p>Given I have subscribed a subscription that received updates
+     * When I listen to the metrics of the client and I disconnect
+     * Then I get a sample every period, and the counters are kept after disconnecting.</p>
+     */
+    @Test
+    public void testMetricsAreSampledPeriodically()
+    {
+        try {
+            when(mRxSubscription.getLSSubscription()).thenReturn(mLSSubscription);
+            when(mRxSubscription.getMetricsRecorder()).thenReturn(new MetricsRecorder());
+            when(mRxSubscription.getMetrics()).thenReturn(new Metrics(1, 1, 5, 4, 0, 2, 0, -1, 10, 0, 0, 0, 0));
+            mRxLightStreamerClient.subscribe(mRxSubscription);
+            TestScheduler scheduler = new TestScheduler();
+            TestSubscriber<Metrics> testSubscriber = new TestSubscriber<>();
+            mRxLightStreamerClient.getMetricsObservable(1, TimeUnit.SECONDS, scheduler).subscribe(testSubscriber);
+            scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+            mRxLightStreamerClient.disconnect();
+            scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+            List<Metrics> samples = testSubscriber.getOnNextEvents();
+            assertThat(samples).hasSize(2);
+            assertThat(samples.get(0).getSubscriptionCount()).isEqualTo(1);
+            assertThat(samples.get(0).getUpdatesReceived()).isEqualTo(5);
+            assertThat(samples.get(0).getFirstUpdateNanos()).isEqualTo(10);
+            assertThat(samples.get(1).getSubscriptionCount()).isEqualTo(0);
+            assertThat(samples.get(1).getUpdatesReceived()).isEqualTo(5);
+            assertThat(samples.get(1).getQueueDepth()).isEqualTo(0);
+            assertThat(samples.get(1).getFirstUpdateNanos()).isEqualTo(-1);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: The bandwidth is estimated from the updates.</p>
+     * <p>Given I have subscribed a subscription
+     * When I ask for the bandwidth and its updates add up to some bytes every second
+     * Then the bytes of the updates start being estimated, and I get the bytes and their rate
+     * every second.</p>
+     */
+    @Test
+    public void testBandwidthIsEstimatedFromTheUpdates()
+    {
+        try {
+            when(mRxSubscription.getLSSubscription()).thenReturn(mLSSubscription);
+            when(mRxSubscription.getMetricsRecorder()).thenReturn(new MetricsRecorder());
+            when(mRxSubscription.getMetrics()).thenReturn(new Metrics(1, 1, 1, 1, 0, 0, 0, -1, -1, 0, 0, 100, 0),
+                    new Metrics(1, 1, 2, 2, 0, 0, 0, -1, -1, 0, 0, 600, 0));
+            mRxLightStreamerClient.subscribe(mRxSubscription);
+            TestScheduler scheduler = new TestScheduler();
+            TestSubscriber<Bandwidth> testSubscriber = new TestSubscriber<>();
+            verify(mRxSubscription, never()).setBytesEstimated();
+            mRxLightStreamerClient.getBandwidthObservable(1, TimeUnit.SECONDS, scheduler).subscribe(testSubscriber);
+            verify(mRxSubscription).setBytesEstimated();
+            scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+            List<Bandwidth> samples = testSubscriber.getOnNextEvents();
+            assertThat(samples).hasSize(1);
+            assertThat(samples.get(0).getBytes()).isEqualTo(600);
+            assertThat(samples.get(0).getBytesPerSecond()).isEqualTo(500);
+            assertThat(samples.get(0).getKilobitsPerSecond()).isEqualTo(4);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: The connection timeline is recorded.</p>
+     * <p>Given I am listening to the connection events
+     * When the client connects over WebSocket, stalls, recovers, loses the connection and
+     * reconnects over HTTP
+     * Then every status change is in the timeline and in the events, and the statistics count the
+     * connections, the reconnection, the stall and the time on each transport.</p>
+     */
+    @Test
+    public void testConnectionTimelineIsRecorded()
+    {
+        try {
+            doNothing().when(mLightstreamerClient).connect();
+            TestSubscriber<ConnectionEvent> testSubscriber = new TestSubscriber<>();
+            mRxLightStreamerClient.getConnectionEventObservable().subscribe(testSubscriber);
+            mRxLightStreamerClient.connect("http://localhost:8080", "Demo");
+            ClientListener clientListener = mLightstreamerClient.getListeners().get(0);
+            clientListener.onStatusChange(ClientStatus.CONNECTING.getLightStreamerStatus());
+            clientListener.onStatusChange(ClientStatus.STREAM_SENSING.getLightStreamerStatus());
+            clientListener.onStatusChange(ClientStatus.WS_STREAMING.getLightStreamerStatus());
+            clientListener.onStatusChange(ClientStatus.STALLED.getLightStreamerStatus());
+            clientListener.onStatusChange(ClientStatus.WS_STREAMING.getLightStreamerStatus());
+            clientListener.onStatusChange(ClientStatus.WILL_RETRY.getLightStreamerStatus());
+            clientListener.onStatusChange(ClientStatus.CONNECTING.getLightStreamerStatus());
+            clientListener.onStatusChange(ClientStatus.STREAM_SENSING.getLightStreamerStatus());
+            clientListener.onStatusChange(ClientStatus.HTTP_STREAMING.getLightStreamerStatus());
+            clientListener.onStatusChange(ClientStatus.HTTP_STREAMING.getLightStreamerStatus());
+
+            List<ConnectionEvent> timeline = mRxLightStreamerClient.getConnectionTimeline();
+            assertThat(timeline).hasSize(9);
+            assertThat(testSubscriber.getOnNextEvents()).containsExactlyElementsOf(timeline);
+            assertThat(timeline.get(0).getPreviousStatus()).isNull();
+            assertThat(timeline.get(4).getEventType()).isEqualTo(ConnectionEventType.STATUS_CHANGE);
+            assertThat(timeline.get(4).getStatus()).isEqualTo(ClientStatus.WS_STREAMING);
+            assertThat(timeline.get(4).getPreviousStatus()).isEqualTo(ClientStatus.STALLED);
+            ConnectionStats stats = mRxLightStreamerClient.getConnectionStats();
+            assertThat(stats.getStatus()).isEqualTo(ClientStatus.HTTP_STREAMING);
+            assertThat(stats.getStatusChanges()).isEqualTo(9);
+            assertThat(stats.getConnections()).isEqualTo(2);
+            assertThat(stats.getReconnections()).isEqualTo(1);
+            assertThat(stats.getTimeToConnect().getCount()).isEqualTo(2);
+            assertThat(stats.getStreamSensingTime().getCount()).isEqualTo(2);
+            assertThat(stats.getStallTime().getCount()).isEqualTo(1);
+            assertThat(stats.getStallTime().getMax()).isEqualTo(timeline.get(4).getDurationNanos());
+            assertThat(stats.getWebSocketNanos()).isEqualTo(timeline.get(3).getDurationNanos() +
+                    timeline.get(5).getDurationNanos());
+            assertThat(stats.getHttpNanos()).isPositive();
+            assertThat(stats.getWebSocketShare()).isBetween(0.0, 1.0);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
     /**
      * <p>Scenario: Getting connection options for the given client.</p>
      * <p>Given I am in the application
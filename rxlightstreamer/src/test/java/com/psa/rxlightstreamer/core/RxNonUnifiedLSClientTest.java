@@ -5,9 +5,12 @@ import com.lightstreamer.ls_client.ConnectionListener;
 import com.lightstreamer.ls_client.ExtendedTableInfo;
 import com.lightstreamer.ls_client.HandyTableListener;
 import com.lightstreamer.ls_client.LSClient;
+import com.lightstreamer.ls_client.PushConnException;
 import com.lightstreamer.ls_client.SubscribedTableKey;
 import com.psa.rxlightstreamer.BaseTest;
 import com.psa.rxlightstreamer.helpers.ClientStatus;
+import com.psa.rxlightstreamer.helpers.ConnectionEventType;
+import com.psa.rxlightstreamer.helpers.SubscriptionType;
 import com.psa.rxlightstreamer.injection.DaggerRxLightStreamerComponent;
 import com.psa.rxlightstreamer.injection.RxLightStreamerInjector;
 import com.psa.rxlightstreamer.injection.TestCoreModule;
@@ -15,12 +18,23 @@ import com.psa.rxlightstreamer.injection.TestCoreModule;
 import org.junit.Test;
 import org.mockito.Mock;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
 
 import static junit.framework.Assert.fail;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -119,6 +133,68 @@ public class RxNonUnifiedLSClientTest extends BaseTest {
         }
     }
 
+    /**
+     * <p>Scenario: Several observers share the same session.</p>
+     * <p>Given I have connected the RxClient
+     * When several observers listen to the status
+     * Then only one connection is opened and all of them get the status changes.</p>
+     */
+    @Test
+    public void testOnlyOneConnectionIsOpenedRegardlessOfTheNumberOfObservers()
+    {
+        try {
+            TestSubscriber<ClientStatus> secondSubscriber = new TestSubscriber<>();
+            TestSubscriber<ClientStatus> thirdSubscriber = new TestSubscriber<>();
+            mRxNonUnifiedLSClient.getClientStatusObservable().subscribe(mTestSubscriber);
+            mRxNonUnifiedLSClient.connect("host", "adapterset");
+            mRxNonUnifiedLSClient.getClientStatusObservable().subscribe(secondSubscriber);
+            mRxNonUnifiedLSClient.getListener().onConnectionEstablished();
+            mRxNonUnifiedLSClient.getClientStatusObservable().subscribe(thirdSubscriber);
+            assertThat(mTestSubscriber.getOnNextEvents()).containsExactly(ClientStatus.DISCONNECTED,
+                    ClientStatus.CONNECTING, ClientStatus.STREAM_SENSING);
+            assertThat(secondSubscriber.getOnNextEvents()).containsExactly(ClientStatus.CONNECTING,
+                    ClientStatus.STREAM_SENSING);
+            assertThat(thirdSubscriber.getOnNextEvents()).containsExactly(ClientStatus.STREAM_SENSING);
+            verify(mLSClient).openConnection(eq(mConnectionInfo), isA(ConnectionListener.class));
+            verifyNoMoreInteractions(mLSClient);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Connection errors are notified.</p>
+     * <p>Given the server cannot be reached
+     * When I connect the RxClient
+     * Then the client is disconnected and the error is sent through the status observable.</p>
+     */
+    @Test
+    public void testConnectionErrorsAreSentThroughTheStatusObservable()
+    {
+        try {
+            PushConnException exception = mock(PushConnException.class);
+            doThrow(exception).when(mLSClient).openConnection(eq(mConnectionInfo), isA(ConnectionListener.class));
+            mRxNonUnifiedLSClient.getClientStatusObservable().subscribe(mTestSubscriber);
+            mRxNonUnifiedLSClient.connect("host", "adapterset");
+            assertThat(mTestSubscriber.getOnNextEvents()).containsExactly(ClientStatus.DISCONNECTED,
+                    ClientStatus.CONNECTING, ClientStatus.DISCONNECTED);
+            assertThat(mTestSubscriber.getOnErrorEvents()).containsExactly(exception);
+            assertThat(mRxNonUnifiedLSClient.getStatus()).isEqualTo(ClientStatus.DISCONNECTED);
+            TestSubscriber<ClientStatus> retrySubscriber = new TestSubscriber<>();
+            mRxNonUnifiedLSClient.getClientStatusObservable().subscribe(retrySubscriber);
+            retrySubscriber.assertNoErrors();
+            assertThat(retrySubscriber.getOnNextEvents()).containsExactly(ClientStatus.DISCONNECTED);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
     /**
      * <p>Scenario: LightStreamer disconnection</p>
      * <p>Given I am connected to LightStreamer</p>
@@ -295,6 +371,169 @@ public class RxNonUnifiedLSClientTest extends BaseTest {
         }
     }
 
+    /**
+     * <p>Scenario: Late callbacks do not change the status.</p>
+     * <p>Given the connection stalled and the server closed it
+     * When the recovery from the stall, another stall and a session start of the old connection
+     * arrive late
+     * Then the status stays the one the client is in, and no status is notified for them.</p>
+     */
+    @Test
+    public void testLateCallbacksDoNotChangeTheStatus()
+    {
+        try {
+            mRxNonUnifiedLSClient.connect("host", "adapterset", "user", "password");
+            mRxNonUnifiedLSClient.getClientStatusObservable().subscribe(mTestSubscriber);
+            mRxNonUnifiedLSClient.getListener().onConnectionEstablished();
+            mRxNonUnifiedLSClient.getListener().onSessionStarted(false);
+            mRxNonUnifiedLSClient.getListener().onActivityWarning(true);
+            mRxNonUnifiedLSClient.getListener().onActivityWarning(true);
+            mRxNonUnifiedLSClient.getListener().onEnd(1);
+            mRxNonUnifiedLSClient.getListener().onActivityWarning(false);
+            mRxNonUnifiedLSClient.getListener().onActivityWarning(true);
+            mRxNonUnifiedLSClient.getListener().onSessionStarted(true);
+            mRxNonUnifiedLSClient.getListener().onClose();
+            mRxNonUnifiedLSClient.getListener().onEnd(1);
+            assertThat(mRxNonUnifiedLSClient.getStatus()).isEqualTo(ClientStatus.DISCONNECTED);
+            assertThat(mTestSubscriber.getOnNextEvents()).containsExactly(ClientStatus.CONNECTING,
+                    ClientStatus.STREAM_SENSING, ClientStatus.HTTP_STREAMING, ClientStatus.STALLED,
+                    ClientStatus.WILL_RETRY, ClientStatus.DISCONNECTED);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Callbacks of a replaced connection are ignored.</p>
+     * <p>Given the client was streaming and has connected again
+     * When the old connection closes and fails late, and the new one is established
+     * Then the status follows the new connection only.</p>
+     */
+    @Test
+    public void testCallbacksOfReplacedConnectionsAreIgnored()
+    {
+        try {
+            mRxNonUnifiedLSClient.connect("host", "adapterset", "user", "password");
+            ConnectionListener oldListener = mRxNonUnifiedLSClient.getListener();
+            oldListener.onConnectionEstablished();
+            oldListener.onSessionStarted(false);
+            mRxNonUnifiedLSClient.connect("host", "adapterset", "user", "password");
+            mRxNonUnifiedLSClient.getClientStatusObservable().subscribe(mTestSubscriber);
+            oldListener.onClose();
+            oldListener.onFailure(mock(PushConnException.class));
+            mRxNonUnifiedLSClient.getListener().onConnectionEstablished();
+            assertThat(mRxNonUnifiedLSClient.getListener()).isNotSameAs(oldListener);
+            assertThat(mRxNonUnifiedLSClient.getStatus()).isEqualTo(ClientStatus.STREAM_SENSING);
+            mTestSubscriber.assertNoErrors();
+            assertThat(mTestSubscriber.getOnNextEvents()).containsExactly(ClientStatus.CONNECTING,
+                    ClientStatus.STREAM_SENSING);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Concurrent stalls and recoveries are notified in order.</p>
+     * <p>Given the client is streaming
+     * When the connection stalls and recovers many times from different threads at once
+     * Then the observers get the changes one at a time, never the same status twice in a row, and
+     * the last status they get is the status of the client.</p>
+     */
+    @Test
+    public void testConcurrentStallsAndRecoveriesAreNotifiedInOrder()
+    {
+        try {
+            mRxNonUnifiedLSClient.connect("host", "adapterset", "user", "password");
+            mRxNonUnifiedLSClient.getListener().onConnectionEstablished();
+            mRxNonUnifiedLSClient.getListener().onSessionStarted(false);
+            List<ClientStatus> statuses = new ArrayList<>();
+            AtomicInteger notifying = new AtomicInteger();
+            AtomicBoolean overlapped = new AtomicBoolean();
+            mRxNonUnifiedLSClient.getClientStatusObservable().subscribe(status -> {
+                if (notifying.incrementAndGet() > 1)
+                    overlapped.set(true);
+                statuses.add(status);
+                //Gives other threads a chance to notify meanwhile.
+                Thread.yield();
+                notifying.decrementAndGet();
+            });
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < 4; i++)
+            {
+                boolean stalled = i % 2 == 0;
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int j = 0; j < 10000; j++)
+                        mRxNonUnifiedLSClient.getListener().onActivityWarning(stalled);
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            for (Thread thread : threads)
+                thread.join();
+            assertThat(overlapped.get()).isFalse();
+            assertThat(statuses.get(statuses.size() - 1)).isEqualTo(mRxNonUnifiedLSClient.getStatus());
+            for (int i = 1; i < statuses.size(); i++)
+                assertThat(statuses.get(i)).isNotEqualTo(statuses.get(i - 1));
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Observers are not notified holding the status lock.</p>
+     * <p>Given an observer that waits for another thread to change the status while it handles a
+     * change
+     * When the connection is established
+     * Then the other thread is not blocked, and its change is notified after the one being
+     * handled.</p>
+     */
+    @Test
+    public void testObserversDoNotBlockStatusChanges()
+    {
+        try {
+            mRxNonUnifiedLSClient.connect("host", "adapterset", "user", "password");
+            AtomicBoolean blocked = new AtomicBoolean();
+            mRxNonUnifiedLSClient.getClientStatusObservable().subscribe(status -> {
+                if (status != ClientStatus.STREAM_SENSING)
+                    return;
+                Thread thread = new Thread(() -> mRxNonUnifiedLSClient.getListener().onSessionStarted(false));
+                thread.start();
+                try {
+                    thread.join(5000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                blocked.set(thread.isAlive());
+            });
+            mRxNonUnifiedLSClient.getClientStatusObservable().subscribe(mTestSubscriber);
+            mRxNonUnifiedLSClient.getListener().onConnectionEstablished();
+            assertThat(blocked.get()).isFalse();
+            assertThat(mTestSubscriber.getOnNextEvents()).containsExactly(ClientStatus.CONNECTING,
+                    ClientStatus.STREAM_SENSING, ClientStatus.HTTP_STREAMING);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
     /**
      * <p>Scenario: Server closes the connection.</p>
      * <p>Given I am connecting to LightStreamer
@@ -339,6 +578,7 @@ public class RxNonUnifiedLSClientTest extends BaseTest {
             when(mSubscription.getExtendedTableInfo()).thenReturn(mExtendedTableInfo);
             when(mSubscription.getHandyTableListener()).thenReturn(mHandyTableListener);
             when(mLSClient.subscribeTable(mExtendedTableInfo, mHandyTableListener, false)).thenReturn(mSubscribedTableKey);
+            when(mSubscription.getMetricsRecorder()).thenReturn(new MetricsRecorder());
             mRxNonUnifiedLSClient.subscribe(mSubscription);
 
             assertThat(mRxNonUnifiedLSClient.getSubscriptionsCount()).isEqualTo(1);
@@ -346,6 +586,8 @@ public class RxNonUnifiedLSClientTest extends BaseTest {
 
             verify(mSubscription).getExtendedTableInfo();
             verify(mSubscription).getHandyTableListener();
+            verify(mSubscription).getMetricsRecorder();
+            verify(mSubscription).getSubscriptionType();
             verify(mSubscription).setSubscribedTableKey(mSubscribedTableKey);
             verify(mLSClient).subscribeTable(mExtendedTableInfo, mHandyTableListener, false);
             verifyNoMoreInteractions(mLSClient, mSubscription);
@@ -357,6 +599,34 @@ public class RxNonUnifiedLSClientTest extends BaseTest {
         }
     }
 
+    /**
+     * <p>Scenario: COMMAND subscriptions use the command logic.</p>
+     * <p>Given I am connected to Light Streamer
+     * When I subscribe a COMMAND subscription
+     * Then it is subscribed with the command logic of the underlying client, so that the unchanged
+     * fields of its updates come from the row of the same key.</p>
+     */
+    @Test
+    public void testCommandSubscriptionsUseTheCommandLogic()
+    {
+        try {
+            when(mSubscription.getExtendedTableInfo()).thenReturn(mExtendedTableInfo);
+            when(mSubscription.getHandyTableListener()).thenReturn(mHandyTableListener);
+            when(mSubscription.getSubscriptionType()).thenReturn(SubscriptionType.COMMAND);
+            when(mLSClient.subscribeTable(mExtendedTableInfo, mHandyTableListener, true)).thenReturn(mSubscribedTableKey);
+            when(mSubscription.getMetricsRecorder()).thenReturn(new MetricsRecorder());
+            mRxNonUnifiedLSClient.subscribe(mSubscription);
+
+            verify(mSubscription).setSubscribedTableKey(mSubscribedTableKey);
+            verify(mLSClient).subscribeTable(mExtendedTableInfo, mHandyTableListener, true);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
     /**
      * <p>Scenario: Unsubscribe adapters.</p>
      * <p>Given I am connected to Light Streamer
@@ -380,5 +650,140 @@ public class RxNonUnifiedLSClientTest extends BaseTest {
             fail("Unexpected exception thrown!");
         }
     }
+
+    /**
+     * <p>Scenario: The metrics of the client add up the ones of its subscriptions.</p>
+     * <p>Given I have subscribed an adapter that received updates
+     * When I ask for the metrics of the client before and after unsubscribing it
+     * Then I get the ones of the subscription, and its counters are kept after unsubscribing.</p>
+     */
+    @Test
+    public void testMetricsAddUpTheSubscriptions()
+    {
+        try {
+            when(mSubscription.getMetricsRecorder()).thenReturn(new MetricsRecorder());
+            when(mSubscription.getMetrics()).thenReturn(new Metrics(1, 1, 5, 4, 1, 2, 3, 100, 10, 0, 0, 0, 0));
+            when(mSubscription.getSubscribedTableKey()).thenReturn(mSubscribedTableKey);
+            mRxNonUnifiedLSClient.subscribe(mSubscription);
+            Metrics metrics = mRxNonUnifiedLSClient.getMetrics();
+            assertThat(metrics.getSubscriptionCount()).isEqualTo(1);
+            assertThat(metrics.getUpdatesReceived()).isEqualTo(5);
+            assertThat(metrics.getQueueDepth()).isEqualTo(2);
+            assertThat(metrics.getSnapshotNanos()).isEqualTo(100);
+            mRxNonUnifiedLSClient.unsubscribe(mSubscription);
+            metrics = mRxNonUnifiedLSClient.getMetrics();
+            assertThat(metrics.getSubscriptionCount()).isEqualTo(0);
+            assertThat(metrics.getUpdatesReceived()).isEqualTo(5);
+            assertThat(metrics.getUpdatesDelivered()).isEqualTo(4);
+            assertThat(metrics.getLostUpdates()).isEqualTo(1);
+            assertThat(metrics.getQueueDepth()).isEqualTo(0);
+            assertThat(metrics.getSnapshotNanos()).isEqualTo(-1);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: The bandwidth is measured and split across the subscriptions.</p>
+     * <p>Given I have subscribed two adapters, one of them getting three updates for every update
+     * of the other
+     * When the client receives bytes and I sample the bandwidth every second
+     * Then the bytes are split across the subscriptions by their updates, the bytes that came with
+     * no update are left to the session, and the rate is a moving average.</p>
+     */
+    @Test
+    public void testBandwidthIsMeasuredAndSplitAcrossTheSubscriptions()
+    {
+        try {
+            RxNonUnifiedSubscription secondSubscription = mock(RxNonUnifiedSubscription.class);
+            MetricsRecorder metricsRecorder = new MetricsRecorder();
+            MetricsRecorder secondMetricsRecorder = new MetricsRecorder();
+            when(mSubscription.getMetricsRecorder()).thenReturn(metricsRecorder);
+            when(secondSubscription.getMetricsRecorder()).thenReturn(secondMetricsRecorder);
+            mRxNonUnifiedLSClient.subscribe(mSubscription);
+            mRxNonUnifiedLSClient.subscribe(secondSubscription);
+            metricsRecorder.updateReceived(true);
+            metricsRecorder.updateReceived(false);
+            metricsRecorder.updateReceived(false);
+            secondMetricsRecorder.updateReceived(true);
+            mRxNonUnifiedLSClient.getListener().onNewBytes(1000);
+
+            TestScheduler scheduler = new TestScheduler();
+            TestSubscriber<Bandwidth> testSubscriber = new TestSubscriber<>();
+            mRxNonUnifiedLSClient.getBandwidthObservable(1, TimeUnit.SECONDS, scheduler).subscribe(testSubscriber);
+            assertThat(metricsRecorder.sample().getBytes()).isEqualTo(750);
+            assertThat(secondMetricsRecorder.sample().getBytes()).isEqualTo(250);
+            mRxNonUnifiedLSClient.getListener().onNewBytes(2000);
+            scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+            mRxNonUnifiedLSClient.getListener().onNewBytes(4000);
+            scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+            List<Bandwidth> samples = testSubscriber.getOnNextEvents();
+            assertThat(samples).hasSize(2);
+            assertThat(samples.get(0).getBytes()).isEqualTo(3000);
+            assertThat(samples.get(0).getLastBytesPerSecond()).isEqualTo(2000);
+            assertThat(samples.get(0).getBytesPerSecond()).isEqualTo(2000);
+            assertThat(samples.get(1).getBytes()).isEqualTo(7000);
+            assertThat(samples.get(1).getLastBytesPerSecond()).isEqualTo(4000);
+            assertThat(samples.get(1).getBytesPerSecond()).isCloseTo(2000 + (1 - Math.exp(-0.1)) * 2000, within(0.01));
+            assertThat(metricsRecorder.sample().getBytes()).isEqualTo(750);
+            assertThat(secondMetricsRecorder.sample().getBytes()).isEqualTo(250);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+    /**
+     * <p>Scenario: The connection timeline is recorded.</p>
+     * <p>Given I have subscribed an adapter while streaming over HTTP
+     * When the connection stalls, recovers and ends, I connect again and unsubscribe the adapter
+     * Then the statistics count the connections, the reconnection, the stall and the latency of
+     * the requests, and the timeline keeps them in order.</p>
+     */
+    @Test
+    public void testConnectionTimelineIsRecorded()
+    {
+        try {
+            when(mSubscription.getMetricsRecorder()).thenReturn(new MetricsRecorder());
+            when(mSubscription.getMetrics()).thenReturn(Metrics.empty());
+            when(mSubscription.getSubscribedTableKey()).thenReturn(mSubscribedTableKey);
+            mRxNonUnifiedLSClient.connect("http://localhost:8080", "Demo");
+            mRxNonUnifiedLSClient.getListener().onConnectionEstablished();
+            mRxNonUnifiedLSClient.getListener().onSessionStarted(false);
+            mRxNonUnifiedLSClient.subscribe(mSubscription);
+            mRxNonUnifiedLSClient.getListener().onActivityWarning(true);
+            mRxNonUnifiedLSClient.getListener().onActivityWarning(false);
+            mRxNonUnifiedLSClient.getListener().onEnd(0);
+            mRxNonUnifiedLSClient.connect("http://localhost:8080", "Demo");
+            mRxNonUnifiedLSClient.getListener().onConnectionEstablished();
+            mRxNonUnifiedLSClient.getListener().onSessionStarted(true);
+            mRxNonUnifiedLSClient.unsubscribe(mSubscription);
+
+            ConnectionStats stats = mRxNonUnifiedLSClient.getConnectionStats();
+            assertThat(stats.getStatus()).isEqualTo(ClientStatus.HTTP_POLLING);
+            assertThat(stats.getConnections()).isEqualTo(2);
+            assertThat(stats.getReconnections()).isEqualTo(1);
+            assertThat(stats.getTimeToConnect().getCount()).isEqualTo(2);
+            assertThat(stats.getStallTime().getCount()).isEqualTo(1);
+            assertThat(stats.getSubscribeLatency().getCount()).isEqualTo(1);
+            assertThat(stats.getUnsubscribeLatency().getCount()).isEqualTo(1);
+            assertThat(stats.getWebSocketShare()).isEqualTo(0);
+            List<ConnectionEvent> timeline = mRxNonUnifiedLSClient.getConnectionTimeline();
+            assertThat(timeline).hasSize(11);
+            assertThat(timeline.get(3).getEventType()).isEqualTo(ConnectionEventType.SUBSCRIPTION);
+            assertThat(timeline.get(3).getStatus()).isEqualTo(ClientStatus.HTTP_STREAMING);
+            assertThat(timeline.get(6).getStatus()).isEqualTo(ClientStatus.WILL_RETRY);
+            assertThat(timeline.get(10).getEventType()).isEqualTo(ConnectionEventType.UNSUBSCRIPTION);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
     //endregion
 }
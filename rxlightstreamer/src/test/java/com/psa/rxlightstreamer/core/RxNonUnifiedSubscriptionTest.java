@@ -3,17 +3,21 @@ package com.psa.rxlightstreamer.core;
 import com.lightstreamer.ls_client.SubscribedTableKey;
 import com.lightstreamer.ls_client.UpdateInfo;
 import com.psa.rxlightstreamer.BaseTest;
+import com.psa.rxlightstreamer.helpers.SubscriptionEventType;
 import com.psa.rxlightstreamer.helpers.SubscriptionType;
 
 import org.junit.Test;
 import org.mockito.Mock;
 
+import java.util.List;
+
 import rx.Observable;
 import rx.observers.TestSubscriber;
 
 import static junit.framework.Assert.fail;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 /**
  * <p>Feature: As a user, I want to be able to subscribe to subscriptions using the non unified
@@ -35,6 +39,11 @@ public class RxNonUnifiedSubscriptionTest extends BaseTest {
         public Observable<RxSubscription.SubscriptionEvent<UpdateInfo>> getSubscriptionObservable() {
             return mRawObservable;
         }
+
+        @Override
+        protected UpdateInfo decode(UpdateInfo updateInfo) {
+            return updateInfo;
+        }
     }
     //endregion
 
@@ -42,6 +51,8 @@ public class RxNonUnifiedSubscriptionTest extends BaseTest {
     private TestSubscriber<RxSubscription.SubscriptionEvent<UpdateInfo>> mTestSubscriber;
     @Mock
     private UpdateInfo mUpdateInfo;
+    @Mock
+    private UpdateInfo mSecondUpdateInfo;
     private TestNonUnifiedSubscription mTestNonUnifiedSubscription;
     //endregion
 
@@ -110,22 +121,193 @@ public class RxNonUnifiedSubscriptionTest extends BaseTest {
      * <p>Scenario: Unsubscription is notified.</p>
      * <p>Given I am subscribed to an adapter
      * When the adapter is unsubscribed
-     * Then an event is emitted.</p>
+     * Then an event is emitted, the observables complete, and they can be observed again for the
+     * next subscription.</p>
      */
     @Test
     public void testUnsubscriptionIsNotified()
     {
         try {
+            TestSubscriber<RxSubscription.SubscriptionEvent<UpdateInfo>> itemSubscriber = new TestSubscriber<>();
+            TestSubscriber<ItemImage> imageSubscriber = new TestSubscriber<>();
             mTestNonUnifiedSubscription.getSubscriptionObservable().subscribe(mTestSubscriber);
+            mTestNonUnifiedSubscription.getItemObservable("1").subscribe(itemSubscriber);
+            mTestNonUnifiedSubscription.getConflatedObservable().subscribe(imageSubscriber);
             mTestNonUnifiedSubscription.setSubscribedTableKey(mock(SubscribedTableKey.class));
             mTestNonUnifiedSubscription.getHandyTableListener().onUnsubscrAll();
             assertThat(mTestSubscriber.getOnNextEvents().get(1).isSubscribed()).isFalse();
             assertThat(mTestSubscriber.getOnNextEvents().get(1).getUpdatedItem()).isNull();
+            mTestSubscriber.assertCompleted();
+            itemSubscriber.assertCompleted();
+            imageSubscriber.assertCompleted();
+
+            TestSubscriber<RxSubscription.SubscriptionEvent<UpdateInfo>> nextSubscriber = new TestSubscriber<>();
+            mTestNonUnifiedSubscription.getSubscriptionObservable().subscribe(nextSubscriber);
+            mTestNonUnifiedSubscription.setSubscribedTableKey(mock(SubscribedTableKey.class));
+            assertThat(nextSubscriber.getOnNextEvents()).hasSize(1);
+            assertThat(nextSubscriber.getOnNextEvents().get(0).isSubscribed()).isTrue();
+            nextSubscriber.assertNoTerminalEvent();
+        }
+        catch (Exception ex) {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Updates are routed by item.</p>
+     * <p>Given I am listening to a single item
+     * When updates for several items arrive
+     * Then I only get the updates of my item.</p>
+     */
+    @Test
+    public void testItemObservablesOnlyGetTheUpdatesOfTheirItem()
+    {
+        try {
+            TestSubscriber<RxSubscription.SubscriptionEvent<UpdateInfo>> firstItemSubscriber = new TestSubscriber<>();
+            TestSubscriber<RxSubscription.SubscriptionEvent<UpdateInfo>> secondItemSubscriber = new TestSubscriber<>();
+            mTestNonUnifiedSubscription.getItemObservable("1").subscribe(firstItemSubscriber);
+            mTestNonUnifiedSubscription.getItemObservable(2).subscribe(secondItemSubscriber);
+            mTestNonUnifiedSubscription.setSubscribedTableKey(mock(SubscribedTableKey.class));
+            mTestNonUnifiedSubscription.getHandyTableListener().onUpdate(1, "1", mUpdateInfo);
+            mTestNonUnifiedSubscription.getHandyTableListener().onUpdate(2, "2", mSecondUpdateInfo);
+            mTestNonUnifiedSubscription.getHandyTableListener().onUpdate(1, "1", mUpdateInfo);
+            assertThat(firstItemSubscriber.getOnNextEvents()).hasSize(3);
+            assertThat(firstItemSubscriber.getOnNextEvents().get(0).getUpdatedItem()).isNull();
+            assertThat(firstItemSubscriber.getOnNextEvents().get(1).getUpdatedItem()).isEqualTo(mUpdateInfo);
+            assertThat(firstItemSubscriber.getOnNextEvents().get(2).getUpdatedItem()).isEqualTo(mUpdateInfo);
+            assertThat(secondItemSubscriber.getOnNextEvents()).hasSize(2);
+            assertThat(secondItemSubscriber.getOnNextEvents().get(1).getUpdatedItem()).isEqualTo(mSecondUpdateInfo);
+        }
+        catch (Exception ex) {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Snapshot end and lost updates are notified.</p>
+     * <p>Given I am listening to a subscription with snapshot
+     * When the snapshot of an item ends and the server drops some updates
+     * Then I get the lifecycle events of the item.</p>
+     */
+    @Test
+    public void testLifecycleEventsAreEmitted()
+    {
+        try {
+            when(mUpdateInfo.isSnapshot()).thenReturn(true);
+            TestSubscriber<RxSubscription.SubscriptionEvent<UpdateInfo>> itemSubscriber = new TestSubscriber<>();
+            mTestNonUnifiedSubscription.getItemObservable("1").subscribe(itemSubscriber);
+            mTestNonUnifiedSubscription.getHandyTableListener().onUpdate(1, "1", mUpdateInfo);
+            mTestNonUnifiedSubscription.getHandyTableListener().onSnapshotEnd(1, "1");
+            mTestNonUnifiedSubscription.getHandyTableListener().onRawUpdatesLost(1, "1", 2);
+            List<RxSubscription.SubscriptionEvent<UpdateInfo>> events = itemSubscriber.getOnNextEvents();
+            assertThat(events).hasSize(3);
+            assertThat(events.get(0).isSnapshot()).isTrue();
+            assertThat(events.get(0).getItemName()).isEqualTo("1");
+            assertThat(events.get(1).getEventType()).isEqualTo(SubscriptionEventType.END_OF_SNAPSHOT);
+            assertThat(events.get(1).getItemPosition()).isEqualTo(1);
+            assertThat(events.get(2).getEventType()).isEqualTo(SubscriptionEventType.LOST_UPDATES);
+            assertThat(events.get(2).getLostUpdates()).isEqualTo(2);
+        }
+        catch (Exception ex) {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: The metrics of a subscription are recorded.</p>
+     * <p>Given I am listening to an item of a subscription with snapshot
+     * When both items get a snapshot update, the snapshot of the first one ends and the server
+     * drops some updates
+     * Then the metrics count the updates received, the ones delivered to the item observer, the
+     * snapshot and the lost updates.</p>
+     */
+    @Test
+    public void testMetricsAreRecorded()
+    {
+        try {
+            when(mUpdateInfo.isSnapshot()).thenReturn(true);
+            when(mSecondUpdateInfo.isSnapshot()).thenReturn(true);
+            TestSubscriber<RxSubscription.SubscriptionEvent<UpdateInfo>> itemSubscriber = new TestSubscriber<>();
+            mTestNonUnifiedSubscription.getItemObservable("1").subscribe(itemSubscriber);
+            mTestNonUnifiedSubscription.getMetricsRecorder().subscribing();
+            mTestNonUnifiedSubscription.setSubscribedTableKey(mock(SubscribedTableKey.class));
+            mTestNonUnifiedSubscription.getHandyTableListener().onUpdate(1, "1", mUpdateInfo);
+            mTestNonUnifiedSubscription.getHandyTableListener().onUpdate(2, "2", mSecondUpdateInfo);
+            mTestNonUnifiedSubscription.getHandyTableListener().onSnapshotEnd(1, "1");
+            mTestNonUnifiedSubscription.getHandyTableListener().onRawUpdatesLost(1, "1", 2);
+            Metrics metrics = mTestNonUnifiedSubscription.getMetrics();
+            assertThat(metrics.getUpdatesReceived()).isEqualTo(2);
+            assertThat(metrics.getUpdatesDelivered()).isEqualTo(1);
+            assertThat(metrics.getSnapshotUpdates()).isEqualTo(2);
+            assertThat(metrics.getSnapshotNanos()).isGreaterThanOrEqualTo(0);
+            assertThat(metrics.getFirstUpdateNanos()).isGreaterThanOrEqualTo(0);
+            assertThat(metrics.getLostUpdates()).isEqualTo(2);
+            assertThat(metrics.getQueueDepth()).isEqualTo(0);
+        }
+        catch (Exception ex) {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: The time of the server is read from its field.</p>
+     * <p>Given I have a subscription whose field carries the time of the server
+     * When a snapshot update and a live update arrive
+     * Then only the live one is measured, and its update event carries the time it was
+     * received.</p>
+     */
+    @Test
+    public void testServerTimeIsReadFromItsField()
+    {
+        try {
+            when(mUpdateInfo.isSnapshot()).thenReturn(true);
+            when(mUpdateInfo.isValueChanged(1)).thenReturn(true);
+            when(mUpdateInfo.getNewValue(1)).thenReturn(String.valueOf(System.currentTimeMillis()));
+            when(mSecondUpdateInfo.isValueChanged(1)).thenReturn(true);
+            when(mSecondUpdateInfo.getNewValue(1)).thenReturn(String.valueOf(System.currentTimeMillis()));
+            mTestNonUnifiedSubscription.setServerTimeField("number", ServerTimeParser.EPOCH_MILLIS);
+            TestSubscriber<RxSubscription.SubscriptionEvent<UpdateInfo>> itemSubscriber = new TestSubscriber<>();
+            mTestNonUnifiedSubscription.getItemObservable("1").subscribe(itemSubscriber);
+            mTestNonUnifiedSubscription.getHandyTableListener().onUpdate(1, "1", mUpdateInfo);
+            mTestNonUnifiedSubscription.getHandyTableListener().onUpdate(1, "1", mSecondUpdateInfo);
+            assertThat(itemSubscriber.getOnNextEvents()).hasSize(2);
+            assertThat(itemSubscriber.getOnNextEvents().get(1).getReceiveNanos()).isNotZero();
+            Latency latency = mTestNonUnifiedSubscription.getLatency();
+            assertThat(latency.getWireLatency().getCount()).isEqualTo(1);
+            assertThat(latency.isClockOffsetKnown()).isTrue();
         }
         catch (Exception ex) {
             ex.printStackTrace();
             fail("Unexpected exception thrown!");
         }
     }
+
+    /**
+     * <p>Scenario: Fields that do not belong to the subscription are rejected.</p>
+     * <p>Given I have a subscription
+     * When I set a server timestamp field that it does not have
+     * Then an exception is thrown.</p>
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testServerTimeFieldMustBelongToTheSubscription()
+    {
+        mTestNonUnifiedSubscription.setServerTimeField("time", new TimeOfDayParser());
+    }
+
+    /**
+     * <p>Scenario: Unknown items are rejected.</p>
+     * <p>Given I have a subscription
+     * When I ask for an item that does not belong to it
+     * Then an exception is thrown.</p>
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testItemObservableIsNotAvailableForUnknownItems()
+    {
+        mTestNonUnifiedSubscription.getItemObservable("3");
+    }
     //endregion
 }
@@ -2,9 +2,13 @@ package com.psa.rxlightstreamer.core;
 
 import com.lightstreamer.client.ItemUpdate;
 import com.lightstreamer.client.Subscription;
+import com.lightstreamer.ls_client.UpdateInfo;
 import com.psa.rxlightstreamer.BaseTest;
 import com.psa.rxlightstreamer.exceptions.LightStreamerSubscriptionError;
+import com.psa.rxlightstreamer.helpers.ConnectionEventType;
 import com.psa.rxlightstreamer.helpers.SubscriptionError;
+import com.psa.rxlightstreamer.helpers.SubscriptionEventType;
+import com.psa.rxlightstreamer.helpers.SubscriptionType;
 import com.psa.rxlightstreamer.injection.DaggerRxLightStreamerComponent;
 import com.psa.rxlightstreamer.injection.RxLightStreamerInjector;
 import com.psa.rxlightstreamer.injection.TestCoreModule;
@@ -15,11 +19,19 @@ import org.mockito.Mock;
 import org.mockito.Spy;
 
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
 
 import static junit.framework.Assert.fail;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -31,11 +43,65 @@ import static org.mockito.Mockito.when;
  * @version 1.0
  */
 public class RxSubscriptionTest extends BaseTest {
+    //region Internal classes
+    public static class TwoItemsSubscription extends RxSubscription<ItemUpdate>
+    {
+        public TwoItemsSubscription() {
+            super(SubscriptionType.MERGE, "DEMO", new String[]{"FIELD"}, new String[]{"ITEM1", "ITEM2"}, true);
+        }
+
+        @Override
+        protected ItemUpdate decode(ItemUpdate itemUpdate) {
+            return itemUpdate;
+        }
+    }
+
+    public static class ValuesDecoder implements IncrementalItemDecoder<String[]>
+    {
+        @Override
+        public String[] getFields() {
+            return new String[]{"FIELD1", "FIELD2"};
+        }
+
+        @Override
+        public String[] decode(ItemUpdate itemUpdate) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String[] decode(UpdateInfo updateInfo) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String[] decode(ItemUpdate itemUpdate, ParseErrors parseErrors) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String[] decode(UpdateInfo updateInfo, ParseErrors parseErrors) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String[] createItem(String itemName) {
+            return new String[2];
+        }
+
+        @Override
+        public void decodeField(String[] item, int fieldPosition, String value, ParseErrors parseErrors) {
+            item[fieldPosition - 1] = value;
+        }
+    }
+    //endregion
+
     private TestSubscription mStringRxSubscription;
     @Spy
     private Subscription mLSSubscription;
     @Mock
     private ItemUpdate mItemUpdate;
+    @Mock
+    private ItemUpdate mSecondItemUpdate;
     private static final String[] mFields = {"FIELD"};
     private static final String[] mItems = {"ITEM"};
     private TestSubscriber<RxSubscription.SubscriptionEvent<String>> mSubscriptionEventSubscriber;
@@ -91,7 +157,7 @@ public class RxSubscriptionTest extends BaseTest {
             assertThat(subscriptionEvents).isNotEmpty().hasSize(1);
             assertThat(subscriptionEvents.get(0).isSubscribed()).isTrue();
             assertThat(subscriptionEvents.get(0).getUpdatedItem()).isNull();
-            verify(mLSSubscription, times(2)).getListeners();
+            verify(mLSSubscription).getListeners();
         }
         catch (Exception ex)
         {
@@ -117,7 +183,7 @@ public class RxSubscriptionTest extends BaseTest {
             assertThat(subscriptionEvents).isNotEmpty().hasSize(1);
             assertThat(subscriptionEvents.get(0).isSubscribed()).isFalse();
             assertThat(subscriptionEvents.get(0).getUpdatedItem()).isNull();
-            verify(mLSSubscription, times(5)).getListeners();
+            verify(mLSSubscription).getListeners();
         }
         catch (Exception ex)
         {
@@ -144,7 +210,7 @@ public class RxSubscriptionTest extends BaseTest {
             assertThat(subscriptionEvents).isNotEmpty().hasSize(1);
             assertThat(subscriptionEvents.get(0).isSubscribed()).isTrue();
             assertThat(subscriptionEvents.get(0).getUpdatedItem()).isEqualTo("Test");
-            verify(mLSSubscription, times(2)).getListeners();
+            verify(mLSSubscription).getListeners();
             verify(mItemUpdate).getValue(0);
         }
         catch (Exception ex)
@@ -154,6 +220,256 @@ public class RxSubscriptionTest extends BaseTest {
         }
     }
 
+    /**
+     * <p>Scenario: Updates are decoded once for every observer.</p>
+     * <p>Given several observers listen to the same subscription
+     * When I get an update
+     * Then it is decoded once and every observer receives it.</p>
+     */
+    @Test
+    public void testUpdatesAreDecodedOnceRegardlessOfTheNumberOfObservers()
+    {
+        try {
+            when(mItemUpdate.getValue(0)).thenReturn("Test");
+            TestSubscriber<RxSubscription.SubscriptionEvent<String>> secondSubscriber = new TestSubscriber<>();
+            TestSubscriber<RxSubscription.SubscriptionEvent<String>> thirdSubscriber = new TestSubscriber<>();
+            mStringRxSubscription.getSubscriptionObservable().subscribe(mSubscriptionEventSubscriber);
+            mStringRxSubscription.getSubscriptionObservable().subscribe(secondSubscriber);
+            mStringRxSubscription.getSubscriptionObservable().subscribe(thirdSubscriber);
+            assertThat(mLSSubscription.getListeners()).hasSize(1);
+            mLSSubscription.getListeners().get(0).onItemUpdate(mItemUpdate);
+            RxSubscription.SubscriptionEvent<String> event = mSubscriptionEventSubscriber.getOnNextEvents().get(0);
+            assertThat(event.getUpdatedItem()).isEqualTo("Test");
+            assertThat(secondSubscriber.getOnNextEvents()).containsExactly(event);
+            assertThat(thirdSubscriber.getOnNextEvents()).containsExactly(event);
+            verify(mItemUpdate).getValue(0);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: The subscription can be observed again after being unsubscribed.</p>
+     * <p>Given the subscription has been unsubscribed
+     * When I subscribe again
+     * Then I get the new events.</p>
+     */
+    @Test
+    public void testSubscriptionObservableCanBeUsedAgainAfterUnsubscription()
+    {
+        try {
+            mStringRxSubscription.getSubscriptionObservable().subscribe(mSubscriptionEventSubscriber);
+            mLSSubscription.getListeners().get(0).onUnsubscription();
+            mSubscriptionEventSubscriber.assertCompleted();
+            TestSubscriber<RxSubscription.SubscriptionEvent<String>> newSubscriber = new TestSubscriber<>();
+            mStringRxSubscription.getSubscriptionObservable().subscribe(newSubscriber);
+            mLSSubscription.getListeners().get(0).onSubscription();
+            assertThat(newSubscriber.getOnNextEvents()).hasSize(1);
+            assertThat(newSubscriber.getOnNextEvents().get(0).isSubscribed()).isTrue();
+            newSubscriber.assertNoTerminalEvent();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Updates are routed by item.</p>
+     * <p>Given I am listening to a single item
+     * When updates for several items arrive
+     * Then I only get the updates of my item.</p>
+     */
+    @Test
+    public void testItemObservablesOnlyGetTheUpdatesOfTheirItem()
+    {
+        try {
+            when(mItemUpdate.getItemPos()).thenReturn(1);
+            when(mSecondItemUpdate.getItemPos()).thenReturn(2);
+            TwoItemsSubscription subscription = new TwoItemsSubscription();
+            TestSubscriber<RxSubscription.SubscriptionEvent<ItemUpdate>> firstItemSubscriber = new TestSubscriber<>();
+            TestSubscriber<RxSubscription.SubscriptionEvent<ItemUpdate>> secondItemSubscriber = new TestSubscriber<>();
+            subscription.getItemObservable("ITEM1").subscribe(firstItemSubscriber);
+            subscription.getItemObservable(2).subscribe(secondItemSubscriber);
+            mLSSubscription.getListeners().get(1).onSubscription();
+            mLSSubscription.getListeners().get(1).onItemUpdate(mItemUpdate);
+            mLSSubscription.getListeners().get(1).onItemUpdate(mSecondItemUpdate);
+            mLSSubscription.getListeners().get(1).onUnsubscription();
+            assertThat(firstItemSubscriber.getOnNextEvents()).hasSize(3);
+            assertThat(firstItemSubscriber.getOnNextEvents().get(1).getUpdatedItem()).isEqualTo(mItemUpdate);
+            assertThat(firstItemSubscriber.getOnNextEvents().get(2).isSubscribed()).isFalse();
+            firstItemSubscriber.assertCompleted();
+            assertThat(secondItemSubscriber.getOnNextEvents()).hasSize(3);
+            assertThat(secondItemSubscriber.getOnNextEvents().get(1).getUpdatedItem()).isEqualTo(mSecondItemUpdate);
+            secondItemSubscriber.assertCompleted();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Snapshot and lost updates are notified.</p>
+     * <p>Given I am listening to a subscription with snapshot
+     * When the snapshot of an item is sent, the server clears it and it drops some updates
+     * Then I get the snapshot updates flagged and the lifecycle events of the item.</p>
+     */
+    @Test
+    public void testLifecycleEventsAreEmitted()
+    {
+        try {
+            when(mItemUpdate.getItemPos()).thenReturn(1);
+            when(mItemUpdate.getItemName()).thenReturn("ITEM");
+            when(mItemUpdate.getValue(0)).thenReturn("1");
+            when(mItemUpdate.isSnapshot()).thenReturn(true);
+            TestSubscriber<RxSubscription.SubscriptionEvent<String>> itemSubscriber = new TestSubscriber<>();
+            mStringRxSubscription.getSubscriptionObservable().subscribe(mSubscriptionEventSubscriber);
+            mStringRxSubscription.getItemObservable("ITEM").subscribe(itemSubscriber);
+            mLSSubscription.getListeners().get(0).onSubscription();
+            mLSSubscription.getListeners().get(0).onItemUpdate(mItemUpdate);
+            mLSSubscription.getListeners().get(0).onEndOfSnapshot("ITEM", 1);
+            mLSSubscription.getListeners().get(0).onClearSnapshot("ITEM", 1);
+            mLSSubscription.getListeners().get(0).onItemLostUpdates("ITEM", 1, 3);
+            List<RxSubscription.SubscriptionEvent<String>> events = mSubscriptionEventSubscriber.getOnNextEvents();
+            assertThat(events).hasSize(5);
+            assertThat(events.get(0).getEventType()).isEqualTo(SubscriptionEventType.SUBSCRIBED);
+            assertThat(events.get(1).getEventType()).isEqualTo(SubscriptionEventType.UPDATE);
+            assertThat(events.get(1).isSnapshot()).isTrue();
+            assertThat(events.get(1).getItemName()).isEqualTo("ITEM");
+            assertThat(events.get(1).getItemPosition()).isEqualTo(1);
+            assertThat(events.get(2).getEventType()).isEqualTo(SubscriptionEventType.END_OF_SNAPSHOT);
+            assertThat(events.get(2).getUpdatedItem()).isNull();
+            assertThat(events.get(3).getEventType()).isEqualTo(SubscriptionEventType.CLEAR_SNAPSHOT);
+            assertThat(events.get(4).getEventType()).isEqualTo(SubscriptionEventType.LOST_UPDATES);
+            assertThat(events.get(4).getLostUpdates()).isEqualTo(3);
+            assertThat(itemSubscriber.getOnNextEvents()).hasSize(5);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Updates are conflated while the observer is busy.</p>
+     * <p>Given I am listening to the conflated observable
+     * When several updates for the same item arrive before I ask for more
+     * Then I only get the latest image of every item.</p>
+     */
+    @Test
+    public void testConflatedObservableKeepsOnlyTheLatestImageOfEveryItem()
+    {
+        try {
+            when(mItemUpdate.getItemPos()).thenReturn(1);
+            when(mItemUpdate.getItemName()).thenReturn("ITEM1");
+            when(mItemUpdate.getValue(1)).thenReturn("1", "2", "3");
+            when(mItemUpdate.isValueChanged(1)).thenReturn(true);
+            when(mSecondItemUpdate.getItemPos()).thenReturn(2);
+            when(mSecondItemUpdate.getItemName()).thenReturn("ITEM2");
+            when(mSecondItemUpdate.getValue(1)).thenReturn("A");
+            TwoItemsSubscription subscription = new TwoItemsSubscription();
+            TestSubscriber<ItemImage> imageSubscriber = new TestSubscriber<>(0);
+            subscription.getConflatedObservable().subscribe(imageSubscriber);
+            mLSSubscription.getListeners().get(1).onItemUpdate(mItemUpdate);
+            mLSSubscription.getListeners().get(1).onItemUpdate(mSecondItemUpdate);
+            mLSSubscription.getListeners().get(1).onItemUpdate(mItemUpdate);
+            mLSSubscription.getListeners().get(1).onItemUpdate(mItemUpdate);
+            imageSubscriber.assertNoValues();
+            imageSubscriber.requestMore(1);
+            assertThat(imageSubscriber.getOnNextEvents()).hasSize(1);
+            assertThat(imageSubscriber.getOnNextEvents().get(0).getItemName()).isEqualTo("ITEM1");
+            assertThat(imageSubscriber.getOnNextEvents().get(0).getValue("FIELD")).isEqualTo("3");
+            assertThat(imageSubscriber.getOnNextEvents().get(0).isValueChanged(1)).isTrue();
+            imageSubscriber.requestMore(5);
+            assertThat(imageSubscriber.getOnNextEvents()).hasSize(2);
+            assertThat(imageSubscriber.getOnNextEvents().get(1).getValue(1)).isEqualTo("A");
+            assertThat(imageSubscriber.getOnNextEvents().get(1).isValueChanged(1)).isFalse();
+            mLSSubscription.getListeners().get(1).onUnsubscription();
+            imageSubscriber.assertCompleted();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Updates are delivered in batches.</p>
+     * <p>Given I am listening to the batched observable
+     * When several updates arrive within a window
+     * Then I get them in a single batch with the latest image of every item.</p>
+     */
+    @Test
+    public void testBatchedObservableEmitsOneBatchPerWindow()
+    {
+        try {
+            when(mItemUpdate.getItemPos()).thenReturn(1);
+            when(mItemUpdate.getValue(1)).thenReturn("1", "2", "3");
+            when(mSecondItemUpdate.getItemPos()).thenReturn(2);
+            when(mSecondItemUpdate.getValue(1)).thenReturn("A");
+            TestScheduler scheduler = new TestScheduler();
+            TwoItemsSubscription subscription = new TwoItemsSubscription();
+            TestSubscriber<ItemBatch> batchSubscriber = new TestSubscriber<>();
+            subscription.getBatchedObservable(16, TimeUnit.MILLISECONDS, scheduler).subscribe(batchSubscriber);
+            mLSSubscription.getListeners().get(1).onItemUpdate(mItemUpdate);
+            mLSSubscription.getListeners().get(1).onItemUpdate(mSecondItemUpdate);
+            mLSSubscription.getListeners().get(1).onItemUpdate(mItemUpdate);
+            batchSubscriber.assertNoValues();
+            scheduler.advanceTimeBy(16, TimeUnit.MILLISECONDS);
+            assertThat(batchSubscriber.getOnNextEvents()).hasSize(1);
+            ItemBatch firstBatch = batchSubscriber.getOnNextEvents().get(0);
+            assertThat(firstBatch.size()).isEqualTo(2);
+            assertThat(firstBatch.get(0).getValue(1)).isEqualTo("2");
+            assertThat(firstBatch.get(1).getValue(1)).isEqualTo("A");
+            firstBatch.release();
+            scheduler.advanceTimeBy(16, TimeUnit.MILLISECONDS);
+            assertThat(batchSubscriber.getOnNextEvents()).hasSize(1);
+            mLSSubscription.getListeners().get(1).onItemUpdate(mItemUpdate);
+            mLSSubscription.getListeners().get(1).onUnsubscription();
+            scheduler.advanceTimeBy(16, TimeUnit.MILLISECONDS);
+            assertThat(batchSubscriber.getOnNextEvents()).hasSize(2);
+            assertThat(batchSubscriber.getOnNextEvents().get(1)).isSameAs(firstBatch);
+            assertThat(firstBatch.size()).isEqualTo(1);
+            assertThat(firstBatch.get(0).getValue(1)).isEqualTo("3");
+            batchSubscriber.assertCompleted();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Only MERGE and COMMAND subscriptions can be conflated.</p>
+     * <p>Given I have a RAW subscription
+     * When I ask for the conflated observable
+     * Then an exception is thrown.</p>
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRawSubscriptionsCannotBeConflated()
+    {
+        TestCoreModule testCoreModule = new TestCoreModule();
+        testCoreModule.setRawSubscription(new Subscription("RAW"));
+        RxLightStreamerInjector.setRxLightStreamerComponent(DaggerRxLightStreamerComponent.builder()
+                .coreModule(testCoreModule)
+                .build());
+        new RxSubscription<String>(SubscriptionType.RAW, "DEMO", mFields, mItems, false) {
+            @Override
+            protected String decode(ItemUpdate itemUpdate) {
+                return itemUpdate.getValue(1);
+            }
+        }.getConflatedObservable();
+    }
+
     /**
      * <p>Scenario: Observable emits event when error occurs.</p>
      * <p>Given I am connected to LS
@@ -173,7 +489,494 @@ public class RxSubscriptionTest extends BaseTest {
             assertThat(throwable).isInstanceOf(LightStreamerSubscriptionError.class);
             assertThat(((LightStreamerSubscriptionError) throwable).getSubscriptionError())
                     .isEqualTo(SubscriptionError.BAD_DATA_ADAPTER_NAME);
-            verify(mLSSubscription, times(2)).getListeners();
+            verify(mLSSubscription).getListeners();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Only the changed fields are decoded.</p>
+     * <p>Given I have a subscription with an incremental decoder
+     * When an item gets two updates, the second one changing one field, and it is subscribed again
+     * Then the same object is updated with the changed field only, and it is decoded from scratch
+     * after subscribing again.</p>
+     */
+    @Test
+    public void testOnlyChangedFieldsAreDecoded()
+    {
+        try {
+            RxSubscription<String[]> subscription = new RxDecoderSubscription<>(SubscriptionType.MERGE, "DEMO",
+                    mItems, true, new ValuesDecoder());
+            TestSubscriber<String[]> itemSubscriber = new TestSubscriber<>();
+            subscription.getItemObservable(1).map(RxSubscription.SubscriptionEvent::getUpdatedItem)
+                    .subscribe(itemSubscriber);
+            when(mItemUpdate.getItemPos()).thenReturn(1);
+            when(mItemUpdate.getItemName()).thenReturn("ITEM");
+            when(mItemUpdate.getValue(1)).thenReturn("A");
+            when(mItemUpdate.getValue(2)).thenReturn("B");
+            mLSSubscription.getListeners().get(1).onItemUpdate(mItemUpdate);
+            when(mSecondItemUpdate.getItemPos()).thenReturn(1);
+            when(mSecondItemUpdate.getItemName()).thenReturn("ITEM");
+            when(mSecondItemUpdate.isValueChanged(2)).thenReturn(true);
+            when(mSecondItemUpdate.getValue(2)).thenReturn("C");
+            mLSSubscription.getListeners().get(1).onItemUpdate(mSecondItemUpdate);
+            List<String[]> items = itemSubscriber.getOnNextEvents();
+            assertThat(items).hasSize(2);
+            assertThat(items.get(0)).containsExactly("A", "C");
+            assertThat(items.get(1)).isSameAs(items.get(0)).containsExactly("A", "C");
+            verify(mSecondItemUpdate, never()).getValue(1);
+            mLSSubscription.getListeners().get(1).onUnsubscription();
+            TestSubscriber<String[]> newItemSubscriber = new TestSubscriber<>();
+            subscription.getItemObservable(1).map(RxSubscription.SubscriptionEvent::getUpdatedItem)
+                    .subscribe(newItemSubscriber);
+            mLSSubscription.getListeners().get(1).onItemUpdate(mSecondItemUpdate);
+            assertThat(newItemSubscriber.getOnNextEvents()).hasSize(1);
+            assertThat(newItemSubscriber.getOnNextEvents().get(0)).isNotSameAs(items.get(0));
+            verify(mSecondItemUpdate).getValue(1);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Updates missed without observers are not lost.</p>
+     * <p>Given I have a subscription with an incremental decoder whose item got an update
+     * When I stop observing the item, it gets an update, I observe it again and it gets another
+     * update that does not change the first field
+     * Then the object I get has the value of the update I missed.</p>
+     */
+    @Test
+    public void testUpdatesMissedWithoutObserversAreNotLost()
+    {
+        try {
+            RxSubscription<String[]> subscription = new RxDecoderSubscription<>(SubscriptionType.MERGE, "DEMO",
+                    mItems, true, new ValuesDecoder());
+            TestSubscriber<String[]> itemSubscriber = new TestSubscriber<>();
+            rx.Subscription observation = subscription.getItemObservable(1)
+                    .map(RxSubscription.SubscriptionEvent::getUpdatedItem).subscribe(itemSubscriber);
+            when(mItemUpdate.getItemPos()).thenReturn(1);
+            when(mItemUpdate.getItemName()).thenReturn("ITEM");
+            when(mItemUpdate.getValue(1)).thenReturn("A");
+            when(mItemUpdate.getValue(2)).thenReturn("B");
+            mLSSubscription.getListeners().get(1).onItemUpdate(mItemUpdate);
+            observation.unsubscribe();
+            ItemUpdate missedUpdate = mock(ItemUpdate.class);
+            when(missedUpdate.getItemPos()).thenReturn(1);
+            when(missedUpdate.getItemName()).thenReturn("ITEM");
+            when(missedUpdate.isValueChanged(1)).thenReturn(true);
+            when(missedUpdate.getValue(1)).thenReturn("C");
+            when(missedUpdate.getValue(2)).thenReturn("B");
+            mLSSubscription.getListeners().get(1).onItemUpdate(missedUpdate);
+            TestSubscriber<String[]> newItemSubscriber = new TestSubscriber<>();
+            subscription.getItemObservable(1).map(RxSubscription.SubscriptionEvent::getUpdatedItem)
+                    .subscribe(newItemSubscriber);
+            when(mSecondItemUpdate.getItemPos()).thenReturn(1);
+            when(mSecondItemUpdate.getItemName()).thenReturn("ITEM");
+            when(mSecondItemUpdate.isValueChanged(2)).thenReturn(true);
+            when(mSecondItemUpdate.getValue(1)).thenReturn("C");
+            when(mSecondItemUpdate.getValue(2)).thenReturn("D");
+            mLSSubscription.getListeners().get(1).onItemUpdate(mSecondItemUpdate);
+            assertThat(itemSubscriber.getOnNextEvents()).hasSize(1);
+            assertThat(newItemSubscriber.getOnNextEvents()).hasSize(1);
+            assertThat(newItemSubscriber.getOnNextEvents().get(0)).containsExactly("C", "D");
+            mLSSubscription.getListeners().get(1).onItemUpdate(mSecondItemUpdate);
+            verify(mSecondItemUpdate, times(1)).getValue(1);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Events are reused.</p>
+     * <p>Given I am listening to a subscription that recycles update events
+     * When it is subscribed, gets two updates and is unsubscribed
+     * Then the control events are shared constants, the same update event is delivered twice
+     * and copies keep the first update.</p>
+     */
+    @Test
+    public void testEventsAreReused()
+    {
+        try {
+            mStringRxSubscription.setEventRecycling(true);
+            TestSubscriber<RxSubscription.SubscriptionEvent<String>> copySubscriber = new TestSubscriber<>();
+            mStringRxSubscription.getSubscriptionObservable().subscribe(mSubscriptionEventSubscriber);
+            mStringRxSubscription.getSubscriptionObservable().map(RxSubscription.SubscriptionEvent::copy)
+                    .subscribe(copySubscriber);
+            when(mItemUpdate.getItemPos()).thenReturn(1);
+            when(mItemUpdate.getItemName()).thenReturn("ITEM");
+            when(mItemUpdate.getValue(0)).thenReturn("First");
+            when(mSecondItemUpdate.getItemPos()).thenReturn(1);
+            when(mSecondItemUpdate.getItemName()).thenReturn("ITEM");
+            when(mSecondItemUpdate.getValue(0)).thenReturn("Second");
+            mLSSubscription.getListeners().get(0).onSubscription();
+            mLSSubscription.getListeners().get(0).onItemUpdate(mItemUpdate);
+            mLSSubscription.getListeners().get(0).onItemUpdate(mSecondItemUpdate);
+            mLSSubscription.getListeners().get(0).onUnsubscription();
+            List<RxSubscription.SubscriptionEvent<String>> events = mSubscriptionEventSubscriber.getOnNextEvents();
+            assertThat(events).hasSize(4);
+            assertThat(events.get(0)).isSameAs(RxSubscription.SubscriptionEvent.subscribed());
+            assertThat(events.get(1)).isSameAs(events.get(2));
+            assertThat(events.get(3)).isSameAs(RxSubscription.SubscriptionEvent.unsubscribed());
+            List<RxSubscription.SubscriptionEvent<String>> copies = copySubscriber.getOnNextEvents();
+            assertThat(copies.get(1).getEventType()).isEqualTo(SubscriptionEventType.UPDATE);
+            assertThat(copies.get(1).getUpdatedItem()).isEqualTo("First");
+            assertThat(copies.get(1).getItemPosition()).isEqualTo(1);
+            assertThat(copies.get(2).getUpdatedItem()).isEqualTo("Second");
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Late observers get the last values.</p>
+     * <p>Given I have a subscription with a last value cache that already got an update
+     * When I start listening and another update arrives
+     * Then I get the cached value first and then the live one, and the cache is emptied when the
+     * subscription is unsubscribed.</p>
+     */
+    @Test
+    public void testLateObserversGetTheLastValues()
+    {
+        try {
+            RxSubscription<String[]> subscription = new RxDecoderSubscription<>(SubscriptionType.MERGE, "DEMO",
+                    mItems, true, new ValuesDecoder());
+            LastValueCache lastValueCache = subscription.getLastValueCache();
+            when(mItemUpdate.getItemPos()).thenReturn(1);
+            when(mItemUpdate.getItemName()).thenReturn("ITEM");
+            when(mItemUpdate.getValue(1)).thenReturn("A");
+            when(mItemUpdate.getValue(2)).thenReturn("B");
+            mLSSubscription.getListeners().get(1).onItemUpdate(mItemUpdate);
+            assertThat(lastValueCache.getImage("ITEM").getValue("FIELD2")).isEqualTo("B");
+            TestSubscriber<RxSubscription.SubscriptionEvent<String[]>> itemSubscriber = new TestSubscriber<>();
+            subscription.getItemObservable(1).subscribe(itemSubscriber);
+            when(mSecondItemUpdate.getItemPos()).thenReturn(1);
+            when(mSecondItemUpdate.getItemName()).thenReturn("ITEM");
+            when(mSecondItemUpdate.getValue(1)).thenReturn("A");
+            when(mSecondItemUpdate.getValue(2)).thenReturn("C");
+            when(mSecondItemUpdate.isValueChanged(2)).thenReturn(true);
+            mLSSubscription.getListeners().get(1).onItemUpdate(mSecondItemUpdate);
+            List<RxSubscription.SubscriptionEvent<String[]>> events = itemSubscriber.getOnNextEvents();
+            assertThat(events).hasSize(2);
+            assertThat(events.get(0).isSnapshot()).isTrue();
+            assertThat(events.get(0).getUpdatedItem()).containsExactly("A", "B");
+            assertThat(events.get(1).getUpdatedItem()).containsExactly("A", "C");
+            mLSSubscription.getListeners().get(1).onUnsubscription();
+            assertThat(lastValueCache.size()).isEqualTo(0);
+            itemSubscriber.assertCompleted();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Replays do not hold the LightStreamer thread.</p>
+     * <p>Given I have a subscription with a last value cache that already got an update
+     * When a late observer is still handling the cached value and another update arrives
+     * Then the update is not blocked, and the observer gets it after the cached value.</p>
+     */
+    @Test
+    public void testReplaysDoNotHoldTheLightStreamerThread()
+    {
+        try {
+            RxSubscription<String[]> subscription = new RxDecoderSubscription<>(SubscriptionType.MERGE, "DEMO",
+                    mItems, true, new ValuesDecoder());
+            subscription.getLastValueCache();
+            when(mItemUpdate.getItemPos()).thenReturn(1);
+            when(mItemUpdate.getItemName()).thenReturn("ITEM");
+            when(mItemUpdate.getValue(1)).thenReturn("A");
+            when(mItemUpdate.getValue(2)).thenReturn("B");
+            mLSSubscription.getListeners().get(1).onItemUpdate(mItemUpdate);
+            CountDownLatch replaying = new CountDownLatch(1);
+            CountDownLatch handled = new CountDownLatch(1);
+            List<String> values = new CopyOnWriteArrayList<>();
+            Thread observerThread = new Thread(() -> subscription.getItemObservable(1).subscribe(event -> {
+                values.add(event.getUpdatedItem()[1]);
+                replaying.countDown();
+                try {
+                    handled.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            observerThread.start();
+            assertThat(replaying.await(5, TimeUnit.SECONDS)).isTrue();
+            when(mSecondItemUpdate.getItemPos()).thenReturn(1);
+            when(mSecondItemUpdate.getItemName()).thenReturn("ITEM");
+            when(mSecondItemUpdate.getValue(1)).thenReturn("A");
+            when(mSecondItemUpdate.getValue(2)).thenReturn("C");
+            when(mSecondItemUpdate.isValueChanged(2)).thenReturn(true);
+            ExecutorService lightStreamerThread = Executors.newSingleThreadExecutor();
+            lightStreamerThread.submit(() -> mLSSubscription.getListeners().get(1).onItemUpdate(mSecondItemUpdate))
+                    .get(5, TimeUnit.SECONDS);
+            lightStreamerThread.shutdown();
+            handled.countDown();
+            observerThread.join(5000);
+            assertThat(values).containsExactly("B", "C");
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Subscriptions that cannot decode the cached values have no last value cache.</p>
+     * <p>Given I have a subscription without an incremental decoder that does not decode images
+     * When I ask for its last value cache
+     * Then an exception is thrown before any late observer needs a replay.</p>
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSubscriptionsWithoutImageDecodingHaveNoLastValueCache()
+    {
+        new RxSubscription<String>(SubscriptionType.MERGE, "DEMO", mFields, mItems, true) {
+            @Override
+            protected String decode(ItemUpdate itemUpdate) {
+                return itemUpdate.getValue(1);
+            }
+        }.getLastValueCache();
+    }
+
+    /**
+     * <p>Scenario: Events can be copied with another item.</p>
+     * <p>Given I have a snapshot update event
+     * When I copy it with another item
+     * Then the copy has the new item and keeps the type, the item, the snapshot flag and the receive
+     * time of the event.</p>
+     */
+    @Test
+    public void testEventsCanBeCopiedWithAnotherItem()
+    {
+        RxSubscription.SubscriptionEvent<String> event = new RxSubscription.SubscriptionEvent<>(
+                SubscriptionEventType.UPDATE, true, "A", "ITEM", 1, true, 0).receivedAt(42);
+        RxSubscription.SubscriptionEvent<String> copy = event.copy("B");
+        assertThat(copy.getUpdatedItem()).isEqualTo("B");
+        assertThat(copy.getEventType()).isEqualTo(SubscriptionEventType.UPDATE);
+        assertThat(copy.getItemName()).isEqualTo("ITEM");
+        assertThat(copy.getItemPosition()).isEqualTo(1);
+        assertThat(copy.isSnapshot()).isTrue();
+        assertThat(copy.getReceiveNanos()).isEqualTo(42);
+        assertThat(event.getUpdatedItem()).isEqualTo("A");
+    }
+
+    /**
+     * <p>Scenario: The metrics of a subscription are recorded.</p>
+     * <p>Given I am listening to the conflated observable of a subscription without requesting
+     * anything
+     * When two snapshot updates of an item, its end of snapshot, lost updates and an update of
+     * another item arrive
+     * Then the metrics count the updates, the lost ones, the snapshot and the images waiting to be
+     * requested, the bytes of the updates received once they are estimated, and they are sampled
+     * periodically.</p>
+     */
+    @Test
+    public void testMetricsAreRecorded()
+    {
+        try {
+            when(mItemUpdate.getItemPos()).thenReturn(1);
+            when(mItemUpdate.getItemName()).thenReturn("ITEM1");
+            when(mItemUpdate.getValue(1)).thenReturn("1", "2");
+            when(mItemUpdate.isSnapshot()).thenReturn(true);
+            when(mSecondItemUpdate.getItemPos()).thenReturn(2);
+            when(mSecondItemUpdate.getItemName()).thenReturn("ITEM2");
+            when(mSecondItemUpdate.getValue(1)).thenReturn("A");
+            TwoItemsSubscription subscription = new TwoItemsSubscription();
+            TestSubscriber<ItemImage> imageSubscriber = new TestSubscriber<>(0);
+            subscription.getConflatedObservable().subscribe(imageSubscriber);
+            subscription.getMetricsRecorder().subscribing();
+            mLSSubscription.getListeners().get(1).onSubscription();
+            mLSSubscription.getListeners().get(1).onItemUpdate(mItemUpdate);
+            assertThat(subscription.getMetrics().getBytes()).isEqualTo(0);
+            subscription.setBytesEstimated();
+            mLSSubscription.getListeners().get(1).onItemUpdate(mItemUpdate);
+            mLSSubscription.getListeners().get(1).onEndOfSnapshot("ITEM1", 1);
+            mLSSubscription.getListeners().get(1).onItemLostUpdates("ITEM1", 1, 3);
+            mLSSubscription.getListeners().get(1).onItemUpdate(mSecondItemUpdate);
+            Metrics metrics = subscription.getMetrics();
+            assertThat(metrics.getSubscriptionCount()).isEqualTo(1);
+            assertThat(metrics.getUpdatesReceived()).isEqualTo(3);
+            assertThat(metrics.getUpdatesDelivered()).isEqualTo(3);
+            assertThat(metrics.getLostUpdates()).isEqualTo(3);
+            assertThat(metrics.getSnapshotUpdates()).isEqualTo(2);
+            assertThat(metrics.getSnapshotNanos()).isGreaterThanOrEqualTo(0);
+            assertThat(metrics.getFirstUpdateNanos()).isGreaterThanOrEqualTo(0);
+            assertThat(metrics.getQueueDepth()).isEqualTo(2);
+            assertThat(metrics.getBytes()).isEqualTo(2 * (RxSubscription.UPDATE_MESSAGE_BYTES + 1));
+            imageSubscriber.requestMore(5);
+            assertThat(subscription.getMetrics().getQueueDepth()).isEqualTo(0);
+
+            TestScheduler scheduler = new TestScheduler();
+            TestSubscriber<Metrics> metricsSubscriber = new TestSubscriber<>();
+            subscription.getMetricsObservable(1, TimeUnit.SECONDS, scheduler).subscribe(metricsSubscriber);
+            scheduler.advanceTimeBy(2, TimeUnit.SECONDS);
+            assertThat(metricsSubscriber.getOnNextEvents()).hasSize(2);
+            assertThat(metricsSubscriber.getOnNextEvents().get(1).getUpdatesReceived()).isEqualTo(3);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Parse errors are counted by the subscription.</p>
+     * <p>Given I have a subscription with a decoder that parses numbers
+     * When an item gets a number and then a value that is not a number
+     * Then the item keeps the number and the metrics of the subscription count the error.</p>
+     */
+    @Test
+    public void testParseErrorsAreCountedBySubscription()
+    {
+        try {
+            IncrementalItemDecoder<int[]> numberDecoder = new IncrementalItemDecoder<int[]>() {
+                @Override
+                public String[] getFields() {
+                    return new String[]{"FIELD"};
+                }
+
+                @Override
+                public int[] decode(ItemUpdate itemUpdate) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int[] decode(UpdateInfo updateInfo) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int[] decode(ItemUpdate itemUpdate, ParseErrors parseErrors) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int[] decode(UpdateInfo updateInfo, ParseErrors parseErrors) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int[] createItem(String itemName) {
+                    return new int[1];
+                }
+
+                @Override
+                public void decodeField(int[] item, int fieldPosition, String value, ParseErrors parseErrors) {
+                    item[0] = NumericCodec.parseInt(value, item[0], parseErrors);
+                }
+            };
+            RxSubscription<int[]> subscription = new RxDecoderSubscription<>(SubscriptionType.MERGE, "DEMO", mItems,
+                    true, numberDecoder);
+            TestSubscriber<int[]> itemSubscriber = new TestSubscriber<>();
+            subscription.getItemObservable(1).map(RxSubscription.SubscriptionEvent::getUpdatedItem)
+                    .subscribe(itemSubscriber);
+            when(mItemUpdate.getItemPos()).thenReturn(1);
+            when(mItemUpdate.getItemName()).thenReturn("ITEM");
+            when(mItemUpdate.getValue(1)).thenReturn("15");
+            when(mSecondItemUpdate.getItemPos()).thenReturn(1);
+            when(mSecondItemUpdate.getItemName()).thenReturn("ITEM");
+            when(mSecondItemUpdate.isValueChanged(1)).thenReturn(true);
+            when(mSecondItemUpdate.getValue(1)).thenReturn("abc");
+            mLSSubscription.getListeners().get(1).onItemUpdate(mItemUpdate);
+            mLSSubscription.getListeners().get(1).onItemUpdate(mSecondItemUpdate);
+            assertThat(itemSubscriber.getOnNextEvents()).hasSize(2);
+            assertThat(itemSubscriber.getOnNextEvents().get(1)).containsExactly(15);
+            assertThat(subscription.getMetrics().getParseErrors()).isEqualTo(1);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: The latencies of a subscription are tracked.</p>
+     * <p>Given I have a subscription with a server timestamp field and an observer that tracks the
+     * latency
+     * When an update arrives and another one arrives sent 200 milliseconds earlier than the first
+     * Then the first update sets the offset of the clocks, the second one is 200 milliseconds
+     * late, and the time to the observer is tracked for both.</p>
+     */
+    @Test
+    public void testLatenciesAreTracked()
+    {
+        try {
+            long now = System.currentTimeMillis();
+            when(mItemUpdate.getItemPos()).thenReturn(1);
+            when(mItemUpdate.getItemName()).thenReturn("ITEM1");
+            when(mItemUpdate.getValue(1)).thenReturn(String.valueOf(now - 50));
+            when(mItemUpdate.isValueChanged(1)).thenReturn(true);
+            when(mSecondItemUpdate.getItemPos()).thenReturn(1);
+            when(mSecondItemUpdate.getItemName()).thenReturn("ITEM1");
+            when(mSecondItemUpdate.getValue(1)).thenReturn(String.valueOf(now - 250));
+            when(mSecondItemUpdate.isValueChanged(1)).thenReturn(true);
+            TwoItemsSubscription subscription = new TwoItemsSubscription();
+            subscription.setServerTimeField("FIELD", ServerTimeParser.EPOCH_MILLIS);
+            TestSubscriber<RxSubscription.SubscriptionEvent<ItemUpdate>> testSubscriber = new TestSubscriber<>();
+            subscription.getSubscriptionObservable().compose(subscription.trackLatency()).subscribe(testSubscriber);
+            long receiveNanos = System.nanoTime();
+            mLSSubscription.getListeners().get(1).onItemUpdate(mItemUpdate);
+            mLSSubscription.getListeners().get(1).onItemUpdate(mSecondItemUpdate);
+            assertThat(testSubscriber.getOnNextEvents()).hasSize(2);
+            assertThat(testSubscriber.getOnNextEvents().get(1).getReceiveNanos()).isGreaterThanOrEqualTo(receiveNanos);
+            Latency latency = subscription.getLatency();
+            assertThat(latency.isClockOffsetKnown()).isTrue();
+            assertThat(latency.getClockOffsetMillis()).isBetween(50L, 100L);
+            assertThat(latency.getWireLatency().getCount()).isEqualTo(2);
+            assertThat(latency.getWireLatency().getMin()).isEqualTo(0);
+            assertThat(latency.getWireLatency().getMax()).isBetween(TimeUnit.MILLISECONDS.toNanos(200),
+                    TimeUnit.MILLISECONDS.toNanos(250));
+            assertThat(latency.getPipelineLatency().getCount()).isEqualTo(2);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: The subscription requests are timed until the server answers them.</p>
+     * <p>Given I have sent a subscription request through a client
+     * When the server subscribes it, subscribes it again after a reconnection and unsubscribes it
+     * Then the latency of the subscription and of the unsubscription are recorded once each.</p>
+     */
+    @Test
+    public void testRequestsAreTimedUntilTheServerAnswers()
+    {
+        try {
+            ConnectionRecorder connectionRecorder = new ConnectionRecorder();
+            TwoItemsSubscription subscription = new TwoItemsSubscription();
+            subscription.requestSent(connectionRecorder, ConnectionEventType.SUBSCRIPTION);
+            mLSSubscription.getListeners().get(1).onSubscription();
+            mLSSubscription.getListeners().get(1).onSubscription();
+            subscription.requestSent(connectionRecorder, ConnectionEventType.UNSUBSCRIPTION);
+            mLSSubscription.getListeners().get(1).onUnsubscription();
+            ConnectionStats stats = connectionRecorder.sample();
+            assertThat(stats.getSubscribeLatency().getCount()).isEqualTo(1);
+            assertThat(stats.getUnsubscribeLatency().getCount()).isEqualTo(1);
+            List<ConnectionEvent> timeline = connectionRecorder.getTimeline();
+            assertThat(timeline).hasSize(2);
+            assertThat(timeline.get(0).getEventType()).isEqualTo(ConnectionEventType.SUBSCRIPTION);
+            assertThat(timeline.get(0).getDurationNanos()).isEqualTo(stats.getSubscribeLatency().getMax());
+            assertThat(timeline.get(1).getEventType()).isEqualTo(ConnectionEventType.UNSUBSCRIPTION);
         }
         catch (Exception ex)
         {
@@ -0,0 +1,212 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.client.ItemUpdate;
+import com.lightstreamer.client.LightstreamerClient;
+import com.lightstreamer.client.Subscription;
+import com.psa.rxlightstreamer.BaseTest;
+import com.psa.rxlightstreamer.helpers.SubscriptionType;
+import com.psa.rxlightstreamer.injection.DaggerRxLightStreamerComponent;
+import com.psa.rxlightstreamer.injection.RxLightStreamerInjector;
+import com.psa.rxlightstreamer.injection.TestCoreModule;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+import rx.observers.TestSubscriber;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>Feature: As a user, I want the last values of my subscriptions to survive the application so
+ * that they are shown as soon as it starts, before connecting to the server.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class SnapshotStoreTest extends BaseTest {
+    private static final String[] FIELDS = new String[]{"bid", "ask"};
+    private File mFile;
+    private Subscription mLSSubscription;
+
+    @Override
+    public void setUp() {
+        super.setUp();
+        try {
+            mFile = File.createTempFile("snapshots", ".store");
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+        mFile.deleteOnExit();
+        mLSSubscription = new Subscription("MERGE");
+        TestCoreModule testCoreModule = new TestCoreModule();
+        testCoreModule.setLightstreamerClient(new LightstreamerClient(null, null));
+        testCoreModule.setMergeSubscription(mLSSubscription);
+        RxLightStreamerInjector.setRxLightStreamerComponent(DaggerRxLightStreamerComponent.builder()
+                .coreModule(testCoreModule)
+                .build());
+    }
+
+    /**
+     * <p>Creates a watchlist that decodes the bid.</p>
+     * @return the watchlist.
+     */
+    private static RxSubscription<String> watchlist()
+    {
+        return new RxSubscription<String>(SubscriptionType.MERGE, "QUOTES", FIELDS,
+                new String[]{"item1", "item2"}, true) {
+            @Override
+            protected String decode(ItemUpdate itemUpdate) {
+                return itemUpdate.getValue(1);
+            }
+
+            @Override
+            protected String decode(ItemImage itemImage) {
+                return itemImage.getValue(1);
+            }
+        };
+    }
+
+    /**
+     * <p>Creates an update of the watchlist.</p>
+     * @param itemPosition is the position of the item.
+     * @param bid is the bid.
+     * @return the update.
+     */
+    private static ItemUpdate update(int itemPosition, String bid)
+    {
+        ItemUpdate itemUpdate = mock(ItemUpdate.class);
+        when(itemUpdate.getItemName()).thenReturn("item" + itemPosition);
+        when(itemUpdate.getItemPos()).thenReturn(itemPosition);
+        when(itemUpdate.getValue(1)).thenReturn(bid);
+        when(itemUpdate.getValue(2)).thenReturn("1.6");
+        return itemUpdate;
+    }
+
+    /**
+     * <p>Scenario: Values survive the store.</p>
+     * <p>Given a store with the image of an item
+     * When the store is opened again
+     * Then the values and the image of the item are read back.</p>
+     */
+    @Test
+    public void testValuesSurviveTheStore()
+    {
+        try {
+            SnapshotStore snapshotStore = new SnapshotStore(mFile);
+            snapshotStore.put("QUOTES", ItemImage.from(update(1, "1.5"), FIELDS));
+            snapshotStore.close();
+            snapshotStore = new SnapshotStore(mFile);
+            assertThat(snapshotStore.getValue("QUOTES", "item1", "bid")).isEqualTo("1.5");
+            assertThat(snapshotStore.getValue("QUOTES", "item2", "bid")).isNull();
+            assertThat(snapshotStore.getImage("QUOTES", "item2", 2, FIELDS)).isNull();
+            ItemImage itemImage = snapshotStore.getImage("QUOTES", "item1", 1, FIELDS);
+            assertThat(itemImage.isSnapshot()).isTrue();
+            assertThat(itemImage.isValueChanged("ask")).isTrue();
+            assertThat(itemImage.getValue("ask")).isEqualTo("1.6");
+            snapshotStore.close();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: A full store keeps the latest values.</p>
+     * <p>Given a store
+     * When more updates are written than fit in the file
+     * Then the log is compacted and the latest values are read back.</p>
+     */
+    @Test
+    public void testFullStoresKeepTheLatestValues()
+    {
+        try {
+            SnapshotStore snapshotStore = new SnapshotStore(mFile);
+            long initialLength = mFile.length();
+            for (int i = 0; i < 10000; i++)
+                snapshotStore.put("QUOTES", ItemImage.from(update(1 + i % 2, String.valueOf(i)), FIELDS));
+            snapshotStore.close();
+            assertThat(mFile.length()).isEqualTo(initialLength);
+            snapshotStore = new SnapshotStore(mFile);
+            assertThat(snapshotStore.getValue("QUOTES", "item1", "bid")).isEqualTo("9998");
+            assertThat(snapshotStore.getValue("QUOTES", "item2", "bid")).isEqualTo("9999");
+            snapshotStore.close();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Stored values are shown before connecting.</p>
+     * <p>Given a previous run stored the images of a watchlist
+     * When a new watchlist uses the store and it is observed before it is subscribed
+     * Then the stored images are replayed as snapshot updates.</p>
+     */
+    @Test
+    public void testStoredValuesAreShownBeforeConnecting()
+    {
+        try {
+            SnapshotStore snapshotStore = new SnapshotStore(mFile);
+            RxSubscription<String> watchlist = watchlist();
+            watchlist.setSnapshotStore(snapshotStore, false);
+            mLSSubscription.getListeners().get(0).onItemUpdate(update(2, "1.5"));
+            snapshotStore.close();
+            snapshotStore = new SnapshotStore(mFile);
+            watchlist = watchlist();
+            watchlist.setSnapshotStore(snapshotStore, false);
+            TestSubscriber<RxSubscription.SubscriptionEvent<String>> subscriber = new TestSubscriber<>();
+            watchlist.getSubscriptionObservable().subscribe(subscriber);
+            List<RxSubscription.SubscriptionEvent<String>> events = subscriber.getOnNextEvents();
+            assertThat(events).hasSize(1);
+            assertThat(events.get(0).isSnapshot()).isTrue();
+            assertThat(events.get(0).getItemPosition()).isEqualTo(2);
+            assertThat(events.get(0).getUpdatedItem()).isEqualTo("1.5");
+            snapshotStore.close();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Stored values the server no longer has are dropped.</p>
+     * <p>Given a watchlist that reconciles a store with the images of two items
+     * When the snapshot of the server only updates the first one
+     * Then the stored image of the second one is dropped at the end of its snapshot.</p>
+     */
+    @Test
+    public void testStoredValuesAreReconciledWithTheSnapshot()
+    {
+        try {
+            SnapshotStore snapshotStore = new SnapshotStore(mFile);
+            snapshotStore.put("QUOTES", ItemImage.from(update(1, "1.5"), FIELDS));
+            snapshotStore.put("QUOTES", ItemImage.from(update(2, "2.5"), FIELDS));
+            RxSubscription<String> watchlist = watchlist();
+            watchlist.setSnapshotStore(snapshotStore, true);
+            LastValueCache lastValueCache = watchlist.getLastValueCache();
+            assertThat(lastValueCache.size()).isEqualTo(2);
+            mLSSubscription.getListeners().get(0).onItemUpdate(update(1, "1.7"));
+            mLSSubscription.getListeners().get(0).onEndOfSnapshot("item1", 1);
+            mLSSubscription.getListeners().get(0).onEndOfSnapshot("item2", 2);
+            assertThat(lastValueCache.getImage(1).getValue("bid")).isEqualTo("1.7");
+            assertThat(lastValueCache.getImage(2)).isNull();
+            assertThat(snapshotStore.getValue("QUOTES", "item1", "bid")).isEqualTo("1.7");
+            snapshotStore.close();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.psa.rxlightstreamer.core;
+
+import com.lightstreamer.client.ItemUpdate;
+import com.lightstreamer.client.LightstreamerClient;
+import com.lightstreamer.client.Subscription;
+import com.lightstreamer.client.SubscriptionListener;
+import com.lightstreamer.ls_client.HandyTableListener;
+import com.lightstreamer.ls_client.SubscribedTableKey;
+import com.lightstreamer.ls_client.UpdateInfo;
+import com.psa.rxlightstreamer.BaseTest;
+import com.psa.rxlightstreamer.helpers.SubscriptionEventType;
+import com.psa.rxlightstreamer.helpers.SubscriptionType;
+import com.psa.rxlightstreamer.injection.DaggerRxLightStreamerComponent;
+import com.psa.rxlightstreamer.injection.RxLightStreamerInjector;
+import com.psa.rxlightstreamer.injection.TestCoreModule;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import rx.observers.TestSubscriber;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>Feature: As a developer, I want to record the streams of my subscriptions and replay them
+ * later so that I can run load tests and benchmarks without a server.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class StreamRecorderTest extends BaseTest {
+    private Subscription mLSSubscription;
+
+    @Override
+    public void setUp() {
+        super.setUp();
+        mLSSubscription = new Subscription("MERGE");
+        TestCoreModule testCoreModule = new TestCoreModule();
+        testCoreModule.setLightstreamerClient(new LightstreamerClient(null, null));
+        testCoreModule.setMergeSubscription(mLSSubscription);
+        RxLightStreamerInjector.setRxLightStreamerComponent(DaggerRxLightStreamerComponent.builder()
+                .coreModule(testCoreModule)
+                .build());
+    }
+
+    /**
+     * <p>Creates a watchlist that decodes the bid and the ask.</p>
+     * @return the watchlist.
+     */
+    private static RxSubscription<String> watchlist()
+    {
+        return new RxSubscription<String>(SubscriptionType.MERGE, "QUOTES", new String[]{"bid", "ask"},
+                new String[]{"item1", "item2"}, true) {
+            @Override
+            protected String decode(ItemUpdate itemUpdate) {
+                return itemUpdate.getValue("bid") + "/" + itemUpdate.getValue(2) + "/" + itemUpdate.isValueChanged(2);
+            }
+        };
+    }
+
+    /**
+     * <p>Creates an update of the watchlist.</p>
+     * @param itemPosition is the position of the item.
+     * @param bid is the bid.
+     * @param ask is the ask.
+     * @param snapshot true for snapshot updates.
+     * @return the update.
+     */
+    private static ItemUpdate update(int itemPosition, String bid, String ask, boolean snapshot)
+    {
+        ItemUpdate itemUpdate = mock(ItemUpdate.class);
+        when(itemUpdate.getItemName()).thenReturn("item" + itemPosition);
+        when(itemUpdate.getItemPos()).thenReturn(itemPosition);
+        when(itemUpdate.getValue(1)).thenReturn(bid);
+        when(itemUpdate.getValue("bid")).thenReturn(bid);
+        when(itemUpdate.getValue(2)).thenReturn(ask);
+        when(itemUpdate.isValueChanged(1)).thenReturn(true);
+        when(itemUpdate.isValueChanged(2)).thenReturn(snapshot);
+        when(itemUpdate.isSnapshot()).thenReturn(snapshot);
+        return itemUpdate;
+    }
+
+    /**
+     * <p>Scenario: Replayed streams look like the recorded ones.</p>
+     * <p>Given a recorded watchlist gets subscribed, updated and unsubscribed
+     * When the log is replayed as fast as possible to another watchlist
+     * Then the other watchlist emits the same events.</p>
+     */
+    @Test
+    public void testReplayedStreamsLookLikeTheRecordedOnes()
+    {
+        try {
+            ByteArrayOutputStream log = new ByteArrayOutputStream();
+            StreamRecorder streamRecorder = new StreamRecorder(log);
+            RxSubscription<String> recorded = watchlist();
+            streamRecorder.record(recorded);
+            TestSubscriber<RxSubscription.SubscriptionEvent<String>> recordedSubscriber = new TestSubscriber<>();
+            recorded.getSubscriptionObservable().subscribe(recordedSubscriber);
+            SubscriptionListener listener = mLSSubscription.getListeners().get(0);
+            listener.onSubscription();
+            listener.onItemUpdate(update(1, "1.5", "1.6", true));
+            listener.onEndOfSnapshot("item1", 1);
+            listener.onItemUpdate(update(1, "1.7", "1.6", false));
+            listener.onItemLostUpdates("item2", 2, 3);
+            listener.onUnsubscription();
+            streamRecorder.close();
+            assertThat(streamRecorder.getRecords()).isEqualTo(6);
+
+            StreamReplayer streamReplayer = new StreamReplayer(new ByteArrayInputStream(log.toByteArray()));
+            assertThat(streamReplayer.getItems()).containsExactly("item1", "item2");
+            assertThat(streamReplayer.getFields()).containsExactly("bid", "ask");
+            RxSubscription<String> replayed = watchlist();
+            TestSubscriber<RxSubscription.SubscriptionEvent<String>> replayedSubscriber = new TestSubscriber<>();
+            replayed.getSubscriptionObservable().subscribe(replayedSubscriber);
+            assertThat(streamReplayer.replay(replayed, StreamReplayer.AS_FAST_AS_POSSIBLE)).isEqualTo(6);
+            List<RxSubscription.SubscriptionEvent<String>> recordedEvents = recordedSubscriber.getOnNextEvents();
+            List<RxSubscription.SubscriptionEvent<String>> replayedEvents = replayedSubscriber.getOnNextEvents();
+            assertThat(replayedEvents).hasSize(recordedEvents.size());
+            for (int i = 0; i < recordedEvents.size(); i++)
+            {
+                assertThat(replayedEvents.get(i).getEventType()).isEqualTo(recordedEvents.get(i).getEventType());
+                assertThat(replayedEvents.get(i).getUpdatedItem()).isEqualTo(recordedEvents.get(i).getUpdatedItem());
+                assertThat(replayedEvents.get(i).isSnapshot()).isEqualTo(recordedEvents.get(i).isSnapshot());
+            }
+            assertThat(replayedEvents.get(3).getUpdatedItem()).isEqualTo("1.7/1.6/false");
+            assertThat(replayedEvents.get(4).getEventType()).isEqualTo(SubscriptionEventType.LOST_UPDATES);
+            replayedSubscriber.assertCompleted();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Streams are replayed at the recorded speed.</p>
+     * <p>Given a log of two updates recorded 100 milliseconds apart
+     * When it is replayed at the recorded speed and twice as fast
+     * Then the replays last about 100 and 50 milliseconds.</p>
+     */
+    @Test
+    public void testStreamsAreReplayedAtTheRecordedSpeed()
+    {
+        try {
+            ByteArrayOutputStream log = new ByteArrayOutputStream();
+            StreamRecorder streamRecorder = new StreamRecorder(log);
+            streamRecorder.record(watchlist());
+            SubscriptionListener listener = mLSSubscription.getListeners().get(0);
+            listener.onItemUpdate(update(1, "1.5", "1.6", true));
+            Thread.sleep(100);
+            listener.onItemUpdate(update(1, "1.7", "1.6", false));
+            streamRecorder.close();
+            long start = System.nanoTime();
+            new StreamReplayer(new ByteArrayInputStream(log.toByteArray())).replay(watchlist(), 1);
+            long recordedSpeed = System.nanoTime() - start;
+            start = System.nanoTime();
+            new StreamReplayer(new ByteArrayInputStream(log.toByteArray())).replay(watchlist(), 2);
+            long doubleSpeed = System.nanoTime() - start;
+            assertThat(recordedSpeed).isGreaterThanOrEqualTo(100000000L);
+            assertThat(doubleSpeed).isGreaterThanOrEqualTo(50000000L).isLessThan(recordedSpeed);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Streams of the non unified API are replayed.</p>
+     * <p>Given a recorded subscription of the non unified API gets two updates of an item
+     * When the log is replayed
+     * Then the updates keep their new and old values.</p>
+     */
+    @Test
+    public void testNonUnifiedStreamsAreReplayed()
+    {
+        try {
+            ByteArrayOutputStream log = new ByteArrayOutputStream();
+            StreamRecorder streamRecorder = new StreamRecorder(log);
+            RxNonUnifiedSubscriptionTest.TestNonUnifiedSubscription recorded =
+                    new RxNonUnifiedSubscriptionTest.TestNonUnifiedSubscription();
+            streamRecorder.record(recorded);
+            for (String value : new String[]{"10", "11"})
+            {
+                UpdateInfo updateInfo = mock(UpdateInfo.class);
+                when(updateInfo.getItemPos()).thenReturn(2);
+                when(updateInfo.getItemName()).thenReturn("2");
+                when(updateInfo.getNewValue(1)).thenReturn(value);
+                when(updateInfo.isValueChanged(1)).thenReturn(true);
+                recorded.getHandyTableListener().onUpdate(2, "2", updateInfo);
+            }
+            streamRecorder.close();
+            RxNonUnifiedSubscriptionTest.TestNonUnifiedSubscription replayed =
+                    new RxNonUnifiedSubscriptionTest.TestNonUnifiedSubscription();
+            TestSubscriber<RxSubscription.SubscriptionEvent<UpdateInfo>> subscriber = new TestSubscriber<>();
+            replayed.getSubscriptionObservable().subscribe(subscriber);
+            new StreamReplayer(new ByteArrayInputStream(log.toByteArray()))
+                    .replay(replayed, StreamReplayer.AS_FAST_AS_POSSIBLE);
+            UpdateInfo updateInfo = subscriber.getOnNextEvents().get(subscriber.getOnNextEvents().size() - 1).getUpdatedItem();
+            assertThat(updateInfo.getItemPos()).isEqualTo(2);
+            assertThat(updateInfo.getNewValue("number")).isEqualTo("11");
+            assertThat(updateInfo.getOldValue(1)).isEqualTo("10");
+            assertThat(updateInfo.isValueChanged(1)).isTrue();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Subscribed non unified subscriptions cannot be recorded.</p>
+     * <p>Given a subscription of the non unified API that was already subscribed
+     * When I try to record it
+     * Then I am told it is too late, and its listener is still the same one.</p>
+     */
+    @Test
+    public void testSubscribedNonUnifiedSubscriptionsCannotBeRecorded()
+    {
+        try {
+            RxNonUnifiedSubscriptionTest.TestNonUnifiedSubscription subscription =
+                    new RxNonUnifiedSubscriptionTest.TestNonUnifiedSubscription();
+            HandyTableListener handyTableListener = subscription.getHandyTableListener();
+            subscription.setSubscribedTableKey(mock(SubscribedTableKey.class));
+            StreamRecorder streamRecorder = new StreamRecorder(new ByteArrayOutputStream());
+            try {
+                streamRecorder.record(subscription);
+                fail("The subscription was recorded!");
+            }
+            catch (IllegalStateException ex)
+            {
+                assertThat(subscription.getHandyTableListener()).isSameAs(handyTableListener);
+                assertThat(streamRecorder.getRecords()).isEqualTo(0);
+            }
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.psa.rxlightstreamer.core;
+
+import com.psa.rxlightstreamer.BaseTest;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * <p>Feature: As a user, I want the server timestamps of my updates to be read so that I know how
+ * stale they are.</p>
+ * @author Pablo Sánchez Alonso
+ * @version 1.0
+ */
+public class TimeOfDayParserTest extends BaseTest {
+    /**
+     * <p>Returns a time in milliseconds since the epoch.</p>
+     * @param timeZone is the time zone of the time.
+     * @param day is the day of January 2016.
+     * @param hours is the hour of the day.
+     * @param minutes is the minute of the hour.
+     * @param seconds is the second of the minute.
+     * @param millis is the millisecond of the second.
+     * @return the time.
+     */
+    private static long time(TimeZone timeZone, int day, int hours, int minutes, int seconds, int millis)
+    {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.clear();
+        calendar.set(2016, Calendar.JANUARY, day, hours, minutes, seconds);
+        calendar.set(Calendar.MILLISECOND, millis);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * <p>Scenario: Times of the day are dated by the time they are received.</p>
+     * <p>Given I have a server in Madrid sending the time of the day
+     * When I parse times received on the same day, and just after midnight
+     * Then I get the timestamps of the day they were sent.</p>
+     */
+    @Test
+    public void testTimesOfTheDayAreDatedByTheTimeTheyAreReceived()
+    {
+        try {
+            TimeZone madrid = TimeZone.getTimeZone("Europe/Madrid");
+            TimeOfDayParser parser = new TimeOfDayParser(madrid);
+            assertThat(parser.parse("12:30:15", time(madrid, 10, 12, 30, 16, 0)))
+                    .isEqualTo(time(madrid, 10, 12, 30, 15, 0));
+            assertThat(parser.parse("12:30:15.25", time(madrid, 10, 12, 30, 16, 0)))
+                    .isEqualTo(time(madrid, 10, 12, 30, 15, 250));
+            assertThat(parser.parse("23:59:59.990", time(madrid, 11, 0, 0, 0, 100)))
+                    .isEqualTo(time(madrid, 10, 23, 59, 59, 990));
+            assertThat(parser.parse("00:00:00.010", time(madrid, 10, 23, 59, 59, 990)))
+                    .isEqualTo(time(madrid, 11, 0, 0, 0, 10));
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+
+    /**
+     * <p>Scenario: Values that are not times are rejected.</p>
+     * <p>Given I have a parser of times of the day
+     * When I parse values that are not times
+     * Then I get a negative timestamp.</p>
+     */
+    @Test
+    public void testValuesThatAreNotTimesAreRejected()
+    {
+        try {
+            TimeOfDayParser parser = new TimeOfDayParser();
+            assertThat(parser.parse(null, 0)).isNegative();
+            assertThat(parser.parse("12:30", 0)).isNegative();
+            assertThat(parser.parse("24:00:00", 0)).isNegative();
+            assertThat(parser.parse("12:3a:00", 0)).isNegative();
+            assertThat(parser.parse("12:30:00.x", 0)).isNegative();
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+            fail("Unexpected exception thrown!");
+        }
+    }
+}